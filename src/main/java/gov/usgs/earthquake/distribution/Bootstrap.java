@@ -94,6 +94,15 @@ public class Bootstrap {
 	/** Property used to disable tracker updates. */
 	public static final String ENABLE_TRACKER_PROPERTY_NAME = "enableTracker";
 
+	/**
+	 * Property for number of tracker updates queued for background sending,
+	 * or 0 to send updates synchronously.
+	 */
+	public static final String TRACKER_QUEUE_SIZE_PROPERTY_NAME = "trackerQueueSize";
+	/** Default tracker queue size. */
+	public static final String DEFAULT_TRACKER_QUEUE_SIZE = Integer
+			.toString(ProductTrackerQueue.DEFAULT_CAPACITY);
+
 	/** Argument for mainclass. */
 	public static final String MAINCLASS_ARGUMENT = "--mainclass=";
 	/** Property for mainclass. */
@@ -276,6 +285,17 @@ public class Bootstrap {
 			LOGGER.warning("Enabled tracker updates,"
 					+ " this is usually not a good idea.");
 			ProductTracker.setTrackerEnabled(true);
+
+			int trackerQueueSize = Integer.parseInt(config.getProperty(
+					TRACKER_QUEUE_SIZE_PROPERTY_NAME,
+					DEFAULT_TRACKER_QUEUE_SIZE));
+			LOGGER.config("Tracker queue size " + trackerQueueSize);
+			if (trackerQueueSize > 0) {
+				ProductTrackerQueue trackerQueue = new ProductTrackerQueue(
+						trackerQueueSize, ProductTrackerQueue.DEFAULT_TIMEOUT);
+				trackerQueue.start();
+				ProductTracker.setTrackerQueue(trackerQueue);
+			}
 		}
 
 		// lookup main class
@@ -239,13 +239,22 @@ public class CLIProductBuilder extends DefaultConfigurable {
 	public Map<ProductSender, Exception> sendProduct(final Product product) {
 		Map<ProductSender, Exception> sendExceptions = new HashMap<ProductSender, Exception>();
 
-		Iterator<ProductSender> iter = senders.iterator();
-		while (iter.hasNext()) {
-			ProductSender sender = iter.next();
-			try {
-				sender.sendProduct(product);
-			} catch (Exception e) {
-				sendExceptions.put(sender, e);
+		// encode once for all socket senders
+		EncodedProduct encoded = ProductBuilder.newEncodedProduct(senders,
+				product);
+		try {
+			Iterator<ProductSender> iter = senders.iterator();
+			while (iter.hasNext()) {
+				ProductSender sender = iter.next();
+				try {
+					ProductBuilder.sendEncoded(sender, product, encoded);
+				} catch (Exception e) {
+					sendExceptions.put(sender, e);
+				}
+			}
+		} finally {
+			if (encoded != null) {
+				encoded.close();
 			}
 		}
 
@@ -372,6 +372,19 @@ public class DefaultNotificationListener extends AbstractListener implements
 		this.cleanupInterval = cleanupInterval;
 	}
 
+	/**
+	 * Number of notifications a listener notifier may deliver to this
+	 * listener at the same time.
+	 *
+	 * Most listeners process one notification at a time, subclasses that are
+	 * safe to call concurrently may override this method.
+	 *
+	 * @return 1, by default.
+	 */
+	public int getConcurrentProducts() {
+		return 1;
+	}
+
 	public boolean isProcessDuplicates() {
 		return processDuplicates;
 	}
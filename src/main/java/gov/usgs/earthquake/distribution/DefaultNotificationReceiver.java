@@ -16,14 +16,28 @@ import gov.usgs.util.ObjectLock;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -85,9 +99,44 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 	public static final String READ_TIMEOUT_PROPERTY = "readTimeout";
 	public static final String DEFAULT_READ_TIMEOUT = "15000";
 
+	/**
+	 * Property for milliseconds to wait for a download before also downloading
+	 * from the next hub, 0 to download from one hub at a time.
+	 */
+	public static final String HEDGE_DELAY_PROPERTY = "hedgeDelay";
+	public static final String DEFAULT_HEDGE_DELAY = "0";
+
+	/** Directory under FileProductStorage base for hedged downloads. */
+	public static final String DOWNLOAD_DIRECTORY = ".download";
+
 	public static final String LISTENER_NOTIFIER_PROPERTY = "listenerNotifier";
 	public static final String EXECUTOR_LISTENER_NOTIFIER = "executor";
 	public static final String ROUNDROBIN_LISTENER_NOTIFIER = "roundrobin";
+	public static final String SHARED_LISTENER_NOTIFIER = "shared";
+
+	/**
+	 * Property for number of threads used by the shared listener notifier, 0
+	 * to use virtual threads when available.
+	 */
+	public static final String LISTENER_NOTIFIER_THREADS_PROPERTY = "listenerNotifierThreads";
+	public static final String DEFAULT_LISTENER_NOTIFIER_THREADS = "0";
+
+	public static final String JOURNAL_LISTENER_NOTIFIER = "journal";
+
+	/** Property for directory where the journal notifier stores queues. */
+	public static final String LISTENER_JOURNAL_DIRECTORY_PROPERTY = "listenerJournalDirectory";
+	public static final String DEFAULT_LISTENER_JOURNAL_DIRECTORY = "listener_journal";
+
+	/** Property for number of journal notifications queued in memory. */
+	public static final String LISTENER_QUEUE_WINDOW_PROPERTY = "listenerQueueWindow";
+	public static final String DEFAULT_LISTENER_QUEUE_WINDOW = "100";
+
+	/**
+	 * Property for number of pending notifications per listener before the
+	 * receiver waits, 0 to never wait.
+	 */
+	public static final String LISTENER_QUEUE_MAX_SIZE_PROPERTY = "listenerQueueMaxSize";
+	public static final String DEFAULT_LISTENER_QUEUE_MAX_SIZE = "0";
 
 	/** The notification index where received notifications are stored. */
 	private NotificationIndex notificationIndex;
@@ -107,6 +156,14 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 	private int connectTimeout = Integer.parseInt(DEFAULT_CONNECT_TIMEOUT);
 	private int readTimeout = Integer.parseInt(DEFAULT_READ_TIMEOUT);
 
+	private long hedgeDelay = Long.parseLong(DEFAULT_HEDGE_DELAY);
+
+	/** Recent download rate by hub, in bytes per second. */
+	private final Map<String, Long> hubRates = new ConcurrentHashMap<String, Long>();
+
+	/** Executor for hedged downloads, created when first used. */
+	private ExecutorService downloadExecutor = null;
+
 	private ListenerNotifier notifier;
 
 	/** A lock that is acquired when a product is being retrieved. */
@@ -285,102 +342,14 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 				LOGGER.finer("[" + getName()
 						+ "] don't have product yet, searching notifications");
 				// don't have product yet, search notifications
-				Iterator<Notification> iter = notificationIndex
-						.findNotifications(id).iterator();
-				while (product == null && iter.hasNext()) {
-					Notification notification = iter.next();
-					if (!(notification instanceof URLNotification)) {
-						// only URL notifications include location info
-						continue;
-					}
-
-					InputStream in = null;
-					try {
-						URL productURL = ((URLNotification) notification)
-								.getProductURL();
-						LOGGER.finer("[" + getName() + "] notification url "
-								+ productURL.toString());
-
-						final Date beginConnect = new Date();
-						in = StreamUtils.getURLInputStream(productURL,
-								connectTimeout, readTimeout);
-
-						final Date beginDownload = new Date();
-						// use size limit with negative limit to count transfer size
-						SizeLimitInputStream sizeIn = new SizeLimitInputStream(in, -1);
-						ProductSource productSource = IOUtil.autoDetectProductSource(sizeIn);
-
-						Notification storedNotification = storeProductSource(productSource);
-
-						final Date endDownload = new Date();
-						final long connectTime = beginDownload.getTime() - beginConnect.getTime();
-						final long downloadTime = endDownload.getTime() - beginDownload.getTime();
-						final long downloadSize = sizeIn.getRead();
-						final long downloadRate = Math.round(downloadSize /
-								(Math.max(downloadTime, 1L) / 1000.0));
-
-						LOGGER.fine("[" + getName() + "] receiver retrieved product"
-								+ " id=" + id.toString()
-								+ " (connect = " + connectTime + " ms)"
-								+ " (rate = " + downloadRate +  " bytes/s)"
-								+ " (size = " + downloadSize + " bytes)"
-								+ " (time = " + downloadTime + " ms)"
-								+ " from " + productURL.toString());
-
-						LOGGER.finest("[" + getName()
-								+ "] after store product, notification="
-								+ storedNotification);
-
-						if (productStorage.hasProduct(id)) {
-							LOGGER.finer("[" + getName()
-									+ "] getting product from storage");
-							product = productStorage.getProduct(id);
-							LOGGER.finest("[" + getName()
-									+ "] after getProduct, product=" + product);
-
-							try {
-								new ProductTracker(notification.getTrackerURL())
-										.productDownloaded(this.getName(), id);
-								LOGGER.fine("[" + getName()
-										+ "] product downloaded from "
-										+ productURL.toString());
-							} catch (Exception e) {
-								LOGGER.log(
-										Level.WARNING,
-										"["
-												+ getName()
-												+ "] exception notifying tracker about downloaded product",
-										e);
-							}
-						} else {
-							LOGGER.finer("[" + getName()
-									+ "] product not in storage id="
-									+ productIdString);
-						}
-					} catch (Exception e) {
-						if (e instanceof ProductAlreadyInStorageException
-								|| e.getCause() instanceof ProductAlreadyInStorageException) {
-							LOGGER.finer("[" + getName()
-									+ "] product already in storage id="
-									+ productIdString);
-							product = productStorage.getProduct(id);
-							continue;
-						}
-
-						// log any exception that happened while retrieving
-						// product
-						if (e instanceof FileNotFoundException) {
-							LOGGER.warning("["
-									+ getName()
-									+ "] exception while retrieving product, file not found");
-						} else {
-							LOGGER.log(Level.WARNING, "[" + getName()
-									+ "] exception while retrieving product", e);
-							new ProductTracker(notification.getTrackerURL())
-									.exception(this.getName(), id, e);
-						}
-					} finally {
-						StreamUtils.closeStream(in);
+				List<URLNotification> notifications = rankNotifications(
+						notificationIndex.findNotifications(id));
+				if (hedgeDelay > 0 && notifications.size() > 1) {
+					product = downloadProductHedged(id, notifications);
+				} else {
+					Iterator<URLNotification> iter = notifications.iterator();
+					while (product == null && iter.hasNext()) {
+						product = downloadProduct(id, iter.next());
 					}
 				}
 			}
@@ -396,6 +365,476 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 		return product;
 	}
 
+	/**
+	 * Download a product from the URL in a notification, into storage.
+	 *
+	 * @param id
+	 *            the product to retrieve.
+	 * @param notification
+	 *            notification with product url.
+	 * @return the retrieved product, or null if not available.
+	 * @throws Exception
+	 */
+	protected Product downloadProduct(final ProductId id,
+			final URLNotification notification) throws Exception {
+		InputStream in = null;
+		try {
+			URL productURL = notification.getProductURL();
+			LOGGER.finer("[" + getName() + "] notification url "
+					+ productURL.toString());
+
+			final Date beginConnect = new Date();
+			in = StreamUtils.getURLInputStream(productURL, connectTimeout,
+					readTimeout);
+
+			final Date beginDownload = new Date();
+			// use size limit with negative limit to count transfer size
+			SizeLimitInputStream sizeIn = new SizeLimitInputStream(in, -1);
+			ProductSource productSource = IOUtil.autoDetectProductSource(sizeIn);
+
+			Notification storedNotification = storeProductSource(productSource);
+
+			final Date endDownload = new Date();
+			onDownloadComplete(id, productURL,
+					beginDownload.getTime() - beginConnect.getTime(),
+					endDownload.getTime() - beginDownload.getTime(),
+					sizeIn.getRead());
+
+			LOGGER.finest("[" + getName()
+					+ "] after store product, notification="
+					+ storedNotification);
+
+			return getDownloadedProduct(id, notification);
+		} catch (Exception e) {
+			return onDownloadException(id, notification, e);
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+	}
+
+	/**
+	 * Download a product from several hubs in parallel.
+	 *
+	 * Downloads start in the order of notifications. When a download has not
+	 * completed after hedgeDelay milliseconds the next download is started,
+	 * and when a download fails the next download is started immediately. The
+	 * first completed download that is stored successfully is used, and other
+	 * downloads are cancelled.
+	 *
+	 * Downloads are written to temporary files in the download directory, so
+	 * they do not compete for product storage locks, and the first to
+	 * complete is then stored.
+	 *
+	 * @param id
+	 *            the product to retrieve.
+	 * @param notifications
+	 *            notifications with product urls, in order to try.
+	 * @return the retrieved product, or null if not available.
+	 * @throws Exception
+	 */
+	protected Product downloadProductHedged(final ProductId id,
+			final List<URLNotification> notifications) throws Exception {
+		CompletionService<HedgedDownload> completion = new ExecutorCompletionService<HedgedDownload>(
+				getDownloadExecutor());
+		List<HedgedDownload> started = new ArrayList<HedgedDownload>();
+		Iterator<URLNotification> iter = notifications.iterator();
+		Product product = null;
+		int running = 0;
+		try {
+			while (product == null && (running > 0 || iter.hasNext())) {
+				if (running == 0) {
+					// nothing in progress, start next download
+					startDownload(completion, iter.next(), started);
+					running++;
+					continue;
+				}
+
+				Future<HedgedDownload> done;
+				if (iter.hasNext()) {
+					done = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+					if (done == null) {
+						// slow download, start another in parallel
+						URLNotification next = iter.next();
+						LOGGER.fine("[" + getName() + "] download of id="
+								+ id.toString() + " not complete after "
+								+ hedgeDelay + " ms, also trying "
+								+ next.getProductURL().toString());
+						startDownload(completion, next, started);
+						running++;
+						continue;
+					}
+				} else {
+					done = completion.take();
+				}
+				running--;
+
+				HedgedDownload download = done.get();
+				if (download.getException() != null) {
+					product = onDownloadException(id,
+							download.getNotification(),
+							download.getException());
+				} else {
+					product = storeDownload(id, download);
+				}
+				if (product == null && running > 0 && iter.hasNext()) {
+					// failed, start next download instead of waiting
+					startDownload(completion, iter.next(), started);
+					running++;
+				}
+			}
+		} finally {
+			// stop other downloads, and remove temporary files
+			for (HedgedDownload download : started) {
+				download.cancel();
+			}
+		}
+		return product;
+	}
+
+	/**
+	 * Start a hedged download.
+	 */
+	private void startDownload(
+			final CompletionService<HedgedDownload> completion,
+			final URLNotification notification,
+			final List<HedgedDownload> started) {
+		HedgedDownload download = new HedgedDownload(notification);
+		started.add(download);
+		completion.submit(download);
+	}
+
+	/**
+	 * Store a product downloaded to a temporary file.
+	 *
+	 * @param id
+	 *            the product to retrieve.
+	 * @param download
+	 *            completed download.
+	 * @return the retrieved product, or null if not available.
+	 * @throws Exception
+	 */
+	protected Product storeDownload(final ProductId id,
+			final HedgedDownload download) throws Exception {
+		URLNotification notification = download.getNotification();
+		InputStream in = null;
+		try {
+			onDownloadComplete(id, notification.getProductURL(),
+					download.getConnectTime(), download.getDownloadTime(),
+					download.getBytesRead());
+
+			in = StreamUtils.getInputStream(download.getFile());
+			Notification storedNotification = storeProductSource(IOUtil
+					.autoDetectProductSource(in));
+			LOGGER.finest("[" + getName()
+					+ "] after store product, notification="
+					+ storedNotification);
+
+			return getDownloadedProduct(id, notification);
+		} catch (Exception e) {
+			return onDownloadException(id, notification, e);
+		} finally {
+			StreamUtils.closeStream(in);
+		}
+	}
+
+	/**
+	 * Log download statistics, and update the rate for the hub.
+	 */
+	private void onDownloadComplete(final ProductId id, final URL productURL,
+			final long connectTime, final long downloadTime,
+			final long downloadSize) {
+		final long downloadRate = Math.round(downloadSize /
+				(Math.max(downloadTime, 1L) / 1000.0));
+
+		LOGGER.fine("[" + getName() + "] receiver retrieved product"
+				+ " id=" + id.toString()
+				+ " (connect = " + connectTime + " ms)"
+				+ " (rate = " + downloadRate +  " bytes/s)"
+				+ " (size = " + downloadSize + " bytes)"
+				+ " (time = " + downloadTime + " ms)"
+				+ " from " + productURL.toString());
+
+		updateHubRate(productURL, downloadRate);
+	}
+
+	/**
+	 * Load a product from storage after it was downloaded, and notify the
+	 * tracker.
+	 *
+	 * @return the product, or null if not in storage.
+	 * @throws Exception
+	 */
+	private Product getDownloadedProduct(final ProductId id,
+			final URLNotification notification) throws Exception {
+		Product product = null;
+		if (productStorage.hasProduct(id)) {
+			LOGGER.finer("[" + getName()
+					+ "] getting product from storage");
+			product = productStorage.getProduct(id);
+			LOGGER.finest("[" + getName()
+					+ "] after getProduct, product=" + product);
+
+			try {
+				new ProductTracker(notification.getTrackerURL())
+						.productDownloaded(this.getName(), id);
+				LOGGER.fine("[" + getName()
+						+ "] product downloaded from "
+						+ notification.getProductURL().toString());
+			} catch (Exception e) {
+				LOGGER.log(
+						Level.WARNING,
+						"["
+								+ getName()
+								+ "] exception notifying tracker about downloaded product",
+						e);
+			}
+		} else {
+			LOGGER.finer("[" + getName()
+					+ "] product not in storage id="
+					+ id.toString());
+		}
+		return product;
+	}
+
+	/**
+	 * Handle an exception while downloading a product.
+	 *
+	 * @return the product, if it was already in storage, otherwise null.
+	 * @throws Exception
+	 */
+	private Product onDownloadException(final ProductId id,
+			final URLNotification notification, final Exception e)
+			throws Exception {
+		if (e instanceof ProductAlreadyInStorageException
+				|| e.getCause() instanceof ProductAlreadyInStorageException) {
+			LOGGER.finer("[" + getName()
+					+ "] product already in storage id="
+					+ id.toString());
+			return productStorage.getProduct(id);
+		}
+
+		// hubs that fail are tried last
+		updateHubRate(notification.getProductURL(), 0L);
+
+		// log any exception that happened while retrieving
+		// product
+		if (e instanceof FileNotFoundException) {
+			LOGGER.warning("["
+					+ getName()
+					+ "] exception while retrieving product, file not found");
+		} else {
+			LOGGER.log(Level.WARNING, "[" + getName()
+					+ "] exception while retrieving product", e);
+			new ProductTracker(notification.getTrackerURL())
+					.exception(this.getName(), id, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Order URL notifications so hubs with the fastest download rate are tried
+	 * first.
+	 *
+	 * Hubs without a measured rate are tried before others, so their rate is
+	 * measured. Otherwise the original order is kept.
+	 *
+	 * @param notifications
+	 *            notifications to rank.
+	 * @return URL notifications, in order to try.
+	 */
+	protected List<URLNotification> rankNotifications(
+			final List<Notification> notifications) {
+		List<URLNotification> urlNotifications = new ArrayList<URLNotification>();
+		for (Notification notification : notifications) {
+			// only URL notifications include location info
+			if (notification instanceof URLNotification) {
+				urlNotifications.add((URLNotification) notification);
+			}
+		}
+		// stable sort, fastest first
+		Collections.sort(urlNotifications, (a, b) -> Long.compare(
+				getHubRate(b.getProductURL()), getHubRate(a.getProductURL())));
+		return urlNotifications;
+	}
+
+	/**
+	 * @return key used to track rate of hub serving a url.
+	 */
+	protected static String getHubKey(final URL url) {
+		return url.getProtocol() + "://" + url.getAuthority();
+	}
+
+	/**
+	 * @return recent download rate for hub serving a url, in bytes per second,
+	 *         or Long.MAX_VALUE if not measured.
+	 */
+	protected long getHubRate(final URL url) {
+		Long rate = hubRates.get(getHubKey(url));
+		return rate == null ? Long.MAX_VALUE : rate;
+	}
+
+	/**
+	 * Update the download rate for the hub serving a url.
+	 *
+	 * Uses a moving average, so one slow download does not drop a hub to the
+	 * end of the list.
+	 *
+	 * @param url
+	 *            url that was downloaded.
+	 * @param rate
+	 *            download rate in bytes per second, 0 for failures.
+	 */
+	protected void updateHubRate(final URL url, final long rate) {
+		hubRates.merge(getHubKey(url), rate,
+				(previous, current) -> (previous * 3 + current) / 4);
+	}
+
+	/**
+	 * @return download rates by hub, in bytes per second.
+	 */
+	public Map<String, Long> getHubRates() {
+		return new HashMap<String, Long>(hubRates);
+	}
+
+	/**
+	 * Directory for hedged downloads.
+	 *
+	 * When product storage is a FileProductStorage, downloads are written
+	 * under its base directory, so they use the same disk as stored products.
+	 *
+	 * @return download directory, or null to use the system temp directory.
+	 */
+	protected File getDownloadDirectory() {
+		if (productStorage instanceof FileProductStorage) {
+			File directory = new File(
+					((FileProductStorage) productStorage).getBaseDirectory(),
+					DOWNLOAD_DIRECTORY);
+			directory.mkdirs();
+			return directory;
+		}
+		return null;
+	}
+
+	/**
+	 * @return executor used for hedged downloads.
+	 */
+	protected synchronized ExecutorService getDownloadExecutor() {
+		if (downloadExecutor == null) {
+			downloadExecutor = Executors.newCachedThreadPool();
+		}
+		return downloadExecutor;
+	}
+
+	/**
+	 * A download of a product to a temporary file, that can be cancelled.
+	 */
+	protected class HedgedDownload implements Callable<HedgedDownload> {
+
+		private final URLNotification notification;
+		private File file = null;
+		private InputStream in = null;
+		private boolean cancelled = false;
+		private boolean complete = false;
+		private long beginConnect = 0L;
+		private long connectTime = 0L;
+		private long downloadTime = 0L;
+		private volatile long bytesRead = 0L;
+		private Exception exception = null;
+
+		public HedgedDownload(final URLNotification notification) {
+			this.notification = notification;
+		}
+
+		@Override
+		public HedgedDownload call() {
+			OutputStream out = null;
+			try {
+				synchronized (this) {
+					if (cancelled) {
+						throw new InterruptedIOException("download cancelled");
+					}
+					beginConnect = System.currentTimeMillis();
+					file = File.createTempFile("download", ".tmp",
+							getDownloadDirectory());
+				}
+				InputStream urlIn = StreamUtils.getURLInputStream(
+						notification.getProductURL(), connectTimeout,
+						readTimeout);
+				synchronized (this) {
+					in = urlIn;
+					if (cancelled) {
+						throw new InterruptedIOException("download cancelled");
+					}
+				}
+				long beginDownload = System.currentTimeMillis();
+				connectTime = beginDownload - beginConnect;
+
+				out = new FileOutputStream(file);
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+					bytesRead += read;
+				}
+				out.close();
+				downloadTime = System.currentTimeMillis() - beginDownload;
+			} catch (Exception e) {
+				exception = e;
+			} finally {
+				StreamUtils.closeStream(out);
+				synchronized (this) {
+					StreamUtils.closeStream(in);
+					complete = true;
+					if (cancelled && file != null) {
+						file.delete();
+					}
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * Stop download if still running, and remove temporary file.
+		 */
+		public synchronized void cancel() {
+			if (!complete && beginConnect > 0) {
+				// slower than another hub, record rate so far
+				long elapsed = System.currentTimeMillis() - beginConnect;
+				updateHubRate(notification.getProductURL(),
+						Math.round(bytesRead / (Math.max(elapsed, 1L) / 1000.0)));
+			}
+			cancelled = true;
+			StreamUtils.closeStream(in);
+			if (file != null) {
+				file.delete();
+			}
+		}
+
+		public URLNotification getNotification() {
+			return notification;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getConnectTime() {
+			return connectTime;
+		}
+
+		public long getDownloadTime() {
+			return downloadTime;
+		}
+
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		public Exception getException() {
+			return exception;
+		}
+	}
+
 	/**
 	 * Calls the current <code>ProductStorage.storeProductSource</code> method.
 	 *
@@ -531,6 +970,11 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 		LOGGER.config("[" + getName() + "] receiver read timeout "
 				+ readTimeout + " ms");
 
+		hedgeDelay = Long.parseLong(config.getProperty(
+				HEDGE_DELAY_PROPERTY, DEFAULT_HEDGE_DELAY));
+		LOGGER.config("[" + getName() + "] receiver hedge delay "
+				+ hedgeDelay + " ms");
+
 		String notifierType = config.getProperty(LISTENER_NOTIFIER_PROPERTY);
 		if (notifierType != null) {
 			if (notifierType.equals(EXECUTOR_LISTENER_NOTIFIER)) {
@@ -541,6 +985,30 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 				notifier = new RoundRobinListenerNotifier(this);
 				LOGGER.config("[" + getName()
 						+ "] using round-robin listener notifier");
+			} else if (notifierType.equals(SHARED_LISTENER_NOTIFIER)) {
+				int threads = Integer.parseInt(config.getProperty(
+						LISTENER_NOTIFIER_THREADS_PROPERTY,
+						DEFAULT_LISTENER_NOTIFIER_THREADS));
+				notifier = new SharedPoolListenerNotifier(this, threads);
+				LOGGER.config("[" + getName()
+						+ "] using shared pool listener notifier, "
+						+ (threads > 0 ? threads + " threads" : "default threads"));
+			} else if (notifierType.equals(JOURNAL_LISTENER_NOTIFIER)) {
+				File directory = new File(config.getProperty(
+						LISTENER_JOURNAL_DIRECTORY_PROPERTY,
+						DEFAULT_LISTENER_JOURNAL_DIRECTORY), getName());
+				int window = Integer.parseInt(config.getProperty(
+						LISTENER_QUEUE_WINDOW_PROPERTY,
+						DEFAULT_LISTENER_QUEUE_WINDOW));
+				long maxQueueSize = Long.parseLong(config.getProperty(
+						LISTENER_QUEUE_MAX_SIZE_PROPERTY,
+						DEFAULT_LISTENER_QUEUE_MAX_SIZE));
+				notifier = new JournalListenerNotifier(this, directory, window,
+						maxQueueSize);
+				LOGGER.config("[" + getName()
+						+ "] using journal listener notifier, directory "
+						+ directory + ", window " + window
+						+ ", max queue size " + maxQueueSize);
 			} else {
 				throw new ConfigurationException("Unknown notifier type "
 						+ notifierType);
@@ -551,6 +1019,13 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 	public void shutdown() throws Exception {
 		receiverCleanupTimer.cancel();
 
+		synchronized (this) {
+			if (downloadExecutor != null) {
+				downloadExecutor.shutdownNow();
+				downloadExecutor = null;
+			}
+		}
+
 		try {
 			notifier.shutdown();
 		} catch (Exception ignore) {
@@ -678,4 +1153,12 @@ public class DefaultNotificationReceiver extends DefaultConfigurable implements
 		this.readTimeout = readTimeout;
 	}
 
+	public long getHedgeDelay() {
+		return hedgeDelay;
+	}
+
+	public void setHedgeDelay(long hedgeDelay) {
+		this.hedgeDelay = hedgeDelay;
+	}
+
 }
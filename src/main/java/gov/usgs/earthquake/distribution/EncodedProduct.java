@@ -0,0 +1,426 @@
+/*
+ * EncodedProduct
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.Product;
+import gov.usgs.earthquake.product.io.BinaryProductHandler;
+import gov.usgs.earthquake.product.io.ObjectProductSource;
+import gov.usgs.earthquake.product.io.XmlProductHandler;
+import gov.usgs.util.StreamUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A product encoded for sending, shared by senders that use the same format.
+ *
+ * Each encoding (format and compression) is created once, the first time a
+ * sender needs it, by a background thread. The first memoryLimit bytes are
+ * kept in memory, and the rest are written to a temporary file. Senders copy
+ * encoded bytes as they are produced, instead of each serializing and
+ * compressing the product, and do not wait for the whole product to be
+ * encoded before writing to their connection.
+ *
+ * Call {@link #close()} when sending is complete to delete temporary files.
+ */
+public class EncodedProduct {
+
+	/** Logging object. */
+	private static final Logger LOGGER = Logger.getLogger(EncodedProduct.class
+			.getName());
+
+	/** The first this many bytes of each encoding are kept in memory. */
+	public static final int DEFAULT_MEMORY_LIMIT = 8 * 1024 * 1024;
+
+	/** Bytes buffered by the encoder before they are available to senders. */
+	private static final int ENCODE_BUFFER_SIZE = 64 * 1024;
+
+	/** The product being encoded. */
+	private final Product product;
+
+	/** The first this many bytes of each encoding are kept in memory. */
+	private final int memoryLimit;
+
+	/** Encodings by format. */
+	private final Map<String, Encoding> encodings = new HashMap<String, Encoding>();
+
+	/** Set by close. */
+	private boolean closed = false;
+
+	/**
+	 * Create an EncodedProduct using the default memory limit.
+	 *
+	 * @param product
+	 *            the product to encode.
+	 */
+	public EncodedProduct(final Product product) {
+		this(product, DEFAULT_MEMORY_LIMIT);
+	}
+
+	/**
+	 * Create an EncodedProduct.
+	 *
+	 * @param product
+	 *            the product to encode.
+	 * @param memoryLimit
+	 *            the first this many bytes of each encoding are kept in
+	 *            memory, the rest in a temporary file.
+	 */
+	public EncodedProduct(final Product product, final int memoryLimit) {
+		this.product = product;
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * @return the product being encoded.
+	 */
+	public Product getProduct() {
+		return product;
+	}
+
+	/**
+	 * Get an encoding of the product, starting to encode it if needed.
+	 *
+	 * Returns without waiting for encoding to complete.
+	 *
+	 * @param binaryFormat
+	 *            binary format (true) or xml format (false).
+	 * @param enableDeflate
+	 *            whether to deflate the encoded product.
+	 * @param deflateLevel
+	 *            compression level when deflating.
+	 * @return the encoding.
+	 * @throws Exception
+	 *             if already closed.
+	 */
+	public Encoding getEncoding(final boolean binaryFormat,
+			final boolean enableDeflate, final int deflateLevel)
+			throws Exception {
+		String key = (binaryFormat ? "binary" : "xml")
+				+ (enableDeflate ? "-deflate" + deflateLevel : "");
+		Encoding encoding;
+		synchronized (encodings) {
+			if (closed) {
+				throw new IllegalStateException("EncodedProduct is closed");
+			}
+			encoding = encodings.get(key);
+			if (encoding == null) {
+				encoding = new Encoding(key, binaryFormat, enableDeflate,
+						deflateLevel);
+				encodings.put(key, encoding);
+				encoding.start();
+			}
+		}
+		return encoding;
+	}
+
+	/**
+	 * Delete any temporary files.
+	 *
+	 * Senders still copying an encoding fail, and encoders stop.
+	 */
+	public void close() {
+		synchronized (encodings) {
+			closed = true;
+			for (Encoding encoding : encodings.values()) {
+				encoding.delete();
+			}
+			encodings.clear();
+		}
+	}
+
+	/**
+	 * One encoding of the product.
+	 *
+	 * Written by one encoder thread, and read by any number of senders while
+	 * it is written.
+	 */
+	public class Encoding implements Runnable {
+
+		private final String key;
+		private final boolean binaryFormat;
+		private final boolean enableDeflate;
+		private final int deflateLevel;
+
+		/** First bytes of encoding, up to memoryLimit. */
+		private byte[] memory = new byte[0];
+		/** Bytes after memoryLimit. */
+		private File file = null;
+		/** Number of encoded bytes available to senders. */
+		private long length = 0L;
+		/** Whether encoding completed. */
+		private boolean complete = false;
+		/** Set if encoding failed. */
+		private Exception exception = null;
+		/** Set by delete. */
+		private boolean deleted = false;
+
+		private Encoding(final String key, final boolean binaryFormat,
+				final boolean enableDeflate, final int deflateLevel) {
+			this.key = key;
+			this.binaryFormat = binaryFormat;
+			this.enableDeflate = enableDeflate;
+			this.deflateLevel = deflateLevel;
+		}
+
+		/**
+		 * Start encoder thread.
+		 */
+		private void start() {
+			Thread encoder = new Thread(this, "EncodedProduct "
+					+ product.getId().toString() + " " + key);
+			encoder.setDaemon(true);
+			encoder.start();
+		}
+
+		/**
+		 * Encode the product.
+		 */
+		@Override
+		public void run() {
+			EncodingOutputStream encodingOut = new EncodingOutputStream(this);
+			Deflater deflater = null;
+			try {
+				OutputStream out = new BufferedOutputStream(encodingOut,
+						ENCODE_BUFFER_SIZE);
+				if (enableDeflate) {
+					deflater = new Deflater(deflateLevel);
+					out = new DeflaterOutputStream(out, deflater);
+				}
+				// make sure product handler doesn't close stream before done
+				OutputStream productOut = new StreamUtils.UnclosableOutputStream(
+						out);
+				ObjectProductSource productSource = new ObjectProductSource(
+						product);
+				if (binaryFormat) {
+					productSource
+							.streamTo(new BinaryProductHandler(productOut));
+				} else {
+					productSource.streamTo(new XmlProductHandler(productOut));
+				}
+				// deflate finishes, and buffer flushes
+				out.close();
+				encodingOut.close();
+				synchronized (this) {
+					complete = true;
+					notifyAll();
+				}
+				LOGGER.fine("Encoded product " + product.getId().toString()
+						+ " (" + key + "), " + getLength() + " bytes");
+			} catch (Exception e) {
+				LOGGER.log(Level.FINE, "Unable to encode product "
+						+ product.getId().toString() + " (" + key + ")", e);
+				encodingOut.abort();
+				synchronized (this) {
+					exception = e;
+					notifyAll();
+				}
+			} finally {
+				if (deflater != null) {
+					deflater.end();
+				}
+			}
+		}
+
+		/**
+		 * @return number of bytes encoded so far.
+		 */
+		public synchronized long getLength() {
+			return length;
+		}
+
+		/**
+		 * Copy the encoded product to a stream, as it is encoded.
+		 *
+		 * Multiple threads may write the same encoding concurrently.
+		 *
+		 * @param out
+		 *            stream to write, not closed.
+		 * @throws IOException
+		 *             if encoding fails, or the EncodedProduct is closed.
+		 */
+		public void writeTo(final OutputStream out) throws IOException {
+			byte[] buffer = new byte[ENCODE_BUFFER_SIZE];
+			RandomAccessFile fileIn = null;
+			try {
+				long position = 0L;
+				while (true) {
+					long available;
+					synchronized (this) {
+						while (position == length && !complete) {
+							checkReadable();
+							try {
+								wait();
+							} catch (InterruptedException e) {
+								throw new InterruptedIOException();
+							}
+						}
+						checkReadable();
+						if (position == length) {
+							// complete
+							return;
+						}
+						available = length;
+						if (position < memory.length) {
+							// copy from memory
+							int count = (int) Math.min(buffer.length,
+									Math.min(available, memory.length)
+											- position);
+							System.arraycopy(memory, (int) position, buffer, 0,
+									count);
+							available = position + count;
+						} else if (fileIn == null) {
+							fileIn = new RandomAccessFile(file, "r");
+						}
+					}
+					while (position < available) {
+						int count;
+						if (position < memoryLimit) {
+							count = (int) (available - position);
+						} else {
+							fileIn.seek(position - memoryLimit);
+							count = fileIn.read(buffer, 0, (int) Math.min(
+									buffer.length, available - position));
+							if (count == -1) {
+								throw new IOException(
+										"encoded file ended early");
+							}
+						}
+						out.write(buffer, 0, count);
+						position += count;
+					}
+				}
+			} finally {
+				if (fileIn != null) {
+					try {
+						fileIn.close();
+					} catch (IOException ignore) {
+					}
+				}
+			}
+		}
+
+		/**
+		 * Called while synchronized.
+		 */
+		private void checkReadable() throws IOException {
+			if (deleted) {
+				throw new IOException("EncodedProduct is closed");
+			}
+			if (exception != null) {
+				throw new IOException("Unable to encode product", exception);
+			}
+		}
+
+		private synchronized void delete() {
+			deleted = true;
+			memory = new byte[0];
+			if (file != null) {
+				file.delete();
+			}
+			notifyAll();
+		}
+
+	}
+
+	/**
+	 * Appends encoded bytes to an Encoding, in memory up to memoryLimit, and
+	 * then a temporary file.
+	 */
+	private class EncodingOutputStream extends OutputStream {
+
+		private final Encoding encoding;
+		/** Growing copy of the first memoryLimit bytes. */
+		private byte[] memory = new byte[0];
+		private int memoryLength = 0;
+		private OutputStream fileOut = null;
+
+		public EncodingOutputStream(final Encoding encoding) {
+			this.encoding = encoding;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len)
+				throws IOException {
+			int offset = off;
+			int remaining = len;
+			int toMemory = Math.min(remaining, memoryLimit - memoryLength);
+			if (toMemory > 0) {
+				if (memoryLength + toMemory > memory.length) {
+					memory = Arrays.copyOf(memory, Math.min(memoryLimit, Math
+							.max(memoryLength + toMemory, memory.length * 2)));
+				}
+				System.arraycopy(b, offset, memory, memoryLength, toMemory);
+				memoryLength += toMemory;
+				offset += toMemory;
+				remaining -= toMemory;
+			}
+			if (remaining > 0) {
+				if (fileOut == null) {
+					File file = File.createTempFile("pdl-send-", ".tmp");
+					synchronized (encoding) {
+						if (encoding.deleted) {
+							file.delete();
+							throw new IOException("EncodedProduct is closed");
+						}
+						encoding.file = file;
+					}
+					fileOut = new FileOutputStream(file);
+				}
+				// unbuffered, so written bytes are visible to senders
+				fileOut.write(b, offset, remaining);
+			}
+			synchronized (encoding) {
+				if (encoding.deleted) {
+					throw new IOException("EncodedProduct is closed");
+				}
+				// senders see memory as it grows, copies are not modified
+				encoding.memory = memory;
+				encoding.length += len;
+				encoding.notifyAll();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (fileOut != null) {
+				fileOut.close();
+			}
+		}
+
+		/**
+		 * Close and delete file after an error.
+		 */
+		public void abort() {
+			try {
+				close();
+			} catch (IOException ignore) {
+			}
+			synchronized (encoding) {
+				if (encoding.file != null) {
+					encoding.file.delete();
+				}
+			}
+		}
+
+	}
+
+}
@@ -11,10 +11,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Logger;
 
@@ -40,12 +39,6 @@ public class ExecutorListenerNotifier extends DefaultConfigurable implements
 	 */
 	private boolean acceptBeforeQueuing = true;
 
-	/**
-	 * Timer used to retry tasks when they fail and listeners have configured
-	 * retryDelay.
-	 */
-	private Timer retryTimer = new Timer();
-
 	public ExecutorListenerNotifier(final DefaultNotificationReceiver receiver) {
 		this.receiver = receiver;
 	}
@@ -61,10 +54,44 @@ public class ExecutorListenerNotifier extends DefaultConfigurable implements
 	public void addNotificationListener(NotificationListener listener)
 			throws Exception {
 		if (!notificationListeners.containsKey(listener)) {
-			// fixed thread pool allows us to inspect the queue length...
-			ExecutorService listenerExecutor = Executors.newFixedThreadPool(1);
-			notificationListeners.put(listener, listenerExecutor);
+			// listeners that support concurrent processing get more threads
+			int threads = 1;
+			if (listener instanceof DefaultNotificationListener) {
+				threads = Math.max(1, ((DefaultNotificationListener) listener)
+						.getConcurrentProducts());
+			}
+			notificationListeners.put(listener,
+					createListenerExecutor(listener, threads));
+		}
+	}
+
+	/**
+	 * Create the executor that delivers notifications to a listener.
+	 *
+	 * @param listener
+	 *            the listener being added.
+	 * @param threads
+	 *            number of notifications the listener may process at once.
+	 * @return executor for listener.
+	 */
+	protected ExecutorService createListenerExecutor(
+			final NotificationListener listener, final int threads) {
+		// fixed thread pool allows us to inspect the queue length...
+		return Executors.newFixedThreadPool(threads);
+	}
+
+	/**
+	 * Get the number of notifications waiting in a listener executor.
+	 *
+	 * @param listenerExecutor
+	 *            executor from createListenerExecutor.
+	 * @return number of queued notifications, or -1 if unknown.
+	 */
+	protected int getQueueSize(final ExecutorService listenerExecutor) {
+		if (listenerExecutor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) listenerExecutor).getQueue().size();
 		}
+		return -1;
 	}
 
 	/**
@@ -121,36 +148,84 @@ public class ExecutorListenerNotifier extends DefaultConfigurable implements
 		}
 	}
 
-	protected void queueNotification(final NotificationListener listener,
+	/**
+	 * Check whether a notification should be queued for a listener.
+	 *
+	 * @param listener
+	 *            the listener.
+	 * @param event
+	 *            the notification.
+	 * @return false if listener will not accept notification.
+	 */
+	protected boolean shouldQueue(final NotificationListener listener,
 			final NotificationEvent event) {
 		if (acceptBeforeQueuing
 				&& listener instanceof DefaultNotificationListener) {
 			DefaultNotificationListener defaultListener = (DefaultNotificationListener) listener;
 			if (!defaultListener.accept(event.getNotification().getProductId())) {
-				return;
+				return false;
 			}
 		}
+		return true;
+	}
 
-		// determine retry delay
-		long retryDelay = 0L;
+	/**
+	 * Determine retry delay for a listener.
+	 *
+	 * @param listener
+	 *            the listener.
+	 * @return milliseconds between retries.
+	 */
+	protected long getRetryDelay(final NotificationListener listener) {
 		if (listener instanceof AbstractListener) {
-			retryDelay = ((AbstractListener) listener).getRetryDelay();
+			return ((AbstractListener) listener).getRetryDelay();
+		}
+		return 0L;
+	}
+
+	/**
+	 * Check whether startup should queue existing notifications from the
+	 * receiver notification index for a listener.
+	 *
+	 * @param listener
+	 *            a listener with its own notification index.
+	 * @return true to queue existing notifications.
+	 */
+	protected boolean requeueOnStartup(final NotificationListener listener) {
+		return true;
+	}
+
+	protected void queueNotification(final NotificationListener listener,
+			final NotificationEvent event) {
+		if (!shouldQueue(listener, event)) {
+			return;
 		}
 
+		// determine retry delay
+		long retryDelay = getRetryDelay(listener);
+
 		ExecutorService listenerExecutor = notificationListeners.get(listener);
 		ExecutorTask<Void> listenerTask = new ExecutorTask<Void>(
 				listenerExecutor, listener.getMaxTries(),
 				listener.getTimeout(), new NotificationListenerCallable(
-						listener, event), retryTimer, retryDelay);
-		listenerExecutor.submit(listenerTask);
+						listener, event), retryDelay);
+		try {
+			listenerExecutor.submit(listenerTask);
+		} catch (RejectedExecutionException e) {
+			// never run, so no longer outstanding
+			listenerTask.cancel(false);
+			throw e;
+		}
 
 		// log how many notifications are pending
-		if (listenerExecutor instanceof ThreadPoolExecutor) {
-			BlockingQueue<Runnable> pending = ((ThreadPoolExecutor) listenerExecutor)
-					.getQueue();
+		int pending = getQueueSize(listenerExecutor);
+		if (pending >= 0) {
 			LOGGER.fine("[" + event.getNotificationReceiver().getName()
 					+ "] listener (" + listener.getName() + ") has "
-					+ pending.size() + " queued notifications");
+					+ pending + " queued notifications ("
+					+ ExecutorTask.getOutstandingTasks() + " outstanding tasks, "
+					+ ExecutorTask.getScheduledRetries() + " scheduled retries, "
+					+ ExecutorTask.getTimeouts() + " timeouts)");
 		}
 	}
 
@@ -184,7 +259,8 @@ public class ExecutorListenerNotifier extends DefaultConfigurable implements
 				// another receiver is sharing this notification index
 			} else if (listener instanceof DefaultNotificationListener
 					&& ((DefaultNotificationListener) listener)
-							.getNotificationIndex() != null) {
+							.getNotificationIndex() != null
+					&& requeueOnStartup(listener)) {
 				gracefulListeners.add(listener);
 				AUTOLOADED_INDEXES.add(key);
 			}
@@ -237,12 +313,11 @@ public class ExecutorListenerNotifier extends DefaultConfigurable implements
 			ExecutorService listenerExecutor = notificationListeners
 					.get(listener);
 
-			if (listenerExecutor instanceof ThreadPoolExecutor) {
-				// check how many notifications are pending
-				BlockingQueue<Runnable> pending = ((ThreadPoolExecutor) listenerExecutor)
-						.getQueue();
+			// check how many notifications are pending
+			int pending = getQueueSize(listenerExecutor);
+			if (pending >= 0) {
 				status.put(receiver.getName() + " - " + listener.getName(),
-						pending.size());
+						pending);
 			}
 		}
 
@@ -7,6 +7,7 @@ import gov.usgs.earthquake.product.Content;
 import gov.usgs.earthquake.product.Product;
 import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.util.Config;
+import gov.usgs.util.ProcessWorkerPool;
 import gov.usgs.util.StreamUtils;
 import gov.usgs.util.XmlUtils;
 
@@ -14,6 +15,7 @@ import java.io.File;
 
 import java.net.URI;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -38,6 +40,16 @@ import java.util.logging.Logger;
  * <dd>(Required) A directory used to store all products. Each product is
  * extracted into a separate directory within this directory and is referenced
  * by the --directory=/path/to/directory argument when command is executed.</dd>
+ * 
+ * <dt>workers</dt>
+ * <dd>(Optional, default 0) When greater than zero, start this many long
+ * running command processes, and send product arguments to them as requests
+ * instead of running command for each product. See {@link ProcessWorkerPool}
+ * for the request and reply format.</dd>
+ * 
+ * <dt>workerInFlight</dt>
+ * <dd>(Optional, default 1) Number of requests sent to each worker at a
+ * time.</dd>
  * </dl>
  * 
  */
@@ -58,12 +70,29 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 
 	private static final String STORAGE_DIRECTORY_PROPERTY = "storageDirectory";
 
+	/** Configuration parameter for number of worker processes. */
+	public static final String WORKERS_PROPERTY = "workers";
+	public static final String DEFAULT_WORKERS = "0";
+
+	/** Configuration parameter for requests sent to each worker at a time. */
+	public static final String WORKER_IN_FLIGHT_PROPERTY = "workerInFlight";
+	public static final String DEFAULT_WORKER_IN_FLIGHT = "1";
+
 	/** Where products are stored in extracted form. */
 	private FileProductStorage storage;
 
 	/** Command that is executed after a product is stored. */
 	private String command;
 
+	/** Number of worker processes, or 0 to run command for each product. */
+	private int workers = Integer.parseInt(DEFAULT_WORKERS);
+
+	/** Requests sent to each worker at a time. */
+	private int workerInFlight = Integer.parseInt(DEFAULT_WORKER_IN_FLIGHT);
+
+	/** Worker processes, when workers is greater than zero. */
+	private ProcessWorkerPool workerPool;
+
 	/**
 	 * Construct a new ExternalNotificationListener.
 	 * 
@@ -112,6 +141,15 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 					+ storageDirectory + "'");
 			storage = new FileProductStorage(new File(storageDirectory));
 		}
+
+		workers = Integer.parseInt(config.getProperty(WORKERS_PROPERTY,
+				DEFAULT_WORKERS));
+		workerInFlight = Integer.parseInt(config.getProperty(
+				WORKER_IN_FLIGHT_PROPERTY, DEFAULT_WORKER_IN_FLIGHT));
+		if (workers > 0) {
+			LOGGER.config("[" + getName() + "] using " + workers
+					+ " workers, " + workerInFlight + " requests in flight");
+		}
 	}
 
 	/**
@@ -122,6 +160,10 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 		// maybe make current process a member and kill process?
 		// or find way of detaching so client process can exit but product
 		// process can complete?
+		if (workerPool != null) {
+			workerPool.shutdown();
+			workerPool = null;
+		}
 		storage.shutdown();
 	}
 
@@ -129,8 +171,11 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 	 * Called after client has been configured and should begin processing.
 	 */
 	public void startup() throws Exception {
-		// no background threads to start or objects to create
 		storage.startup();
+		if (workers > 0 && workerPool == null) {
+			workerPool = new ProcessWorkerPool(getName(),
+					splitCommand(command), workers, workerInFlight);
+		}
 		super.startup();
 	}
 
@@ -221,7 +266,7 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 	 * @return Array of arguments suitable for passing to
 	 *         Runtime.exec(String[]).
 	 */
-	protected static String[] splitCommand(final String command) {
+	public static String[] splitCommand(final String command) {
 		List<String> arguments = new LinkedList<String>();
 		String currentArgument = null;
 
@@ -273,6 +318,22 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 		return arguments.toArray(new String[] {});
 	}
 
+	/**
+	 * Get the arguments a product command adds to a base command.
+	 * 
+	 * @param command
+	 *            base command.
+	 * @param productCommand
+	 *            command with product arguments appended.
+	 * @return list of product arguments, split like splitCommand.
+	 */
+	public static List<String> getWorkerArguments(final String command,
+			final String productCommand) {
+		String[] arguments = splitCommand(productCommand);
+		int start = Math.min(arguments.length, splitCommand(command).length);
+		return Arrays.asList(arguments).subList(start, arguments.length);
+	}
+
 	/**
 	 * Call the external process for this product.
 	 * 
@@ -295,23 +356,27 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 
 		try {
 			productCommand = getProductCommand(product);
-			LOGGER.info("[" + getName() + "] running command " + productCommand);
-			process = Runtime.getRuntime().exec(productCommand);
-
-			// inline product content, may or may not be null
-			Content content = product.getContents().get("");
-			if (content != null) {
-				StreamUtils.transferStream(content.getInputStream(),
-						process.getOutputStream());
+			if (workerPool != null) {
+				exitValue = runWorker(product, productCommand);
 			} else {
-				// need to close process stdin either way
-				StreamUtils.closeStream(process.getOutputStream());
-			}
+				LOGGER.info("[" + getName() + "] running command " + productCommand);
+				process = Runtime.getRuntime().exec(productCommand);
+
+				// inline product content, may or may not be null
+				Content content = product.getContents().get("");
+				if (content != null) {
+					StreamUtils.transferStream(content.getInputStream(),
+							process.getOutputStream());
+				} else {
+					// need to close process stdin either way
+					StreamUtils.closeStream(process.getOutputStream());
+				}
 
-			// maybe log/capture process input/error streams
-			// or switch to "Command"
+				// maybe log/capture process input/error streams
+				// or switch to "Command"
 
-			exitValue = process.waitFor();
+				exitValue = process.waitFor();
+			}
 		} catch (Exception e) {
 			if (process != null) {
 				// make sure to kill zombies
@@ -332,6 +397,35 @@ public class ExternalNotificationListener extends DefaultNotificationListener {
 		}
 	}
 
+	/**
+	 * Send product arguments to a worker process.
+	 * 
+	 * @param product
+	 *            the product being processed.
+	 * @param productCommand
+	 *            the generated command, as a string.
+	 * @return status returned by worker.
+	 * @throws Exception
+	 *             if the worker did not reply.
+	 */
+	protected int runWorker(final Product product, final String productCommand)
+			throws Exception {
+		LOGGER.info("[" + getName() + "] sending to worker " + productCommand);
+		Content content = product.getContents().get("");
+		byte[] contentBytes = null;
+		if (content != null) {
+			contentBytes = StreamUtils.readStream(content.getInputStream());
+		}
+		ProcessWorkerPool.Response response = workerPool.process(
+				getWorkerArguments(command, productCommand), contentBytes,
+				getTimeout());
+		if (response.message != null) {
+			LOGGER.fine("[" + getName() + "] worker message '"
+					+ response.message + "'");
+		}
+		return response.status;
+	}
+
 	/**
 	 * Called when the command finishes executing normally.
 	 * 
@@ -7,6 +7,7 @@ import gov.usgs.earthquake.product.ByteContent;
 import gov.usgs.earthquake.product.Content;
 import gov.usgs.earthquake.product.Product;
 import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.earthquake.product.StreamingProductDigest;
 import gov.usgs.earthquake.product.io.DirectoryProductHandler;
 import gov.usgs.earthquake.product.io.DirectoryProductSource;
 import gov.usgs.earthquake.product.io.FilterProductHandler;
@@ -21,6 +22,7 @@ import gov.usgs.util.ObjectLock;
 import gov.usgs.util.StringUtils;
 
 import java.io.File;
+import java.net.URI;
 import java.net.URL;
 import java.security.MessageDigest;
 import java.util.ArrayList;
@@ -637,7 +639,10 @@ public class FileProductStorage extends DefaultConfigurable implements
 			LOGGER.finer("[" + getName() + "] product stored id=" + id
 					+ ", status=" + output.getStatus());
 
-			verifier.verifySignature(getProduct(id));
+			if (!output.isSignatureVerified()) {
+				// product was not streamed in digest order, read it back
+				verifier.verifySignature(getProduct(id));
+			}
 
 		} catch (Exception e) {
 			if (!(e instanceof ProductAlreadyInStorageException)
@@ -711,6 +716,9 @@ public class FileProductStorage extends DefaultConfigurable implements
 	 *
 	 * When onBeginProduct is called with the ProductId being stored, a
 	 * DirectoryProductOutput is created which manages storage.
+	 *
+	 * When signatures are verified, the product digest is computed as the
+	 * product is written, and the signature is checked in onEndProduct.
 	 */
 	private class StorageProductOutput extends FilterProductHandler {
 
@@ -720,10 +728,33 @@ public class FileProductStorage extends DefaultConfigurable implements
 		/** The stored product status. */
 		private String status;
 
+		/** Digest computed while product is written, if verifying. */
+		private StreamingProductDigest digest;
+
+		/** Whether signature was verified while product was written. */
+		private boolean signatureVerified;
+
 		/**
 		 * Construct a new StorageProductOutput.
 		 */
 		public StorageProductOutput() {
+			if (verifier.isTestSignatures()
+					|| verifier.isRejectInvalidSignatures()) {
+				digest = new StreamingProductDigest();
+				signatureVerified = false;
+			} else {
+				// verifier would not check signature
+				digest = null;
+				signatureVerified = true;
+			}
+		}
+
+		/**
+		 * @return true if the signature was verified while the product was
+		 *         written, or does not need to be verified.
+		 */
+		public boolean isSignatureVerified() {
+			return signatureVerified;
 		}
 
 		/**
@@ -766,6 +797,52 @@ public class FileProductStorage extends DefaultConfigurable implements
 			// call the directory product output onBeginProduct method to start
 			// writing the product
 			super.onBeginProduct(id, status, trackerURL);
+			if (digest != null) {
+				digest.onBeginProduct(id, status, trackerURL);
+			}
+		}
+
+		public void onProperty(ProductId id, String name, String value)
+				throws Exception {
+			super.onProperty(id, name, value);
+			if (digest != null) {
+				digest.onProperty(id, name, value);
+			}
+		}
+
+		public void onLink(ProductId id, String relation, URI href)
+				throws Exception {
+			super.onLink(id, relation, href);
+			if (digest != null) {
+				digest.onLink(id, relation, href);
+			}
+		}
+
+		/**
+		 * Byte content is in memory, and is digested separately. Other content
+		 * is digested as it is written, so the digest matches the stored
+		 * bytes even if a file or url changes while being read, and url
+		 * content is only downloaded once.
+		 */
+		public void onContent(ProductId id, String path, Content content)
+				throws Exception {
+			if (digest == null) {
+				super.onContent(id, path, content);
+			} else if (content instanceof ByteContent) {
+				super.onContent(id, path, content);
+				digest.onContent(id, path, content);
+			} else {
+				super.onContent(id, path, digest.teeContent(id, path, content));
+				digest.endContent();
+			}
+		}
+
+		public void onSignature(ProductId id, String signature)
+				throws Exception {
+			super.onSignature(id, signature);
+			if (digest != null) {
+				digest.onSignature(id, signature);
+			}
 		}
 
 		public void onEndProduct(ProductId id) throws Exception {
@@ -773,6 +850,24 @@ public class FileProductStorage extends DefaultConfigurable implements
 			// writing the product
 			super.onEndProduct(id);
 
+			if (digest != null) {
+				digest.onEndProduct(id);
+				Product signed = digest.getSignedProduct();
+				if (signed != null) {
+					try {
+						verifier.verifySignature(signed, digest.getDigest());
+						signatureVerified = true;
+					} catch (InvalidSignatureException e) {
+						// confirm using stored product
+						LOGGER.finer("[" + getName()
+								+ "] streamed signature not verified, id="
+								+ id);
+					}
+				}
+				digest.close();
+				digest = null;
+			}
+
 			// DONT RELEASE THE LOCK HERE, this causes bigger problems on
 			// hubs...
 
@@ -16,10 +16,17 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -72,7 +79,6 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	// The following variables reference database information and are used for
 	// binding/fetching query parameters in the prepared statements
 	private static final String TABLE_NAME = "notification_index";
-	private static final String TMP_TABLE = "tmp_lookup_table";
 	private static final String ID_COLUMN = "id";
 	private static final String PRODUCT_SOURCE_COLUMN = "product_source";
 	private static final String PRODUCT_TYPE_COLUMN = "product_type";
@@ -95,6 +101,24 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	// created at startup time
 	protected static final String JDBC_FILE_PROPERTY = "indexfile";
 
+	/** Property for number of connections used for concurrent reads. */
+	public static final String READ_CONNECTIONS_PROPERTY = "readConnections";
+	public static final String DEFAULT_READ_CONNECTIONS = "4";
+
+	/**
+	 * Property for whether to enable SQLite write ahead logging. Off by
+	 * default, since it changes the database file format and is not safe on
+	 * network file systems.
+	 */
+	public static final String WAL_MODE_PROPERTY = "walMode";
+	public static final String DEFAULT_WAL_MODE = "false";
+
+	/** Milliseconds SQLite waits for a lock before failing. */
+	public static final int BUSY_TIMEOUT = 30000;
+
+	/** Number of prepared statements kept by each read connection. */
+	private static final int MAX_CACHED_STATEMENTS = 32;
+
 	/** SQL stub for adding a notification to the index. */
 	private static final String DML_ADD_NOTIFICATION = String.format(
 			"INSERT INTO %s (%s, %s, %s, %s, %s, %s, %s) VALUES "
@@ -152,94 +176,11 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 */
 	private String _jdbc_connect_url = null;
 
-	// These are the prepared statements we will use for all DB interactions. //
+	// These are the prepared statements used by the write connection. //
 
 	private PreparedStatement _dml_addNotification = null;
 	private PreparedStatement _dml_removeNotification = null;
 
-	private PreparedStatement _query_findExpiredNotifications = null;
-	private PreparedStatement _query_findNotificationsById = null;
-	private PreparedStatement _query_findNotificationsByData = null;
-
-	// Stubs used in the list version of find by data method. //
-	private static final String DML_CREATE_TMP_TABLE = String.format(
-			"CREATE TABLE IF NOT EXISTS %s (%s TEXT, %s TEXT, %s TEXT)",
-			TMP_TABLE, PRODUCT_SOURCE_COLUMN, PRODUCT_TYPE_COLUMN,
-			PRODUCT_CODE_COLUMN);
-	private static final String DML_ADD_TMP_SOURCE = String.format(
-			"INSERT INTO %s (%s) VALUES (?)", TMP_TABLE, PRODUCT_SOURCE_COLUMN);
-	private static final String DML_ADD_TMP_TYPE = String.format(
-			"INSERT INTO %s (%s) VALUES (?)", TMP_TABLE, PRODUCT_TYPE_COLUMN);
-	private static final String DML_ADD_TMP_CODE = String.format(
-			"INSERT INTO %s (%s) VALUES (?)", TMP_TABLE, PRODUCT_CODE_COLUMN);
-
-	private static final String QUERY_SEARCH_BY_SOURCE_TYPE_CODE = String
-			.format("SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s IN "
-					+ "(SELECT %s FROM %s) AND %s IN (SELECT %s FROM %s) AND "
-					+ "%s IN (SELECT %s FROM %s)", PRODUCT_SOURCE_COLUMN,
-					PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN,
-					PRODUCT_UPDATE_COLUMN, EXPIRATION_DATE_COLUMN,
-					TRACKER_URL_COLUMN, PRODUCT_URL_COLUMN, TABLE_NAME,
-					PRODUCT_SOURCE_COLUMN, PRODUCT_SOURCE_COLUMN, TMP_TABLE,
-					PRODUCT_TYPE_COLUMN, PRODUCT_TYPE_COLUMN, TMP_TABLE,
-					PRODUCT_CODE_COLUMN, PRODUCT_CODE_COLUMN, TMP_TABLE);
-
-	private static final String QUERY_SEARCH_BY_SOURCE_TYPE = String.format(
-			"SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s IN "
-					+ "(SELECT %s FROM %s) AND %s IN (SELECT %s FROM %s)",
-			PRODUCT_SOURCE_COLUMN, PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN,
-			PRODUCT_UPDATE_COLUMN, EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN,
-			PRODUCT_URL_COLUMN, TABLE_NAME, PRODUCT_SOURCE_COLUMN,
-			PRODUCT_SOURCE_COLUMN, TMP_TABLE, PRODUCT_TYPE_COLUMN,
-			PRODUCT_TYPE_COLUMN, TMP_TABLE);
-
-	private static final String QUERY_SEARCH_BY_SOURCE_CODE = String.format(
-			"SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s IN "
-					+ "(SELECT %s FROM %s) AND %s IN (SELECT %s FROM %s)",
-			PRODUCT_SOURCE_COLUMN, PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN,
-			PRODUCT_UPDATE_COLUMN, EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN,
-			PRODUCT_URL_COLUMN, TABLE_NAME, PRODUCT_SOURCE_COLUMN,
-			PRODUCT_SOURCE_COLUMN, TMP_TABLE, PRODUCT_CODE_COLUMN,
-			PRODUCT_CODE_COLUMN, TMP_TABLE);
-
-	private static final String QUERY_SEARCH_BY_TYPE_CODE = String.format(
-			"SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s IN "
-					+ "(SELECT %s FROM %s) AND %s IN (SELECT %s FROM %s)",
-			PRODUCT_SOURCE_COLUMN, PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN,
-			PRODUCT_UPDATE_COLUMN, EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN,
-			PRODUCT_URL_COLUMN, TABLE_NAME, PRODUCT_TYPE_COLUMN,
-			PRODUCT_TYPE_COLUMN, TMP_TABLE, PRODUCT_CODE_COLUMN,
-			PRODUCT_CODE_COLUMN, TMP_TABLE);
-
-	private static final String QUERY_SEARCH_BY_SOURCE = String
-			.format("SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s IN "
-					+ "(SELECT %s FROM %s)", PRODUCT_SOURCE_COLUMN,
-					PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN,
-					PRODUCT_UPDATE_COLUMN, EXPIRATION_DATE_COLUMN,
-					TRACKER_URL_COLUMN, PRODUCT_URL_COLUMN, TABLE_NAME,
-					PRODUCT_SOURCE_COLUMN, PRODUCT_SOURCE_COLUMN, TMP_TABLE);
-
-	private static final String QUERY_SEARCH_BY_TYPE = String.format(
-			"SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s IN "
-					+ "(SELECT %s FROM %s)", PRODUCT_SOURCE_COLUMN,
-			PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN, PRODUCT_UPDATE_COLUMN,
-			EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN, PRODUCT_URL_COLUMN,
-			TABLE_NAME, PRODUCT_TYPE_COLUMN, PRODUCT_TYPE_COLUMN, TMP_TABLE);
-
-	private static final String QUERY_SEARCH_BY_CODE = String.format(
-			"SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE %s IN "
-					+ "(SELECT %s FROM %s)", PRODUCT_SOURCE_COLUMN,
-			PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN, PRODUCT_UPDATE_COLUMN,
-			EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN, PRODUCT_URL_COLUMN,
-			TABLE_NAME, PRODUCT_CODE_COLUMN, PRODUCT_CODE_COLUMN, TMP_TABLE);
-	/*
-	 * private static final String QUERY_ALL_NOTIFICATIONS = String.format(
-	 * "SELECT %s, %s, %s, %s, %s, %s, %s FROM %s", PRODUCT_SOURCE_COLUMN,
-	 * PRODUCT_TYPE_COLUMN, PRODUCT_CODE_COLUMN, PRODUCT_UPDATE_COLUMN,
-	 * EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN, PRODUCT_URL_COLUMN,
-	 * TABLE_NAME);
-	 */
-
 	private static final String QUERY_LATEST_NOTIFICATIONS = String.format(
 			"SELECT n.%s, n.%s, n.%s, n.%s, n.%s, n.%s, n.%s FROM %s n, "
 					+ "(select max(id) as id, product_source, product_type, "
@@ -251,20 +192,20 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 			PRODUCT_UPDATE_COLUMN, EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN,
 			PRODUCT_URL_COLUMN, TABLE_NAME);
 
-	// These are for searching the DB index by specific parameters. */
-	private PreparedStatement _dml_createTmpTable = null;
-	private PreparedStatement _dml_addTmpSource = null;
-	private PreparedStatement _dml_addTmpType = null;
-	private PreparedStatement _dml_addTmpCode = null;
-
-	private PreparedStatement _query_searchBySourceTypeCode = null;
-	private PreparedStatement _query_searchBySourceType = null;
-	private PreparedStatement _query_searchBySourceCode = null;
-	private PreparedStatement _query_searchByTypeCode = null;
-	private PreparedStatement _query_searchBySource = null;
-	private PreparedStatement _query_searchByType = null;
-	private PreparedStatement _query_searchByCode = null;
-	private PreparedStatement _query_getAllNotifications = null;
+	/** Number of read connections. */
+	private int readConnections = Integer.parseInt(DEFAULT_READ_CONNECTIONS);
+
+	/** Whether to use SQLite write ahead logging. */
+	private boolean walMode = Boolean.parseBoolean(DEFAULT_WAL_MODE);
+
+	/** Read connections that are not in use, null when not started. */
+	private volatile ArrayBlockingQueue<ReadConnection> readPool = null;
+
+	/** Writes waiting to be committed. */
+	private final List<PendingWrite> pendingWrites = new ArrayList<PendingWrite>();
+
+	/** Number of write transactions committed. */
+	private long writeTransactions = 0L;
 
 	/**
 	 * Default, no-arg constructor. This just ensures the JDBC SQLite driver is
@@ -321,6 +262,15 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 		LOGGER.config("Notification index database is '" + _jdbc_index_file
 				+ "'");
 		_jdbc_connect_url = JDBC_CONNECT_URL + _jdbc_index_file;
+
+		readConnections = Math.max(1, Integer.parseInt(config.getProperty(
+				READ_CONNECTIONS_PROPERTY, DEFAULT_READ_CONNECTIONS)));
+		LOGGER.config("Notification index read connections "
+				+ readConnections);
+
+		walMode = Boolean.parseBoolean(config.getProperty(WAL_MODE_PROPERTY,
+				DEFAULT_WAL_MODE));
+		LOGGER.config("Notification index wal mode " + walMode);
 	}
 
 	@Override
@@ -337,7 +287,19 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 			StreamUtils.transferStream(schemaURL, indexFile);
 		}
 
-		return DriverManager.getConnection(_jdbc_connect_url);
+		Connection conn = DriverManager.getConnection(_jdbc_connect_url);
+		Statement statement = conn.createStatement();
+		try {
+			statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT);
+			if (walMode) {
+				// readers do not block the writer, and the writer does not
+				// block readers
+				statement.execute("PRAGMA journal_mode = WAL");
+			}
+		} finally {
+			statement.close();
+		}
+		return conn;
 	}
 
 	/**
@@ -357,32 +319,13 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 		_dml_removeNotification = conn
 				.prepareStatement(DML_REMOVE_NOTIFICATION);
 
-		_query_findExpiredNotifications = conn
-				.prepareStatement(QUERY_FIND_EXPIRED_NOTIFICATIONS);
-		_query_findNotificationsById = conn
-				.prepareStatement(QUERY_FIND_NOTIFICATIONS_BY_ID);
-		_query_findNotificationsByData = conn
-				.prepareStatement(QUERY_FIND_NOTIFICATIONS_BY_DATA);
-
-		_dml_createTmpTable = conn.prepareStatement(DML_CREATE_TMP_TABLE);
-		_dml_addTmpSource = conn.prepareStatement(DML_ADD_TMP_SOURCE);
-		_dml_addTmpType = conn.prepareStatement(DML_ADD_TMP_TYPE);
-		_dml_addTmpCode = conn.prepareStatement(DML_ADD_TMP_CODE);
-
-		_query_searchBySourceTypeCode = conn
-				.prepareStatement(QUERY_SEARCH_BY_SOURCE_TYPE_CODE);
-		_query_searchBySourceType = conn
-				.prepareStatement(QUERY_SEARCH_BY_SOURCE_TYPE);
-		_query_searchBySourceCode = conn
-				.prepareStatement(QUERY_SEARCH_BY_SOURCE_CODE);
-		_query_searchByTypeCode = conn
-				.prepareStatement(QUERY_SEARCH_BY_TYPE_CODE);
-		_query_searchBySource = conn.prepareStatement(QUERY_SEARCH_BY_SOURCE);
-		_query_searchByType = conn.prepareStatement(QUERY_SEARCH_BY_TYPE);
-		_query_searchByCode = conn.prepareStatement(QUERY_SEARCH_BY_CODE);
-		_query_getAllNotifications = conn
-				.prepareStatement(QUERY_LATEST_NOTIFICATIONS);
-
+		// read connections are opened when first used
+		ArrayBlockingQueue<ReadConnection> pool = new ArrayBlockingQueue<ReadConnection>(
+				readConnections);
+		for (int i = 0; i < readConnections; i++) {
+			pool.add(new ReadConnection(pool));
+		}
+		readPool = pool;
 	}
 
 	/**
@@ -404,97 +347,18 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 		} finally {
 			_dml_removeNotification = null;
 		}
-		try {
-			_dml_createTmpTable.close();
-		} catch (Exception e) {
-		} finally {
-			_dml_createTmpTable = null;
-		}
-		try {
-			_dml_addTmpSource.close();
-		} catch (Exception e) {
-		} finally {
-			_dml_addTmpSource = null;
-		}
-		try {
-			_dml_addTmpType.close();
-		} catch (Exception e) {
-		} finally {
-			_dml_addTmpType = null;
-		}
-		try {
-			_dml_addTmpCode.close();
-		} catch (Exception e) {
-		} finally {
-			_dml_addTmpCode = null;
-		}
 
-		// Close the query statements
-		try {
-			_query_findExpiredNotifications.close();
-		} catch (Exception e) {
-		} finally {
-			_query_findExpiredNotifications = null;
-		}
-		try {
-			_query_findNotificationsById.close();
-		} catch (Exception e) {
-		} finally {
-			_query_findNotificationsById = null;
-		}
-		try {
-			_query_findNotificationsByData.close();
-		} catch (Exception e) {
-		} finally {
-			_query_findNotificationsByData = null;
-		}
-		try {
-			_query_searchBySourceTypeCode.close();
-		} catch (Exception e) {
-		} finally {
-			_query_searchBySourceTypeCode = null;
-		}
-		try {
-			_query_searchBySourceType.close();
-		} catch (Exception e) {
-		} finally {
-			_query_searchBySourceType = null;
-		}
-		try {
-			_query_searchBySourceCode.close();
-		} catch (Exception e) {
-		} finally {
-			_query_searchBySourceCode = null;
-		}
-		try {
-			_query_searchByTypeCode.close();
-		} catch (Exception e) {
-		} finally {
-			_query_searchByTypeCode = null;
-		}
-		try {
-			_query_searchBySource.close();
-		} catch (Exception e) {
-		} finally {
-			_query_searchBySource = null;
-		}
-		try {
-			_query_searchByType.close();
-		} catch (Exception e) {
-		} finally {
-			_query_searchByType = null;
-		}
-		try {
-			_query_searchByCode.close();
-		} catch (Exception e) {
-		} finally {
-			_query_searchByCode = null;
-		}
-		try {
-			_query_getAllNotifications.close();
-		} catch (Exception e) {
-		} finally {
-			_query_getAllNotifications = null;
+		// Close read connections that are not in use, others are closed when
+		// they are returned
+		ArrayBlockingQueue<ReadConnection> pool = readPool;
+		if (pool != null) {
+			synchronized (pool) {
+				readPool = null;
+				for (ReadConnection reader : pool) {
+					reader.close();
+				}
+				pool.clear();
+			}
 		}
 
 		// call super shutdown to disconnect
@@ -507,57 +371,127 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 * If an identical notification is already in the index, the implementation
 	 * may choose whether or not to store the duplicate information.
 	 *
+	 * Writes from concurrent threads are committed together, see
+	 * {@link #write(PendingWrite)}.
+	 *
 	 * @param notification
 	 *            the notification to add.
 	 * @throws Exception
 	 *             if an error occurs while storing the notification.
 	 * @see gov.usgs.earthquake.distribution.NotificationIndex
 	 */
-	public synchronized void addNotification(Notification notification)
+	public void addNotification(Notification notification)
 			throws Exception {
-		// verify connection
-		this.verifyConnection();
-
-		// Read the product id from the notification
-		ProductId productId = notification.getProductId();
+		write(new PendingWrite(notification, true));
+	}
 
-		// Parse the update date from the product id
-		java.sql.Date updateDate = new java.sql.Date(productId.getUpdateTime()
-				.getTime());
+	/**
+	 * Remove a notification from the index.
+	 *
+	 * All matching notifications should be removed from the index.
+	 *
+	 * @param notification
+	 *            the notification to remove.
+	 * @throws Exception
+	 *             if an error occurs while removing the notification.
+	 * @see gov.usgs.earthquake.distribution.NotificationIndex
+	 */
+	public void removeNotification(Notification notification)
+			throws Exception {
+		write(new PendingWrite(notification, false));
+	}
 
-		// Parse the expiration date from the notification
-		java.sql.Date expirationDate = new java.sql.Date(notification
-				.getExpirationDate().getTime());
+	/**
+	 * Queue a write, and wait for it to be committed.
+	 *
+	 * The thread that holds the write lock commits every queued write in one
+	 * transaction. Threads that queue writes while a transaction is running
+	 * are committed together in the next transaction, so concurrent writers
+	 * share the cost of each commit.
+	 *
+	 * @param write
+	 *            the write to commit.
+	 * @throws Exception
+	 *             if the write failed.
+	 */
+	protected void write(final PendingWrite write) throws Exception {
+		synchronized (pendingWrites) {
+			pendingWrites.add(write);
+		}
 
-		// Read the URL value from the notification
-		String trackerUrl = notification.getTrackerURL().toString();
+		synchronized (this) {
+			if (!write.done) {
+				List<PendingWrite> batch;
+				synchronized (pendingWrites) {
+					batch = new ArrayList<PendingWrite>(pendingWrites);
+					pendingWrites.clear();
+				}
+				commitWrites(batch);
+			}
+		}
 
-		// Set the values we parsed above
-		_dml_addNotification.setString(1, productId.getSource());
-		_dml_addNotification.setString(2, productId.getType());
-		_dml_addNotification.setString(3, productId.getCode());
-		_dml_addNotification.setDate(4, updateDate);
-		_dml_addNotification.setDate(5, expirationDate);
-		_dml_addNotification.setString(6, trackerUrl);
+		if (write.exception != null) {
+			throw write.exception;
+		}
+	}
 
-		// If this is a URL notification, set the product URL value as well
-		if (notification instanceof URLNotification) {
-			String productUrl = ((URLNotification) notification)
-					.getProductURL().toString();
-			_dml_addNotification.setString(7, productUrl);
-		} else {
-			_dml_addNotification.setString(7, "");
+	/**
+	 * Commit writes in one transaction.
+	 *
+	 * If the transaction fails, each write is retried in its own transaction
+	 * so one bad write does not fail the others.
+	 *
+	 * @param batch
+	 *            writes to commit.
+	 */
+	private synchronized void commitWrites(final List<PendingWrite> batch) {
+		try {
+			// verify connection
+			this.verifyConnection();
+			executeWrites(batch);
+		} catch (Exception e) {
+			if (batch.size() == 1) {
+				batch.get(0).exception = e;
+			} else {
+				for (PendingWrite write : batch) {
+					try {
+						executeWrites(Collections.singletonList(write));
+					} catch (Exception e2) {
+						write.exception = e2;
+					}
+				}
+			}
+		} finally {
+			for (PendingWrite write : batch) {
+				write.done = true;
+			}
 		}
+	}
 
-		// already verified above
+	/**
+	 * Execute writes in one transaction.
+	 *
+	 * @param batch
+	 *            writes to execute.
+	 * @throws Exception
+	 *             if the transaction was rolled back.
+	 */
+	private void executeWrites(final List<PendingWrite> batch)
+			throws Exception {
 		Connection conn = getConnection();
 		try {
 			// Begin a transaction
 			conn.setAutoCommit(false);
-			// Execute the query
-			_dml_addNotification.executeUpdate();
+			for (PendingWrite write : batch) {
+				PreparedStatement statement = write.add ? _dml_addNotification
+						: _dml_removeNotification;
+				setNotificationParameters(statement, write.notification);
+				// Execute the query
+				statement.executeUpdate();
+			}
 			// Commit the changes
-			conn.setAutoCommit(true);
+			conn.commit();
+			writeTransactions++;
 		} catch (SQLException sqx) {
 			// Undo any changes that may be in an unknown state. Ignore
 			// exceptions that occur in this call since we're already throwing
@@ -575,21 +509,16 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	}
 
 	/**
-	 * Remove a notification from the index.
-	 *
-	 * All matching notifications should be removed from the index.
+	 * Set the parameters used by the add and remove statements.
 	 *
+	 * @param statement
+	 *            add or remove statement.
 	 * @param notification
-	 *            the notification to remove.
-	 * @throws Exception
-	 *             if an error occurs while removing the notification.
-	 * @see gov.usgs.earthquake.distribution.NotificationIndex
+	 *            notification being added or removed.
+	 * @throws SQLException
 	 */
-	public synchronized void removeNotification(Notification notification)
-			throws Exception {
-		// verify connection
-		this.verifyConnection();
-
+	private void setNotificationParameters(final PreparedStatement statement,
+			final Notification notification) throws SQLException {
 		// Read the product id from the notification
 		ProductId productId = notification.getProductId();
 		// Parse the update date from the product id
@@ -602,44 +531,20 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 		String trackerUrl = notification.getTrackerURL().toString();
 
 		// Set the values we parsed above
-		_dml_removeNotification.setString(1, productId.getSource());
-		_dml_removeNotification.setString(2, productId.getType());
-		_dml_removeNotification.setString(3, productId.getCode());
-		_dml_removeNotification.setDate(4, updateDate);
-		_dml_removeNotification.setDate(5, expirationDate);
-		_dml_removeNotification.setString(6, trackerUrl);
+		statement.setString(1, productId.getSource());
+		statement.setString(2, productId.getType());
+		statement.setString(3, productId.getCode());
+		statement.setDate(4, updateDate);
+		statement.setDate(5, expirationDate);
+		statement.setString(6, trackerUrl);
 
 		// If this is a URL notification, set the product URL value as well
 		if (notification instanceof URLNotification) {
 			String productUrl = ((URLNotification) notification)
 					.getProductURL().toString();
-			_dml_removeNotification.setString(7, productUrl);
+			statement.setString(7, productUrl);
 		} else {
-			// _dml_removeNotification.setNull(7, java.sql.Types.VARCHAR);
-			_dml_removeNotification.setString(7, "");
-		}
-
-		// already verified above
-		Connection conn = getConnection();
-		try {
-			// Begin a transaction
-			conn.setAutoCommit(false);
-			// Execute the query
-			_dml_removeNotification.executeUpdate();
-			// Commit the changes
-			conn.setAutoCommit(true);
-		} catch (SQLException sqx) {
-			// Undo any changes that may be in an unknown state. Ignore
-			// exceptions that occur in this call since we're already throwing
-			// an exception
-			try {
-				conn.rollback();
-			} catch (SQLException ex) {
-			}
-			// Re-throw this exception
-			throw sqx;
-		} finally {
-			conn.setAutoCommit(true);
+			statement.setString(7, "");
 		}
 	}
 
@@ -655,22 +560,16 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 *             if an error occurs while searching the index.
 	 * @see gov.usgs.earthquake.distribution.NotificationIndex
 	 */
-	public synchronized List<Notification> findNotifications(ProductId id)
+	public List<Notification> findNotifications(final ProductId id)
 			throws Exception {
-		// verify connection
-		this.verifyConnection();
-
-		String source = id.getSource();
-		String type = id.getType();
-		String code = id.getCode();
-		java.sql.Date update = new java.sql.Date(id.getUpdateTime().getTime());
-
-		_query_findNotificationsById.setString(1, source);
-		_query_findNotificationsById.setString(2, type);
-		_query_findNotificationsById.setString(3, code);
-		_query_findNotificationsById.setDate(4, update);
-
-		return getNotifications(_query_findNotificationsById);
+		final java.sql.Date update = new java.sql.Date(id.getUpdateTime()
+				.getTime());
+		return read(QUERY_FIND_NOTIFICATIONS_BY_ID, (statement) -> {
+			statement.setString(1, id.getSource());
+			statement.setString(2, id.getType());
+			statement.setString(3, id.getCode());
+			statement.setDate(4, update);
+		});
 	}
 
 	/**
@@ -694,20 +593,18 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 *             if an error occurs while searching the index.
 	 * @see gov.usgs.earthquake.distribution.NotificationIndex
 	 */
-	public synchronized List<Notification> findNotifications(String source,
+	public List<Notification> findNotifications(String source,
 			String type, String code) throws Exception {
-		// verify connection
-		this.verifyConnection();
-
-		source = (source == null) ? "%" : source.toUpperCase();
-		type = (type == null) ? "%" : type.toUpperCase();
-		code = (code == null) ? "%" : code.toUpperCase();
-
-		_query_findNotificationsByData.setString(1, source);
-		_query_findNotificationsByData.setString(2, type);
-		_query_findNotificationsByData.setString(3, code);
-
-		return getNotifications(_query_findNotificationsByData);
+		final String sourceLike = (source == null) ? "%" : source
+				.toUpperCase();
+		final String typeLike = (type == null) ? "%" : type.toUpperCase();
+		final String codeLike = (code == null) ? "%" : code.toUpperCase();
+
+		return read(QUERY_FIND_NOTIFICATIONS_BY_DATA, (statement) -> {
+			statement.setString(1, sourceLike);
+			statement.setString(2, typeLike);
+			statement.setString(3, codeLike);
+		});
 	}
 
 	/**
@@ -720,10 +617,8 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 * sources, types, and codes are all null, a notification for each unique
 	 * ProductId in the index should be returned.
 	 *
-	 * This implementation require synchronization to prevent SQLExceptions
-	 * caused by concurrent access. SQLite locks the database whenever there is
-	 * an open ResultSet resource. So even read queries can end up causing SQL
-	 * concurrent access problems.
+	 * Lists are bound as IN parameters, so searches only read the database and
+	 * may run concurrently with other searches.
 	 *
 	 * @param sources
 	 *            sources to include, or all if null.
@@ -735,64 +630,59 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 * @throws Exception
 	 *             if an error occurs while searching the index.
 	 */
-	public synchronized List<Notification> findNotifications(
-			List<String> sources, List<String> types, List<String> codes)
-			throws Exception {
-		// verify connection
-		this.verifyConnection();
-
-		List<Notification> n = null;
-
-		Connection conn = getConnection();
-		try {
-			// begin a transaction
-			conn.setAutoCommit(false);
-
-			// Create a temporary lookup table
-			_dml_createTmpTable.executeUpdate();
-
-			// Populate the temporary lookup table with our given lists
-			if (sources != null) {
-				// Not null, insert values
-				Iterator<String> iter = sources.iterator();
-				while (iter.hasNext()) {
-					_dml_addTmpSource.setString(1, iter.next());
-					_dml_addTmpSource.addBatch();
-				}
-				_dml_addTmpSource.executeBatch();
-			}
+	public List<Notification> findNotifications(
+			final List<String> sources, final List<String> types,
+			final List<String> codes) throws Exception {
+		if (sources == null && types == null && codes == null) {
+			return read(QUERY_LATEST_NOTIFICATIONS, null);
+		}
 
-			if (types != null) {
-				// Not null, insert values
-				Iterator<String> iter = types.iterator();
-				while (iter.hasNext()) {
-					_dml_addTmpType.setString(1, iter.next());
-					_dml_addTmpType.addBatch();
-				}
-				_dml_addTmpType.executeBatch();
+		StringBuffer query = new StringBuffer(String.format(
+				"SELECT %s, %s, %s, %s, %s, %s, %s FROM %s WHERE 1=1",
+				PRODUCT_SOURCE_COLUMN, PRODUCT_TYPE_COLUMN,
+				PRODUCT_CODE_COLUMN, PRODUCT_UPDATE_COLUMN,
+				EXPIRATION_DATE_COLUMN, TRACKER_URL_COLUMN,
+				PRODUCT_URL_COLUMN, TABLE_NAME));
+		final List<String> parameters = new ArrayList<String>();
+		addInClause(query, parameters, PRODUCT_SOURCE_COLUMN, sources);
+		addInClause(query, parameters, PRODUCT_TYPE_COLUMN, types);
+		addInClause(query, parameters, PRODUCT_CODE_COLUMN, codes);
+
+		return read(query.toString(), (statement) -> {
+			for (int i = 0; i < parameters.size(); i++) {
+				statement.setString(i + 1, parameters.get(i));
 			}
+		});
+	}
 
-			if (codes != null) {
-				// Not null, insert values
-				Iterator<String> iter = codes.iterator();
-				while (iter.hasNext()) {
-					_dml_addTmpCode.setString(1, iter.next());
-					_dml_addTmpCode.addBatch();
-				}
-				_dml_addTmpCode.executeBatch();
+	/**
+	 * Add "AND column IN (?, ...)" to a query.
+	 *
+	 * @param query
+	 *            query being built.
+	 * @param parameters
+	 *            parameters for query, values are added.
+	 * @param column
+	 *            column to match.
+	 * @param values
+	 *            values to match, or null to not add a clause.
+	 */
+	private static void addInClause(final StringBuffer query,
+			final List<String> parameters, final String column,
+			final List<String> values) {
+		if (values == null) {
+			return;
+		}
+		query.append(" AND ").append(column).append(" IN (");
+		Iterator<String> iter = values.iterator();
+		while (iter.hasNext()) {
+			query.append("?");
+			parameters.add(iter.next());
+			if (iter.hasNext()) {
+				query.append(", ");
 			}
-
-			// is this a problem? reading with uncommitted writes?
-			PreparedStatement ps = getCorrectStatement(sources, types, codes);
-			n = getNotifications(ps);
-		} finally {
-			conn.rollback();
-			// todo: this looks funky, but it's re-enabling autoCommit, which is
-			// needed for selects to not block other transactions
-			conn.setAutoCommit(true);
 		}
-
-		return n;
+		query.append(")");
 	}
 
 	/**
@@ -805,18 +695,85 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 *             if an error occurs while searching the index.
 	 * @see gov.usgs.earthquake.distribution.NotificationIndex
 	 */
-	public synchronized List<Notification> findExpiredNotifications()
+	public List<Notification> findExpiredNotifications()
 			throws Exception {
-		// verify connection
-		this.verifyConnection();
-
 		// Create a new calendar object set to current date/time
-		java.sql.Date curDate = new java.sql.Date((new Date()).getTime());
+		final java.sql.Date curDate = new java.sql.Date(
+				(new Date()).getTime());
 
 		// Bind the expiration date parameter and run the query
-		_query_findExpiredNotifications.setDate(1, curDate);
+		return read(QUERY_FIND_EXPIRED_NOTIFICATIONS, (statement) -> {
+			statement.setDate(1, curDate);
+		});
+	}
 
-		return getNotifications(_query_findExpiredNotifications);
+	/**
+	 * Run a query using one of the read connections.
+	 *
+	 * Reads do not use the write lock, so searches from different threads run
+	 * concurrently with each other and, in WAL mode, with writes.
+	 *
+	 * @param query
+	 *            query to run.
+	 * @param parameters
+	 *            sets query parameters, or null if there are none.
+	 * @return notifications returned by query.
+	 * @throws Exception
+	 *             if a <code>SQLException</code> occurs.
+	 */
+	protected List<Notification> read(final String query,
+			final StatementParameters parameters) throws Exception {
+		ReadConnection reader = acquireReadConnection();
+		try {
+			PreparedStatement statement = reader.getStatement(query);
+			if (parameters != null) {
+				parameters.set(statement);
+			}
+			return getNotifications(statement);
+		} catch (SQLException e) {
+			// connection may be bad, reconnect next time
+			reader.close();
+			throw e;
+		} finally {
+			releaseReadConnection(reader);
+		}
+	}
+
+	/**
+	 * Wait for a read connection, starting the index if needed.
+	 */
+	private ReadConnection acquireReadConnection() throws Exception {
+		while (true) {
+			ArrayBlockingQueue<ReadConnection> pool = readPool;
+			if (pool == null) {
+				// not started, or restarting
+				this.verifyConnection();
+				continue;
+			}
+			ReadConnection reader = pool.poll(100, TimeUnit.MILLISECONDS);
+			if (reader != null) {
+				return reader;
+			}
+		}
+	}
+
+	/**
+	 * Return a read connection to its pool, or close it if the pool was
+	 * shutdown.
+	 */
+	private void releaseReadConnection(final ReadConnection reader) {
+		synchronized (reader.pool) {
+			if (readPool != reader.pool || !reader.pool.offer(reader)) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * @return number of write transactions committed since created.
+	 */
+	public synchronized long getWriteTransactions() {
+		return writeTransactions;
 	}
 
 	/**
@@ -838,27 +795,31 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 	 * @throws Exception
 	 *             If a <code>SQLException</code> occurs.
 	 */
-	protected synchronized List<Notification> getNotifications(PreparedStatement ps)
+	protected List<Notification> getNotifications(PreparedStatement ps)
 			throws Exception {
 		List<Notification> n = new ArrayList<Notification>();
 		ResultSet rs = null;
 
-		try {
-			rs = ps.executeQuery();
-			while (rs.next()) {
-				n.add(parseNotification(rs.getString(PRODUCT_SOURCE_COLUMN),
-						rs.getString(PRODUCT_TYPE_COLUMN),
-						rs.getString(PRODUCT_CODE_COLUMN),
-						rs.getDate(PRODUCT_UPDATE_COLUMN),
-						rs.getDate(EXPIRATION_DATE_COLUMN),
-						rs.getString(TRACKER_URL_COLUMN),
-						rs.getString(PRODUCT_URL_COLUMN)));
-			}
-		} finally {
+		// statements from read connections are used by one thread at a time,
+		// but callers may share other statements
+		synchronized (ps) {
 			try {
-				rs.close();
-			} catch (Exception e) {
-				//ignore
+				rs = ps.executeQuery();
+				while (rs.next()) {
+					n.add(parseNotification(rs.getString(PRODUCT_SOURCE_COLUMN),
+							rs.getString(PRODUCT_TYPE_COLUMN),
+							rs.getString(PRODUCT_CODE_COLUMN),
+							rs.getDate(PRODUCT_UPDATE_COLUMN),
+							rs.getDate(EXPIRATION_DATE_COLUMN),
+							rs.getString(TRACKER_URL_COLUMN),
+							rs.getString(PRODUCT_URL_COLUMN)));
+				}
+			} finally {
+				try {
+					rs.close();
+				} catch (Exception e) {
+					//ignore
+				}
 			}
 		}
 
@@ -910,27 +871,85 @@ public class JDBCNotificationIndex extends JDBCConnection implements
 		return n;
 	}
 
-	protected PreparedStatement getCorrectStatement(List<String> sources,
-			List<String> types, List<String> codes) throws Exception {
-		if (sources != null && types != null && codes != null) {
-			return _query_searchBySourceTypeCode;
-		} else if (sources != null && types != null && codes == null) {
-			return _query_searchBySourceType;
-		} else if (sources != null && types == null && codes != null) {
-			return _query_searchBySourceCode;
-		} else if (sources == null && types != null && codes != null) {
-			return _query_searchByTypeCode;
-		} else if (sources != null && types == null && codes == null) {
-			return _query_searchBySource;
-		} else if (sources == null && types != null && codes == null) {
-			return _query_searchByType;
-		} else if (sources == null && types == null && codes != null) {
-			return _query_searchByCode;
-		} else if (sources == null && types == null && codes == null) {
-			return _query_getAllNotifications;
+	/**
+	 * Sets parameters for a query.
+	 */
+	protected interface StatementParameters {
+		public void set(PreparedStatement statement) throws SQLException;
+	}
+
+	/**
+	 * A write waiting to be committed.
+	 */
+	protected static class PendingWrite {
+		public final Notification notification;
+		public final boolean add;
+		public boolean done = false;
+		public Exception exception = null;
+
+		public PendingWrite(final Notification notification, final boolean add) {
+			this.notification = notification;
+			this.add = add;
+		}
+	}
+
+	/**
+	 * A connection used for reads, and its prepared statements.
+	 */
+	private class ReadConnection {
+		private final ArrayBlockingQueue<ReadConnection> pool;
+		private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+		private Connection connection = null;
+
+		public ReadConnection(final ArrayBlockingQueue<ReadConnection> pool) {
+			this.pool = pool;
 		}
 
-		return null;
+		/**
+		 * Get a prepared statement, connecting if needed.
+		 *
+		 * Statements are reused, up to MAX_CACHED_STATEMENTS, since list
+		 * searches build queries based on the number of values.
+		 */
+		public PreparedStatement getStatement(final String query)
+				throws Exception {
+			if (connection == null) {
+				connection = connect();
+			}
+			PreparedStatement statement = statements.get(query);
+			if (statement == null) {
+				if (statements.size() >= MAX_CACHED_STATEMENTS) {
+					closeStatements();
+				}
+				statement = connection.prepareStatement(query);
+				statements.put(query, statement);
+			}
+			return statement;
+		}
+
+		private void closeStatements() {
+			for (PreparedStatement statement : statements.values()) {
+				try {
+					statement.close();
+				} catch (Exception e) {
+					// ignore
+				}
+			}
+			statements.clear();
+		}
+
+		public void close() {
+			closeStatements();
+			try {
+				if (connection != null) {
+					connection.close();
+				}
+			} catch (Exception e) {
+				LOGGER.log(Level.FINE, "Exception closing read connection", e);
+			} finally {
+				connection = null;
+			}
+		}
 	}
 
 }
@@ -0,0 +1,291 @@
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.util.ExecutorTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A listener notifier that queues notifications in a journal on disk.
+ *
+ * Each listener has a ListenerJournal, and only a window of notifications
+ * from the journal are queued in the listener executor at a time. A listener
+ * that falls behind uses disk instead of memory, and notifications that were
+ * queued or in progress are resumed from the journal after a restart, instead
+ * of requeueing the receiver notification index.
+ *
+ * When maxQueueSize is set, notifyListeners blocks while any listener has
+ * that many notifications pending, which slows the receiver until listeners
+ * catch up.
+ */
+public class JournalListenerNotifier extends ExecutorListenerNotifier {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(JournalListenerNotifier.class.getName());
+
+	/** Default number of notifications queued in each listener executor. */
+	public static final int DEFAULT_WINDOW = 100;
+
+	/** Directory for listener journals. */
+	private final File directory;
+
+	/** Number of notifications queued in each listener executor. */
+	private final int window;
+
+	/** Pending notifications per listener before notifyListeners blocks. */
+	private final long maxQueueSize;
+
+	/** Journal for each listener. */
+	private final Map<NotificationListener, ListenerJournal> journals = new ConcurrentHashMap<NotificationListener, ListenerJournal>();
+
+	/**
+	 * Create a notifier.
+	 *
+	 * @param receiver
+	 *            the receiver using this notifier.
+	 * @param directory
+	 *            directory for listener journals.
+	 * @param window
+	 *            number of notifications queued in each listener executor.
+	 * @param maxQueueSize
+	 *            pending notifications per listener before notifyListeners
+	 *            blocks, or 0 to never block.
+	 */
+	public JournalListenerNotifier(final DefaultNotificationReceiver receiver,
+			final File directory, final int window, final long maxQueueSize) {
+		super(receiver);
+		this.directory = directory;
+		this.window = Math.max(1, window);
+		this.maxQueueSize = maxQueueSize;
+	}
+
+	/**
+	 * Add a listener, and open its journal.
+	 */
+	@Override
+	public void addNotificationListener(NotificationListener listener)
+			throws Exception {
+		if (!journals.containsKey(listener)) {
+			ListenerJournal journal = new ListenerJournal(new File(directory,
+					listener.getName()));
+			journal.open();
+			journals.put(listener, journal);
+		}
+		super.addNotificationListener(listener);
+	}
+
+	/**
+	 * Remove a listener, and close its journal. Notifications that are not
+	 * complete stay in the journal.
+	 */
+	@Override
+	public void removeNotificationListener(NotificationListener listener)
+			throws Exception {
+		super.removeNotificationListener(listener);
+		ListenerJournal journal = journals.remove(listener);
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	/**
+	 * Resume journals, then requeue notification index for listeners without
+	 * a journal.
+	 */
+	@Override
+	public void startup() throws Exception {
+		Iterator<NotificationListener> iter = journals.keySet().iterator();
+		while (iter.hasNext()) {
+			NotificationListener listener = iter.next();
+			ListenerJournal journal = journals.get(listener);
+			if (journal.getUnread() > 0) {
+				LOGGER.info("[" + getReceiver().getName() + "] resuming "
+						+ journal.getUnread() + " notifications for listener ("
+						+ listener.getName() + ")");
+			}
+			fill(listener, journal);
+		}
+		super.startup();
+	}
+
+	/**
+	 * Listeners with an existing journal resume from the journal instead.
+	 */
+	@Override
+	protected boolean requeueOnStartup(final NotificationListener listener) {
+		ListenerJournal journal = journals.get(listener);
+		return journal == null || !journal.isResumed();
+	}
+
+	/**
+	 * Append notification to listener journal, then queue from the journal if
+	 * the listener has room.
+	 */
+	@Override
+	protected void queueNotification(final NotificationListener listener,
+			final NotificationEvent event) {
+		if (!shouldQueue(listener, event)) {
+			return;
+		}
+		ListenerJournal journal = journals.get(listener);
+		if (journal == null) {
+			// listener was removed
+			return;
+		}
+
+		try {
+			if (maxQueueSize > 0 && journal.getPending() >= maxQueueSize) {
+				LOGGER.fine("[" + getReceiver().getName() + "] listener ("
+						+ listener.getName() + ") has " + journal.getPending()
+						+ " pending notifications, waiting");
+				journal.awaitCapacity(maxQueueSize);
+			}
+			journal.append(event.getNotification());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warning("[" + getReceiver().getName()
+					+ "] interrupted waiting for listener ("
+					+ listener.getName() + "), notification not queued");
+			return;
+		} catch (IOException e) {
+			// journal not writable, fall back to memory
+			LOGGER.log(Level.WARNING, "[" + getReceiver().getName()
+					+ "] unable to journal notification for listener ("
+					+ listener.getName() + "), queueing in memory", e);
+			super.queueNotification(listener, event);
+			return;
+		}
+
+		fill(listener, journal);
+
+		LOGGER.fine("[" + event.getNotificationReceiver().getName()
+				+ "] listener (" + listener.getName() + ") has "
+				+ journal.getPending() + " pending notifications");
+	}
+
+	/**
+	 * Queue notifications from a journal until the window is full.
+	 *
+	 * @param listener
+	 *            the listener.
+	 * @param journal
+	 *            the listener journal.
+	 */
+	protected void fill(final NotificationListener listener,
+			final ListenerJournal journal) {
+		ExecutorService listenerExecutor = getExecutors().get(listener);
+		if (listenerExecutor == null) {
+			return;
+		}
+		synchronized (journal) {
+			while (journal.getInFlight() < window) {
+				ListenerJournal.Entry entry;
+				try {
+					entry = journal.next();
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "[" + getReceiver().getName()
+							+ "] unable to read journal for listener ("
+							+ listener.getName() + ")", e);
+					return;
+				}
+				if (entry == null) {
+					return;
+				}
+
+				JournalCallable callable = new JournalCallable(listener,
+						journal, entry);
+				ExecutorTask<Void> listenerTask = new ExecutorTask<Void>(
+						listenerExecutor, listener.getMaxTries(),
+						listener.getTimeout(), callable,
+						getRetryDelay(listener));
+				callable.task = listenerTask;
+				try {
+					listenerExecutor.submit(listenerTask);
+				} catch (RejectedExecutionException e) {
+					// shutting down, entry is resumed after restart
+					listenerTask.cancel(false);
+					return;
+				}
+			}
+		}
+	}
+
+	@Override
+	public Map<String, Integer> getStatus() {
+		HashMap<String, Integer> status = new HashMap<String, Integer>();
+		Iterator<NotificationListener> iter = journals.keySet().iterator();
+		while (iter.hasNext()) {
+			NotificationListener listener = iter.next();
+			status.put(getReceiver().getName() + " - " + listener.getName(),
+					(int) Math.min(Integer.MAX_VALUE, journals.get(listener)
+							.getPending()));
+		}
+		return status;
+	}
+
+	/**
+	 * @return journal for each listener.
+	 */
+	public Map<NotificationListener, ListenerJournal> getJournals() {
+		return journals;
+	}
+
+	/**
+	 * Notify a listener of a journal entry, and complete the entry once the
+	 * listener succeeds or runs out of tries.
+	 */
+	private class JournalCallable implements Callable<Void> {
+
+		private final NotificationListener listener;
+		private final ListenerJournal journal;
+		private final ListenerJournal.Entry entry;
+		private final NotificationListenerCallable callable;
+		private ExecutorTask<Void> task;
+
+		public JournalCallable(final NotificationListener listener,
+				final ListenerJournal journal, final ListenerJournal.Entry entry) {
+			this.listener = listener;
+			this.journal = journal;
+			this.entry = entry;
+			this.callable = new NotificationListenerCallable(listener,
+					new NotificationEvent(getReceiver(), entry.notification));
+		}
+
+		@Override
+		public Void call() throws Exception {
+			try {
+				callable.call();
+			} catch (Exception e) {
+				if (task != null && task.getNumTries() < task.getMaxTries()) {
+					// will be retried
+					throw e;
+				}
+				complete();
+				throw e;
+			}
+			complete();
+			return null;
+		}
+
+		private void complete() {
+			try {
+				journal.complete(entry.index);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "[" + getReceiver().getName()
+						+ "] unable to update journal for listener ("
+						+ listener.getName() + ")", e);
+			}
+			fill(listener, journal);
+		}
+	}
+
+}
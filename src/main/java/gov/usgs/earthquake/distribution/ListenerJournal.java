@@ -0,0 +1,413 @@
+/*
+ * ListenerJournal
+ */
+package gov.usgs.earthquake.distribution;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A disk backed queue of notifications for one listener.
+ *
+ * Notifications are appended to segment files, one JSON object per line in
+ * the {@link URLNotificationJSONConverter} format, and read back in order as
+ * the listener has capacity. Completed notifications are acknowledged, and
+ * the oldest notification that is not complete is stored in an ack file.
+ * Segments are deleted once every notification in them is complete.
+ *
+ * After a restart, notifications are read again starting at the ack
+ * position, so notifications that were in progress are delivered again.
+ *
+ * Only the notifications returned by {@link #next()} and not yet completed
+ * are held in memory.
+ */
+public class ListenerJournal {
+
+	/** Logging object. */
+	private static final Logger LOGGER = Logger
+			.getLogger(ListenerJournal.class.getName());
+
+	/** Default number of notifications per segment file. */
+	public static final int DEFAULT_SEGMENT_SIZE = 10000;
+
+	/** Suffix for segment files. */
+	public static final String SEGMENT_SUFFIX = ".journal";
+
+	/** Name of file with ack position. */
+	public static final String ACK_FILE = "ack";
+
+	/** Directory with segment files. */
+	private final File directory;
+
+	/** Number of notifications per segment. */
+	private final int segmentSize;
+
+	/** Start index => segment file. */
+	private final TreeMap<Long, File> segments = new TreeMap<Long, File>();
+
+	/** Indexes returned by next() that are not complete. */
+	private final TreeSet<Long> inFlight = new TreeSet<Long>();
+
+	/** Index of next notification appended. */
+	private long writeIndex = 0L;
+
+	/** Index of next notification read. */
+	private long readIndex = 0L;
+
+	/** Oldest notification that is not complete. */
+	private long ackIndex = 0L;
+
+	/** Whether journal had an ack file when opened. */
+	private boolean resumed = false;
+
+	/** Stream for current segment. */
+	private OutputStream writer = null;
+
+	/** Reader for segment being read. */
+	private BufferedReader reader = null;
+
+	/** Index of next line from reader. */
+	private long readerIndex = -1L;
+
+	/** Ack file. */
+	private RandomAccessFile ackFile = null;
+
+	/**
+	 * Create a journal with DEFAULT_SEGMENT_SIZE.
+	 *
+	 * @param directory
+	 *            directory for journal files.
+	 */
+	public ListenerJournal(final File directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Create a journal.
+	 *
+	 * @param directory
+	 *            directory for journal files.
+	 * @param segmentSize
+	 *            number of notifications per segment file.
+	 */
+	public ListenerJournal(final File directory, final int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Open the journal, reading any existing segments and ack position.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Unable to create journal directory "
+					+ directory.getCanonicalPath());
+		}
+
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.endsWith(SEGMENT_SUFFIX)) {
+					try {
+						segments.put(Long.valueOf(name.substring(0,
+								name.length() - SEGMENT_SUFFIX.length())), file);
+					} catch (NumberFormatException e) {
+						LOGGER.warning("Ignoring unexpected journal file "
+								+ file.getCanonicalPath());
+					}
+				}
+			}
+		}
+
+		if (segments.size() > 0) {
+			long lastStart = segments.lastKey();
+			writeIndex = lastStart
+					+ countLines(segments.get(lastStart));
+			ackIndex = segments.firstKey();
+		}
+
+		File ack = new File(directory, ACK_FILE);
+		resumed = ack.exists();
+		ackFile = new RandomAccessFile(ack, "rw");
+		if (ackFile.length() >= 8) {
+			ackIndex = Math.max(ackIndex, ackFile.readLong());
+		}
+		ackIndex = Math.min(ackIndex, writeIndex);
+		readIndex = ackIndex;
+		writeAck();
+	}
+
+	/**
+	 * Close the journal. Notifications that are not complete are read again
+	 * when the journal is opened.
+	 */
+	public synchronized void close() {
+		closeReader();
+		try {
+			if (writer != null) {
+				writer.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "Exception closing journal segment", e);
+		}
+		writer = null;
+		try {
+			if (ackFile != null) {
+				ackFile.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "Exception closing journal ack file", e);
+		}
+		ackFile = null;
+		inFlight.clear();
+		notifyAll();
+	}
+
+	/**
+	 * Append a notification.
+	 *
+	 * @param notification
+	 *            notification to append.
+	 * @return index of appended notification.
+	 * @throws IOException
+	 */
+	public synchronized long append(final Notification notification)
+			throws IOException {
+		if (segments.size() == 0
+				|| writeIndex - segments.lastKey() >= segmentSize) {
+			// start a new segment
+			if (writer != null) {
+				writer.close();
+				writer = null;
+			}
+			segments.put(writeIndex, getSegmentFile(writeIndex));
+		}
+		if (writer == null) {
+			writer = new FileOutputStream(segments.lastEntry().getValue(), true);
+		}
+		writer.write((URLNotificationJSONConverter.toJSON(notification)
+				+ "\n").getBytes(StandardCharsets.UTF_8));
+		writer.flush();
+		return writeIndex++;
+	}
+
+	/**
+	 * Read the next notification that has not been read.
+	 *
+	 * @return next entry, or null if all appended notifications have been
+	 *         read.
+	 * @throws IOException
+	 */
+	public synchronized Entry next() throws IOException {
+		while (readIndex < writeIndex) {
+			long index = readIndex++;
+			String line = readLine(index);
+			inFlight.add(index);
+			try {
+				return new Entry(index,
+						URLNotificationJSONConverter.parseNotification(line));
+			} catch (Exception e) {
+				LOGGER.log(Level.WARNING, "Skipping unreadable journal entry "
+						+ index + " in " + directory, e);
+				complete(index);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Mark a notification returned by next as complete.
+	 *
+	 * @param index
+	 *            index of completed notification.
+	 * @throws IOException
+	 */
+	public synchronized void complete(final long index) throws IOException {
+		if (!inFlight.remove(index)) {
+			return;
+		}
+		long oldest = inFlight.isEmpty() ? readIndex : inFlight.first();
+		if (oldest > ackIndex) {
+			ackIndex = oldest;
+			writeAck();
+			deleteCompleteSegments();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Wait until fewer than maxPending notifications are not complete.
+	 *
+	 * @param maxPending
+	 *            maximum pending notifications, or &lt;= 0 to not wait.
+	 * @throws InterruptedException
+	 */
+	public synchronized void awaitCapacity(final long maxPending)
+			throws InterruptedException {
+		while (maxPending > 0 && ackFile != null
+				&& getPending() >= maxPending) {
+			wait();
+		}
+	}
+
+	/**
+	 * @return number of notifications appended and not complete.
+	 */
+	public synchronized long getPending() {
+		return writeIndex - ackIndex;
+	}
+
+	/**
+	 * @return number of notifications returned by next and not complete.
+	 */
+	public synchronized int getInFlight() {
+		return inFlight.size();
+	}
+
+	/**
+	 * @return number of notifications not yet returned by next.
+	 */
+	public synchronized long getUnread() {
+		return writeIndex - readIndex;
+	}
+
+	/**
+	 * @return true if the journal existed before it was opened.
+	 */
+	public synchronized boolean isResumed() {
+		return resumed;
+	}
+
+	/**
+	 * @return journal directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Read the line for an index, opening segments as needed.
+	 */
+	private String readLine(final long index) throws IOException {
+		if (reader == null || readerIndex != index
+				|| segments.containsKey(index)) {
+			closeReader();
+			Long start = segments.floorKey(index);
+			if (start == null) {
+				throw new IOException("No journal segment for index " + index);
+			}
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(segments.get(start)),
+					StandardCharsets.UTF_8));
+			readerIndex = start;
+			while (readerIndex < index) {
+				reader.readLine();
+				readerIndex++;
+			}
+		}
+		String line = reader.readLine();
+		readerIndex++;
+		if (line == null) {
+			throw new IOException("Journal segment ended before index "
+					+ index);
+		}
+		return line;
+	}
+
+	private void closeReader() {
+		try {
+			if (reader != null) {
+				reader.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "Exception closing journal reader", e);
+		}
+		reader = null;
+		readerIndex = -1L;
+	}
+
+	/**
+	 * Delete segments where every notification is complete.
+	 */
+	private void deleteCompleteSegments() {
+		while (segments.size() > 1) {
+			Long next = segments.higherKey(segments.firstKey());
+			if (next > ackIndex) {
+				break;
+			}
+			File segment = segments.remove(segments.firstKey());
+			if (!segment.delete()) {
+				LOGGER.warning("Unable to delete journal segment " + segment);
+			}
+		}
+	}
+
+	private void writeAck() throws IOException {
+		if (ackFile != null) {
+			ackFile.seek(0);
+			ackFile.writeLong(ackIndex);
+		}
+	}
+
+	private File getSegmentFile(final long start) {
+		return new File(directory, String.format("%020d", start)
+				+ SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * Count complete lines in a segment, and truncate any partial line left
+	 * by a crash.
+	 */
+	private static long countLines(final File segment) throws IOException {
+		long lines = 0;
+		long lastNewline = -1;
+		long position = 0;
+		try (FileInputStream in = new FileInputStream(segment)) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++) {
+					if (buffer[i] == '\n') {
+						lines++;
+						lastNewline = position + i;
+					}
+				}
+				position += read;
+			}
+		}
+		if (lastNewline + 1 != position) {
+			try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+				file.setLength(lastNewline + 1);
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * A notification read from the journal.
+	 */
+	public static class Entry {
+		public final long index;
+		public final Notification notification;
+
+		public Entry(final long index, final Notification notification) {
+			this.index = index;
+			this.notification = notification;
+		}
+	}
+
+}
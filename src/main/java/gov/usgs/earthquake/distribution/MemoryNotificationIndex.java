@@ -0,0 +1,739 @@
+/*
+ * MemoryNotificationIndex
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.Config;
+import gov.usgs.util.DefaultConfigurable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores and retrieves Notifications in memory.
+ *
+ * Notifications are indexed by ProductId, by source, type, and code, and by
+ * expiration date, so searches do not scan the index. Searches share a read
+ * lock and only wait for adds and removes.
+ *
+ * When a directory is configured, each add and remove is appended to a log,
+ * and a snapshot of the index is written periodically. On startup the latest
+ * snapshot is loaded and logs written since the snapshot are replayed. Logs
+ * are flushed after each write but not synced, so notifications written just
+ * before a system crash may be lost; receivers requeue these from their
+ * source.
+ *
+ * This is intended for hubs that only keep notifications for a short
+ * storageAge. Without a directory the index is empty after a restart.
+ */
+public class MemoryNotificationIndex extends DefaultConfigurable implements
+		NotificationIndex {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(MemoryNotificationIndex.class.getName());
+
+	/** Property for directory where snapshots and logs are written. */
+	public static final String DIRECTORY_PROPERTY = "directory";
+
+	/** Property for milliseconds between snapshots. */
+	public static final String SNAPSHOT_INTERVAL_PROPERTY = "snapshotInterval";
+	public static final String DEFAULT_SNAPSHOT_INTERVAL = "60000";
+
+	/** Name of snapshot file. */
+	public static final String SNAPSHOT_FILE = "snapshot";
+
+	/** Suffix of log files, which are named using a sequence number. */
+	public static final String LOG_SUFFIX = ".log";
+
+	/** Log line prefix for added notifications. */
+	private static final char ADD = '+';
+
+	/** Log line prefix for removed notifications. */
+	private static final char REMOVE = '-';
+
+	/** Directory for snapshots and logs, or null to only use memory. */
+	private File directory = null;
+
+	/** Milliseconds between snapshots. */
+	private long snapshotInterval = Long.parseLong(DEFAULT_SNAPSHOT_INTERVAL);
+
+	/** Guards indexes, log writer, and log sequence. */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** Notifications for each product, in the order they were added. */
+	private final Map<ProductId, List<Notification>> byId = new HashMap<ProductId, List<Notification>>();
+
+	/** Products for each upper case source. */
+	private final Map<String, Set<ProductId>> bySource = new HashMap<String, Set<ProductId>>();
+
+	/** Products for each upper case type. */
+	private final Map<String, Set<ProductId>> byType = new HashMap<String, Set<ProductId>>();
+
+	/** Products for each upper case code. */
+	private final Map<String, Set<ProductId>> byCode = new HashMap<String, Set<ProductId>>();
+
+	/** Notifications for each expiration time. */
+	private final TreeMap<Long, List<Notification>> byExpiration = new TreeMap<Long, List<Notification>>();
+
+	/** Number of notifications in index. */
+	private int size = 0;
+
+	/** Sequence number of current log. */
+	private long logSequence = 0L;
+
+	/** Writer for current log, null when not logging. */
+	private Writer log = null;
+
+	/** Timer that writes snapshots. */
+	private Timer snapshotTimer = null;
+
+	/**
+	 * Create an index that only uses memory.
+	 */
+	public MemoryNotificationIndex() {
+		this(null);
+	}
+
+	/**
+	 * Create an index.
+	 *
+	 * @param directory
+	 *            directory for snapshots and logs, or null to only use memory.
+	 */
+	public MemoryNotificationIndex(final File directory) {
+		this.directory = directory;
+	}
+
+	@Override
+	public void configure(final Config config) throws Exception {
+		String directoryName = config.getProperty(DIRECTORY_PROPERTY);
+		if (directoryName != null) {
+			directory = new File(directoryName);
+			LOGGER.config("[" + getName() + "] notification index directory "
+					+ directory.getCanonicalPath());
+		}
+
+		snapshotInterval = Long.parseLong(config.getProperty(
+				SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL));
+		LOGGER.config("[" + getName() + "] notification index snapshot interval "
+				+ snapshotInterval + "ms");
+	}
+
+	/**
+	 * Load snapshot and logs, then start a new log and snapshot timer.
+	 */
+	@Override
+	public void startup() throws Exception {
+		if (directory == null) {
+			return;
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory "
+					+ directory.getCanonicalPath());
+		}
+		load();
+		// new log, so appends never follow a partial line
+		snapshot();
+
+		if (snapshotInterval > 0 && snapshotTimer == null) {
+			snapshotTimer = new Timer(true);
+			snapshotTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						snapshot();
+					} catch (Exception e) {
+						LOGGER.log(Level.WARNING, "[" + getName()
+								+ "] exception writing notification index snapshot",
+								e);
+					}
+				}
+			}, snapshotInterval, snapshotInterval);
+		}
+	}
+
+	/**
+	 * Stop snapshot timer, write a final snapshot, and close log.
+	 */
+	@Override
+	public void shutdown() throws Exception {
+		if (snapshotTimer != null) {
+			snapshotTimer.cancel();
+			snapshotTimer = null;
+		}
+		if (directory == null) {
+			return;
+		}
+		try {
+			snapshot();
+		} finally {
+			lock.writeLock().lock();
+			try {
+				if (log != null) {
+					log.close();
+					log = null;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Add a notification to the index.
+	 *
+	 * Identical notifications that are already in the index are not added
+	 * again.
+	 */
+	@Override
+	public void addNotification(final Notification notification)
+			throws Exception {
+		lock.writeLock().lock();
+		try {
+			writeLog(ADD, notification);
+			add(notification);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all notifications identical to notification from the index.
+	 */
+	@Override
+	public void removeNotification(final Notification notification)
+			throws Exception {
+		lock.writeLock().lock();
+		try {
+			writeLog(REMOVE, notification);
+			remove(notification);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Notification> findNotifications(final ProductId id)
+			throws Exception {
+		lock.readLock().lock();
+		try {
+			List<Notification> notifications = byId.get(id);
+			if (notifications == null) {
+				return new ArrayList<Notification>();
+			}
+			return new ArrayList<Notification>(notifications);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Search the index for notifications matching the source, type, and code.
+	 *
+	 * Like the JDBCNotificationIndex, values are matched without regard to
+	 * case and every matching notification is returned.
+	 */
+	@Override
+	public List<Notification> findNotifications(final String source,
+			final String type, final String code) throws Exception {
+		List<Notification> notifications = new ArrayList<Notification>();
+		lock.readLock().lock();
+		try {
+			for (ProductId id : findProducts(toList(source), toList(type),
+					toList(code))) {
+				notifications.addAll(byId.get(id));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return notifications;
+	}
+
+	/**
+	 * Search the index for notifications matching the sources, types, and
+	 * codes.
+	 *
+	 * Like the JDBCNotificationIndex, when sources, types, and codes are all
+	 * null the most recently added notification for each ProductId is
+	 * returned, otherwise every matching notification is returned. Results
+	 * are ordered by product update time.
+	 */
+	@Override
+	public List<Notification> findNotifications(final List<String> sources,
+			final List<String> types, final List<String> codes)
+			throws Exception {
+		List<Notification> notifications = new ArrayList<Notification>();
+		lock.readLock().lock();
+		try {
+			boolean latestOnly = (sources == null && types == null && codes == null);
+			Collection<ProductId> ids = latestOnly
+					? byId.keySet()
+					: findProducts(sources, types, codes);
+			for (ProductId id : ids) {
+				if (matches(sources, id.getSource())
+						&& matches(types, id.getType())
+						&& matches(codes, id.getCode())) {
+					List<Notification> list = byId.get(id);
+					if (latestOnly) {
+						notifications.add(list.get(list.size() - 1));
+					} else {
+						notifications.addAll(list);
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		Collections.sort(notifications, new Comparator<Notification>() {
+			@Override
+			public int compare(final Notification a, final Notification b) {
+				return a.getProductId().getUpdateTime()
+						.compareTo(b.getProductId().getUpdateTime());
+			}
+		});
+		return notifications;
+	}
+
+	@Override
+	public List<Notification> findExpiredNotifications() throws Exception {
+		List<Notification> notifications = new ArrayList<Notification>();
+		lock.readLock().lock();
+		try {
+			for (List<Notification> expired : byExpiration.headMap(
+					System.currentTimeMillis(), true).values()) {
+				notifications.addAll(expired);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return notifications;
+	}
+
+	/**
+	 * @return number of notifications in index.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Write a snapshot, and delete logs that are included in the snapshot.
+	 *
+	 * The index is copied and a new log started while holding the read lock,
+	 * which blocks adds and removes but not searches, then the snapshot is
+	 * written without holding any lock. If writing fails,
+	 * the previous snapshot and logs are kept.
+	 *
+	 * @throws Exception
+	 *             if unable to write snapshot.
+	 */
+	public synchronized void snapshot() throws Exception {
+		if (directory == null) {
+			return;
+		}
+
+		List<Notification> notifications = new ArrayList<Notification>();
+		long sequence;
+		// the read lock excludes writers, but not searches
+		lock.readLock().lock();
+		try {
+			for (List<Notification> list : byId.values()) {
+				notifications.addAll(list);
+			}
+			// later writes go to a new log
+			if (log != null) {
+				log.close();
+			}
+			sequence = ++logSequence;
+			log = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(getLogFile(sequence), true),
+					StandardCharsets.UTF_8));
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		File snapshotFile = new File(directory, SNAPSHOT_FILE);
+		File tempFile = new File(directory, SNAPSHOT_FILE + ".tmp");
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+			// first line is the first log not included in the snapshot
+			out.write(Long.toString(sequence));
+			out.write('\n');
+			for (Notification notification : notifications) {
+				out.write(URLNotificationJSONConverter.toJSON(notification));
+				out.write('\n');
+			}
+		}
+		if (snapshotFile.exists() && !snapshotFile.delete()) {
+			throw new IOException("Unable to replace snapshot "
+					+ snapshotFile.getCanonicalPath());
+		}
+		if (!tempFile.renameTo(snapshotFile)) {
+			throw new IOException("Unable to rename snapshot "
+					+ tempFile.getCanonicalPath());
+		}
+
+		for (Long included : getLogSequences()) {
+			if (included < sequence) {
+				getLogFile(included).delete();
+			}
+		}
+		LOGGER.fine("[" + getName() + "] wrote notification index snapshot, "
+				+ notifications.size() + " notifications");
+	}
+
+	/**
+	 * Load snapshot, then replay logs written after the snapshot.
+	 *
+	 * @throws Exception
+	 *             if unable to read snapshot or logs.
+	 */
+	protected void load() throws Exception {
+		lock.writeLock().lock();
+		try {
+			long firstLog = 0L;
+			File snapshotFile = new File(directory, SNAPSHOT_FILE);
+			File tempFile = new File(directory, SNAPSHOT_FILE + ".tmp");
+			if (!snapshotFile.exists() && tempFile.exists()) {
+				// crashed between delete and rename
+				tempFile.renameTo(snapshotFile);
+			}
+			if (snapshotFile.exists()) {
+				try (BufferedReader in = new BufferedReader(
+						new InputStreamReader(new FileInputStream(snapshotFile),
+								StandardCharsets.UTF_8))) {
+					String line = in.readLine();
+					if (line != null) {
+						firstLog = Long.parseLong(line.trim());
+					}
+					while ((line = in.readLine()) != null) {
+						add(URLNotificationJSONConverter
+								.parseNotification(line));
+					}
+				}
+			}
+
+			for (Long sequence : getLogSequences()) {
+				logSequence = Math.max(logSequence, sequence);
+				if (sequence >= firstLog) {
+					replay(getLogFile(sequence));
+				}
+			}
+			logSequence = Math.max(logSequence, firstLog);
+			LOGGER.config("[" + getName() + "] loaded notification index, "
+					+ size + " notifications");
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Apply adds and removes from a log.
+	 *
+	 * Adds and removes have the same result when applied again, so logs that
+	 * overlap the snapshot may be replayed.
+	 *
+	 * @param logFile
+	 *            the log.
+	 * @throws IOException
+	 *             if unable to read log.
+	 */
+	private void replay(final File logFile) throws IOException {
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(logFile), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.length() < 2) {
+					continue;
+				}
+				Notification notification;
+				try {
+					notification = URLNotificationJSONConverter
+							.parseNotification(line.substring(1));
+				} catch (Exception e) {
+					// partial line from a crash
+					LOGGER.log(Level.FINE, "[" + getName()
+							+ "] skipping invalid log line in " + logFile, e);
+					continue;
+				}
+				if (line.charAt(0) == ADD) {
+					add(notification);
+				} else if (line.charAt(0) == REMOVE) {
+					remove(notification);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Append an add or remove to the current log. Called while holding the
+	 * write lock.
+	 */
+	private void writeLog(final char operation,
+			final Notification notification) throws IOException {
+		if (log == null) {
+			return;
+		}
+		log.write(operation);
+		log.write(URLNotificationJSONConverter.toJSON(notification));
+		log.write('\n');
+		log.flush();
+	}
+
+	/**
+	 * @return sequence numbers of existing logs, in order.
+	 */
+	private List<Long> getLogSequences() {
+		List<Long> sequences = new ArrayList<Long>();
+		String[] names = directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.endsWith(LOG_SUFFIX)) {
+					try {
+						sequences.add(Long.parseLong(name.substring(0,
+								name.length() - LOG_SUFFIX.length())));
+					} catch (NumberFormatException e) {
+						// not a log
+					}
+				}
+			}
+		}
+		Collections.sort(sequences);
+		return sequences;
+	}
+
+	private File getLogFile(final long sequence) {
+		return new File(directory, String.format("%020d", sequence)
+				+ LOG_SUFFIX);
+	}
+
+	/**
+	 * Add a notification to indexes. Called while holding the write lock.
+	 */
+	private void add(final Notification notification) {
+		ProductId id = notification.getProductId();
+		List<Notification> notifications = byId.get(id);
+		if (notifications == null) {
+			notifications = new ArrayList<Notification>(1);
+			byId.put(id, notifications);
+			addKey(bySource, id.getSource(), id);
+			addKey(byType, id.getType(), id);
+			addKey(byCode, id.getCode(), id);
+		} else {
+			for (Notification existing : notifications) {
+				if (isSame(existing, notification)) {
+					return;
+				}
+			}
+		}
+		notifications.add(notification);
+
+		Long expires = notification.getExpirationDate().getTime();
+		List<Notification> expiring = byExpiration.get(expires);
+		if (expiring == null) {
+			expiring = new ArrayList<Notification>(1);
+			byExpiration.put(expires, expiring);
+		}
+		expiring.add(notification);
+		size++;
+	}
+
+	/**
+	 * Remove matching notifications from indexes. Called while holding the
+	 * write lock.
+	 */
+	private void remove(final Notification notification) {
+		ProductId id = notification.getProductId();
+		List<Notification> notifications = byId.get(id);
+		if (notifications == null) {
+			return;
+		}
+		Iterator<Notification> iter = notifications.iterator();
+		while (iter.hasNext()) {
+			if (isSame(iter.next(), notification)) {
+				iter.remove();
+				size--;
+			}
+		}
+		if (notifications.isEmpty()) {
+			byId.remove(id);
+			removeKey(bySource, id.getSource(), id);
+			removeKey(byType, id.getType(), id);
+			removeKey(byCode, id.getCode(), id);
+		}
+
+		Long expires = notification.getExpirationDate().getTime();
+		List<Notification> expiring = byExpiration.get(expires);
+		if (expiring != null) {
+			iter = expiring.iterator();
+			while (iter.hasNext()) {
+				if (isSame(iter.next(), notification)) {
+					iter.remove();
+				}
+			}
+			if (expiring.isEmpty()) {
+				byExpiration.remove(expires);
+			}
+		}
+	}
+
+	/**
+	 * Find products matching values, without regard to case. Called while
+	 * holding the read lock.
+	 *
+	 * @return matching products, which callers may need to filter for case.
+	 */
+	private Collection<ProductId> findProducts(final List<String> sources,
+			final List<String> types, final List<String> codes) {
+		// check the fewest candidates
+		Set<ProductId> candidates = smaller(smaller(
+				getKeys(bySource, sources), getKeys(byType, types)),
+				getKeys(byCode, codes));
+		if (candidates == null) {
+			return byId.keySet();
+		}
+
+		List<ProductId> ids = new ArrayList<ProductId>(candidates.size());
+		for (ProductId id : candidates) {
+			if (matchesIgnoreCase(sources, id.getSource())
+					&& matchesIgnoreCase(types, id.getType())
+					&& matchesIgnoreCase(codes, id.getCode())) {
+				ids.add(id);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return products for any of values, or null if values is null.
+	 */
+	private static Set<ProductId> getKeys(final Map<String, Set<ProductId>> map,
+			final List<String> values) {
+		if (values == null) {
+			return null;
+		}
+		if (values.size() == 1) {
+			Set<ProductId> ids = map.get(values.get(0).toUpperCase());
+			return ids == null ? Collections.<ProductId> emptySet() : ids;
+		}
+		Set<ProductId> ids = new HashSet<ProductId>();
+		for (String value : values) {
+			Set<ProductId> valueIds = map.get(value.toUpperCase());
+			if (valueIds != null) {
+				ids.addAll(valueIds);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return the smaller set, ignoring null sets.
+	 */
+	private static Set<ProductId> smaller(final Set<ProductId> a,
+			final Set<ProductId> b) {
+		if (a == null) {
+			return b;
+		}
+		return (b == null || a.size() <= b.size()) ? a : b;
+	}
+
+	private static void addKey(final Map<String, Set<ProductId>> map,
+			final String value, final ProductId id) {
+		String key = value.toUpperCase();
+		Set<ProductId> ids = map.get(key);
+		if (ids == null) {
+			ids = new HashSet<ProductId>();
+			map.put(key, ids);
+		}
+		ids.add(id);
+	}
+
+	private static void removeKey(final Map<String, Set<ProductId>> map,
+			final String value, final ProductId id) {
+		String key = value.toUpperCase();
+		Set<ProductId> ids = map.get(key);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				map.remove(key);
+			}
+		}
+	}
+
+	private static boolean matches(final List<String> values,
+			final String value) {
+		return values == null || values.contains(value);
+	}
+
+	private static boolean matchesIgnoreCase(final List<String> values,
+			final String value) {
+		if (values == null) {
+			return true;
+		}
+		for (String v : values) {
+			if (v.equalsIgnoreCase(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static List<String> toList(final String value) {
+		return value == null ? null : Collections.singletonList(value);
+	}
+
+	/**
+	 * Compare the same fields the JDBCNotificationIndex stores.
+	 *
+	 * Notification.equals implementations throw when tracker url is null.
+	 */
+	private static boolean isSame(final Notification a, final Notification b) {
+		return a.getProductId().equals(b.getProductId())
+				&& a.getExpirationDate().equals(b.getExpirationDate())
+				&& equals(a.getTrackerURL(), b.getTrackerURL())
+				&& equals(getProductURL(a), getProductURL(b));
+	}
+
+	private static URL getProductURL(final Notification notification) {
+		return notification instanceof URLNotification ? ((URLNotification) notification)
+				.getProductURL() : null;
+	}
+
+	private static boolean equals(final URL a, final URL b) {
+		// compare strings, URL.equals resolves hosts
+		return a == null ? b == null : b != null
+				&& a.toString().equals(b.toString());
+	}
+
+}
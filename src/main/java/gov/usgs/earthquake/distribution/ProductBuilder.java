@@ -131,20 +131,28 @@ public class ProductBuilder extends DefaultConfigurable {
 
 		// send sequentially if not parallel
 		Map<ProductSender, Exception> errors = new HashMap<ProductSender, Exception>();
-		Iterator<ProductSender> iter = new LinkedList<ProductSender>(senders).iterator();
-		while (iter.hasNext()) {
-			ProductSender sender = iter.next();
-			try {
-				sender.sendProduct(product);
-			} catch (Exception e) {
-				if (e instanceof ProductAlreadyInStorageException) {
-					// condense this message...
-					LOGGER.info("Product already in storage, id=" + product.getId().toString());
-				} else {
-					LOGGER.log(Level.WARNING, "[" + sender.getName() + "] error sending product", e);
-					errors.put(sender, e);
+		List<ProductSender> sendTo = new LinkedList<ProductSender>(senders);
+		EncodedProduct encoded = newEncodedProduct(sendTo, product);
+		try {
+			Iterator<ProductSender> iter = sendTo.iterator();
+			while (iter.hasNext()) {
+				ProductSender sender = iter.next();
+				try {
+					sendEncoded(sender, product, encoded);
+				} catch (Exception e) {
+					if (e instanceof ProductAlreadyInStorageException) {
+						// condense this message...
+						LOGGER.info("Product already in storage, id=" + product.getId().toString());
+					} else {
+						LOGGER.log(Level.WARNING, "[" + sender.getName() + "] error sending product", e);
+						errors.put(sender, e);
+					}
 				}
 			}
+		} finally {
+			if (encoded != null) {
+				encoded.close();
+			}
 		}
 
 		return errors;
@@ -255,6 +263,7 @@ public class ProductBuilder extends DefaultConfigurable {
 		final Map<ProductSender, Exception> sendExceptions = Collections
 				.synchronizedMap(new HashMap<ProductSender, Exception>());
 
+		final EncodedProduct encoded = newEncodedProduct(senders, product);
 		Iterator<ProductSender> iter = senders.iterator();
 		List<Callable<Void>> sendTasks = new ArrayList<Callable<Void>>();
 		while (iter.hasNext()) {
@@ -262,7 +271,7 @@ public class ProductBuilder extends DefaultConfigurable {
 			sendComplete.put(sender, false);
 			sendTasks.add(() -> {
 				try {
-					sender.sendProduct(product);
+					sendEncoded(sender, product, encoded);
 					sendComplete.put(sender, true);
 				} catch (Exception e) {
 					sendExceptions.put(sender, e);
@@ -279,6 +288,10 @@ public class ProductBuilder extends DefaultConfigurable {
 			// in any case, this part is done and move on to checking send status
 		}
 		sendExecutor.shutdown();
+		if (encoded != null) {
+			// senders that timed out fail if still reading
+			encoded.close();
+		}
 		// check whether send completed or was interrupted
 		for (ProductSender sender : sendComplete.keySet()) {
 			if (!sendComplete.get(sender) && sendExceptions.get(sender) == null) {
@@ -289,4 +302,41 @@ public class ProductBuilder extends DefaultConfigurable {
 		return sendExceptions;
 	}
 
+	/**
+	 * Create shared encodings for a product, when more than one socket sender
+	 * would otherwise encode the same product.
+	 *
+	 * @param senders the senders that will receive product.
+	 * @param product the product to send.
+	 * @return shared encodings, or null when there are fewer than two
+	 *         SocketProductSenders.
+	 */
+	protected static EncodedProduct newEncodedProduct(final List<ProductSender> senders, final Product product) {
+		int socketSenders = 0;
+		for (ProductSender sender : senders) {
+			if (sender instanceof SocketProductSender) {
+				socketSenders++;
+			}
+		}
+		return socketSenders > 1 ? new EncodedProduct(product) : null;
+	}
+
+	/**
+	 * Send a product to one sender, using shared encodings when the sender is a
+	 * SocketProductSender.
+	 *
+	 * @param sender  the sender.
+	 * @param product the product to send.
+	 * @param encoded shared encodings, or null.
+	 * @throws Exception if thrown by sender.
+	 */
+	protected static void sendEncoded(final ProductSender sender, final Product product,
+			final EncodedProduct encoded) throws Exception {
+		if (encoded != null && sender instanceof SocketProductSender) {
+			((SocketProductSender) sender).sendProduct(product, encoded);
+		} else {
+			sender.sendProduct(product);
+		}
+	}
+
 }
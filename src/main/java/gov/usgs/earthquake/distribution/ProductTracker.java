@@ -66,6 +66,9 @@ public class ProductTracker {
 	/** Whether tracker updates are enabled in this vm. */
 	private static boolean TRACKER_ENABLED = false;
 
+	/** Queue used to send updates in the background, or null. */
+	private static ProductTrackerQueue TRACKER_QUEUE = null;
+
 	/**
 	 * Set whether sending tracker updates is enabled from this host.
 	 * 
@@ -76,6 +79,26 @@ public class ProductTracker {
 		TRACKER_ENABLED = enabled;
 	}
 
+	/**
+	 * Set a queue used to send updates in the background.
+	 * 
+	 * When set, sendUpdate and the methods that call it return null
+	 * immediately instead of waiting for the tracker.
+	 * 
+	 * @param queue
+	 *            the queue, or null to send updates synchronously.
+	 */
+	public static void setTrackerQueue(final ProductTrackerQueue queue) {
+		TRACKER_QUEUE = queue;
+	}
+
+	/**
+	 * @return queue used to send updates in the background, or null.
+	 */
+	public static ProductTrackerQueue getTrackerQueue() {
+		return TRACKER_QUEUE;
+	}
+
 	/** Location of tracker. */
 	private URL trackerURL;
 
@@ -104,10 +127,12 @@ public class ProductTracker {
 	/**
 	 * Send an update to this ProductTracker.
 	 * 
+	 * When a tracker queue is set, the update is queued and null is returned.
+	 * 
 	 * @param update
 	 *            the update to send to the tracker.
 	 * @return the update object processed by the tracker, including sequence
-	 *         number, or null if unable to send.
+	 *         number, or null if unable to send or queued.
 	 * @throws Exception
 	 */
 	public ProductTrackerUpdate sendUpdate(final ProductTrackerUpdate update)
@@ -117,6 +142,11 @@ public class ProductTracker {
 				update.getMessage(), // key
 				update.getId().toString() // value
 				);
+		ProductTrackerQueue queue = TRACKER_QUEUE;
+		if (TRACKER_ENABLED && queue != null) {
+			queue.offer(update);
+			return null;
+		}
 		String response = sendUpdateXML(update);
 		try {
 			List<ProductTrackerUpdate> updates = parseTrackerResponse(
@@ -165,7 +195,26 @@ public class ProductTracker {
 			return null;
 		}
 
-		// build update request
+		try {
+			String response = post(update.getTrackerURL(),
+					getUpdateRequest(update));
+			return response;
+		} catch (Exception e) {
+			LOGGER.log(Level.INFO, "Unable to post to tracker", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Build the post data for an update.
+	 * 
+	 * @param update
+	 *            the update.
+	 * @return post data.
+	 */
+	public static Map<String, String> getUpdateRequest(
+			final ProductTrackerUpdate update) {
+		ProductId id = update.getId();
 		Map<String, String> request = new HashMap<String, String>();
 		request.put("action", "update");
 		request.put("source", id.getSource());
@@ -174,14 +223,7 @@ public class ProductTracker {
 		request.put("updateTime", Long.toString(id.getUpdateTime().getTime()));
 		request.put("className", update.getClassName());
 		request.put("message", update.getMessage());
-
-		try {
-			String response = post(update.getTrackerURL(), request);
-			return response;
-		} catch (Exception e) {
-			LOGGER.log(Level.INFO, "Unable to post to tracker", e);
-		}
-		return null;
+		return request;
 	}
 
 	/** Same as getUpdates with 0 for startid. */
@@ -444,12 +486,31 @@ public class ProductTracker {
 	 */
 	public static String post(final URL url, final Map<String, String> data)
 			throws Exception {
+		return post(url, data, 0);
+	}
+
+	/**
+	 * Execute a HTTP Post.
+	 * 
+	 * @param url
+	 *            the target url.
+	 * @param data
+	 *            the data to send.
+	 * @param timeout
+	 *            connect and read timeout in milliseconds, or 0 for none.
+	 * @return the response text.
+	 * @throws Exception
+	 */
+	public static String post(final URL url, final Map<String, String> data,
+			final int timeout) throws Exception {
 		InputStream in = null;
 		OutputStream out = null;
 		String response = null;
 
 		try {
 			URLConnection connection = url.openConnection();
+			connection.setConnectTimeout(timeout);
+			connection.setReadTimeout(timeout);
 			if (data != null) {
 				String encodedData = encodeURLData(data);
 				connection.setDoOutput(true);
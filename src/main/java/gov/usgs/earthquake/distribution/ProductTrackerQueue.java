@@ -0,0 +1,275 @@
+/*
+ * ProductTrackerQueue
+ */
+package gov.usgs.earthquake.distribution;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends tracker updates from a background thread, so a slow tracker does not
+ * slow product processing.
+ *
+ * Updates are held in a bounded queue, and dropped when the queue is full.
+ * The sender takes all queued updates at once, groups them by tracker url,
+ * and skips duplicate updates in the same batch. When a post to a tracker
+ * fails, the rest of that tracker's updates in the batch are dropped instead
+ * of waiting for each to time out.
+ *
+ * The tracker protocol accepts one update per post, so each update is still
+ * a separate post, but posts to the same tracker are sent back to back and
+ * reuse the HTTP keep-alive connection.
+ */
+public class ProductTrackerQueue {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(ProductTrackerQueue.class.getName());
+
+	/** Default number of updates held before dropping. */
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	/** Default connect and read timeout for tracker posts. */
+	public static final int DEFAULT_TIMEOUT = 5000;
+
+	/** Milliseconds to send queued updates during shutdown. */
+	public static final long SHUTDOWN_WAIT = 5000L;
+
+	/** Queued updates. */
+	private final BlockingQueue<ProductTrackerUpdate> queue;
+
+	/** Connect and read timeout for tracker posts. */
+	private final int timeout;
+
+	/** Thread sending updates. */
+	private Thread sender = null;
+
+	/** Whether to keep sending. */
+	private volatile boolean running = false;
+
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	/** Dropped count when last logged. */
+	private long loggedDropped = 0L;
+
+	/**
+	 * Create a queue with default capacity and timeout.
+	 */
+	public ProductTrackerQueue() {
+		this(DEFAULT_CAPACITY, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Create a queue.
+	 *
+	 * @param capacity
+	 *            number of updates held before dropping.
+	 * @param timeout
+	 *            connect and read timeout for tracker posts, in milliseconds.
+	 */
+	public ProductTrackerQueue(final int capacity, final int timeout) {
+		this.queue = new ArrayBlockingQueue<ProductTrackerUpdate>(Math.max(1,
+				capacity));
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Start sender thread, and a shutdown hook that sends queued updates
+	 * before the vm exits.
+	 */
+	public synchronized void start() {
+		if (sender != null) {
+			return;
+		}
+		running = true;
+		sender = new Thread(() -> run(), "ProductTrackerQueue");
+		sender.setDaemon(true);
+		sender.start();
+		Runtime.getRuntime().addShutdownHook(
+				new Thread(() -> shutdown(), "ProductTrackerQueue-shutdown"));
+	}
+
+	/**
+	 * Stop sender thread, after sending queued updates for up to
+	 * SHUTDOWN_WAIT milliseconds.
+	 */
+	public void shutdown() {
+		Thread stopping;
+		synchronized (this) {
+			running = false;
+			stopping = sender;
+			sender = null;
+		}
+		if (stopping == null) {
+			return;
+		}
+		try {
+			stopping.join(SHUTDOWN_WAIT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		stopping.interrupt();
+		dropped.addAndGet(queue.size());
+		queue.clear();
+	}
+
+	/**
+	 * Queue an update.
+	 *
+	 * @param update
+	 *            update to send.
+	 * @return false if the queue is full and the update was dropped.
+	 */
+	public boolean offer(final ProductTrackerUpdate update) {
+		if (queue.offer(update)) {
+			queued.incrementAndGet();
+			return true;
+		}
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Send updates until shutdown and the queue is empty.
+	 */
+	protected void run() {
+		List<ProductTrackerUpdate> batch = new ArrayList<ProductTrackerUpdate>();
+		while (running || !queue.isEmpty()) {
+			try {
+				ProductTrackerUpdate first = queue.poll(1, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch);
+				sendBatch(batch);
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				LOGGER.log(Level.WARNING, "Exception sending tracker updates", e);
+			} finally {
+				batch.clear();
+			}
+			logDropped();
+		}
+	}
+
+	/**
+	 * Group updates by tracker, skip duplicates, and send.
+	 *
+	 * @param batch
+	 *            updates taken from queue.
+	 */
+	protected void sendBatch(final List<ProductTrackerUpdate> batch) {
+		Map<String, Map<String, ProductTrackerUpdate>> byTracker = new LinkedHashMap<String, Map<String, ProductTrackerUpdate>>();
+		for (ProductTrackerUpdate update : batch) {
+			URL trackerURL = update.getTrackerURL();
+			if (trackerURL == null) {
+				continue;
+			}
+			String tracker = trackerURL.toString();
+			Map<String, ProductTrackerUpdate> updates = byTracker.get(tracker);
+			if (updates == null) {
+				updates = new LinkedHashMap<String, ProductTrackerUpdate>();
+				byTracker.put(tracker, updates);
+			}
+			String key = update.getId().toString() + "|"
+					+ update.getClassName() + "|" + update.getMessage();
+			if (updates.put(key, update) != null) {
+				coalesced.incrementAndGet();
+			}
+		}
+
+		for (Map<String, ProductTrackerUpdate> updates : byTracker.values()) {
+			Iterator<ProductTrackerUpdate> iter = updates.values().iterator();
+			while (iter.hasNext()) {
+				ProductTrackerUpdate update = iter.next();
+				try {
+					LOGGER.fine("Sending tracker update " + update.getMessage()
+							+ " " + update.getId().toString());
+					ProductTracker.post(update.getTrackerURL(),
+							ProductTracker.getUpdateRequest(update), timeout);
+					sent.incrementAndGet();
+				} catch (Exception e) {
+					// skip this tracker for rest of batch
+					long skipped = 1;
+					while (iter.hasNext()) {
+						iter.next();
+						skipped++;
+					}
+					failed.addAndGet(skipped);
+					LOGGER.log(Level.INFO, "Unable to post to tracker "
+							+ update.getTrackerURL() + ", dropped " + skipped
+							+ " updates", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Log when updates were dropped since the last log message.
+	 */
+	private void logDropped() {
+		long droppedNow = dropped.get();
+		if (droppedNow != loggedDropped) {
+			LOGGER.warning("Tracker queue full, dropped "
+					+ (droppedNow - loggedDropped) + " updates (" + getStatus()
+					+ ")");
+			loggedDropped = droppedNow;
+		}
+	}
+
+	/**
+	 * @return summary of queue counters.
+	 */
+	public String getStatus() {
+		return "queued=" + queued.get() + ", sent=" + sent.get()
+				+ ", coalesced=" + coalesced.get() + ", dropped="
+				+ dropped.get() + ", failed=" + failed.get() + ", pending="
+				+ queue.size();
+	}
+
+	/** @return number of updates accepted into queue. */
+	public long getQueued() {
+		return queued.get();
+	}
+
+	/** @return number of updates posted. */
+	public long getSent() {
+		return sent.get();
+	}
+
+	/** @return number of duplicate updates skipped. */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/** @return number of updates dropped because the queue was full. */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/** @return number of updates dropped because a post failed. */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/** @return number of updates waiting in queue. */
+	public int getPending() {
+		return queue.size();
+	}
+
+}
@@ -0,0 +1,201 @@
+/*
+ * SequenceCheckpointer
+ */
+package gov.usgs.earthquake.distribution;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Batches writes of a receiver tracking file.
+ *
+ * Receivers call {@link #update()} after processing each message. The
+ * tracking file is written in a background thread after maxUpdates updates,
+ * or interval milliseconds, whichever is first. {@link #shutdown()} writes
+ * any pending update before returning.
+ *
+ * When interval is not positive, the tracking file is written during every
+ * update, in the calling thread.
+ */
+public class SequenceCheckpointer {
+
+	/** Logging object. */
+	private static final Logger LOGGER = Logger
+			.getLogger(SequenceCheckpointer.class.getName());
+
+	/** Property for maximum milliseconds between checkpoints. */
+	public static final String CHECKPOINT_INTERVAL_PROPERTY = "checkpointInterval";
+	/** Default checkpoint interval, 1 second. */
+	public static final String DEFAULT_CHECKPOINT_INTERVAL = "1000";
+
+	/** Property for maximum number of messages between checkpoints. */
+	public static final String CHECKPOINT_MESSAGES_PROPERTY = "checkpointMessages";
+	/** Default checkpoint messages. */
+	public static final String DEFAULT_CHECKPOINT_MESSAGES = "100";
+
+	/** Name used for logging and thread. */
+	private final String name;
+	/** Writes the tracking file. */
+	private final Callable<?> writer;
+	/** Number of updates before writing. */
+	private final int maxUpdates;
+	/** Maximum milliseconds between writes. */
+	private final long interval;
+
+	/** Number of updates since last write. */
+	private int updates = 0;
+	/** Whether a write has been queued because of maxUpdates. */
+	private boolean writeQueued = false;
+	/** Number of writes. */
+	private long writes = 0L;
+	/** Synchronizes writes. */
+	private final Object writeLock = new Object();
+
+	/** Background thread, or null when writing synchronously. */
+	private ScheduledExecutorService executor = null;
+
+	/**
+	 * Create a new checkpointer.
+	 *
+	 * @param name
+	 *            name of receiver, for logging.
+	 * @param writer
+	 *            called to write the tracking file.
+	 * @param maxUpdates
+	 *            number of updates before writing, &lt;= 0 to only write on
+	 *            interval.
+	 * @param interval
+	 *            maximum milliseconds between writes, &lt;= 0 to write every
+	 *            update synchronously.
+	 */
+	public SequenceCheckpointer(final String name, final Callable<?> writer,
+			final int maxUpdates, final long interval) {
+		this.name = name;
+		this.writer = writer;
+		this.maxUpdates = maxUpdates;
+		this.interval = interval;
+	}
+
+	/**
+	 * Start the background thread.
+	 */
+	public synchronized void startup() {
+		if (interval <= 0 || executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, name + " checkpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::flushQuietly, interval,
+				interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop the background thread, and write any pending update.
+	 *
+	 * @throws Exception
+	 *             if the pending update cannot be written.
+	 */
+	public void shutdown() throws Exception {
+		ScheduledExecutorService stopping;
+		synchronized (this) {
+			stopping = executor;
+			executor = null;
+		}
+		if (stopping != null) {
+			stopping.shutdown();
+			stopping.awaitTermination(interval, TimeUnit.MILLISECONDS);
+		}
+		flush();
+	}
+
+	/**
+	 * Record that a message was processed.
+	 *
+	 * @throws Exception
+	 *             when writing synchronously and the write fails.
+	 */
+	public void update() throws Exception {
+		ScheduledExecutorService background;
+		synchronized (this) {
+			updates++;
+			background = executor;
+			if (background != null
+					&& (maxUpdates <= 0 || updates < maxUpdates || writeQueued)) {
+				// wait for interval or maxUpdates
+				return;
+			}
+			writeQueued = (background != null);
+		}
+		if (background == null) {
+			flush();
+		} else {
+			background.execute(this::flushQuietly);
+		}
+	}
+
+	/**
+	 * Write the tracking file, if updated since last write.
+	 *
+	 * @throws Exception
+	 *             if the writer throws an exception.
+	 */
+	public void flush() throws Exception {
+		synchronized (writeLock) {
+			int pending;
+			synchronized (this) {
+				pending = updates;
+				updates = 0;
+				writeQueued = false;
+			}
+			if (pending == 0) {
+				return;
+			}
+			try {
+				writer.call();
+				writes++;
+			} catch (Exception e) {
+				// try again next time
+				synchronized (this) {
+					updates += pending;
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Flush from background thread, logging exceptions.
+	 */
+	protected void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "[" + name
+					+ "] exception writing tracking file", e);
+		}
+	}
+
+	/**
+	 * @return number of updates not yet written.
+	 */
+	public synchronized int getPendingUpdates() {
+		return updates;
+	}
+
+	/**
+	 * @return number of times the tracking file was written.
+	 */
+	public long getWrites() {
+		synchronized (writeLock) {
+			return writes;
+		}
+	}
+
+}
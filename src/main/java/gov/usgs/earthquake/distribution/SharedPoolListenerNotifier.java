@@ -0,0 +1,123 @@
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.util.LimitedConcurrencyExecutor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A listener notifier that runs all listeners on one shared pool.
+ *
+ * Like ExecutorListenerNotifier, each listener has its own queue and
+ * notifications are processed in the order they are received. Instead of
+ * dedicated threads for each listener, queues are run by a small work
+ * stealing pool, or by virtual threads when the JVM supports them, so idle
+ * listeners do not hold threads.
+ *
+ * Listeners that support concurrent products may still process up to
+ * getConcurrentProducts() notifications at once.
+ */
+public class SharedPoolListenerNotifier extends ExecutorListenerNotifier {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(SharedPoolListenerNotifier.class.getName());
+
+	/** Pool shared by all listeners. */
+	private final ExecutorService pool;
+
+	/**
+	 * Create a notifier that uses virtual threads when available, or a work
+	 * stealing pool with one thread per processor.
+	 *
+	 * @param receiver
+	 *            the receiver using this notifier.
+	 */
+	public SharedPoolListenerNotifier(final DefaultNotificationReceiver receiver) {
+		this(receiver, 0);
+	}
+
+	/**
+	 * Create a notifier.
+	 *
+	 * @param receiver
+	 *            the receiver using this notifier.
+	 * @param threads
+	 *            size of work stealing pool, or 0 to use virtual threads when
+	 *            available, and otherwise one thread per processor.
+	 */
+	public SharedPoolListenerNotifier(
+			final DefaultNotificationReceiver receiver, final int threads) {
+		super(receiver);
+		this.pool = createPool(threads);
+	}
+
+	/**
+	 * Listener queues run on the shared pool.
+	 */
+	@Override
+	protected ExecutorService createListenerExecutor(
+			final NotificationListener listener, final int threads) {
+		return new LimitedConcurrencyExecutor(pool, threads);
+	}
+
+	@Override
+	protected int getQueueSize(final ExecutorService listenerExecutor) {
+		if (listenerExecutor instanceof LimitedConcurrencyExecutor) {
+			return ((LimitedConcurrencyExecutor) listenerExecutor)
+					.getQueueSize();
+		}
+		return super.getQueueSize(listenerExecutor);
+	}
+
+	/**
+	 * Shutdown listener queues, then the pool.
+	 *
+	 * Queued notifications are still processed, on the threads already
+	 * running each queue.
+	 */
+	@Override
+	public void shutdown() throws Exception {
+		super.shutdown();
+		pool.shutdown();
+	}
+
+	/**
+	 * @return pool shared by all listeners.
+	 */
+	public ExecutorService getPool() {
+		return pool;
+	}
+
+	/**
+	 * Create the shared pool.
+	 *
+	 * @param threads
+	 *            size of work stealing pool, or 0 to use virtual threads when
+	 *            available, and otherwise one thread per processor.
+	 * @return pool.
+	 */
+	protected static ExecutorService createPool(final int threads) {
+		if (threads > 0) {
+			return Executors.newWorkStealingPool(threads);
+		}
+		try {
+			// added in java 21, use reflection while building for java 8
+			Method method = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService virtualThreads = (ExecutorService) method
+					.invoke(null);
+			LOGGER.fine("Using virtual threads for listeners");
+			return virtualThreads;
+		} catch (NoSuchMethodException e) {
+			// older jvm
+		} catch (Exception e) {
+			LOGGER.log(Level.FINE, "Unable to create virtual thread executor",
+					e);
+		}
+		return Executors.newWorkStealingPool();
+	}
+
+}
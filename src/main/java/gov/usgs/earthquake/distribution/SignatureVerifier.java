@@ -134,6 +134,27 @@ public class SignatureVerifier extends DefaultConfigurable {
 	 * @throws Exception
 	 */
 	public boolean verifySignature(final Product product) throws Exception {
+		return verifySignature(product, null);
+	}
+
+	/**
+	 * Attempt to verify a products signature using a digest that was already
+	 * computed.
+	 *
+	 * @param product
+	 *            product to verify, only the id and signature are used when
+	 *            digest is not null.
+	 * @param digest
+	 *            product digest, or null to compute the digest from product.
+	 * @return true if the signature is from a key in the keychain.
+	 * @throws InvalidSignatureException
+	 *             if rejectInvalidSignatures=true, and signature was not
+	 *             verified.
+	 * @throws Exception
+	 * @see #verifySignature(Product)
+	 */
+	public boolean verifySignature(final Product product, final byte[] digest)
+			throws Exception {
 		boolean verified = false;
 		String verifiedKeyName = null;
 
@@ -146,7 +167,8 @@ public class SignatureVerifier extends DefaultConfigurable {
 				LOGGER.finer("[" + getName() + "] number of candidate keys="
 						+ candidateKeys.length);
 				if (candidateKeys.length > 0) {
-					PublicKey publicKey = product.verifySignatureKey(candidateKeys);
+					PublicKey publicKey = product.verifySignatureKey(
+							candidateKeys, digest);
 					if (publicKey != null) {
 						verified = true;
 						// find key that verified
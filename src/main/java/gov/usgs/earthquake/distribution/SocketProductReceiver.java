@@ -3,6 +3,7 @@
  */
 package gov.usgs.earthquake.distribution;
 
+import java.io.File;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.Executors;
@@ -33,6 +34,12 @@ import gov.usgs.util.SocketListenerInterface;
  * 
  * Each listener has a separate queue of notifications. Each listener is
  * allocated one thread to process notifications from this queue.
+ *
+ * When <code>nonBlocking</code> is true, connections are handled by a
+ * SocketProductReceiverServer, and <code>threads</code> only limits how many
+ * products are stored at the same time instead of how many senders may be
+ * connected. Larger products are spooled to files in
+ * <code>spoolDirectory</code> while they are received.
  */
 public class SocketProductReceiver extends DefaultNotificationReceiver
 		implements SocketListenerInterface {
@@ -49,6 +56,14 @@ public class SocketProductReceiver extends DefaultNotificationReceiver
 	
 	private static final String DEFAULT_SIZE_LIMIT = "-1";
 
+	private static final String NON_BLOCKING_PROPERTY = "nonBlocking";
+
+	private static final String DEFAULT_NON_BLOCKING = "false";
+
+	private static final String SPOOL_DIRECTORY_PROPERTY = "spoolDirectory";
+
+	/** Directory under FileProductStorage base for spooled products. */
+	public static final String SPOOL_DIRECTORY = ".spool";
 
 	private static final Logger LOGGER = Logger
 			.getLogger(SocketProductReceiver.class.getName());
@@ -56,14 +71,18 @@ public class SocketProductReceiver extends DefaultNotificationReceiver
 	private int port = -1;
 	private int threads = -1;
 	private long sizeLimit = -1;
+	private boolean nonBlocking = false;
+	private File spoolDirectory = null;
 
 	private SocketAcceptor acceptor = null;
+	private SocketProductReceiverServer server = null;
 
 	public SocketProductReceiver() throws Exception {
 		super();
 		this.port = Integer.parseInt(DEFAULT_PRODUCT_PORT);
 		this.threads = Integer.parseInt(DEFAULT_THREAD_POOL_SIZE);
 		this.sizeLimit = Long.parseLong(DEFAULT_SIZE_LIMIT);
+		this.nonBlocking = Boolean.valueOf(DEFAULT_NON_BLOCKING);
 	}
 
 	public SocketProductReceiver(Config config) throws Exception {
@@ -86,12 +105,29 @@ public class SocketProductReceiver extends DefaultNotificationReceiver
 				SIZE_LIMIT_PROPERTY, DEFAULT_SIZE_LIMIT));
 		LOGGER.config("[" + getName() + "] size limite is '"
 				+ this.sizeLimit + "'");
+
+		this.nonBlocking = Boolean.valueOf(config.getProperty(
+				NON_BLOCKING_PROPERTY, DEFAULT_NON_BLOCKING));
+		LOGGER.config("[" + getName() + "] nonBlocking is " + this.nonBlocking);
+
+		String directory = config.getProperty(SPOOL_DIRECTORY_PROPERTY);
+		if (directory != null) {
+			this.spoolDirectory = new File(directory);
+			LOGGER.config("[" + getName() + "] spool directory is '"
+					+ this.spoolDirectory + "'");
+		}
 	}
 
 	public void startup() throws Exception {
 		// call DefaultNotificationReceiver startup first
 		super.startup();
 
+		if (nonBlocking) {
+			server = new SocketProductReceiverServer(this, port, threads);
+			server.start();
+			return;
+		}
+
 		ServerSocket socket = new ServerSocket(port);
 		socket.setReuseAddress(true);
 		acceptor = new SocketAcceptor(socket, this,
@@ -102,7 +138,14 @@ public class SocketProductReceiver extends DefaultNotificationReceiver
 
 	public void shutdown() throws Exception {
 		// stop accepting connections
-		acceptor.stop();
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+		if (acceptor != null) {
+			acceptor.stop();
+			acceptor = null;
+		}
 
 		// call DefaultNotificationReceiver shutdown last
 		super.shutdown();
@@ -179,6 +222,38 @@ public class SocketProductReceiver extends DefaultNotificationReceiver
 		this.sizeLimit = sizeLimit;
 	}
 
+	public boolean isNonBlocking() {
+		return nonBlocking;
+	}
+
+	public void setNonBlocking(boolean nonBlocking) {
+		this.nonBlocking = nonBlocking;
+	}
+
+	/**
+	 * Directory for products being received by the nonBlocking server.
+	 *
+	 * When not configured and product storage is a FileProductStorage,
+	 * products are spooled under its base directory, so they use the same
+	 * disk as stored products.
+	 *
+	 * @return spool directory, or null to use the system temp directory.
+	 */
+	public File getSpoolDirectory() {
+		if (spoolDirectory != null) {
+			return spoolDirectory;
+		}
+		if (getProductStorage() instanceof FileProductStorage) {
+			return new File(((FileProductStorage) getProductStorage())
+					.getBaseDirectory(), SPOOL_DIRECTORY);
+		}
+		return null;
+	}
+
+	public void setSpoolDirectory(File spoolDirectory) {
+		this.spoolDirectory = spoolDirectory;
+	}
+
 	public int getThreads() {
 		return threads;
 	}
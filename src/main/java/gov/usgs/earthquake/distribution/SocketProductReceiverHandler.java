@@ -11,6 +11,7 @@ import java.util.logging.Logger;
 import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.earthquake.product.io.BinaryIO;
 import gov.usgs.earthquake.product.io.IOUtil;
+import gov.usgs.earthquake.util.ChunkedInputStream;
 import gov.usgs.earthquake.util.SizeLimitInputStream;
 import gov.usgs.util.ObjectLock;
 import gov.usgs.util.StreamUtils;
@@ -141,6 +142,10 @@ public class SocketProductReceiverHandler implements Runnable {
 						sendString(out, SocketProductSender.UNKNOWN_PRODUCT);
 						out.flush();
 					}
+				} else if (SocketProductSender.PROTOCOL_VERSION_0_2.equals(protocolVersion)) {
+					// connection stays open for multiple products
+					receiveProducts(in, out);
+					return;
 				} else {
 					throw new IOException("unsupported protocol version");
 				}
@@ -178,6 +183,68 @@ public class SocketProductReceiverHandler implements Runnable {
 		}
 	}
 
+	/**
+	 * Receive products until the sender closes the connection.
+	 *
+	 * Used by protocol version 0.2, where each product id is answered with
+	 * ALREADY_HAVE_PRODUCT or UNKNOWN_PRODUCT, unknown products are sent as
+	 * chunks (see ChunkedInputStream), and each product received is answered
+	 * with a status message.  Errors are sent to the sender and end the
+	 * connection.
+	 *
+	 * @param in input stream to read
+	 * @param out output stream to write
+	 * @throws Exception
+	 */
+	protected void receiveProducts(final BufferedInputStream in,
+			final OutputStream out) throws Exception {
+		while (true) {
+			// sender closes connection when done
+			in.mark(1);
+			if (in.read() == -1) {
+				return;
+			}
+			in.reset();
+
+			String productIdString;
+			try {
+				productIdString = io.readString(in, 1024);
+			} catch (IOException e) {
+				if (e.getMessage() != null && e.getMessage().contains("maxLength")) {
+					throw new IOException("product id too long");
+				} else {
+					throw e;
+				}
+			}
+			ProductId productId = ProductId.parse(productIdString);
+
+			acquireWriteLock(productId);
+			try {
+				if (receiver.getProductStorage().hasProduct(productId)) {
+					sendString(out, SocketProductSender.ALREADY_HAVE_PRODUCT);
+					continue;
+				}
+				sendString(out, SocketProductSender.UNKNOWN_PRODUCT);
+
+				ChunkedInputStream chunkedIn = new ChunkedInputStream(in);
+				InputStream productIn = chunkedIn;
+				if (receiver.getSizeLimit() > 0) {
+					productIn = new SizeLimitInputStream(productIn,
+							receiver.getSizeLimit());
+				}
+				String status = receiver.storeAndNotify(IOUtil
+						.autoDetectProductSource(new StreamUtils.UnclosableInputStream(
+								productIn)));
+				// skip anything parser did not read, ready for next product
+				chunkedIn.close();
+				LOGGER.info(status + " from " + socket.toString());
+				sendString(out, status);
+			} finally {
+				releaseWriteLock(productId);
+			}
+		}
+	}
+
 	/**
 	 * Send an exception to the user.
 	 *
@@ -0,0 +1,815 @@
+/*
+ * SocketProductReceiverServer
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.earthquake.product.io.IOUtil;
+import gov.usgs.earthquake.util.ChunkedInputStream;
+import gov.usgs.util.StreamUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking server for a SocketProductReceiver.
+ *
+ * One selector thread reads from all connections, and handles the PDL
+ * protocol (versions 0.1 and 0.2, and senders that do not use the protocol).
+ * Product bytes are spooled as they arrive, in memory and then to a temporary
+ * file for larger products, so slow senders do not hold a thread.  Memory
+ * used for spooling is limited across all connections, and spool files are
+ * written by worker threads in the receiver spool directory.  Once a product
+ * is complete it is stored by one of <code>threads</code> worker threads,
+ * which also check whether products are already in storage.
+ *
+ * The receiver sizeLimit applies to the bytes spooled for each product, and
+ * the receiver readTimeout closes connections that have not sent data while
+ * the server is waiting for it.
+ */
+public class SocketProductReceiverServer implements Runnable {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(SocketProductReceiverServer.class.getName());
+
+	/** Size of per-connection read buffer. */
+	public static final int READ_BUFFER_SIZE = 16 * 1024;
+
+	/** Products larger than this are spooled to a temporary file. */
+	public static final int SPOOL_MEMORY_LIMIT = 1024 * 1024;
+
+	/**
+	 * Memory used to spool products for all connections, once reached
+	 * products are spooled to a temporary file.
+	 */
+	public static final long SPOOL_MEMORY_TOTAL_LIMIT = 32L * 1024 * 1024;
+
+	/** Milliseconds between timeout checks. */
+	public static final long TIMEOUT_CHECK_INTERVAL = 1000L;
+
+	/** Milliseconds to wait for workers during shutdown. */
+	public static final long SHUTDOWN_WAIT = 5000L;
+
+	/** Connection states. */
+	private enum State {
+		/** Reading protocol header, or first bytes of product. */
+		PREAMBLE,
+		/** Reading product id. */
+		PRODUCT_ID,
+		/** Reading product until sender closes output. */
+		PRODUCT,
+		/** Reading chunk length. */
+		CHUNK_HEADER,
+		/** Reading chunk content. */
+		CHUNK,
+		/** Waiting for a worker. */
+		WORKING,
+		/** Writing last reply before closing. */
+		CLOSING
+	}
+
+	private final SocketProductReceiver receiver;
+	private final int port;
+	private final int threads;
+
+	private Selector selector;
+	private ServerSocketChannel serverChannel;
+	private ExecutorService workers;
+	/** Directory for spool files, or null for the system temp directory. */
+	private File spoolDirectory;
+	private Thread thread;
+	private volatile boolean running = false;
+
+	/** Work completed by workers, run by selector thread. */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	/** Bytes spooled in memory for all connections. */
+	private final AtomicLong spoolMemory = new AtomicLong(0L);
+
+	/**
+	 * Create a new server.
+	 *
+	 * @param receiver
+	 *            receiver that stores products.
+	 * @param port
+	 *            port to listen on.
+	 * @param threads
+	 *            number of worker threads.
+	 */
+	public SocketProductReceiverServer(final SocketProductReceiver receiver,
+			final int port, final int threads) {
+		this.receiver = receiver;
+		this.port = port;
+		this.threads = threads;
+	}
+
+	/**
+	 * Open server socket, and start selector thread.
+	 *
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+		spoolDirectory = receiver.getSpoolDirectory();
+		if (spoolDirectory != null && !spoolDirectory.isDirectory()
+				&& !spoolDirectory.mkdirs()) {
+			throw new IOException("unable to create spool directory "
+					+ spoolDirectory);
+		}
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.socket().bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		workers = Executors.newFixedThreadPool(threads);
+
+		running = true;
+		thread = new Thread(this, "SocketProductReceiverServer-" + port);
+		thread.start();
+	}
+
+	/**
+	 * Stop accepting connections, close open connections, and wait for
+	 * workers storing products.
+	 */
+	public void stop() {
+		running = false;
+		if (thread == null) {
+			return;
+		}
+		selector.wakeup();
+		try {
+			thread.join(SHUTDOWN_WAIT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		workers.shutdown();
+		try {
+			workers.awaitTermination(SHUTDOWN_WAIT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Selector loop.
+	 */
+	@Override
+	public void run() {
+		long lastTimeoutCheck = System.currentTimeMillis();
+		try {
+			while (running) {
+				selector.select(TIMEOUT_CHECK_INTERVAL);
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+
+				Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+				while (iter.hasNext()) {
+					SelectionKey key = iter.next();
+					iter.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isWritable()) {
+							connection.onWritable();
+						}
+						if (key.isValid() && key.isReadable()) {
+							connection.onReadable();
+						}
+					} catch (Exception e) {
+						connection.onError(e);
+					}
+				}
+
+				long now = System.currentTimeMillis();
+				if (now - lastTimeoutCheck >= TIMEOUT_CHECK_INTERVAL) {
+					checkTimeouts(now);
+					lastTimeoutCheck = now;
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "[" + receiver.getName()
+					+ "] selector exception, no longer accepting connections", e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection) {
+					((Connection) key.attachment()).close();
+				}
+			}
+			try {
+				serverChannel.close();
+			} catch (IOException ignore) {
+			}
+			try {
+				selector.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Accept pending connections.
+	 */
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			Connection connection = new Connection(channel);
+			connection.key = channel.register(selector, SelectionKey.OP_READ,
+					connection);
+			LOGGER.info("[" + receiver.getName() + "] accepted connection "
+					+ connection.name);
+		}
+	}
+
+	/**
+	 * Close connections that have not sent data within readTimeout.
+	 */
+	private void checkTimeouts(final long now) {
+		int readTimeout = receiver.getReadTimeout();
+		if (readTimeout <= 0) {
+			return;
+		}
+		for (SelectionKey key : selector.keys()) {
+			if (!(key.attachment() instanceof Connection)) {
+				continue;
+			}
+			Connection connection = (Connection) key.attachment();
+			if (connection.isWaitingForSender()
+					&& now - connection.lastActivity > readTimeout) {
+				LOGGER.info("[" + receiver.getName() + "] read timeout "
+						+ connection.name);
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Reserve memory for spooling.
+	 *
+	 * @return true if reserved, false if SPOOL_MEMORY_TOTAL_LIMIT would be
+	 *         exceeded.
+	 */
+	private boolean reserveSpoolMemory(final long length) {
+		if (spoolMemory.addAndGet(length) <= SPOOL_MEMORY_TOTAL_LIMIT) {
+			return true;
+		}
+		spoolMemory.addAndGet(-length);
+		return false;
+	}
+
+	/**
+	 * @return bytes spooled in memory for all connections.
+	 */
+	public long getSpoolMemory() {
+		return spoolMemory.get();
+	}
+
+	/**
+	 * Run a task in the selector thread.
+	 */
+	private void runInSelector(final Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * State for one sender connection.
+	 *
+	 * Only accessed from the selector thread, workers post results using
+	 * runInSelector.
+	 */
+	private class Connection {
+
+		private final SocketChannel channel;
+		/** Description of connection, for log messages. */
+		private final String name;
+		private SelectionKey key;
+		private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private final Deque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+		private State state = State.PREAMBLE;
+		private String protocolVersion = null;
+		private Spool spool = null;
+		private int chunkRemaining = 0;
+		private boolean endOfInput = false;
+		private long lastActivity = System.currentTimeMillis();
+
+		public Connection(final SocketChannel channel) {
+			this.channel = channel;
+			this.name = channel.socket().toString();
+		}
+
+		/**
+		 * @return whether the server is waiting for the sender to send data.
+		 */
+		public boolean isWaitingForSender() {
+			return state != State.WORKING && state != State.CLOSING
+					&& (spool == null || !spool.isWriting());
+		}
+
+		public void onReadable() throws Exception {
+			int read = channel.read(in);
+			if (read == -1) {
+				endOfInput = true;
+			} else if (read > 0) {
+				lastActivity = System.currentTimeMillis();
+			}
+			process();
+		}
+
+		public void onWritable() throws IOException {
+			while (!out.isEmpty()) {
+				ByteBuffer buffer = out.peekFirst();
+				channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					break;
+				}
+				out.removeFirst();
+			}
+			updateInterest();
+		}
+
+		/**
+		 * Parse buffered input.
+		 */
+		private void process() throws Exception {
+			in.flip();
+			try {
+				boolean progress = true;
+				while (progress && key.isValid()) {
+					progress = step();
+				}
+			} finally {
+				in.compact();
+			}
+			if (!key.isValid()) {
+				return;
+			}
+			if (endOfInput && isWaitingForSender()) {
+				if (state == State.PRODUCT) {
+					// sender closed output to mark end of product
+					storeProduct();
+				} else {
+					if ((state != State.PRODUCT_ID && state != State.PREAMBLE)
+							|| in.position() != 0) {
+						LOGGER.info("[" + receiver.getName() + "] connection "
+								+ name
+								+ " closed before product was complete");
+					}
+					close();
+					return;
+				}
+			} else if (in.remaining() == 0 && isWaitingForSender()) {
+				throw new IOException("message larger than read buffer");
+			}
+			updateInterest();
+		}
+
+		/**
+		 * Consume buffered input for current state.
+		 *
+		 * @return whether to call again.
+		 */
+		private boolean step() throws Exception {
+			if (spool != null && spool.isWriting()) {
+				// continue after worker writes spool file
+				return false;
+			}
+			switch (state) {
+			case PREAMBLE:
+				return readPreamble();
+			case PRODUCT_ID:
+				String id = readString("product id");
+				if (id == null) {
+					return false;
+				}
+				checkProduct(ProductId.parse(id));
+				return false;
+			case PRODUCT:
+				if (in.remaining() == 0) {
+					return false;
+				}
+				spool.write(in, in.remaining());
+				return false;
+			case CHUNK_HEADER:
+				if (in.remaining() < 4) {
+					return false;
+				}
+				int length = in.getInt();
+				if (length < 0 || length > ChunkedInputStream.MAX_CHUNK_SIZE) {
+					throw new IOException("invalid chunk length " + length);
+				}
+				if (length == 0) {
+					storeProduct();
+					return false;
+				}
+				chunkRemaining = length;
+				state = State.CHUNK;
+				return true;
+			case CHUNK:
+				if (in.remaining() == 0) {
+					return false;
+				}
+				int count = Math.min(in.remaining(), chunkRemaining);
+				spool.write(in, count);
+				chunkRemaining -= count;
+				if (chunkRemaining == 0) {
+					state = State.CHUNK_HEADER;
+					return true;
+				}
+				return false;
+			default:
+				return false;
+			}
+		}
+
+		/**
+		 * Detect PDL protocol header.
+		 */
+		private boolean readPreamble() throws IOException {
+			int start = in.position();
+			int available = in.remaining();
+			if (available < 3 && !endOfInput) {
+				return false;
+			}
+			if (available == 0) {
+				// closed without sending anything
+				return false;
+			}
+			if (available >= 3 && in.get(start) == 'P'
+					&& in.get(start + 1) == 'D' && in.get(start + 2) == 'L') {
+				in.position(start + 3);
+				String version = readString("protocol version");
+				if (version == null) {
+					in.position(start);
+					return false;
+				}
+				protocolVersion = version;
+				LOGGER.fine("[" + receiver.getName() + "] protocol version '"
+						+ protocolVersion + "' " + name);
+				if (!SocketProductSender.PROTOCOL_VERSION_0_1.equals(version)
+						&& !SocketProductSender.PROTOCOL_VERSION_0_2
+								.equals(version)) {
+					throw new IOException("unsupported protocol version");
+				}
+				state = State.PRODUCT_ID;
+			} else {
+				LOGGER.fine("[" + receiver.getName()
+						+ "] not using PDL protocol " + name);
+				spool = new Spool();
+				state = State.PRODUCT;
+			}
+			return true;
+		}
+
+		/**
+		 * Read a length prefixed string.
+		 *
+		 * @return string, or null if not completely buffered.
+		 */
+		private String readString(final String name) throws IOException {
+			if (in.remaining() < 4) {
+				return null;
+			}
+			int length = in.getInt(in.position());
+			if (length < 0
+					|| length > SocketProductReceiverHandler.PDL_PROTOCOL_BUFFER) {
+				throw new IOException(name + " too long");
+			}
+			if (in.remaining() < 4 + length) {
+				return null;
+			}
+			in.position(in.position() + 4);
+			byte[] bytes = new byte[length];
+			in.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Check whether product is already in storage using a worker.
+		 */
+		private void checkProduct(final ProductId id) {
+			state = State.WORKING;
+			workers.submit(() -> {
+				boolean haveProduct;
+				try {
+					haveProduct = receiver.getProductStorage().hasProduct(id);
+				} catch (Exception e) {
+					runInSelector(() -> onError(e));
+					return;
+				}
+				runInSelector(() -> {
+					if (!key.isValid()) {
+						return;
+					}
+					if (haveProduct) {
+						reply(SocketProductSender.ALREADY_HAVE_PRODUCT);
+						nextProduct();
+					} else {
+						reply(SocketProductSender.UNKNOWN_PRODUCT);
+						spool = new Spool();
+						state = (SocketProductSender.PROTOCOL_VERSION_0_2
+								.equals(protocolVersion) ? State.CHUNK_HEADER
+								: State.PRODUCT);
+						resume();
+					}
+				});
+			});
+		}
+
+		/**
+		 * Store spooled product using a worker.
+		 */
+		private void storeProduct() {
+			final Spool product = spool;
+			spool = null;
+			state = State.WORKING;
+			updateInterest();
+			workers.submit(() -> {
+				String status;
+				try {
+					status = receiver.storeAndNotify(IOUtil
+							.autoDetectProductSource(product.getInputStream()));
+					LOGGER.info(status + " from " + name);
+				} catch (Exception e) {
+					runInSelector(() -> onError(e));
+					return;
+				} finally {
+					product.delete();
+				}
+				runInSelector(() -> {
+					if (!key.isValid()) {
+						return;
+					}
+					reply(status);
+					nextProduct();
+				});
+			});
+		}
+
+		/**
+		 * After replying, wait for next product or close.
+		 */
+		private void nextProduct() {
+			if (SocketProductSender.PROTOCOL_VERSION_0_2.equals(protocolVersion)) {
+				state = State.PRODUCT_ID;
+				resume();
+			} else {
+				state = State.CLOSING;
+				updateInterest();
+			}
+		}
+
+		/**
+		 * Process input buffered while waiting for a worker.
+		 */
+		private void resume() {
+			lastActivity = System.currentTimeMillis();
+			try {
+				process();
+			} catch (Exception e) {
+				onError(e);
+			}
+		}
+
+		/**
+		 * Send error to sender, then close.
+		 */
+		public void onError(final Exception e) {
+			if (spool != null) {
+				spool.delete();
+				spool = null;
+			}
+			if (!key.isValid()) {
+				return;
+			}
+			if (e instanceof ProductAlreadyInStorageException
+					|| e.getCause() instanceof ProductAlreadyInStorageException) {
+				LOGGER.info("[" + receiver.getName() + "] product from "
+						+ name + " already in storage");
+				reply(SocketProductSender.ALREADY_HAVE_PRODUCT);
+			} else {
+				LOGGER.log(Level.WARNING, "[" + receiver.getName()
+						+ "] exception while processing socket", e);
+				reply(SocketProductSender.RECEIVE_ERROR + " '"
+						+ e.getMessage() + "'");
+			}
+			state = State.CLOSING;
+			updateInterest();
+		}
+
+		/**
+		 * Queue a reply to the sender.
+		 */
+		private void reply(final String message) {
+			byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer buffer;
+			if (protocolVersion == null) {
+				buffer = ByteBuffer.wrap(bytes);
+			} else {
+				buffer = ByteBuffer.allocate(4 + bytes.length);
+				buffer.putInt(bytes.length);
+				buffer.put(bytes);
+				buffer.flip();
+			}
+			out.addLast(buffer);
+		}
+
+		/**
+		 * Update selector interest for current state.
+		 */
+		private void updateInterest() {
+			if (!key.isValid()) {
+				return;
+			}
+			if (state == State.CLOSING && out.isEmpty()) {
+				close();
+				return;
+			}
+			int ops = 0;
+			if (!out.isEmpty()) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			if (isWaitingForSender() && !endOfInput) {
+				ops |= SelectionKey.OP_READ;
+			}
+			key.interestOps(ops);
+		}
+
+		public void close() {
+			if (!channel.isOpen()) {
+				return;
+			}
+			if (spool != null) {
+				spool.delete();
+				spool = null;
+			}
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException ignore) {
+			}
+			LOGGER.info("[" + receiver.getName() + "] closed connection "
+					+ name);
+		}
+
+		/**
+		 * Product bytes received so far, in memory until SPOOL_MEMORY_LIMIT
+		 * (or SPOOL_MEMORY_TOTAL_LIMIT for all connections) and then in a
+		 * temporary file.
+		 *
+		 * File writes are run by workers one at a time, and the connection
+		 * does not read while a write is in progress.
+		 */
+		private class Spool {
+
+			/** Bytes received, only used by selector thread. */
+			private long size = 0L;
+			/** Whether bytes go to file, only used by selector thread. */
+			private boolean spooling = false;
+			/** Whether a worker is writing, only used by selector thread. */
+			private boolean writing = false;
+
+			/** Bytes in memory, guarded by this. */
+			private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+			private File file = null;
+			private OutputStream stream = null;
+			private InputStream input = null;
+			private boolean deleted = false;
+
+			/**
+			 * @return whether a worker is writing to the spool file.
+			 */
+			public boolean isWriting() {
+				return writing;
+			}
+
+			public void write(final ByteBuffer buffer, final int length)
+					throws IOException {
+				long sizeLimit = receiver.getSizeLimit();
+				if (sizeLimit > 0 && size + length > sizeLimit) {
+					throw new IOException("Read more than size limit ("
+							+ sizeLimit + ") bytes");
+				}
+				size += length;
+				if (!spooling && size <= SPOOL_MEMORY_LIMIT
+						&& reserveSpoolMemory(length)) {
+					synchronized (this) {
+						memory.write(buffer.array(), buffer.arrayOffset()
+								+ buffer.position(), length);
+					}
+					buffer.position(buffer.position() + length);
+					return;
+				}
+
+				// copy so the connection can keep buffering input
+				final byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				spooling = true;
+				writing = true;
+				workers.submit(() -> {
+					try {
+						writeFile(bytes);
+					} catch (Exception e) {
+						runInSelector(() -> {
+							writing = false;
+							onError(e);
+						});
+						return;
+					}
+					runInSelector(() -> {
+						writing = false;
+						if (key.isValid()) {
+							resume();
+						}
+					});
+				});
+			}
+
+			/**
+			 * Append bytes to the spool file, moving bytes in memory to the
+			 * file first. Called by workers.
+			 */
+			private synchronized void writeFile(final byte[] bytes)
+					throws IOException {
+				if (deleted) {
+					return;
+				}
+				if (file == null) {
+					file = File.createTempFile("pdl-receive-", ".tmp",
+							spoolDirectory);
+					stream = new BufferedOutputStream(new FileOutputStream(file));
+					memory.writeTo(stream);
+					releaseMemory();
+				}
+				stream.write(bytes);
+			}
+
+			public synchronized InputStream getInputStream() throws IOException {
+				if (file == null) {
+					return new ByteArrayInputStream(memory.toByteArray());
+				}
+				stream.close();
+				input = new FileInputStream(file);
+				return input;
+			}
+
+			public synchronized void delete() {
+				deleted = true;
+				releaseMemory();
+				StreamUtils.closeStream(stream);
+				StreamUtils.closeStream(input);
+				if (file != null && !file.delete() && file.exists()) {
+					file.deleteOnExit();
+				}
+			}
+
+			/**
+			 * Return memory reserved for this spool, while holding lock.
+			 */
+			private void releaseMemory() {
+				if (memory != null) {
+					spoolMemory.addAndGet(-memory.size());
+					memory = null;
+				}
+			}
+
+		}
+
+	}
+
+}
@@ -8,6 +8,7 @@ import gov.usgs.earthquake.product.io.BinaryIO;
 import gov.usgs.earthquake.product.io.BinaryProductHandler;
 import gov.usgs.earthquake.product.io.ObjectProductSource;
 import gov.usgs.earthquake.product.io.XmlProductHandler;
+import gov.usgs.earthquake.util.ChunkedOutputStream;
 import gov.usgs.earthquake.util.TimeoutOutputStream;
 import gov.usgs.util.Config;
 import gov.usgs.util.DefaultConfigurable;
@@ -25,6 +26,9 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
@@ -41,6 +45,19 @@ import java.util.zip.DeflaterOutputStream;
  * 
  * <dt>port</dt>
  * <dd>(Optional, default=11235) The port on host of a SocketProductReceiver</dd>
+ *
+ * <dt>persistentConnections</dt>
+ * <dd>(Optional, default=false) Keep connections open and send multiple
+ * products per connection, using protocol version 0.2.  Falls back to
+ * version 0.1 when the receiver does not support it, and tries version 0.2
+ * again after 10 minutes.</dd>
+ *
+ * <dt>maxIdleConnections</dt>
+ * <dd>(Optional, default=2) Number of open connections kept for reuse.</dd>
+ *
+ * <dt>connectionIdleTimeout</dt>
+ * <dd>(Optional, default=10000) Milliseconds an unused connection is kept,
+ * should be less than the receiver readTimeout.</dd>
  * </dl>
  * 
  * @author jmfee
@@ -84,8 +101,31 @@ public class SocketProductSender extends DefaultConfigurable implements
 	public static final String ENABLE_PDL_PROTOCOL_PROPERTY = "enablePdlProtocol";
 	public static final String DEFAULT_ENABLE_PDL_PROTOCOL = "true";
 
+	/** Property name to configure persistent connections. */
+	public static final String PERSISTENT_CONNECTIONS_PROPERTY = "persistentConnections";
+	/** Default value for whether to use persistent connections. */
+	public static final String DEFAULT_PERSISTENT_CONNECTIONS = "false";
+
+	/** Property name to configure number of idle connections kept. */
+	public static final String MAX_IDLE_CONNECTIONS_PROPERTY = "maxIdleConnections";
+	/** Default number of idle connections kept. */
+	public static final String DEFAULT_MAX_IDLE_CONNECTIONS = "2";
+
+	/** Property name to configure how long idle connections are kept. */
+	public static final String CONNECTION_IDLE_TIMEOUT_PROPERTY = "connectionIdleTimeout";
+	/** Default milliseconds idle connections are kept. */
+	public static final String DEFAULT_CONNECTION_IDLE_TIMEOUT = "10000";
+
+	/**
+	 * Milliseconds before persistent connections are tried again, after a
+	 * receiver rejects protocol version 0.2.
+	 */
+	public static final long PERSISTENT_RETRY_INTERVAL = 10 * 60 * 1000L;
+
 	public static final byte[] PROTOCOL_HEADER = { 'P', 'D', 'L' };
 	public static final String PROTOCOL_VERSION_0_1 = "v0.1";
+	/** Multiple products per connection, each product sent as chunks. */
+	public static final String PROTOCOL_VERSION_0_2 = "v0.2";
 	public static final String UNKNOWN_PRODUCT = "Unknown product";
 	public static final String ALREADY_HAVE_PRODUCT = "Already have product";
 	public static final String RECEIVE_ERROR = "Error receiving product";
@@ -114,6 +154,17 @@ public class SocketProductSender extends DefaultConfigurable implements
 
 	private Socket socket = null;
 
+	/** Whether to send multiple products per connection. */
+	private boolean persistentConnections = false;
+	/** Number of idle connections kept for reuse. */
+	private int maxIdleConnections = 2;
+	/** Milliseconds an idle connection is kept. */
+	private long connectionIdleTimeout = 10000L;
+	/** Time before which persistent connections are not used, in millis. */
+	private volatile long persistentRetryTime = 0L;
+	/** Idle connections, most recently used first. */
+	private final Deque<PersistentConnection> idleConnections = new ArrayDeque<PersistentConnection>();
+
 	/**
 	 * Construct a new ProductSender.
 	 * 
@@ -164,10 +215,35 @@ public class SocketProductSender extends DefaultConfigurable implements
 	 * Updates may be retrieved from a ProductTracker.
 	 */
 	public void sendProduct(Product product) throws Exception {
+		sendProduct(product, null);
+	}
+
+	/**
+	 * Send a product, using an encoding shared with other senders.
+	 *
+	 * The product is only encoded when the receiver does not already have it,
+	 * and senders using the same format and compression share one encoding.
+	 *
+	 * @param product
+	 *            product to send.
+	 * @param encoded
+	 *            shared encodings of product, or null to encode while
+	 *            sending.
+	 * @throws Exception
+	 */
+	public void sendProduct(final Product product, final EncodedProduct encoded)
+			throws Exception {
+		if (enablePdlProtocol && persistentConnections
+				&& System.currentTimeMillis() >= persistentRetryTime) {
+			if (sendPersistent(product, encoded)) {
+				return;
+			}
+			// receiver may only support version 0.1
+		}
+
 		BinaryIO io = new BinaryIO();
 		boolean sendProduct = true;
 		String status = null;
-		ObjectProductSource productSource = null;
 		InputStream in = null;
 		OutputStream out = null;
 		try {
@@ -177,8 +253,6 @@ public class SocketProductSender extends DefaultConfigurable implements
 			LOGGER.info("[" + getName() + "] sending product to "
 					+ socket.toString());
 
-			productSource = new ObjectProductSource(product);
-
 			in = new BufferedInputStream(socket.getInputStream());
 			out = new BufferedOutputStream(socket.getOutputStream());
 			if (writeTimeout > 0) {
@@ -209,25 +283,7 @@ public class SocketProductSender extends DefaultConfigurable implements
 			}
 
 			if (sendProduct) {
-				if (enableDeflate) {
-					out = new DeflaterOutputStream(out, new Deflater(
-							deflateLevel));
-				}
-
-				// make sure product handler doesn't close stream before done
-				OutputStream productOut = new StreamUtils.UnclosableOutputStream(
-						out);
-				if (binaryFormat) {
-					productSource
-							.streamTo(new BinaryProductHandler(productOut));
-				} else {
-					productSource.streamTo(new XmlProductHandler(productOut));
-				}
-
-				// deflate requires "finish"
-				if (enableDeflate) {
-					((DeflaterOutputStream) out).finish();
-				}
+				writeProduct(product, encoded, out);
 
 				// flush buffered output stream to socket
 				out.flush();
@@ -291,6 +347,282 @@ public class SocketProductSender extends DefaultConfigurable implements
 		}
 	}
 
+	/**
+	 * Send a product using a persistent connection.
+	 *
+	 * Reused connections may have been closed by the receiver while idle, so
+	 * a failure on a reused connection is retried once on a new connection.
+	 * Products already received are not sent again.
+	 *
+	 * @param product
+	 *            product to send.
+	 * @param encoded
+	 *            shared encodings of product, or null.
+	 * @return false if the receiver does not support protocol version 0.2, or
+	 *         closed a new connection before replying. Only a rejection of
+	 *         version 0.2 stops persistent connections, for
+	 *         PERSISTENT_RETRY_INTERVAL.
+	 * @throws Exception
+	 */
+	protected boolean sendPersistent(final Product product,
+			final EncodedProduct encoded) throws Exception {
+		PersistentConnection connection = null;
+		String status = null;
+		try {
+			connection = takeConnection();
+			try {
+				status = connection.send(product, encoded);
+			} catch (IOException e) {
+				connection.close();
+				if (!connection.reused) {
+					if (connection.replies == 0) {
+						// older receivers may reset instead of replying, but
+						// so may a receiver that is restarting. Use version
+						// 0.1 for this product only.
+						LOGGER.log(Level.FINE, "[" + getName() + "] new"
+								+ " connection closed before reply", e);
+						return false;
+					}
+					throw e;
+				}
+				LOGGER.fine("[" + getName() + "] reused connection failed,"
+						+ " retrying with new connection");
+				connection = openConnection();
+				status = connection.send(product, encoded);
+			}
+		} catch (SocketTimeoutException ste) {
+			closeConnection(connection);
+			throw new Exception("Error sending to " + host
+					+ ", connect or read timeout", ste);
+		} catch (UnknownHostException uhe) {
+			throw new Exception("Unknown host " + host
+					+ ", check that DNS is properly configured", uhe);
+		} catch (Exception e) {
+			closeConnection(connection);
+			throw new Exception("[" + getName() + "] error sending to " + host,
+					e);
+		}
+
+		if (status.startsWith(RECEIVE_ERROR)) {
+			// receiver closes connection after errors
+			connection.close();
+			if (!connection.reused
+					&& status.contains("unsupported protocol version")) {
+				LOGGER.warning("[" + getName() + "] " + host
+						+ " does not support persistent connections,"
+						+ " using protocol version " + PROTOCOL_VERSION_0_1
+						+ " for " + PERSISTENT_RETRY_INTERVAL + " ms");
+				persistentRetryTime = System.currentTimeMillis()
+						+ PERSISTENT_RETRY_INTERVAL;
+				return false;
+			}
+			throw new Exception("[" + getName() + "] error sending to " + host
+					+ ", message=" + status);
+		}
+
+		LOGGER.info("[" + getName() + "] send complete "
+				+ connection.socket.toString() + " response=\"" + status
+				+ "\"");
+		releaseConnection(connection);
+		return true;
+	}
+
+	/**
+	 * Write a product in the configured format and compression.
+	 *
+	 * @param product
+	 *            product to write.
+	 * @param encoded
+	 *            shared encodings of product, or null to encode while
+	 *            writing.
+	 * @param out
+	 *            stream to write, not closed.
+	 * @throws Exception
+	 */
+	protected void writeProduct(final Product product,
+			final EncodedProduct encoded, final OutputStream out)
+			throws Exception {
+		if (encoded != null) {
+			encoded.getEncoding(binaryFormat, enableDeflate, deflateLevel)
+					.writeTo(out);
+			return;
+		}
+
+		OutputStream productOut = out;
+		if (enableDeflate) {
+			productOut = new DeflaterOutputStream(productOut, new Deflater(
+					deflateLevel));
+		}
+		// make sure product handler doesn't close stream before done
+		OutputStream handlerOut = new StreamUtils.UnclosableOutputStream(
+				productOut);
+		ObjectProductSource productSource = new ObjectProductSource(product);
+		if (binaryFormat) {
+			productSource.streamTo(new BinaryProductHandler(handlerOut));
+		} else {
+			productSource.streamTo(new XmlProductHandler(handlerOut));
+		}
+		// deflate requires "finish"
+		if (enableDeflate) {
+			((DeflaterOutputStream) productOut).finish();
+		}
+	}
+
+	/**
+	 * Get an idle connection, or open a new connection.
+	 *
+	 * @return connection to receiver.
+	 * @throws IOException
+	 */
+	protected PersistentConnection takeConnection() throws IOException {
+		long oldest = System.currentTimeMillis() - connectionIdleTimeout;
+		synchronized (idleConnections) {
+			PersistentConnection connection;
+			while ((connection = idleConnections.pollFirst()) != null) {
+				// writeTimeout closes idle sockets
+				if (connection.lastUsed >= oldest
+						&& !connection.socket.isClosed()) {
+					connection.reused = true;
+					return connection;
+				}
+				connection.close();
+			}
+		}
+		return openConnection();
+	}
+
+	/**
+	 * Return a connection for reuse.
+	 *
+	 * @param connection
+	 *            connection that completed a send.
+	 */
+	protected void releaseConnection(final PersistentConnection connection) {
+		connection.lastUsed = System.currentTimeMillis();
+		synchronized (idleConnections) {
+			if (idleConnections.size() < maxIdleConnections) {
+				idleConnections.addFirst(connection);
+				return;
+			}
+		}
+		connection.close();
+	}
+
+	/**
+	 * Open a new connection and send the protocol header.
+	 *
+	 * @return connection to receiver.
+	 * @throws IOException
+	 */
+	protected PersistentConnection openConnection() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setSoTimeout(readTimeout);
+			socket.connect(new InetSocketAddress(host, port), connectTimeout);
+			LOGGER.fine("[" + getName() + "] opened connection "
+					+ socket.toString() + ", using protocol version "
+					+ PROTOCOL_VERSION_0_2);
+			PersistentConnection connection = new PersistentConnection(socket);
+			connection.out.write(PROTOCOL_HEADER);
+			connection.io.writeString(PROTOCOL_VERSION_0_2, connection.out);
+			return connection;
+		} catch (IOException e) {
+			try {
+				socket.close();
+			} catch (IOException ignore) {
+			}
+			throw e;
+		}
+	}
+
+	private void closeConnection(final PersistentConnection connection) {
+		if (connection != null) {
+			connection.close();
+		}
+	}
+
+	/**
+	 * An open connection using protocol version 0.2.
+	 */
+	protected class PersistentConnection {
+
+		protected final BinaryIO io = new BinaryIO();
+		protected final Socket socket;
+		protected final InputStream in;
+		protected final OutputStream out;
+		/** When connection last completed a send. */
+		protected long lastUsed = System.currentTimeMillis();
+		/** Whether connection was taken from idle connections. */
+		protected boolean reused = false;
+		/** Number of replies read from receiver. */
+		protected int replies = 0;
+
+		public PersistentConnection(final Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			OutputStream socketOut = new BufferedOutputStream(
+					socket.getOutputStream());
+			if (writeTimeout > 0) {
+				socketOut = new TimeoutOutputStream(socketOut, writeTimeout);
+			}
+			this.out = socketOut;
+		}
+
+		/**
+		 * Send one product.
+		 *
+		 * @param product
+		 *            product to send.
+		 * @param encoded
+		 *            shared encodings of product, or null.
+		 * @return status from receiver.
+		 * @throws Exception
+		 */
+		public String send(final Product product, final EncodedProduct encoded)
+				throws Exception {
+			io.writeString(product.getId().toString(), out);
+			out.flush();
+
+			String status = readReply();
+			if (ALREADY_HAVE_PRODUCT.equals(status)
+					|| status.startsWith(RECEIVE_ERROR)) {
+				return status;
+			} else if (!UNKNOWN_PRODUCT.equals(status)) {
+				throw new IOException("Unexpected hub reply '" + status + "'");
+			}
+
+			// chunks mark end of product without closing connection
+			ChunkedOutputStream chunkedOut = new ChunkedOutputStream(out);
+			writeProduct(product, encoded, chunkedOut);
+			chunkedOut.finish();
+
+			return readReply();
+		}
+
+		private String readReply() throws IOException {
+			String reply = io.readString(in);
+			replies++;
+			return reply;
+		}
+
+		/**
+		 * Close socket, ignoring errors.
+		 */
+		public void close() {
+			try {
+				if (out instanceof TimeoutOutputStream) {
+					out.close();
+				}
+			} catch (IOException ignore) {
+			}
+			try {
+				socket.close();
+			} catch (IOException ignore) {
+			}
+		}
+
+	}
+
 	/**
 	 * Reads the host and port from config.
 	 * 
@@ -341,12 +673,34 @@ public class SocketProductSender extends DefaultConfigurable implements
 				ENABLE_PDL_PROTOCOL_PROPERTY, DEFAULT_ENABLE_PDL_PROTOCOL));
 		LOGGER.config("[" + getName() + "] enablePdlProtocol is "
 				+ enablePdlProtocol);
+
+		persistentConnections = Boolean.valueOf(config.getProperty(
+				PERSISTENT_CONNECTIONS_PROPERTY, DEFAULT_PERSISTENT_CONNECTIONS));
+		LOGGER.config("[" + getName() + "] persistentConnections is "
+				+ persistentConnections);
+
+		maxIdleConnections = Integer.parseInt(config.getProperty(
+				MAX_IDLE_CONNECTIONS_PROPERTY, DEFAULT_MAX_IDLE_CONNECTIONS));
+		LOGGER.config("[" + getName() + "] maxIdleConnections is "
+				+ maxIdleConnections);
+
+		connectionIdleTimeout = Long.parseLong(config.getProperty(
+				CONNECTION_IDLE_TIMEOUT_PROPERTY,
+				DEFAULT_CONNECTION_IDLE_TIMEOUT));
+		LOGGER.config("[" + getName() + "] connectionIdleTimeout is "
+				+ connectionIdleTimeout);
 	}
 
 	/**
-	 * Makes sure the socket is closed.
+	 * Makes sure the socket, and any idle connections, are closed.
 	 */
 	public void shutdown() throws Exception {
+		synchronized (idleConnections) {
+			PersistentConnection connection;
+			while ((connection = idleConnections.pollFirst()) != null) {
+				connection.close();
+			}
+		}
 		if (socket != null) {
 			if (!socket.isOutputShutdown()) {
 				try {
@@ -365,7 +719,7 @@ public class SocketProductSender extends DefaultConfigurable implements
 	}
 
 	/**
-	 * Does nothing, a socket is opened each time a product is sent.
+	 * Does nothing, sockets are opened when products are sent.
 	 */
 	public void startup() throws Exception {
 		// Nothing to do for startup...
@@ -431,6 +785,51 @@ public class SocketProductSender extends DefaultConfigurable implements
 		this.enablePdlProtocol = enablePdlProtocol;
 	}
 
+	/**
+	 * @return whether persistent connections are used
+	 */
+	public boolean isPersistentConnections() {
+		return persistentConnections;
+	}
+
+	/**
+	 * @param persistentConnections
+	 *            whether to use persistent connections
+	 */
+	public void setPersistentConnections(boolean persistentConnections) {
+		this.persistentConnections = persistentConnections;
+	}
+
+	/**
+	 * @return the maxIdleConnections
+	 */
+	public int getMaxIdleConnections() {
+		return maxIdleConnections;
+	}
+
+	/**
+	 * @param maxIdleConnections
+	 *            the maxIdleConnections to set
+	 */
+	public void setMaxIdleConnections(int maxIdleConnections) {
+		this.maxIdleConnections = maxIdleConnections;
+	}
+
+	/**
+	 * @return the connectionIdleTimeout
+	 */
+	public long getConnectionIdleTimeout() {
+		return connectionIdleTimeout;
+	}
+
+	/**
+	 * @param connectionIdleTimeout
+	 *            the connectionIdleTimeout to set
+	 */
+	public void setConnectionIdleTimeout(long connectionIdleTimeout) {
+		this.connectionIdleTimeout = connectionIdleTimeout;
+	}
+
 	/**
 	 * @return the connectTimeout
 	 */
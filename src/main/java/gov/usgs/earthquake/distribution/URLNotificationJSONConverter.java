@@ -4,10 +4,12 @@ import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.util.XmlUtils;
 
 import java.io.InputStream;
+import java.io.StringReader;
 import java.net.URL;
 import java.util.Date;
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
 
 public class URLNotificationJSONConverter {
@@ -22,21 +24,38 @@ public class URLNotificationJSONConverter {
   public static final String ATTRIBUTE_URL = "url";
 
   public static String toJSON(final URLNotification notification) {
+    return toJSON((Notification) notification);
+  }
+
+  /**
+   * Convert any notification to JSON.
+   *
+   * The tracker URL is omitted when null, and the product URL is only
+   * included for URLNotifications. Used for notifications sent to hubs, and
+   * for notifications stored on disk.
+   *
+   * @param notification notification to convert.
+   * @return json string, without newlines.
+   */
+  public static String toJSON(final Notification notification) {
     //id
     ProductId id = notification.getProductId();
 
-    JsonObject json = Json.createObjectBuilder()
+    JsonObjectBuilder json = Json.createObjectBuilder()
       .add(ATTRIBUTE_PRODUCT_ID,Json.createObjectBuilder()
         .add(ATTRIBUTE_SOURCE,id.getSource())
         .add(ATTRIBUTE_TYPE,id.getType())
         .add(ATTRIBUTE_CODE,id.getCode())
-        .add(ATTRIBUTE_UPDATE_TIME, XmlUtils.formatDate(id.getUpdateTime())))
-      .add(ATTRIBUTE_TRACKER_URL,notification.getTrackerURL().toString())
-      .add(ATTRIBUTE_EXPIRES,XmlUtils.formatDate(notification.getExpirationDate()))
-      .add(ATTRIBUTE_URL,notification.getProductURL().toString())
-      .build();
-
-    return json.toString();
+        .add(ATTRIBUTE_UPDATE_TIME, XmlUtils.formatDate(id.getUpdateTime())));
+    if (notification.getTrackerURL() != null) {
+      json.add(ATTRIBUTE_TRACKER_URL,notification.getTrackerURL().toString());
+    }
+    json.add(ATTRIBUTE_EXPIRES,XmlUtils.formatDate(notification.getExpirationDate()));
+    if (notification instanceof URLNotification) {
+      json.add(ATTRIBUTE_URL,((URLNotification) notification).getProductURL().toString());
+    }
+
+    return json.build().toString();
   }
 
   public static URLNotification parseJSON(final InputStream message) throws Exception{
@@ -48,6 +67,36 @@ public class URLNotificationJSONConverter {
   }
 
   public static URLNotification parseJSON(final JsonObject json) throws Exception{
+    Notification notification = parseNotification(json);
+    if (!(notification instanceof URLNotification)) {
+      throw new IllegalArgumentException("Notification missing " + ATTRIBUTE_URL);
+    }
+    return (URLNotification) notification;
+  }
+
+  /**
+   * Parse a notification from toJSON(Notification).
+   *
+   * @param json json string.
+   * @return URLNotification when json has a product URL,
+   *         otherwise DefaultNotification.
+   * @throws Exception if json is not a valid notification.
+   */
+  public static Notification parseNotification(final String json) throws Exception{
+    try (JsonReader jsonReader = Json.createReader(new StringReader(json))) {
+      return parseNotification(jsonReader.readObject());
+    }
+  }
+
+  /**
+   * Parse a notification from toJSON(Notification).
+   *
+   * @param json json object.
+   * @return URLNotification when json has a product URL,
+   *         otherwise DefaultNotification.
+   * @throws Exception if json is not a valid notification.
+   */
+  public static Notification parseNotification(final JsonObject json) throws Exception{
     JsonObject idJson = json.getJsonObject(ATTRIBUTE_PRODUCT_ID);
 
     ProductId id = new ProductId(
@@ -55,12 +104,19 @@ public class URLNotificationJSONConverter {
             idJson.getString(ATTRIBUTE_TYPE),
             idJson.getString(ATTRIBUTE_CODE),
             XmlUtils.getDate(idJson.getString(ATTRIBUTE_UPDATE_TIME)));
-
-    return new URLNotification(
-            id,
-            XmlUtils.getDate(json.getString(ATTRIBUTE_EXPIRES)),
-            new URL(json.getString(ATTRIBUTE_TRACKER_URL)),
-            new URL(json.getString(ATTRIBUTE_URL)));
+    Date expires = XmlUtils.getDate(json.getString(ATTRIBUTE_EXPIRES));
+    URL trackerURL = json.containsKey(ATTRIBUTE_TRACKER_URL)
+            ? new URL(json.getString(ATTRIBUTE_TRACKER_URL))
+            : null;
+
+    if (json.containsKey(ATTRIBUTE_URL)) {
+      return new URLNotification(
+              id,
+              expires,
+              trackerURL,
+              new URL(json.getString(ATTRIBUTE_URL)));
+    }
+    return new DefaultNotification(id, expires, trackerURL);
   }
 
   public static void main(String[] args) throws Exception{
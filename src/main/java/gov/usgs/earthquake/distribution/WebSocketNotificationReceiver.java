@@ -53,7 +53,11 @@ public class WebSocketNotificationReceiver extends DefaultNotificationReceiver i
   private boolean retryOnClose;
 
   private WebSocketClient client;
-  private String sequence = "0";
+  private volatile String sequence = "0";
+
+  private int checkpointMessages = Integer.parseInt(SequenceCheckpointer.DEFAULT_CHECKPOINT_MESSAGES);
+  private long checkpointInterval = Long.parseLong(SequenceCheckpointer.DEFAULT_CHECKPOINT_INTERVAL);
+  private SequenceCheckpointer checkpointer;
 
 
   @Override
@@ -67,6 +71,12 @@ public class WebSocketNotificationReceiver extends DefaultNotificationReceiver i
     timeout = Long.parseLong(config.getProperty(CONNECT_TIMEOUT_PROPERTY, DEFAULT_CONNECT_TIMEOUT));
     retryOnClose = Boolean.parseBoolean(config.getProperty(RETRY_ON_CLOSE_PROPERTY, DEFAULT_RETRY_ON_CLOSE));
     trackingFileName = config.getProperty(TRACKING_FILE_NAME_PROPERTY, DEFAULT_TRACKING_FILE_NAME);
+    checkpointMessages = Integer.parseInt(config.getProperty(
+            SequenceCheckpointer.CHECKPOINT_MESSAGES_PROPERTY,
+            SequenceCheckpointer.DEFAULT_CHECKPOINT_MESSAGES));
+    checkpointInterval = Long.parseLong(config.getProperty(
+            SequenceCheckpointer.CHECKPOINT_INTERVAL_PROPERTY,
+            SequenceCheckpointer.DEFAULT_CHECKPOINT_INTERVAL));
   }
 
   /**
@@ -87,18 +97,33 @@ public class WebSocketNotificationReceiver extends DefaultNotificationReceiver i
       sequence = json.getString(SEQUENCE_PROPERTY);
     }
 
+    //write tracking file in background
+    checkpointer = new SequenceCheckpointer(getName(), () -> {
+      writeTrackingFile();
+      return null;
+    }, checkpointMessages, checkpointInterval);
+    checkpointer.startup();
+
     //open websocket
     client = new WebSocketClient(new URI(serverHost + ":" + serverPort + serverPath + sequence), this, attempts, timeout, true);
   }
 
   /**
-   * Closes web socket
+   * Closes web socket, and writes any pending tracking file update
    * @throws Exception
    */
   @Override
   public void shutdown() throws Exception{
     //close socket
     client.shutdown();
+    if (checkpointer != null) {
+      try {
+        checkpointer.shutdown();
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "[" + getName() + "] failed to write tracking file", e);
+      }
+      checkpointer = null;
+    }
     super.shutdown();
   }
 
@@ -145,7 +170,7 @@ public class WebSocketNotificationReceiver extends DefaultNotificationReceiver i
 
   /**
    * Message handler function passed to WebSocketClient
-   * Parses the message as JSON, receives the contained URL notification, and writes the tracking file.
+   * Parses the message as JSON, receives the contained URL notification, and updates the tracking file.
    * @param message
    */
   @Override
@@ -167,9 +192,13 @@ public class WebSocketNotificationReceiver extends DefaultNotificationReceiver i
       //send heartbeat
       HeartbeatListener.sendHeartbeatMessage(getName(), "nats notification timestamp", json.getString(TIMESTAMP_PROPERTY));
 
-      //write tracking file
+      //update tracking file
       sequence = json.getJsonNumber(SEQUENCE_PROPERTY).toString();
-      writeTrackingFile();
+      if (checkpointer != null) {
+        checkpointer.update();
+      } else {
+        writeTrackingFile();
+      }
     } catch (Exception e) {
       LOGGER.log(Level.WARNING, "[" + getName() + "] exception while processing URLNotification ", e);
     }
@@ -245,4 +274,20 @@ public class WebSocketNotificationReceiver extends DefaultNotificationReceiver i
   public void setTimeout(long timeout) {
     this.timeout = timeout;
   }
+
+  public int getCheckpointMessages() {
+    return checkpointMessages;
+  }
+
+  public void setCheckpointMessages(int checkpointMessages) {
+    this.checkpointMessages = checkpointMessages;
+  }
+
+  public long getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  public void setCheckpointInterval(long checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
 }
\ No newline at end of file
@@ -26,6 +26,8 @@ import gov.usgs.util.XmlUtils;
  * 
  * Regions are not fetched until {@link #startup()}
  * (or {@link #fetchRegions()}) is called.
+ *
+ * Loaded regions are spatially indexed, see {@link Regions#buildIndex()}.
  */
 public class ANSSRegionsFactory {
 
@@ -135,6 +137,7 @@ public class ANSSRegionsFactory {
         try (InputStream in = StreamUtils.getInputStream(this.localRegions)) {
             JsonObject json = Json.createReader(in).readObject();
             Regions regions = new RegionsJSON().parseRegions(json);
+            regions.buildIndex();
             // regions loaded
             LOGGER.fine("Loaded ANSS Authoritative Regions from "
                     + this.localRegions
@@ -151,6 +154,7 @@ public class ANSSRegionsFactory {
         LOGGER.fine("Fetching ANSS Authoritative Regions from Geoserve");
         JsonObject json = this.geoserveLayersService.getLayer("anss");
         Regions regions = new RegionsJSON().parseRegions(json);
+        regions.buildIndex();
         LOGGER.finer("Loaded ANSS Authoritative Regions from Geoserve");
         try {
             saveToFile(this.localRegions, json);
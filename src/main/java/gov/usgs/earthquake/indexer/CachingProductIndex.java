@@ -0,0 +1,650 @@
+/*
+ * CachingProductIndex
+ */
+package gov.usgs.earthquake.indexer;
+
+import gov.usgs.earthquake.distribution.ConfigurationException;
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.Config;
+import gov.usgs.util.DefaultConfigurable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * An in memory cache of events and product summaries in front of another
+ * ProductIndex.
+ *
+ * Writes are passed through to the wrapped index, and invalidate any cached
+ * events or summaries they affect. Reads are served from the cache when
+ * possible:
+ * <ul>
+ * <li>events are cached by event index id. Event queries still run against
+ * the wrapped index, but only events that are not already cached are loaded.
+ * This requires the wrapped index to be a JDBCProductIndex, other indexes
+ * only use the product cache.</li>
+ * <li>product summaries are cached by product source, type, and code, for
+ * queries that only specify those attributes (used to find previous versions
+ * of a product).</li>
+ * </ul>
+ *
+ * Both caches are bounded, evicting the least recently used entries, and
+ * entries older than <code>maxAge</code> are reloaded. Objects returned by
+ * this index are copies, and may be modified by callers.
+ *
+ * Configurable properties:
+ * <dl>
+ * <dt>index</dt>
+ * <dd>Name of the ProductIndex being cached. When omitted, a JDBCProductIndex
+ * is created using this section's configuration.</dd>
+ *
+ * <dt>maxEvents</dt>
+ * <dd>(Optional, default 1000) Maximum number of cached events.</dd>
+ *
+ * <dt>maxProducts</dt>
+ * <dd>(Optional, default 1000) Maximum number of cached product source, type,
+ * and code combinations.</dd>
+ *
+ * <dt>maxAge</dt>
+ * <dd>(Optional, default 300000) Maximum number of milliseconds an entry is
+ * cached. 0 means entries do not expire.</dd>
+ * </dl>
+ */
+public class CachingProductIndex extends DefaultConfigurable implements
+		ProductIndex {
+
+	/** Logging object. */
+	private static final Logger LOGGER = Logger
+			.getLogger(CachingProductIndex.class.getName());
+
+	/** Name of ProductIndex being cached. */
+	public static final String INDEX_PROPERTY = "index";
+
+	/** Maximum number of cached events. */
+	public static final String MAX_EVENTS_PROPERTY = "maxEvents";
+	public static final String DEFAULT_MAX_EVENTS = "1000";
+
+	/** Maximum number of cached product source, type, code combinations. */
+	public static final String MAX_PRODUCTS_PROPERTY = "maxProducts";
+	public static final String DEFAULT_MAX_PRODUCTS = "1000";
+
+	/** Maximum age of cache entries in milliseconds. */
+	public static final String MAX_AGE_PROPERTY = "maxAge";
+	public static final String DEFAULT_MAX_AGE = "300000";
+
+	/** The index being cached. */
+	private ProductIndex index;
+
+	/** Maximum number of cached events. */
+	private int maxEvents = Integer.parseInt(DEFAULT_MAX_EVENTS);
+
+	/** Maximum number of cached product keys. */
+	private int maxProducts = Integer.parseInt(DEFAULT_MAX_PRODUCTS);
+
+	/** Maximum age of cache entries. */
+	private long maxAge = Long.parseLong(DEFAULT_MAX_AGE);
+
+	/** Cached events, keyed by event index id, in access order. */
+	private final Map<Long, CacheEntry<Event>> events = new LinkedHashMap<Long, CacheEntry<Event>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<Long, CacheEntry<Event>> eldest) {
+			if (size() > maxEvents) {
+				removeSummaryEvents(eldest.getKey(), eldest.getValue().value);
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/** Summary index id => event index id, for cached events. */
+	private final Map<Long, Long> summaryEvents = new HashMap<Long, Long>();
+
+	/**
+	 * Cached product queries, keyed by product source, type, and code, then
+	 * by query variant.
+	 */
+	private final Map<String, Map<String, CacheEntry<List<ProductSummary>>>> products = new LinkedHashMap<String, Map<String, CacheEntry<List<ProductSummary>>>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				final Map.Entry<String, Map<String, CacheEntry<List<ProductSummary>>>> eldest) {
+			return size() > maxProducts;
+		}
+	};
+
+	/** Cache statistics. */
+	private long eventHits = 0L;
+	private long eventMisses = 0L;
+	private long productHits = 0L;
+	private long productMisses = 0L;
+
+	/**
+	 * Create a CachingProductIndex that is configured using configure().
+	 */
+	public CachingProductIndex() {
+	}
+
+	/**
+	 * Create a CachingProductIndex for an existing index.
+	 *
+	 * @param index
+	 *            the index to cache.
+	 */
+	public CachingProductIndex(final ProductIndex index) {
+		this.index = index;
+	}
+
+	@Override
+	public void configure(final Config config) throws Exception {
+		String indexName = config.getProperty(INDEX_PROPERTY);
+		if (indexName != null) {
+			LOGGER.config("[" + getName() + "] loading ProductIndex '"
+					+ indexName + "'");
+			index = (ProductIndex) Config.getConfig().getObject(indexName);
+			if (index == null) {
+				throw new ConfigurationException("[" + getName()
+						+ "] ProductIndex '" + indexName
+						+ "' is not properly configured");
+			}
+		} else if (index == null) {
+			LOGGER.config("[" + getName() + "] using JDBCProductIndex");
+			index = new JDBCProductIndex();
+			index.configure(config);
+		}
+
+		maxEvents = Integer.parseInt(config.getProperty(MAX_EVENTS_PROPERTY,
+				DEFAULT_MAX_EVENTS));
+		maxProducts = Integer.parseInt(config.getProperty(
+				MAX_PRODUCTS_PROPERTY, DEFAULT_MAX_PRODUCTS));
+		maxAge = Long.parseLong(config.getProperty(MAX_AGE_PROPERTY,
+				DEFAULT_MAX_AGE));
+		LOGGER.config("[" + getName() + "] maxEvents=" + maxEvents
+				+ ", maxProducts=" + maxProducts + ", maxAge=" + maxAge);
+	}
+
+	@Override
+	public void startup() throws Exception {
+		index.startup();
+	}
+
+	@Override
+	public void shutdown() throws Exception {
+		LOGGER.fine("[" + getName() + "] " + getStatistics());
+		clear();
+		index.shutdown();
+	}
+
+	@Override
+	public void beginTransaction() throws Exception {
+		index.beginTransaction();
+	}
+
+	@Override
+	public void commitTransaction() throws Exception {
+		index.commitTransaction();
+	}
+
+	/**
+	 * Rollback the wrapped index transaction.
+	 *
+	 * Entries loaded during the transaction may include changes that were
+	 * rolled back, so the entire cache is cleared.
+	 */
+	@Override
+	public synchronized void rollbackTransaction() throws Exception {
+		clear();
+		index.rollbackTransaction();
+	}
+
+	/**
+	 * Get events matching a query.
+	 *
+	 * When the wrapped index is a JDBCProductIndex, only event index ids are
+	 * queried and events that are not cached are loaded. Otherwise the query is
+	 * passed to the wrapped index.
+	 */
+	@Override
+	public synchronized List<Event> getEvents(final ProductIndexQuery query)
+			throws Exception {
+		if (!(index instanceof JDBCProductIndex)) {
+			return index.getEvents(query);
+		}
+
+		JDBCProductIndex jdbcIndex = (JDBCProductIndex) index;
+		List<Long> eventIndexIds = jdbcIndex.getEventIndexIds(query);
+		Map<Long, Event> found = new HashMap<Long, Event>();
+		List<Long> missing = new ArrayList<Long>();
+		for (Long eventIndexId : eventIndexIds) {
+			Event event = getEvent(eventIndexId);
+			if (event == null) {
+				eventMisses++;
+				missing.add(eventIndexId);
+			} else {
+				eventHits++;
+				found.put(eventIndexId, event);
+			}
+		}
+		if (missing.size() > 0) {
+			for (Event event : jdbcIndex.loadEvents(missing)) {
+				putEvent(event);
+				found.put(event.getIndexId(), event);
+			}
+		}
+		List<Event> result = new ArrayList<Event>(eventIndexIds.size());
+		for (Long eventIndexId : eventIndexIds) {
+			result.add(copyEvent(found.get(eventIndexId)));
+		}
+		return result;
+	}
+
+	/**
+	 * Get products matching a query.
+	 *
+	 * Queries that only specify product source, type, and code are cached.
+	 */
+	@Override
+	public synchronized List<ProductSummary> getProducts(
+			final ProductIndexQuery query) throws Exception {
+		String productKey = getProductKey(query);
+		if (productKey == null) {
+			return index.getProducts(query);
+		}
+		String variant = "associated:" + query.getEventSearchType() + ":"
+				+ query.getResultType();
+		List<ProductSummary> summaries = getProducts(productKey, variant);
+		if (summaries == null) {
+			summaries = index.getProducts(query);
+			putProducts(productKey, variant, summaries);
+		}
+		return copySummaries(summaries);
+	}
+
+	/**
+	 * Get unassociated products matching a query.
+	 *
+	 * Queries that only specify product source, type, and code are cached.
+	 */
+	@Override
+	public synchronized List<ProductSummary> getUnassociatedProducts(
+			final ProductIndexQuery query) throws Exception {
+		String productKey = getProductKey(query);
+		if (productKey == null) {
+			return index.getUnassociatedProducts(query);
+		}
+		String variant = "unassociated:" + query.getEventSearchType() + ":"
+				+ query.getResultType();
+		List<ProductSummary> summaries = getProducts(productKey, variant);
+		if (summaries == null) {
+			summaries = index.getUnassociatedProducts(query);
+			putProducts(productKey, variant, summaries);
+		}
+		return copySummaries(summaries);
+	}
+
+	@Override
+	public synchronized Event addEvent(final Event event) throws Exception {
+		Event added = index.addEvent(event);
+		removeEvent(added.getIndexId());
+		return added;
+	}
+
+	@Override
+	public synchronized List<ProductId> removeEvent(final Event event)
+			throws Exception {
+		List<ProductId> removed = index.removeEvent(event);
+		removeEvent(event.getIndexId());
+		for (ProductSummary summary : event.getAllProductList()) {
+			removeProducts(summary.getId());
+		}
+		return removed;
+	}
+
+	@Override
+	public synchronized List<ProductId> removeEvents(final List<Event> events)
+			throws Exception {
+		List<ProductId> removed = index.removeEvents(events);
+		for (Event event : events) {
+			removeEvent(event.getIndexId());
+			for (ProductSummary summary : event.getAllProductList()) {
+				removeProducts(summary.getId());
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public synchronized ProductSummary addProductSummary(
+			final ProductSummary summary) throws Exception {
+		ProductSummary added = index.addProductSummary(summary);
+		removeProducts(added.getId());
+		return added;
+	}
+
+	@Override
+	public synchronized ProductId removeProductSummary(
+			final ProductSummary summary) throws Exception {
+		ProductId removed = index.removeProductSummary(summary);
+		Long eventIndexId = summaryEvents.get(summary.getIndexId());
+		if (eventIndexId != null) {
+			removeEvent(eventIndexId);
+		}
+		removeProducts(summary.getId());
+		return removed;
+	}
+
+	@Override
+	public synchronized List<ProductId> removeProductSummaries(
+			final List<ProductSummary> summaries) throws Exception {
+		List<ProductId> removed = index.removeProductSummaries(summaries);
+		for (ProductSummary summary : summaries) {
+			Long eventIndexId = summaryEvents.get(summary.getIndexId());
+			if (eventIndexId != null) {
+				removeEvent(eventIndexId);
+			}
+			removeProducts(summary.getId());
+		}
+		return removed;
+	}
+
+	@Override
+	public synchronized Event addAssociation(final Event event,
+			final ProductSummary summary) throws Exception {
+		Event associated = index.addAssociation(event, summary);
+		removeEvent(event.getIndexId());
+		removeProducts(summary.getId());
+		return associated;
+	}
+
+	@Override
+	public synchronized Event removeAssociation(final Event event,
+			final ProductSummary summary) throws Exception {
+		Event unassociated = index.removeAssociation(event, summary);
+		removeEvent(event.getIndexId());
+		removeProducts(summary.getId());
+		return unassociated;
+	}
+
+	@Override
+	public synchronized void eventsUpdated(final List<Event> events)
+			throws Exception {
+		index.eventsUpdated(events);
+		for (Event event : events) {
+			removeEvent(event.getIndexId());
+		}
+	}
+
+	/**
+	 * Remove all cached entries.
+	 */
+	public synchronized void clear() {
+		events.clear();
+		summaryEvents.clear();
+		products.clear();
+	}
+
+	/**
+	 * @return the index being cached.
+	 */
+	public ProductIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return number of events returned from the cache.
+	 */
+	public synchronized long getEventHits() {
+		return eventHits;
+	}
+
+	/**
+	 * @return number of events loaded from the wrapped index.
+	 */
+	public synchronized long getEventMisses() {
+		return eventMisses;
+	}
+
+	/**
+	 * @return number of product queries returned from the cache.
+	 */
+	public synchronized long getProductHits() {
+		return productHits;
+	}
+
+	/**
+	 * @return number of cacheable product queries run against the wrapped
+	 *         index.
+	 */
+	public synchronized long getProductMisses() {
+		return productMisses;
+	}
+
+	/**
+	 * @return a summary of cache sizes and hit/miss counts.
+	 */
+	public synchronized String getStatistics() {
+		return "events=" + events.size() + ", eventHits=" + eventHits
+				+ ", eventMisses=" + eventMisses + ", products="
+				+ products.size() + ", productHits=" + productHits
+				+ ", productMisses=" + productMisses;
+	}
+
+	/**
+	 * Get a cached event.
+	 *
+	 * @param eventIndexId
+	 *            event index id.
+	 * @return cached event, or null if not cached or expired.
+	 */
+	protected Event getEvent(final Long eventIndexId) {
+		CacheEntry<Event> entry = events.get(eventIndexId);
+		if (entry == null) {
+			return null;
+		}
+		if (isExpired(entry)) {
+			removeEvent(eventIndexId);
+			return null;
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Cache an event.
+	 *
+	 * @param event
+	 *            event to cache, not modified after being cached.
+	 */
+	protected void putEvent(final Event event) {
+		Long eventIndexId = event.getIndexId();
+		if (eventIndexId == null || maxEvents <= 0) {
+			return;
+		}
+		removeEvent(eventIndexId);
+		events.put(eventIndexId, new CacheEntry<Event>(event));
+		for (ProductSummary summary : event.getAllProductList()) {
+			if (summary.getIndexId() != null) {
+				summaryEvents.put(summary.getIndexId(), eventIndexId);
+			}
+		}
+	}
+
+	/**
+	 * Remove a cached event.
+	 *
+	 * @param eventIndexId
+	 *            event index id.
+	 */
+	protected void removeEvent(final Long eventIndexId) {
+		if (eventIndexId == null) {
+			return;
+		}
+		CacheEntry<Event> entry = events.remove(eventIndexId);
+		if (entry != null) {
+			removeSummaryEvents(eventIndexId, entry.value);
+		}
+	}
+
+	/**
+	 * Remove summary to event mappings for a cached event.
+	 */
+	private void removeSummaryEvents(final Long eventIndexId, final Event event) {
+		for (ProductSummary summary : event.getAllProductList()) {
+			if (eventIndexId.equals(summaryEvents.get(summary.getIndexId()))) {
+				summaryEvents.remove(summary.getIndexId());
+			}
+		}
+	}
+
+	/**
+	 * Get cached products.
+	 *
+	 * @return cached products, or null if not cached or expired.
+	 */
+	protected List<ProductSummary> getProducts(final String productKey,
+			final String variant) {
+		Map<String, CacheEntry<List<ProductSummary>>> variants = products
+				.get(productKey);
+		CacheEntry<List<ProductSummary>> entry = (variants == null ? null
+				: variants.get(variant));
+		if (entry == null || isExpired(entry)) {
+			productMisses++;
+			return null;
+		}
+		productHits++;
+		return entry.value;
+	}
+
+	/**
+	 * Cache products.
+	 */
+	protected void putProducts(final String productKey, final String variant,
+			final List<ProductSummary> summaries) {
+		if (maxProducts <= 0) {
+			return;
+		}
+		Map<String, CacheEntry<List<ProductSummary>>> variants = products
+				.get(productKey);
+		if (variants == null) {
+			variants = new HashMap<String, CacheEntry<List<ProductSummary>>>();
+			products.put(productKey, variants);
+		}
+		variants.put(variant, new CacheEntry<List<ProductSummary>>(
+				copySummaries(summaries)));
+	}
+
+	/**
+	 * Remove cached products with the same source, type, and code.
+	 *
+	 * @param id
+	 *            product id.
+	 */
+	protected void removeProducts(final ProductId id) {
+		if (id != null) {
+			products.remove(getProductKey(id.getSource(), id.getType(),
+					id.getCode()));
+		}
+	}
+
+	/**
+	 * Get the product cache key for a query.
+	 *
+	 * @param query
+	 *            the query.
+	 * @return key, or null if the query specifies more than product source,
+	 *         type, and code.
+	 */
+	protected String getProductKey(final ProductIndexQuery query) {
+		if (query.getProductSource() == null
+				|| query.getProductType() == null
+				|| query.getProductCode() == null
+				|| query.getProductVersion() != null
+				|| query.getProductStatus() != null
+				|| query.getProductIds().size() > 0
+				|| query.getMinProductUpdateTime() != null
+				|| query.getMaxProductUpdateTime() != null
+				|| query.getMinProductIndexId() != null
+				|| query.getEventSource() != null
+				|| query.getEventSourceCode() != null
+				|| query.getMinEventTime() != null
+				|| query.getMaxEventTime() != null
+				|| query.getMinEventLatitude() != null
+				|| query.getMaxEventLatitude() != null
+				|| query.getMinEventLongitude() != null
+				|| query.getMaxEventLongitude() != null
+				|| query.getMinEventDepth() != null
+				|| query.getMaxEventDepth() != null
+				|| query.getMinEventMagnitude() != null
+				|| query.getMaxEventMagnitude() != null
+				|| query.getLimit() != null || query.getOrderBy() != null) {
+			return null;
+		}
+		return getProductKey(query.getProductSource(),
+				query.getProductType(), query.getProductCode());
+	}
+
+	/**
+	 * Get the product cache key for a source, type, and code.
+	 */
+	protected String getProductKey(final String source, final String type,
+			final String code) {
+		return source + ":" + type + ":" + code;
+	}
+
+	/**
+	 * Check whether a cache entry is older than maxAge.
+	 */
+	protected boolean isExpired(final CacheEntry<?> entry) {
+		return maxAge > 0 && System.currentTimeMillis() - entry.created > maxAge;
+	}
+
+	/**
+	 * Copy an event and its summaries.
+	 */
+	protected static Event copyEvent(final Event event) {
+		Map<String, List<ProductSummary>> copy = new HashMap<String, List<ProductSummary>>();
+		Map<String, List<ProductSummary>> allProducts = event.getAllProducts();
+		Iterator<String> types = allProducts.keySet().iterator();
+		while (types.hasNext()) {
+			String type = types.next();
+			copy.put(type, copySummaries(allProducts.get(type)));
+		}
+		return new Event(event.getIndexId(), copy);
+	}
+
+	/**
+	 * Copy a list of summaries.
+	 */
+	protected static List<ProductSummary> copySummaries(
+			final List<ProductSummary> summaries) {
+		List<ProductSummary> copy = new ArrayList<ProductSummary>(
+				summaries.size());
+		for (ProductSummary summary : summaries) {
+			copy.add(new ProductSummary(summary));
+		}
+		return copy;
+	}
+
+	/**
+	 * A cached value and when it was cached.
+	 */
+	protected static class CacheEntry<T> {
+		public final T value;
+		public final long created;
+
+		public CacheEntry(final T value) {
+			this.value = value;
+			this.created = System.currentTimeMillis();
+		}
+	}
+
+}
@@ -0,0 +1,273 @@
+/*
+ * EventLocationIndex
+ */
+package gov.usgs.earthquake.indexer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An in memory index of preferred event locations, used to find events near a
+ * time and location without searching the database.
+ *
+ * Events are grouped into buckets by time, and searches only check events in
+ * buckets that overlap the requested time range, so search time depends on
+ * how many events occur near that time instead of how many events are
+ * indexed.
+ *
+ * Changes made between {@link #begin()} and {@link #commit()} are undone by
+ * {@link #rollback()}, so the index can follow database transactions.
+ *
+ * This class is not thread safe; JDBCProductIndex synchronizes access.
+ */
+public class EventLocationIndex {
+
+	/** Default width of time buckets, in milliseconds. */
+	public static final long DEFAULT_BUCKET_MILLISECONDS = 60 * 1000L;
+
+	/** Width of time buckets. */
+	private final long bucketMilliseconds;
+
+	/** Event index id => location. */
+	private final Map<Long, Location> locations = new HashMap<Long, Location>();
+
+	/** Time bucket => (event index id => location). */
+	private final TreeMap<Long, Map<Long, Location>> buckets = new TreeMap<Long, Map<Long, Location>>();
+
+	/** Previous locations of events changed during a transaction. */
+	private LinkedList<Object[]> undo = null;
+
+	/**
+	 * Create an index using DEFAULT_BUCKET_MILLISECONDS.
+	 */
+	public EventLocationIndex() {
+		this(DEFAULT_BUCKET_MILLISECONDS);
+	}
+
+	/**
+	 * Create an index.
+	 *
+	 * @param bucketMilliseconds
+	 *            width of time buckets, should be similar to the time range
+	 *            searched.
+	 */
+	public EventLocationIndex(final long bucketMilliseconds) {
+		if (bucketMilliseconds <= 0) {
+			throw new IllegalArgumentException(
+					"bucketMilliseconds must be positive");
+		}
+		this.bucketMilliseconds = bucketMilliseconds;
+	}
+
+	/**
+	 * Add or update an event location.
+	 *
+	 * @param eventIndexId
+	 *            event index id.
+	 * @param time
+	 *            event time in milliseconds.
+	 * @param latitude
+	 *            event latitude.
+	 * @param longitude
+	 *            event longitude, between -180 and 180.
+	 */
+	public void put(final Long eventIndexId, final long time,
+			final double latitude, final double longitude) {
+		Location location = new Location(eventIndexId, time, latitude,
+				longitude);
+		Location previous = replace(eventIndexId, location);
+		if (undo != null) {
+			undo.addFirst(new Object[] { eventIndexId, previous });
+		}
+	}
+
+	/**
+	 * Remove an event location.
+	 *
+	 * @param eventIndexId
+	 *            event index id.
+	 */
+	public void remove(final Long eventIndexId) {
+		Location previous = replace(eventIndexId, null);
+		if (undo != null && previous != null) {
+			undo.addFirst(new Object[] { eventIndexId, previous });
+		}
+	}
+
+	/**
+	 * Find events within a time range and bounding box.
+	 *
+	 * Bounds are inclusive, matching JDBCProductIndex. When maxLongitude is
+	 * less than minLongitude, the box crosses the date line.
+	 *
+	 * @param minTime
+	 *            minimum time in milliseconds.
+	 * @param maxTime
+	 *            maximum time in milliseconds.
+	 * @param minLatitude
+	 *            minimum latitude, or null for any.
+	 * @param maxLatitude
+	 *            maximum latitude, or null for any.
+	 * @param minLongitude
+	 *            minimum longitude, or null for any.
+	 * @param maxLongitude
+	 *            maximum longitude, or null for any.
+	 * @return matching event index ids, sorted.
+	 */
+	public List<Long> search(final long minTime, final long maxTime,
+			final Double minLatitude, final Double maxLatitude,
+			final Double minLongitude, final Double maxLongitude) {
+		List<Long> eventIndexIds = new ArrayList<Long>();
+		if (maxTime < minTime) {
+			return eventIndexIds;
+		}
+		SortedMap<Long, Map<Long, Location>> range = buckets.subMap(
+				getBucket(minTime), true, getBucket(maxTime), true);
+		for (Map<Long, Location> bucket : range.values()) {
+			for (Location location : bucket.values()) {
+				if (location.time < minTime || location.time > maxTime) {
+					continue;
+				}
+				if (minLatitude != null && location.latitude < minLatitude) {
+					continue;
+				}
+				if (maxLatitude != null && location.latitude > maxLatitude) {
+					continue;
+				}
+				if (!matchesLongitude(location.longitude, minLongitude,
+						maxLongitude)) {
+					continue;
+				}
+				eventIndexIds.add(location.eventIndexId);
+			}
+		}
+		Collections.sort(eventIndexIds);
+		return eventIndexIds;
+	}
+
+	/**
+	 * Start recording changes so they can be rolled back.
+	 */
+	public void begin() {
+		undo = new LinkedList<Object[]>();
+	}
+
+	/**
+	 * Keep changes since {@link #begin()}.
+	 */
+	public void commit() {
+		undo = null;
+	}
+
+	/**
+	 * Undo changes since {@link #begin()}.
+	 */
+	public void rollback() {
+		if (undo != null) {
+			for (Object[] change : undo) {
+				replace((Long) change[0], (Location) change[1]);
+			}
+		}
+		undo = null;
+	}
+
+	/**
+	 * Remove all locations.
+	 */
+	public void clear() {
+		locations.clear();
+		buckets.clear();
+		undo = null;
+	}
+
+	/**
+	 * @return number of indexed events.
+	 */
+	public int size() {
+		return locations.size();
+	}
+
+	/**
+	 * Replace the location for an event.
+	 *
+	 * @param eventIndexId
+	 *            event index id.
+	 * @param location
+	 *            new location, or null to remove.
+	 * @return previous location, or null.
+	 */
+	protected Location replace(final Long eventIndexId, final Location location) {
+		Location previous = locations.remove(eventIndexId);
+		if (previous != null) {
+			Long bucketKey = getBucket(previous.time);
+			Map<Long, Location> bucket = buckets.get(bucketKey);
+			bucket.remove(eventIndexId);
+			if (bucket.size() == 0) {
+				buckets.remove(bucketKey);
+			}
+		}
+		if (location != null) {
+			locations.put(eventIndexId, location);
+			Long bucketKey = getBucket(location.time);
+			Map<Long, Location> bucket = buckets.get(bucketKey);
+			if (bucket == null) {
+				bucket = new HashMap<Long, Location>();
+				buckets.put(bucketKey, bucket);
+			}
+			bucket.put(eventIndexId, location);
+		}
+		return previous;
+	}
+
+	/**
+	 * @return bucket containing time.
+	 */
+	protected Long getBucket(final long time) {
+		return Long.valueOf(Math.floorDiv(time, bucketMilliseconds));
+	}
+
+	/**
+	 * Check a longitude against a possibly date line crossing range, using the
+	 * same comparisons as JDBCProductIndex.
+	 */
+	protected static boolean matchesLongitude(final double longitude,
+			final Double minLongitude, final Double maxLongitude) {
+		if (minLongitude != null && maxLongitude != null) {
+			if (maxLongitude < minLongitude) {
+				return (longitude > minLongitude && longitude <= 180)
+						|| (longitude < maxLongitude && longitude > -180);
+			}
+			return longitude >= minLongitude && longitude <= maxLongitude;
+		} else if (minLongitude != null) {
+			return longitude >= minLongitude;
+		} else if (maxLongitude != null) {
+			return longitude <= maxLongitude;
+		}
+		return true;
+	}
+
+	/**
+	 * An indexed event location.
+	 */
+	protected static class Location {
+		public final Long eventIndexId;
+		public final long time;
+		public final double latitude;
+		public final double longitude;
+
+		public Location(final Long eventIndexId, final long time,
+				final double latitude, final double longitude) {
+			this.eventIndexId = eventIndexId;
+			this.time = time;
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+	}
+
+}
@@ -15,6 +15,7 @@ import gov.usgs.earthquake.product.Content;
 import gov.usgs.earthquake.product.Product;
 import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.util.Config;
+import gov.usgs.util.ProcessWorkerPool;
 import gov.usgs.util.StreamUtils;
 import gov.usgs.util.XmlUtils;
 
@@ -62,6 +63,16 @@ import java.util.logging.Logger;
  * <dd>(Optional, Default = false) Whether or not to archive products from
  * storage when they are archived by the indexer.</dd>
  * 
+ * <dt>workers</dt>
+ * <dd>(Optional, Default = 0) When greater than zero, start this many long
+ * running command processes, and send event arguments to them as requests
+ * instead of running command for each change. See {@link ProcessWorkerPool}
+ * for the request and reply format.</dd>
+ * 
+ * <dt>workerInFlight</dt>
+ * <dd>(Optional, Default = 1) Number of requests sent to each worker at a
+ * time.</dd>
+ * 
  * </dl>
  */
 public class ExternalIndexerListener extends DefaultIndexerListener implements
@@ -97,6 +108,12 @@ public class ExternalIndexerListener extends DefaultIndexerListener implements
 	/** Argument used to pass signature to external process. */
 	public static final String SIGNATURE_ARGUMENT = "--signature=";
 
+	/** Configuration parameter for number of worker processes. */
+	public static final String WORKERS_PROPERTY = ExternalNotificationListener.WORKERS_PROPERTY;
+
+	/** Configuration parameter for requests sent to each worker at a time. */
+	public static final String WORKER_IN_FLIGHT_PROPERTY = ExternalNotificationListener.WORKER_IN_FLIGHT_PROPERTY;
+
 	/** Where products are stored in extracted form. */
 	private FileProductStorage storage;
 
@@ -106,6 +123,15 @@ public class ExternalIndexerListener extends DefaultIndexerListener implements
 	/** Archive products from listener storage when archived by indexer. */
 	private boolean autoArchive = false;
 
+	/** Number of worker processes, or 0 to run command for each change. */
+	private int workers = 0;
+
+	/** Requests sent to each worker at a time. */
+	private int workerInFlight = 1;
+
+	/** Worker processes, when workers is greater than zero. */
+	private ProcessWorkerPool workerPool;
+
 	/**
 	 * Construct a new ExternalIndexerListener object
 	 * 
@@ -217,6 +243,11 @@ public class ExternalIndexerListener extends DefaultIndexerListener implements
 	 * @throws Exception
 	 */
 	public void runProductCommand(final String command, final Product product) throws Exception {
+		if (workerPool != null) {
+			runWorker(command, product);
+			return;
+		}
+
 		// execute
 		LOGGER.info("[" + getName() + "] running command " + command);
 		final Process process = Runtime.getRuntime().exec(command);
@@ -266,6 +297,40 @@ public class ExternalIndexerListener extends DefaultIndexerListener implements
 				Integer.toString(process.exitValue()));
 	}
 
+	/**
+	 * Send command arguments to a worker process.
+	 *
+	 * @param command command and arguments.
+	 * @param product product, when set and empty content (path "") is defined,
+	 *        the content is sent with the request.
+	 * @throws Exception
+	 *         if the worker did not reply.
+	 */
+	protected void runWorker(final String command, final Product product) throws Exception {
+		LOGGER.info("[" + getName() + "] sending to worker " + command);
+		byte[] contentBytes = null;
+		if (product != null) {
+			Content content = product.getContents().get("");
+			if (content != null) {
+				contentBytes = StreamUtils.readStream(content.getInputStream());
+			}
+		}
+		ProcessWorkerPool.Response response = workerPool.process(
+				ExternalNotificationListener.getWorkerArguments(getCommand(),
+						command), contentBytes, getTimeout());
+		LOGGER.info("[" + getName() + "] worker '" + command
+				+ "' returned status '" + response.status + "'");
+		if (response.status != 0 && response.message != null) {
+			LOGGER.fine("[" + getName() + "] worker '" + command + "' message '" +
+					response.message + "'");
+		}
+
+		// send heartbeat info
+		HeartbeatListener.sendHeartbeatMessage(getName(), "command", command);
+		HeartbeatListener.sendHeartbeatMessage(getName(), "exit value",
+				Integer.toString(response.status));
+	}
+
 	/**
 	 * Get the product command and add the indexer arguments to it.
 	 * 
@@ -511,6 +576,16 @@ public class ExternalIndexerListener extends DefaultIndexerListener implements
 		autoArchive = Boolean.valueOf(config.getProperty(AUTO_ARCHIVE_PROPERTY,
 				AUTO_ARCHIVE_DEFAULT));
 		LOGGER.config("[" + getName() + "] autoArchive = " + autoArchive);
+
+		workers = Integer.parseInt(config.getProperty(WORKERS_PROPERTY,
+				ExternalNotificationListener.DEFAULT_WORKERS));
+		workerInFlight = Integer.parseInt(config.getProperty(
+				WORKER_IN_FLIGHT_PROPERTY,
+				ExternalNotificationListener.DEFAULT_WORKER_IN_FLIGHT));
+		if (workers > 0) {
+			LOGGER.config("[" + getName() + "] using " + workers
+					+ " workers, " + workerInFlight + " requests in flight");
+		}
 	}
 
 	/**
@@ -521,6 +596,10 @@ public class ExternalIndexerListener extends DefaultIndexerListener implements
 		// maybe make current process a member and kill process?
 		// or find way of detaching so client process can exit but product
 		// process can complete?
+		if (workerPool != null) {
+			workerPool.shutdown();
+			workerPool = null;
+		}
 		storage.shutdown();
 	}
 
@@ -528,8 +607,12 @@ public class ExternalIndexerListener extends DefaultIndexerListener implements
 	 * Called after client has been configured and should begin processing.
 	 */
 	public void startup() throws Exception {
-		// no background threads to start or objects to create
 		storage.startup();
+		if (workers > 0 && workerPool == null) {
+			workerPool = new ProcessWorkerPool(getName(),
+					ExternalNotificationListener.splitCommand(command), workers,
+					workerInFlight);
+		}
 		super.startup();
 	}
 
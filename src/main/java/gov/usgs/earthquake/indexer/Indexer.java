@@ -22,14 +22,20 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,6 +62,20 @@ import java.util.logging.Logger;
  * <dt>listeners</dt>
  * <dd>A comma delimited list of objects that implement the IndexerListener
  * interface</dd>
+ *
+ * <dt>indexerThreads</dt>
+ * <dd>(Optional, default 1) Number of products each receiver may deliver to
+ * this indexer at the same time. Products are stored and summarized in
+ * parallel, while the association and index commit stage is serialized.</dd>
+ *
+ * <dt>archiveBatchSize</dt>
+ * <dd>(Optional, default 100) Number of events or products archived in each
+ * transaction. The indexer is only locked while a batch is archived.</dd>
+ *
+ * <dt>archiveBatchDelay</dt>
+ * <dd>(Optional, default 0) Minimum milliseconds between archive batches.
+ * While products are being indexed, the archiver also waits as long as each
+ * batch took.</dd>
  * </dl>
  */
 public class Indexer extends DefaultNotificationListener {
@@ -111,9 +131,19 @@ public class Indexer extends DefaultNotificationListener {
 	public static final String DEFAULT_ENABLE_SEARCH = "false";
 	/** Default port where search socket listens. */
 	public static final String DEFAULT_SEARCH_PORT = "11236";
+	/** Property name for number of connections used by searches. */
+	public static final String SEARCH_CONNECTIONS_PROPERTY = "searchConnections";
+	/** Default is for searches to use the indexer connection. */
+	public static final String DEFAULT_SEARCH_CONNECTIONS = "0";
+
 	/** Number of threads (concurrent searches) allowed. */
 	public static final String DEFAULT_SEARCH_THREADS = "5";
 
+	/** Property name for number of products processed concurrently. */
+	public static final String INDEXER_THREADS_PROPERTY = "indexerThreads";
+	/** Default number of products processed concurrently. */
+	public static final String DEFAULT_INDEXER_THREADS = "1";
+
 	/** Utility used for associating products to events. */
 	private Associator associator;
 
@@ -127,7 +157,7 @@ public class Indexer extends DefaultNotificationListener {
 	private ProductIndex productIndex;
 
 	/** Modules provide product specific functionality. */
-	private List<IndexerModule> modules = new LinkedList<IndexerModule>();
+	private List<IndexerModule> modules = new CopyOnWriteArrayList<IndexerModule>();
 
 	/** Listeners listen for changes to the event index. */
 	private Map<IndexerListener, ExecutorService> listeners = new HashMap<IndexerListener, ExecutorService>();
@@ -144,9 +174,27 @@ public class Indexer extends DefaultNotificationListener {
 	/** Whether to (false) or not (true) to run archive policies. */
 	private boolean disableArchive = false;
 
+	/** Set during shutdown, stops archiving between batches. */
+	private volatile boolean archiveStopped = false;
+
+	/** Number of products indexed, used to detect indexing while archiving. */
+	private volatile long indexedProducts = 0L;
+
+	/** Number of products that may be stored and summarized concurrently. */
+	private int indexerThreads = Integer.parseInt(DEFAULT_INDEXER_THREADS);
+
 	// -- Configurable property names -- //
 	public static final String INDEX_ARCHIVE_INTERVAL_PROPERTY = "archiveInterval";
 	public static final String INDEX_ARCHIVE_POLICY_PROPERTY = "archivePolicy";
+	/** Property name for number of events or products archived at once. */
+	public static final String ARCHIVE_BATCH_SIZE_PROPERTY = "archiveBatchSize";
+	/** Property name for minimum milliseconds between archive batches. */
+	public static final String ARCHIVE_BATCH_DELAY_PROPERTY = "archiveBatchDelay";
+
+	/** Default number of events or products archived at once. */
+	public static final String DEFAULT_ARCHIVE_BATCH_SIZE = "100";
+	/** Default minimum milliseconds between archive batches. */
+	public static final String DEFAULT_ARCHIVE_BATCH_DELAY = "0";
 
 	// -- Default configurable property values -- //
 	private static final long INDEX_ARCHIVE_INTERVAL_DEFAULT = 300000L;
@@ -154,10 +202,21 @@ public class Indexer extends DefaultNotificationListener {
 	// -- Configured member variables. Values set in configure() method. -- //
 	private long archiveInterval = 0;
 
+	private int archiveBatchSize = Integer.parseInt(DEFAULT_ARCHIVE_BATCH_SIZE);
+
+	private long archiveBatchDelay = Long.parseLong(DEFAULT_ARCHIVE_BATCH_DELAY);
+
 	private List<ArchivePolicy> archivePolicies = null;
 
 	private SearchServerSocket searchSocket = null;
 
+	/** Number of separate index connections used by search. */
+	private int searchConnections = Integer
+			.parseInt(DEFAULT_SEARCH_CONNECTIONS);
+
+	/** Indexes used by search, when searchConnections is positive. */
+	private BlockingQueue<JDBCProductIndex> searchIndexes = null;
+
 	private DefaultIndexerModule defaultModule = new DefaultIndexerModule();
 
 	/**
@@ -256,7 +315,7 @@ public class Indexer extends DefaultNotificationListener {
 	 *
 	 * @param toRemove
 	 *            The module to remove.
-	 * @see java.util.LinkedList#remove(Object)
+	 * @see java.util.List#remove(Object)
 	 */
 	public void removeModule(final IndexerModule toRemove) {
 		modules.remove(toRemove);
@@ -266,11 +325,14 @@ public class Indexer extends DefaultNotificationListener {
 	 * This method checks each module's support level for the given product,
 	 * returning the first module with the highest support level.
 	 *
+	 * Not synchronized, so products may be summarized while another product
+	 * is being associated.
+	 *
 	 * @param product
 	 *            the product to summarize.
 	 * @return module best suited to summarize product.
 	 */
-	protected synchronized IndexerModule getModule(final Product product) {
+	protected IndexerModule getModule(final Product product) {
 		// mit is the module fetched off the iterator
 		// m is the module to return
 		IndexerModule mit = null, m = null;
@@ -386,7 +448,13 @@ public class Indexer extends DefaultNotificationListener {
 					listenerExecutor, listener.getMaxTries(),
 					listener.getTimeout(), new IndexerListenerCallable(listener,
 							event));
-			listenerExecutor.submit(listenerTask);
+			try {
+				listenerExecutor.submit(listenerTask);
+			} catch (RejectedExecutionException e) {
+				// never run, so no longer outstanding
+				listenerTask.cancel(false);
+				throw e;
+			}
 		}
 	}
 
@@ -470,14 +538,31 @@ public class Indexer extends DefaultNotificationListener {
 	 *             if an exception occurs.
 	 */
 	@Override
-	public synchronized void onProduct(final Product product) throws Exception {
+	public void onProduct(final Product product) throws Exception {
 		onProduct(product, false);
 	}
 
+	/**
+	 * Number of products that may be delivered to this indexer concurrently.
+	 *
+	 * Storage and summarization run in the calling thread, and only
+	 * {@link #indexProduct(ProductSummary, boolean)} is serialized.
+	 */
+	@Override
+	public int getConcurrentProducts() {
+		return indexerThreads;
+	}
+
 	/**
 	 * Receive a product and add it to the index. Optionally, reprocessing a
 	 * product that has already been processed.
 	 *
+	 * Storage (step 1) and summarization (step 2) are not synchronized, so
+	 * multiple products may be downloaded and summarized at the same time.
+	 * Association, index updates, and listener notification (steps 3-5) are
+	 * serialized by {@link #indexProduct(ProductSummary, boolean)}, so
+	 * listeners receive IndexerEvents in the order changes were committed.
+	 *
 	 * @param product
 	 *            The product triggering the event.
 	 * @param force
@@ -485,14 +570,10 @@ public class Indexer extends DefaultNotificationListener {
 	 *            (true), or skip (false).
 	 * @throws Exception
 	 */
-	public synchronized void onProduct(final Product product,
+	public void onProduct(final Product product,
 			final boolean force) throws Exception {
 		ProductId id = product.getId();
 
-		// The notification to be sent when we are finished with this product
-		IndexerEvent notification = new IndexerEvent(this);
-		notification.setIndex(getProductIndex());
-
 		// -------------------------------------------------------------------//
 		// -- Step 1: Store product
 		// -------------------------------------------------------------------//
@@ -533,6 +614,45 @@ public class Indexer extends DefaultNotificationListener {
 
 		// Use this module to summarize the product
 		ProductSummary productSummary = module.getProductSummary(product);
+
+		try {
+			// check again while serialized, another thread delivering the same
+			// product may have indexed it since it was stored
+			indexProduct(productSummary, !force);
+		} finally {
+			final Date endIndex = new Date();
+			LOGGER.fine("[" + getName() + "] indexer processed product id="
+					+ id.toString() + " in " +
+					(endIndex.getTime() - beginStore.getTime()) + " ms");
+		}
+	}
+
+	/**
+	 * Add a product summary to the index, associate it to events, and notify
+	 * listeners.
+	 *
+	 * This is the serialized stage of {@link #onProduct(Product, boolean)}.
+	 *
+	 * @param productSummary
+	 *            summary of the product being indexed.
+	 * @param skipIfIndexed
+	 *            whether to skip the product if it is already indexed, for
+	 *            example by another thread delivering the same product.
+	 * @throws Exception
+	 */
+	protected synchronized void indexProduct(ProductSummary productSummary,
+			final boolean skipIfIndexed) throws Exception {
+		ProductId id = productSummary.getId();
+		indexedProducts++;
+
+		if (skipIfIndexed && hasProductBeenIndexed(id)) {
+			LOGGER.fine("[" + getName() + "] product already indexed " + id);
+			return;
+		}
+
+		// The notification to be sent when we are finished with this product
+		IndexerEvent notification = new IndexerEvent(this);
+		notification.setIndex(getProductIndex());
 		notification.setSummary(productSummary);
 
 		// -------------------------------------------------------------------//
@@ -731,13 +851,7 @@ public class Indexer extends DefaultNotificationListener {
 					"index exception class", e.getClass().getName());
 
 			throw e;
-		} finally {
-			final Date endIndex = new Date();
-			LOGGER.fine("[" + getName() + "] indexer processed product id="
-					+ id.toString() + " in " +
-					(endIndex.getTime() - beginStore.getTime()) + " ms");
 		}
-
 	}
 
 	/**
@@ -1480,7 +1594,8 @@ public class Indexer extends DefaultNotificationListener {
 			}
 		}
 
-		SearchResponse response = search(request);
+		// uses indexer connection, to see the current transaction
+		SearchResponse response = search(request, productIndex);
 		if (response != null) {
 			candidateEvents = response.getEvents();
 		}
@@ -1624,6 +1739,18 @@ public class Indexer extends DefaultNotificationListener {
 		LOGGER.config("[" + getName() + "] archive interval is '"
 				+ archiveInterval + "'");
 
+		archiveBatchSize = Integer.parseInt(config.getProperty(
+				ARCHIVE_BATCH_SIZE_PROPERTY, DEFAULT_ARCHIVE_BATCH_SIZE));
+		archiveBatchDelay = Long.parseLong(config.getProperty(
+				ARCHIVE_BATCH_DELAY_PROPERTY, DEFAULT_ARCHIVE_BATCH_DELAY));
+		if (archiveBatchSize < 1) {
+			throw new ConfigurationException("[" + getName() + "] "
+					+ ARCHIVE_BATCH_SIZE_PROPERTY + " must be at least 1");
+		}
+		LOGGER.config("[" + getName() + "] archive batch size is '"
+				+ archiveBatchSize + "', batch delay is '" + archiveBatchDelay
+				+ "'");
+
 		// Always use at least a default indexer module
 		String moduleNames = config.getProperty(MODULES_CONFIG_PROPERTY);
 		if (moduleNames != null) {
@@ -1698,6 +1825,25 @@ public class Indexer extends DefaultNotificationListener {
 					+ "] SearchServerSocket running at localhost:" + searchPort
 					+ ", with " + searchThreads + " threads");
 		}
+		searchConnections = Integer.parseInt(config.getProperty(
+				SEARCH_CONNECTIONS_PROPERTY, DEFAULT_SEARCH_CONNECTIONS));
+		LOGGER.config("[" + getName() + "] search connections "
+				+ searchConnections);
+		if (searchConnections > 0 && getJDBCProductIndex() == null) {
+			LOGGER.config("[" + getName() + "] " + SEARCH_CONNECTIONS_PROPERTY
+					+ " requires a JDBCProductIndex, searches will use the"
+					+ " indexer connection");
+		}
+
+		indexerThreads = Integer.parseInt(config.getProperty(
+				INDEXER_THREADS_PROPERTY, DEFAULT_INDEXER_THREADS));
+		if (indexerThreads < 1) {
+			throw new ConfigurationException("[" + getName()
+					+ "] " + INDEXER_THREADS_PROPERTY + " must be at least 1");
+		}
+		LOGGER.config("[" + getName() + "] indexer threads = "
+				+ indexerThreads);
+
 		// -- Load dependent configurations -- //
 
 		associateUsingCurrentProducts = Boolean.valueOf(
@@ -1713,6 +1859,9 @@ public class Indexer extends DefaultNotificationListener {
 	 */
 	@Override
 	public synchronized void shutdown() throws Exception {
+		// stop archiving before the index is shut down
+		archiveStopped = true;
+
 		// -- Shut down dependent processes -- //
 		try {
 			productIndex.shutdown();
@@ -1769,6 +1918,18 @@ public class Indexer extends DefaultNotificationListener {
 		if (searchSocket != null) {
 			searchSocket.shutdown();
 		}
+		if (searchIndexes != null) {
+			BlockingQueue<JDBCProductIndex> indexes = searchIndexes;
+			searchIndexes = null;
+			for (JDBCProductIndex searchIndex : indexes) {
+				try {
+					searchIndex.shutdown();
+				} catch (Exception e) {
+					LOGGER.log(Level.WARNING, "[" + getName()
+							+ "] exception shutting down search index", e);
+				}
+			}
+		}
 		// -- Call parent shutdown method -- //
 		super.shutdown();
 	}
@@ -1781,6 +1942,7 @@ public class Indexer extends DefaultNotificationListener {
 	public synchronized void startup() throws Exception {
 		// -- Call parent startup method -- //
 		super.startup();
+		archiveStopped = false;
 
 		// -- Start up our own specific processes -- //
 
@@ -1809,8 +1971,30 @@ public class Indexer extends DefaultNotificationListener {
 
 		// ProductIndex
 		productStorage.startup();
+		JDBCProductIndex jdbcIndex = getJDBCProductIndex();
+		if (searchConnections > 0 && jdbcIndex != null) {
+			// so searches do not block indexing
+			jdbcIndex.enableWalMode();
+		}
 		productIndex.startup();
 
+		if (searchConnections > 0) {
+			if (jdbcIndex != null) {
+				BlockingQueue<JDBCProductIndex> indexes = new ArrayBlockingQueue<JDBCProductIndex>(
+						searchConnections);
+				for (int i = 0; i < searchConnections; i++) {
+					JDBCProductIndex searchIndex = jdbcIndex.newSearchIndex();
+					searchIndex.startup();
+					indexes.add(searchIndex);
+				}
+				searchIndexes = indexes;
+			} else {
+				LOGGER.warning("[" + getName() + "] " + SEARCH_CONNECTIONS_PROPERTY
+						+ " requires a JDBCProductIndex, searches use the"
+						+ " indexer connection");
+			}
+		}
+
 		// Cleanup thread to purge old products
 		if (archivePolicies.size() > 0) {
 			// Instantiate a timer object
@@ -1849,15 +2033,22 @@ public class Indexer extends DefaultNotificationListener {
 	 * unassociated products are archived and listeners are notified with
 	 * PRODUCT_ARCHIVE type.
 	 *
+	 * Matches are archived in batches of archiveBatchSize, each in one
+	 * transaction. The indexer lock is only held while a batch is archived,
+	 * and between batches the archiver waits at least archiveBatchDelay
+	 * milliseconds. When products were indexed since the previous batch, it
+	 * also waits as long as the previous batch took, so indexing is not
+	 * blocked by a large archive. Matches that fail to archive are skipped by
+	 * later batches, and tried again the next time the policy runs.
+	 *
 	 * Note: Product "age" is determined by when the earthquake for that product
 	 * occurred and does not reflect how long the product has actually been in
 	 * the index.
 	 *
 	 * @see #archivePolicies
 	 */
-	public synchronized int[] purgeExpiredProducts() throws Exception {
+	public int[] purgeExpiredProducts() throws Exception {
 		int[] counts = { 0, 0 };
-		ProductIndexQuery query = null;
 		ArchivePolicy policy = null;
 
 		if (isDisableArchive()) {
@@ -1867,110 +2058,248 @@ public class Indexer extends DefaultNotificationListener {
 
 		for (int i = 0; i < archivePolicies.size(); i++) {
 			policy = archivePolicies.get(i);
-			query = policy.getIndexQuery();
+			boolean eventPolicy = !(policy instanceof ProductArchivePolicy);
 
-			if (!(policy instanceof ProductArchivePolicy)) {
-				// -- Purge expired events for this policy -- //
-				LOGGER.fine("[" + getName()
-						+ "] running event archive policy (" + policy.getName()
-						+ ")");
-				try {
-					// Get a list of those events
-					List<Event> expiredEvents = productIndex.getEvents(query);
-
-					// Loop over list of expired events and remove each one
-					Iterator<Event> eventIter = expiredEvents.iterator();
-					while (eventIter.hasNext()) {
-						Event event = eventIter.next();
-
-						LOGGER.info("[" + getName() + "] archiving event "
-								+ event.getEventId());
-						event.log(LOGGER);
-
-						productIndex.beginTransaction();
-						try {
-							removeEvent(event);
-
-							// Notify of the event archived
-							IndexerEvent notification = new IndexerEvent(this);
-							notification.setSummary(null);
-							notification.addIndexerChange(new IndexerChange(
-									IndexerChange.EVENT_ARCHIVED, event, null));
-							notifyListeners(notification);
-
-							++counts[0];
-							productIndex.commitTransaction();
-						} catch (Exception e) {
-							LOGGER.log(Level.WARNING, "[" + getName()
-									+ "] exception archiving event "
-									+ event.getEventId() + ", rolling back", e);
-							productIndex.rollbackTransaction();
-						}
+			LOGGER.fine("[" + getName() + "] running "
+					+ (eventPolicy ? "event" : "product") + " archive policy ("
+					+ policy.getName() + ")");
+			try {
+				int archived = 0;
+				long start = new Date().getTime();
+				long indexedBefore = indexedProducts;
+				long batchStart = start;
+				// index ids that failed, skipped by later batches
+				Set<Long> failed = new HashSet<Long>();
+				while (!archiveStopped) {
+					int[] batch;
+					if (eventPolicy) {
+						batch = archiveEvents(policy, failed);
+					} else {
+						batch = archiveProducts((ProductArchivePolicy) policy,
+								failed);
 					}
-				} catch (Exception e) {
-					LOGGER.log(Level.WARNING, "[" + getName()
-							+ "] exception running event archive policy ("
-							+ policy.getName() + ") ", e);
+					long batchEnd = new Date().getTime();
+					archived += batch[1];
+					if (batch[1] > 0) {
+						LOGGER.info("[" + getName() + "] archive policy ("
+								+ policy.getName() + ") archived " + batch[1]
+								+ " " + (eventPolicy ? "events" : "products")
+								+ " in " + (batchEnd - batchStart) + "ms, "
+								+ archived + " total in "
+								+ (batchEnd - start) + "ms");
+					}
+					if (batch[0] < archiveBatchSize) {
+						// no more matches that have not failed
+						break;
+					}
+
+					// pause, so indexing is not blocked by archiving
+					long pause = archiveBatchDelay;
+					if (indexedProducts != indexedBefore) {
+						pause = Math.max(pause, batchEnd - batchStart);
+					}
+					if (pause > 0) {
+						Thread.sleep(pause);
+					}
+					indexedBefore = indexedProducts;
+					batchStart = new Date().getTime();
 				}
+				counts[eventPolicy ? 0 : 1] += archived;
+			} catch (Exception e) {
+				LOGGER.log(Level.WARNING, "[" + getName() + "] exception running "
+						+ (eventPolicy ? "event" : "product")
+						+ " archive policy (" + policy.getName() + ")", e);
+			}
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Archive one batch of events that match an event archive policy.
+	 *
+	 * Events are removed from the index using set based deletes, in one
+	 * transaction. If that fails, events are archived one at a time so one
+	 * failure does not prevent other events from being archived.
+	 *
+	 * @param policy
+	 *            the archive policy.
+	 * @param failed
+	 *            index ids of events that could not be archived, which are
+	 *            skipped. Events that fail are added.
+	 * @return number of events found and number of events archived.
+	 * @throws Exception
+	 *             if unable to search the index.
+	 */
+	protected synchronized int[] archiveEvents(final ArchivePolicy policy,
+			final Set<Long> failed) throws Exception {
+		if (archiveStopped) {
+			return new int[] { 0, 0 };
+		}
+		ProductIndexQuery query = policy.getIndexQuery();
+		// failed events still match, so search past them
+		query.setLimit(archiveBatchSize + failed.size());
+		List<Event> expiredEvents = new ArrayList<Event>();
+		for (Event event : productIndex.getEvents(query)) {
+			if (expiredEvents.size() < archiveBatchSize
+					&& !failed.contains(event.getIndexId())) {
+				expiredEvents.add(event);
 			}
+		}
+		if (expiredEvents.size() == 0) {
+			return new int[] { 0, 0 };
+		}
 
-			if (policy instanceof ProductArchivePolicy) {
-				ProductArchivePolicy productPolicy = (ProductArchivePolicy) policy;
+		for (Event event : expiredEvents) {
+			LOGGER.info("[" + getName() + "] archiving event "
+					+ event.getEventId());
+			event.log(LOGGER);
+		}
 
-				// -- Purge expired products for this policy -- //
-				LOGGER.fine("[" + getName()
-						+ "] running product archive policy ("
-						+ policy.getName() + ")");
+		List<Event> archived = new ArrayList<Event>(expiredEvents.size());
+		productIndex.beginTransaction();
+		try {
+			productIndex.removeEvents(expiredEvents);
+			for (Event event : expiredEvents) {
+				for (ProductSummary summary : event.getAllProductList()) {
+					productStorage.removeProduct(summary.getId());
+				}
+			}
+			productIndex.commitTransaction();
+			archived.addAll(expiredEvents);
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "[" + getName()
+					+ "] exception archiving batch of " + expiredEvents.size()
+					+ " events, rolling back and archiving one at a time", e);
+			productIndex.rollbackTransaction();
 
+			for (Event event : expiredEvents) {
+				productIndex.beginTransaction();
 				try {
-					// Get a list of those products
-					List<ProductSummary> expiredProducts;
+					removeEvent(event);
+					productIndex.commitTransaction();
+					archived.add(event);
+				} catch (Exception e2) {
+					LOGGER.log(Level.WARNING, "[" + getName()
+							+ "] exception archiving event "
+							+ event.getEventId() + ", rolling back", e2);
+					productIndex.rollbackTransaction();
+					failed.add(event.getIndexId());
+				}
+			}
+		}
 
-					if (productPolicy.isOnlyUnassociated()) {
-						expiredProducts = productIndex
-								.getUnassociatedProducts(query);
-					} else {
-						expiredProducts = productIndex.getProducts(query);
-					}
+		// Notify of the events archived
+		for (Event event : archived) {
+			IndexerEvent notification = new IndexerEvent(this);
+			notification.setSummary(null);
+			notification.addIndexerChange(new IndexerChange(
+					IndexerChange.EVENT_ARCHIVED, event, null));
+			notifyListeners(notification);
+		}
 
-					// Loop over list of expired products and remove each one
-					Iterator<ProductSummary> productIter = expiredProducts
-							.iterator();
-					while (productIter.hasNext()) {
-						ProductSummary product = productIter.next();
-
-						LOGGER.info("[" + getName() + "] archiving product "
-								+ product.getId().toString());
-						productIndex.beginTransaction();
-						try {
-							removeSummary(product);
-
-							// Notify of the product archived
-							IndexerEvent notification = new IndexerEvent(this);
-							notification.setSummary(product);
-							notification.addIndexerChange(new IndexerChange(
-									IndexerChange.PRODUCT_ARCHIVED, null, null));
-							notifyListeners(notification);
-
-							++counts[1];
-							productIndex.commitTransaction();
-						} catch (Exception e) {
-							LOGGER.log(Level.WARNING, "[" + getName()
-									+ "] exception archiving event "
-									+ product.getId().toString() + ", rolling back", e);
-							productIndex.rollbackTransaction();
-						}
-					}
-				} catch (Exception e) {
-					LOGGER.log(Level.WARNING, "[" + getName()
-							+ "] exception running product archive policy ("
-							+ policy.getName() + ")", e);
+		return new int[] { expiredEvents.size(), archived.size() };
+	}
+
+	/**
+	 * Archive one batch of products that match a product archive policy.
+	 *
+	 * Unassociated products are removed from the index using set based
+	 * deletes. Associated products are removed using
+	 * {@link #removeSummary(ProductSummary)}, which also updates their events.
+	 * The batch is one transaction, and if that fails products are archived
+	 * one at a time.
+	 *
+	 * @param policy
+	 *            the archive policy.
+	 * @param failed
+	 *            index ids of products that could not be archived, which are
+	 *            skipped. Products that fail are added.
+	 * @return number of products found and number of products archived.
+	 * @throws Exception
+	 *             if unable to search the index.
+	 */
+	protected synchronized int[] archiveProducts(
+			final ProductArchivePolicy policy, final Set<Long> failed)
+			throws Exception {
+		if (archiveStopped) {
+			return new int[] { 0, 0 };
+		}
+		ProductIndexQuery query = policy.getIndexQuery();
+		// failed products still match, so search past them
+		query.setLimit(archiveBatchSize + failed.size());
+		List<ProductSummary> found;
+		if (policy.isOnlyUnassociated()) {
+			found = productIndex.getUnassociatedProducts(query);
+		} else {
+			found = productIndex.getProducts(query);
+		}
+		List<ProductSummary> expiredProducts = new ArrayList<ProductSummary>();
+		for (ProductSummary product : found) {
+			if (expiredProducts.size() < archiveBatchSize
+					&& !failed.contains(product.getIndexId())) {
+				expiredProducts.add(product);
+			}
+		}
+		if (expiredProducts.size() == 0) {
+			return new int[] { 0, 0 };
+		}
+
+		for (ProductSummary product : expiredProducts) {
+			LOGGER.info("[" + getName() + "] archiving product "
+					+ product.getId().toString());
+		}
+
+		List<ProductSummary> archived = new ArrayList<ProductSummary>(
+				expiredProducts.size());
+		productIndex.beginTransaction();
+		try {
+			if (policy.isOnlyUnassociated()) {
+				productIndex.removeProductSummaries(expiredProducts);
+				for (ProductSummary product : expiredProducts) {
+					productStorage.removeProduct(product.getId());
+				}
+			} else {
+				for (ProductSummary product : expiredProducts) {
+					removeSummary(product);
 				}
+			}
+			productIndex.commitTransaction();
+			archived.addAll(expiredProducts);
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "[" + getName()
+					+ "] exception archiving batch of "
+					+ expiredProducts.size()
+					+ " products, rolling back and archiving one at a time", e);
+			productIndex.rollbackTransaction();
 
+			for (ProductSummary product : expiredProducts) {
+				productIndex.beginTransaction();
+				try {
+					removeSummary(product);
+					productIndex.commitTransaction();
+					archived.add(product);
+				} catch (Exception e2) {
+					LOGGER.log(Level.WARNING, "[" + getName()
+							+ "] exception archiving product "
+							+ product.getId().toString() + ", rolling back",
+							e2);
+					productIndex.rollbackTransaction();
+					failed.add(product.getIndexId());
+				}
 			}
 		}
 
-		return counts;
+		// Notify of the products archived
+		for (ProductSummary product : archived) {
+			IndexerEvent notification = new IndexerEvent(this);
+			notification.setSummary(product);
+			notification.addIndexerChange(new IndexerChange(
+					IndexerChange.PRODUCT_ARCHIVED, null, null));
+			notifyListeners(notification);
+		}
+
+		return new int[] { expiredProducts.size(), archived.size() };
 	}
 
 	/**
@@ -2067,15 +2396,69 @@ public class Indexer extends DefaultNotificationListener {
 		}
 	}
 
+	/**
+	 * Get the JDBCProductIndex used by this indexer, if any.
+	 *
+	 * @return productIndex, the index cached by a CachingProductIndex, or null
+	 *         when neither is a JDBCProductIndex.
+	 */
+	protected JDBCProductIndex getJDBCProductIndex() {
+		ProductIndex index = productIndex;
+		if (index instanceof CachingProductIndex) {
+			index = ((CachingProductIndex) index).getIndex();
+		}
+		if (index instanceof JDBCProductIndex) {
+			return (JDBCProductIndex) index;
+		}
+		return null;
+	}
+
 	/**
 	 * Search for products in this index.
 	 *
+	 * When searchConnections is positive, searches use a separate connection
+	 * and run concurrently with each other and with indexing. Each search
+	 * runs in one read transaction, so all queries see the same committed
+	 * state. Searches of a CachingProductIndex read the cached index
+	 * directly. Otherwise searches wait for indexing to complete.
+	 *
+	 * @param request
+	 *            the search request.
+	 * @return the search response.
+	 * @throws Exception
+	 */
+	public SearchResponse search(SearchRequest request) throws Exception {
+		BlockingQueue<JDBCProductIndex> indexes = searchIndexes;
+		if (indexes == null) {
+			synchronized (this) {
+				return search(request, productIndex);
+			}
+		}
+
+		JDBCProductIndex searchIndex = indexes.take();
+		try {
+			searchIndex.beginTransaction();
+			try {
+				return search(request, searchIndex);
+			} finally {
+				searchIndex.rollbackTransaction();
+			}
+		} finally {
+			indexes.add(searchIndex);
+		}
+	}
+
+	/**
+	 * Search for products in an index.
+	 *
 	 * @param request
 	 *            the search request.
+	 * @param index
+	 *            the index to search.
 	 * @return the search response.
 	 * @throws Exception
 	 */
-	public synchronized SearchResponse search(SearchRequest request)
+	protected SearchResponse search(SearchRequest request, ProductIndex index)
 			throws Exception {
 		SearchResponse response = new SearchResponse();
 
@@ -2086,7 +2469,7 @@ public class Indexer extends DefaultNotificationListener {
 
 			if (query instanceof EventsSummaryQuery) {
 				List<EventSummary> eventSummaries = new LinkedList<EventSummary>();
-				Iterator<Event> events = productIndex.getEvents(
+				Iterator<Event> events = index.getEvents(
 						query.getProductIndexQuery()).iterator();
 				// convert events to event summaries
 				while (events.hasNext()) {
@@ -2097,13 +2480,13 @@ public class Indexer extends DefaultNotificationListener {
 			}
 
 			else if (query instanceof EventDetailQuery) {
-				List<Event> events = productIndex.getEvents(query
+				List<Event> events = index.getEvents(query
 						.getProductIndexQuery());
 				((EventDetailQuery) query).setResult(events);
 			}
 
 			else if (query instanceof ProductsSummaryQuery) {
-				List<ProductSummary> products = productIndex.getProducts(query
+				List<ProductSummary> products = index.getProducts(query
 						.getProductIndexQuery());
 				((ProductsSummaryQuery) query).setResult(products);
 			}
@@ -2137,6 +2520,22 @@ public class Indexer extends DefaultNotificationListener {
 		this.disableArchive = disableArchive;
 	}
 
+	/**
+	 * @return number of separate index connections used by search.
+	 */
+	public int getSearchConnections() {
+		return searchConnections;
+	}
+
+	/**
+	 * @param searchConnections
+	 *            number of separate index connections used by search, takes
+	 *            effect at startup.
+	 */
+	public void setSearchConnections(int searchConnections) {
+		this.searchConnections = searchConnections;
+	}
+
 	/**
 	 * @return the archiveInterval
 	 */
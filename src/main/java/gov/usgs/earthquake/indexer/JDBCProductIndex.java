@@ -21,21 +21,34 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * JDBC Implementation of {@link ProductIndex}.
+ *
+ * Product properties and links are inserted using JDBC batches.
+ *
+ * When <code>groupCommitSize</code> is greater than 1, transactions are
+ * tracked using savepoints and several transactions are committed together.
+ * A pending group is committed once it reaches <code>groupCommitSize</code>
+ * transactions, or after <code>groupCommitDelay</code> milliseconds, or on
+ * shutdown. This trades durability of the most recent transactions for
+ * ingest throughput.
  */
 public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 
@@ -77,6 +90,47 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 	 */
 	private static final String JDBC_FILE_PROPERTY = "indexfile";
 
+	/**
+	 * Constant used to specify how many transactions are committed together.
+	 */
+	private static final String JDBC_GROUP_COMMIT_SIZE_PROPERTY = "groupCommitSize";
+
+	/** Default is to commit every transaction. */
+	private static final String JDBC_DEFAULT_GROUP_COMMIT_SIZE = "1";
+
+	/**
+	 * Constant used to specify how long, in milliseconds, a group of
+	 * transactions may wait before being committed.
+	 */
+	private static final String JDBC_GROUP_COMMIT_DELAY_PROPERTY = "groupCommitDelay";
+
+	/** Default group commit delay. */
+	private static final String JDBC_DEFAULT_GROUP_COMMIT_DELAY = "1000";
+
+	/**
+	 * Constant used to specify whether preferred event locations are kept in
+	 * memory for location searches.
+	 */
+	private static final String JDBC_LOCATION_INDEX_PROPERTY = "locationIndex";
+
+	/** Default is to search event locations in the database. */
+	private static final String JDBC_DEFAULT_LOCATION_INDEX = "false";
+
+	/**
+	 * Constant used to specify whether sqlite uses write ahead logging, so
+	 * searches using other connections do not block writes.
+	 */
+	private static final String JDBC_WAL_MODE_PROPERTY = "walMode";
+
+	/**
+	 * Default is to not use write ahead logging, unless an Indexer uses
+	 * separate search connections.
+	 */
+	private static final String JDBC_DEFAULT_WAL_MODE = "false";
+
+	/** Milliseconds sqlite waits for a lock before failing. */
+	private static final int SQLITE_BUSY_TIMEOUT = 30000;
+
 	/** Prefix for connecting to a sqlite database */
 	private static final String JDBC_CONNECTION_PREFIX = "jdbc:sqlite:";
 
@@ -224,6 +278,21 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 					SUMMARY_PROPERTY_NAME, SUMMARY_PROPERTY_VALUE,
 					SUMMARY_PROPERTY_TABLE, SUMMARY_PROPERTY_ID);
 
+	/** Columns used to load summaries, in the same order as getSummary. */
+	private static final String LOAD_SUMMARY_COLUMNS = String
+			.format("%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s",
+					SUMMARY_PRODUCT_ID, SUMMARY_TYPE, SUMMARY_SOURCE,
+					SUMMARY_CODE, SUMMARY_UPDATE_TIME, SUMMARY_EVENT_SOURCE,
+					SUMMARY_EVENT_SOURCE_CODE, SUMMARY_EVENT_TIME,
+					SUMMARY_EVENT_LATITUDE, SUMMARY_EVENT_LONGITUDE,
+					SUMMARY_EVENT_DEPTH, SUMMARY_EVENT_MAGNITUDE,
+					SUMMARY_VERSION, SUMMARY_STATUS, SUMMARY_TRACKER_URL,
+					SUMMARY_PREFERRED, SUMMARY_PRODUCT_INDEX_ID,
+					SUMMARY_EVENT_ID);
+
+	/** Maximum number of ids in one IN (...) clause. */
+	private static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
 	/** Create some prepared statements */
 	private PreparedStatement insertEvent;
 	private PreparedStatement updateEvent;
@@ -246,6 +315,27 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 	private String url;
 	private String index_file;
 
+	/** Number of transactions committed together. */
+	private int groupCommitSize = Integer
+			.parseInt(JDBC_DEFAULT_GROUP_COMMIT_SIZE);
+	/** Maximum time a group of transactions waits before commit. */
+	private long groupCommitDelay = Long
+			.parseLong(JDBC_DEFAULT_GROUP_COMMIT_DELAY);
+	/** Number of completed transactions that have not been committed. */
+	private int pendingCommits = 0;
+	/** Savepoint at start of current transaction, when group committing. */
+	private Savepoint transactionSavepoint = null;
+	/** Timer that commits pending transactions. */
+	private Timer groupCommitTimer = null;
+
+	/** Whether to keep an in memory index of preferred event locations. */
+	private boolean useLocationIndex = false;
+	/** In memory index of preferred event locations, when enabled. */
+	private EventLocationIndex locationIndex = null;
+
+	/** Whether sqlite uses write ahead logging, null when not configured. */
+	private Boolean walMode = null;
+
 	/**
 	 * Constructor. Sets index_file to the default value JDBC_DEFAULT_FILE
 	 *
@@ -286,6 +376,74 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 		if (index_file == null || "".equals(index_file)) {
 			index_file = JDBC_DEFAULT_FILE;
 		}
+
+		groupCommitSize = Integer.parseInt(config.getProperty(
+				JDBC_GROUP_COMMIT_SIZE_PROPERTY,
+				JDBC_DEFAULT_GROUP_COMMIT_SIZE));
+		groupCommitDelay = Long.parseLong(config.getProperty(
+				JDBC_GROUP_COMMIT_DELAY_PROPERTY,
+				JDBC_DEFAULT_GROUP_COMMIT_DELAY));
+		if (groupCommitSize > 1) {
+			LOGGER.config("[" + getName() + "] group commit size "
+					+ groupCommitSize + ", delay " + groupCommitDelay + " ms");
+		}
+
+		useLocationIndex = Boolean.valueOf(config.getProperty(
+				JDBC_LOCATION_INDEX_PROPERTY, JDBC_DEFAULT_LOCATION_INDEX));
+		if (useLocationIndex) {
+			LOGGER.config("[" + getName() + "] using event location index");
+		}
+
+		String walModeProperty = config.getProperty(JDBC_WAL_MODE_PROPERTY);
+		if (walModeProperty != null) {
+			walMode = Boolean.valueOf(walModeProperty);
+			LOGGER.config("[" + getName() + "] walMode is " + walMode);
+		}
+	}
+
+	/**
+	 * @return whether sqlite uses write ahead logging.
+	 */
+	public boolean isWalMode() {
+		if (walMode == null) {
+			return Boolean.valueOf(JDBC_DEFAULT_WAL_MODE);
+		}
+		return walMode;
+	}
+
+	/**
+	 * Use write ahead logging, unless walMode was configured.
+	 *
+	 * Called before startup by an Indexer that searches using separate
+	 * connections, so searches do not block indexing.
+	 */
+	public void enableWalMode() {
+		if (walMode == null) {
+			walMode = true;
+		} else if (!walMode) {
+			LOGGER.config("[" + getName() + "] walMode is false, searches"
+					+ " using separate connections may block indexing");
+		}
+	}
+
+	/**
+	 * Create an index that reads from the same database using a separate
+	 * connection.
+	 *
+	 * Used for searches that should not wait for, or block, products being
+	 * indexed. The returned index sees committed changes only, and must be
+	 * started and shut down by the caller.
+	 *
+	 * @return new index, not started.
+	 * @throws Exception
+	 */
+	public JDBCProductIndex newSearchIndex() throws Exception {
+		JDBCProductIndex searchIndex = new JDBCProductIndex(index_file);
+		searchIndex.setName(getName() + "-search");
+		searchIndex.driver = driver;
+		searchIndex.url = url;
+		searchIndex.walMode = walMode;
+		return searchIndex;
 	}
 
 	/**
@@ -334,6 +492,27 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 				.prepareStatement(GET_LINKS_BY_PRODUCT_INDEX_ID);
 		getProductProperties = connection
 				.prepareStatement(GET_PROPS_BY_PRODUCT_INDEX_ID);
+
+		if (groupCommitSize > 1 && groupCommitTimer == null) {
+			// commit pending transactions when ingest is idle
+			groupCommitTimer = new Timer(true);
+			groupCommitTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						commitPendingTransactions();
+					} catch (Exception e) {
+						LOGGER.log(Level.WARNING, "[" + getName()
+								+ "] exception committing pending transactions",
+								e);
+					}
+				}
+			}, groupCommitDelay, groupCommitDelay);
+		}
+
+		if (useLocationIndex) {
+			loadLocationIndex();
+		}
 	}
 
 	/**
@@ -365,6 +544,21 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 			// Build the JDBC url
 			url = JDBC_CONNECTION_PREFIX + index_file;
 			driver = JDBCUtils.SQLITE_DRIVER_CLASSNAME;
+
+			Connection connection = JDBCUtils.getConnection(driver, url);
+			Statement statement = connection.createStatement();
+			try {
+				statement.execute("PRAGMA busy_timeout = "
+						+ SQLITE_BUSY_TIMEOUT);
+				if (isWalMode()) {
+					// readers do not block the writer, and the writer does
+					// not block readers
+					statement.execute("PRAGMA journal_mode = WAL");
+				}
+			} finally {
+				statement.close();
+			}
+			return connection;
 		}
 
 		return JDBCUtils.getConnection(driver, url);
@@ -376,6 +570,18 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 	 */
 	@Override
 	public synchronized void shutdown() throws Exception {
+		if (groupCommitTimer != null) {
+			groupCommitTimer.cancel();
+			groupCommitTimer = null;
+		}
+		try {
+			commitPendingTransactions();
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "[" + getName()
+					+ "] exception committing pending transactions", e);
+		}
+		locationIndex = null;
+
 		// Close each of the prepared statements, then close the connection.
 		// Make sure exceptions don't prevent closing of any statements.
 
@@ -532,27 +738,96 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 	 */
 	@Override
 	public synchronized void beginTransaction() throws Exception {
-		Connection conn = this.verifyConnection();
+		Connection conn;
+		if (pendingCommits > 0) {
+			// reconnecting would discard pending transactions
+			conn = getConnection();
+		} else {
+			conn = this.verifyConnection();
+		}
 		conn.setAutoCommit(false);
+		if (groupCommitSize > 1) {
+			transactionSavepoint = conn.setSavepoint();
+		}
+		if (locationIndex != null) {
+			locationIndex.begin();
+		}
 	}
 
 	/**
 	 * Finalize the transaction by committing all the changes and closing the
 	 * transaction.
+	 *
+	 * When group committing, the transaction is only committed once
+	 * groupCommitSize transactions are pending.
 	 */
 	@Override
 	public synchronized void commitTransaction() throws Exception {
-		getConnection().setAutoCommit(true);
+		if (locationIndex != null) {
+			locationIndex.commit();
+		}
+		if (groupCommitSize <= 1) {
+			getConnection().setAutoCommit(true);
+			return;
+		}
+
+		if (transactionSavepoint != null) {
+			try {
+				getConnection().releaseSavepoint(transactionSavepoint);
+			} catch (SQLException e) {
+				// savepoint is released by commit anyways
+			}
+			transactionSavepoint = null;
+		}
+		pendingCommits++;
+		if (pendingCommits >= groupCommitSize) {
+			commitPendingTransactions();
+		}
 	}
 
 	/**
 	 * Undo all of the changes made during the current transaction
+	 *
+	 * When group committing, only changes since the transaction savepoint are
+	 * undone.
 	 */
 	@Override
 	public synchronized void rollbackTransaction() throws Exception {
+		if (locationIndex != null) {
+			locationIndex.rollback();
+		}
+		if (transactionSavepoint != null) {
+			Savepoint savepoint = transactionSavepoint;
+			transactionSavepoint = null;
+			getConnection().rollback(savepoint);
+			if (pendingCommits == 0) {
+				getConnection().rollback();
+			}
+			return;
+		}
 		getConnection().rollback();
 	}
 
+	/**
+	 * Commit transactions that are pending because of group commit.
+	 *
+	 * Does nothing if a transaction is in progress or nothing is pending.
+	 *
+	 * @throws Exception
+	 */
+	public synchronized void commitPendingTransactions() throws Exception {
+		if (pendingCommits == 0 || transactionSavepoint != null) {
+			return;
+		}
+		Connection conn = getConnection();
+		if (conn != null) {
+			conn.setAutoCommit(true);
+		}
+		LOGGER.finest("[" + getName() + "] committed " + pendingCommits
+				+ " transactions");
+		pendingCommits = 0;
+	}
+
 	/**
 	 * Return all events from the database that meet the parameters specified in
 	 * the ProductIndexQuery object.
@@ -564,18 +839,11 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 	@Override
 	public synchronized List<Event> getEvents(ProductIndexQuery query)
 			throws Exception {
-		List<Event> events = new LinkedList<Event>();
-
 		// Get a list of event indexIds from the database that match this query
 		List<Long> eventIndexIds = getEventIndexIds(query);
 
-		Iterator<Long> iter = eventIndexIds.iterator();
-		while (iter.hasNext()) {
-			Long eventIndexId = iter.next();
-			events.add(getEvent(eventIndexId));
-		}
-
-		return events;
+		// Load summaries, properties, and links for all events at once
+		return loadEvents(eventIndexIds);
 	}
 
 	/**
@@ -666,6 +934,10 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 			throw new Exception();
 		}
 
+		if (locationIndex != null) {
+			locationIndex.remove(id);
+		}
+
 		LOGGER.finest("[" + getName() + "] Removed event id=" + id);
 
 		return productIds;
@@ -694,6 +966,9 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 		// Add the unassociated quantifier to the clause list
 		clauseList.add("eventId IS NULL");
 		String query_text = buildProductQuery(clauseList);
+		if (query.getLimit() != null) {
+			query_text += " LIMIT " + query.getLimit();
+		}
 
 		Statement statement = null;
 		ResultSet results = null;
@@ -891,6 +1166,155 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 		}
 	}
 
+	/**
+	 * Delete events, and all products associated to them, from the database.
+	 *
+	 * Products, properties, links, and events are deleted using one statement
+	 * each for every chunk of events, instead of several statements per
+	 * product.
+	 *
+	 * @param events
+	 *            events to remove.
+	 * @return List containing all the ProductIds that were deleted by the
+	 *         method call
+	 */
+	@Override
+	public synchronized List<ProductId> removeEvents(final List<Event> events)
+			throws Exception {
+		List<ProductId> productIds = new ArrayList<ProductId>();
+		List<Long> eventIndexIds = new ArrayList<Long>();
+		for (Event event : events) {
+			// events without an index id are not in the database
+			if (event.getIndexId() != null) {
+				eventIndexIds.add(event.getIndexId());
+				for (ProductSummary summary : event.getAllProductList()) {
+					productIds.add(summary.getId());
+				}
+			}
+		}
+
+		for (int i = 0; i < eventIndexIds.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+			List<Long> chunk = eventIndexIds.subList(i,
+					Math.min(eventIndexIds.size(), i + IN_CLAUSE_CHUNK_SIZE));
+			String inClause = getInClause(chunk);
+			String summaryIds = "(SELECT " + SUMMARY_PRODUCT_INDEX_ID
+					+ " FROM " + SUMMARY_TABLE + " WHERE " + SUMMARY_EVENT_ID
+					+ " IN " + inClause + ")";
+
+			executeUpdate("DELETE FROM " + SUMMARY_PROPERTY_TABLE + " WHERE "
+					+ SUMMARY_PROPERTY_ID + " IN " + summaryIds);
+			executeUpdate("DELETE FROM " + SUMMARY_LINK_TABLE + " WHERE "
+					+ SUMMARY_LINK_ID + " IN " + summaryIds);
+			executeUpdate("DELETE FROM " + SUMMARY_TABLE + " WHERE "
+					+ SUMMARY_EVENT_ID + " IN " + inClause);
+			int rows = executeUpdate("DELETE FROM " + EVENT_TABLE + " WHERE "
+					+ EVENT_INDEX_ID + " IN " + inClause);
+			if (rows != chunk.size()) {
+				LOGGER.log(Level.WARNING, "[" + getName() + "] deleted " + rows
+						+ " of " + chunk.size() + " events from the database");
+				throw new Exception("[" + getName() + "] deleted " + rows
+						+ " of " + chunk.size() + " events");
+			}
+		}
+
+		if (locationIndex != null) {
+			for (Long id : eventIndexIds) {
+				locationIndex.remove(id);
+			}
+		}
+
+		LOGGER.finest("[" + getName() + "] Removed " + eventIndexIds.size()
+				+ " events");
+
+		return productIds;
+	}
+
+	/**
+	 * Delete product summaries from the database.
+	 *
+	 * Properties, links, and summaries are deleted using one statement each for
+	 * every chunk of summaries. Events are not changed.
+	 *
+	 * @param summaries
+	 *            ProductSummary objects to delete. Each must have an indexId.
+	 * @return ids of removed summaries.
+	 */
+	@Override
+	public synchronized List<ProductId> removeProductSummaries(
+			final List<ProductSummary> summaries) throws Exception {
+		List<ProductId> productIds = new ArrayList<ProductId>();
+		List<Long> summaryIndexIds = new ArrayList<Long>();
+		for (ProductSummary summary : summaries) {
+			if (summary.getIndexId() == null || summary.getIndexId() == 0) {
+				LOGGER.log(Level.WARNING, "[" + getName()
+						+ "] Could not delete product summary. Index id not found");
+				throw new Exception("[" + getName()
+						+ "] Could not delete summary. Index id not found.");
+			}
+			summaryIndexIds.add(summary.getIndexId());
+			productIds.add(summary.getId());
+		}
+
+		for (int i = 0; i < summaryIndexIds.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+			String inClause = getInClause(summaryIndexIds.subList(i,
+					Math.min(summaryIndexIds.size(), i + IN_CLAUSE_CHUNK_SIZE)));
+
+			executeUpdate("DELETE FROM " + SUMMARY_PROPERTY_TABLE + " WHERE "
+					+ SUMMARY_PROPERTY_ID + " IN " + inClause);
+			executeUpdate("DELETE FROM " + SUMMARY_LINK_TABLE + " WHERE "
+					+ SUMMARY_LINK_ID + " IN " + inClause);
+			executeUpdate("DELETE FROM " + SUMMARY_TABLE + " WHERE "
+					+ SUMMARY_PRODUCT_INDEX_ID + " IN " + inClause);
+		}
+
+		LOGGER.finest("[" + getName() + "] Removed " + summaryIndexIds.size()
+				+ " productSummaries");
+
+		return productIds;
+	}
+
+	/**
+	 * Format ids for an IN clause.
+	 *
+	 * @param ids
+	 *            ids to format.
+	 * @return ids formatted as "(1,2,3)".
+	 */
+	private static String getInClause(final List<Long> ids) {
+		StringBuilder inClause = new StringBuilder("(");
+		Iterator<Long> iter = ids.iterator();
+		while (iter.hasNext()) {
+			inClause.append(iter.next().longValue());
+			if (iter.hasNext()) {
+				inClause.append(",");
+			}
+		}
+		inClause.append(")");
+		return inClause.toString();
+	}
+
+	/**
+	 * Execute an update statement, using the current connection so the update
+	 * is part of any open transaction.
+	 *
+	 * @param sql
+	 *            statement to execute.
+	 * @return number of rows changed.
+	 * @throws Exception
+	 */
+	private int executeUpdate(final String sql) throws Exception {
+		Statement statement = null;
+		try {
+			statement = getConnection().createStatement();
+			return statement.executeUpdate(sql);
+		} finally {
+			try {
+				statement.close();
+			} catch (Exception e) {
+			}
+		}
+	}
+
 	/**
 	 * Create an association between the given event and product summary. This
 	 * assumes that both the event and the product are already stored in their
@@ -1014,6 +1438,11 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 					+ summary.getId().toString()
 					+ ", when removing association");
 		}
+		if (locationIndex != null
+				&& updatedEvent.getAllProductList().size() == 0) {
+			// location searches only match events with products
+			locationIndex.remove(eventIndexId);
+		}
 		return updatedEvent;
 	}
 
@@ -1050,10 +1479,247 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 		return event;
 	}
 
+	/**
+	 * Load events with the given event index ids.
+	 *
+	 * Equivalent to calling {@link #getEvent(Long)} for each id, but loads
+	 * summaries, properties, and links for many events using one query each,
+	 * instead of several queries per product.
+	 *
+	 * @param eventIndexIds
+	 *            event index ids to load.
+	 * @return list of events, in the same order as eventIndexIds.
+	 * @throws Exception
+	 */
+	protected synchronized List<Event> loadEvents(
+			final List<Long> eventIndexIds) throws Exception {
+		// event index id => event, in requested order
+		Map<Long, Event> events = new LinkedHashMap<Long, Event>();
+		for (Long eventIndexId : eventIndexIds) {
+			events.put(eventIndexId, new Event(eventIndexId));
+		}
+
+		// summary index id => summary, in index order
+		Map<Long, ProductSummary> summaries = new LinkedHashMap<Long, ProductSummary>();
+		// summary index id => event index id
+		Map<Long, Long> summaryEvents = new HashMap<Long, Long>();
+		// summary index id => properties
+		Map<Long, Map<String, String>> properties = new HashMap<Long, Map<String, String>>();
+		// summary index id => links
+		Map<Long, Map<String, List<URI>>> links = new HashMap<Long, Map<String, List<URI>>>();
+
+		List<Long> ids = new ArrayList<Long>(events.keySet());
+		for (int i = 0; i < ids.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+			String inClause = getInClause(ids.subList(i,
+					Math.min(ids.size(), i + IN_CLAUSE_CHUNK_SIZE)));
+
+			loadEventSummaries(inClause, summaries, summaryEvents);
+			loadEventSummaryProperties(inClause, properties);
+			loadEventSummaryLinks(inClause, links);
+		}
+
+		// assemble events
+		Iterator<Long> iter = summaries.keySet().iterator();
+		while (iter.hasNext()) {
+			Long summaryIndexId = iter.next();
+			ProductSummary summary = summaries.get(summaryIndexId);
+
+			Map<String, List<URI>> summaryLinks = links.get(summaryIndexId);
+			if (summaryLinks == null) {
+				summaryLinks = new HashMap<String, List<URI>>();
+			}
+			summary.setLinks(summaryLinks);
+
+			Map<String, String> summaryProperties = properties
+					.get(summaryIndexId);
+			if (summaryProperties == null) {
+				summaryProperties = new HashMap<String, String>();
+			}
+			setSummaryProperties(summary, summaryProperties);
+
+			events.get(summaryEvents.get(summaryIndexId)).addProduct(summary);
+		}
+
+		return new LinkedList<Event>(events.values());
+	}
+
+	/**
+	 * Load basic summary information for products associated to events.
+	 *
+	 * @param eventIdsClause
+	 *            list of event index ids, formatted as "(1,2,3)".
+	 * @param summaries
+	 *            map of summary index id to summary, populated by this method.
+	 * @param summaryEvents
+	 *            map of summary index id to event index id, populated by this
+	 *            method.
+	 * @throws Exception
+	 */
+	private void loadEventSummaries(final String eventIdsClause,
+			final Map<Long, ProductSummary> summaries,
+			final Map<Long, Long> summaryEvents) throws Exception {
+		String sql = "SELECT " + LOAD_SUMMARY_COLUMNS + " FROM "
+				+ SUMMARY_TABLE + " WHERE " + SUMMARY_EVENT_ID + " IN "
+				+ eventIdsClause + " ORDER BY " + SUMMARY_PRODUCT_INDEX_ID;
+
+		Statement statement = null;
+		ResultSet results = null;
+		try {
+			statement = verifyConnection().createStatement();
+			results = statement.executeQuery(sql);
+			while (results.next()) {
+				Long summaryIndexId = Long.valueOf(results.getLong(17));
+				ProductSummary summary = new ProductSummary();
+				summary.setIndexId(summaryIndexId);
+				parseSummaryRow(results, summary);
+				summaries.put(summaryIndexId, summary);
+				summaryEvents.put(summaryIndexId,
+						Long.valueOf(results.getLong(18)));
+			}
+		} finally {
+			try {
+				results.close();
+			} catch (Exception e) {
+			}
+			try {
+				statement.close();
+			} catch (Exception e) {
+			}
+		}
+	}
+
+	/**
+	 * Load properties for products associated to events.
+	 *
+	 * @param eventIdsClause
+	 *            list of event index ids, formatted as "(1,2,3)".
+	 * @param properties
+	 *            map of summary index id to properties, populated by this
+	 *            method.
+	 * @throws Exception
+	 */
+	private void loadEventSummaryProperties(final String eventIdsClause,
+			final Map<Long, Map<String, String>> properties) throws Exception {
+		String sql = "SELECT pp." + SUMMARY_PROPERTY_ID + ", pp."
+				+ SUMMARY_PROPERTY_NAME + ", pp." + SUMMARY_PROPERTY_VALUE
+				+ " FROM " + SUMMARY_PROPERTY_TABLE + " pp, " + SUMMARY_TABLE
+				+ " " + SUMMARY_TABLE_ALIAS + " WHERE " + SUMMARY_TABLE_ALIAS
+				+ "." + SUMMARY_PRODUCT_INDEX_ID + "=pp." + SUMMARY_PROPERTY_ID
+				+ " AND " + SUMMARY_TABLE_ALIAS + "." + SUMMARY_EVENT_ID
+				+ " IN " + eventIdsClause;
+
+		Statement statement = null;
+		ResultSet results = null;
+		try {
+			statement = verifyConnection().createStatement();
+			results = statement.executeQuery(sql);
+			while (results.next()) {
+				Long summaryIndexId = Long.valueOf(results.getLong(1));
+				String name = results.getString(2);
+				String value = results.getString(3);
+				if (name == null || value == null) {
+					// Both name and value are required
+					InvalidProductException ipx = new InvalidProductException(
+							"Bad Product Property");
+					LOGGER.log(Level.INFO, "[" + getName()
+							+ "] Bad Product Property", ipx);
+					throw ipx;
+				}
+
+				Map<String, String> summaryProperties = properties
+						.get(summaryIndexId);
+				if (summaryProperties == null) {
+					summaryProperties = new HashMap<String, String>();
+					properties.put(summaryIndexId, summaryProperties);
+				}
+				summaryProperties.put(name, value);
+			}
+		} finally {
+			try {
+				results.close();
+			} catch (Exception e) {
+			}
+			try {
+				statement.close();
+			} catch (Exception e) {
+			}
+		}
+	}
+
+	/**
+	 * Load links for products associated to events.
+	 *
+	 * @param eventIdsClause
+	 *            list of event index ids, formatted as "(1,2,3)".
+	 * @param links
+	 *            map of summary index id to links, populated by this method.
+	 * @throws Exception
+	 */
+	private void loadEventSummaryLinks(final String eventIdsClause,
+			final Map<Long, Map<String, List<URI>>> links) throws Exception {
+		String sql = "SELECT pl." + SUMMARY_LINK_ID + ", pl."
+				+ SUMMARY_LINK_RELATION + ", pl." + SUMMARY_LINK_URL
+				+ " FROM " + SUMMARY_LINK_TABLE + " pl, " + SUMMARY_TABLE + " "
+				+ SUMMARY_TABLE_ALIAS + " WHERE " + SUMMARY_TABLE_ALIAS + "."
+				+ SUMMARY_PRODUCT_INDEX_ID + "=pl." + SUMMARY_LINK_ID + " AND "
+				+ SUMMARY_TABLE_ALIAS + "." + SUMMARY_EVENT_ID + " IN "
+				+ eventIdsClause + " ORDER BY pl.id";
+
+		Statement statement = null;
+		ResultSet results = null;
+		try {
+			statement = verifyConnection().createStatement();
+			results = statement.executeQuery(sql);
+			while (results.next()) {
+				Long summaryIndexId = Long.valueOf(results.getLong(1));
+				String relation = results.getString(2);
+				String uriStr = results.getString(3);
+				if (relation == null || uriStr == null) {
+					// Both relation and uri are required
+					InvalidProductException ipx = new InvalidProductException(
+							"[" + getName() + "] Bad Product Link");
+					LOGGER.log(Level.INFO, "[" + getName()
+							+ "] Bad Product link", ipx);
+					throw ipx;
+				}
+
+				Map<String, List<URI>> summaryLinks = links.get(summaryIndexId);
+				if (summaryLinks == null) {
+					summaryLinks = new HashMap<String, List<URI>>();
+					links.put(summaryIndexId, summaryLinks);
+				}
+				List<URI> l = summaryLinks.get(relation);
+				if (l == null) {
+					l = new LinkedList<URI>();
+					summaryLinks.put(relation, l);
+				}
+				try {
+					l.add(new URI(uriStr));
+				} catch (URISyntaxException usx) {
+					LOGGER.log(Level.INFO, "[" + getName()
+							+ "] Bad Product Link", usx);
+					throw new InvalidProductException("[" + getName()
+							+ "] Bad Product Link", usx);
+				}
+			}
+		} finally {
+			try {
+				results.close();
+			} catch (Exception e) {
+			}
+			try {
+				statement.close();
+			} catch (Exception e) {
+			}
+		}
+	}
+
 	/**
 	 * Query the database to get a list of event index ids that have products
 	 * matching the given ProductIndexQuery.
 	 *
+	 * When the query has a limit, at most limit ids are returned.
+	 *
 	 * @param query
 	 * @return List of index ids
 	 * @throws Exception
@@ -1068,6 +1734,15 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 			return eventIndexIds;
 		}
 
+		Integer limit = query.getLimit();
+		if (locationIndex != null && isLocationQuery(query)) {
+			List<Long> found = searchLocationIndex(query);
+			if (limit != null && found.size() > limit) {
+				found = new ArrayList<Long>(found.subList(0, limit));
+			}
+			return found;
+		}
+
 		// Build up our clause list like always
 		List<String> clauses = buildProductClauses(query);
 
@@ -1090,6 +1765,10 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 			sql.append(clauseIter.next());
 		}
 
+		if (limit != null) {
+			sql.append(" LIMIT " + limit);
+		}
+
 		// Query the database.
 		Statement statement = null;
 		ResultSet results = null;
@@ -1118,6 +1797,101 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 		return eventIndexIds;
 	}
 
+	/**
+	 * Check whether a query can be answered by the location index.
+	 *
+	 * Only queries for preferred event time and location, with result type
+	 * RESULT_TYPE_ALL, like those built by Associator.getLocationQuery.
+	 *
+	 * @param query
+	 *            the query.
+	 * @return true if the query only uses event time, latitude and longitude.
+	 */
+	protected boolean isLocationQuery(final ProductIndexQuery query) {
+		return query.getEventSearchType() == ProductIndexQuery.SEARCH_EVENT_PREFERRED
+				&& query.getResultType() == ProductIndexQuery.RESULT_TYPE_ALL
+				&& query.getMinEventTime() != null
+				&& query.getMaxEventTime() != null
+				&& query.getProductIds().size() == 0
+				&& query.getEventSource() == null
+				&& query.getEventSourceCode() == null
+				&& query.getMinEventDepth() == null
+				&& query.getMaxEventDepth() == null
+				&& query.getMinEventMagnitude() == null
+				&& query.getMaxEventMagnitude() == null
+				&& query.getMinProductUpdateTime() == null
+				&& query.getMaxProductUpdateTime() == null
+				&& query.getProductSource() == null
+				&& query.getProductType() == null
+				&& query.getProductCode() == null
+				&& query.getProductVersion() == null
+				&& query.getProductStatus() == null
+				&& query.getMinProductIndexId() == null;
+	}
+
+	/**
+	 * Find event index ids for a location query using the location index.
+	 *
+	 * @param query
+	 *            a query where isLocationQuery is true.
+	 * @return matching event index ids.
+	 */
+	protected List<Long> searchLocationIndex(final ProductIndexQuery query) {
+		BigDecimal minLat = query.getMinEventLatitude();
+		BigDecimal maxLat = query.getMaxEventLatitude();
+		// Normalize the longitudes between -180 and 180
+		BigDecimal minLon = normalizeLongitude(query.getMinEventLongitude());
+		BigDecimal maxLon = normalizeLongitude(query.getMaxEventLongitude());
+		return locationIndex.search(query.getMinEventTime().getTime(), query
+				.getMaxEventTime().getTime(),
+				minLat == null ? null : minLat.doubleValue(),
+				maxLat == null ? null : maxLat.doubleValue(),
+				minLon == null ? null : minLon.doubleValue(),
+				maxLon == null ? null : maxLon.doubleValue());
+	}
+
+	/**
+	 * Load preferred locations of events that have products into the
+	 * location index.
+	 *
+	 * @throws SQLException
+	 */
+	protected synchronized void loadLocationIndex() throws SQLException {
+		EventLocationIndex index = new EventLocationIndex();
+		String sql = "SELECT e." + EVENT_INDEX_ID + ", e." + EVENT_TIME
+				+ ", e." + EVENT_LATITUDE + ", e." + EVENT_LONGITUDE
+				+ " FROM " + EVENT_TABLE + " e WHERE e." + EVENT_TIME
+				+ " IS NOT NULL AND e." + EVENT_LATITUDE
+				+ " IS NOT NULL AND e." + EVENT_LONGITUDE
+				+ " IS NOT NULL AND EXISTS (SELECT " + SUMMARY_EVENT_ID
+				+ " FROM " + SUMMARY_TABLE + " p WHERE p." + SUMMARY_EVENT_ID
+				+ "=e." + EVENT_INDEX_ID + ")";
+
+		Statement statement = null;
+		ResultSet results = null;
+		try {
+			statement = getConnection().createStatement();
+			results = statement.executeQuery(sql);
+			while (results.next()) {
+				index.put(Long.valueOf(results.getLong(1)), results.getLong(2),
+						results.getDouble(3), results.getDouble(4));
+			}
+		} finally {
+			try {
+				results.close();
+			} catch (Exception e) {
+			}
+			try {
+				statement.close();
+			} catch (Exception e) {
+			}
+		}
+
+		LOGGER.config("[" + getName() + "] loaded " + index.size()
+				+ " event locations");
+		locationIndex = index;
+	}
+
 	/**
 	 * Use the index id to get a ProductSummary from the database.
 	 *
@@ -1161,150 +1935,184 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 
 			// Parse the raw information and set the summary parameters
 			if (results.next()) {
-				try {
-					// SUMMARY_PRODUCT_ID
-					summary.setId(ProductId.parse(results.getString(1)));
-				} catch (NullPointerException npx) {
-					// Product ID not allowed to be null
-					// Remove from index?
-					LOGGER.log(
-							Level.WARNING,
-							"["
-									+ getName()
-									+ "] Failed to get summary. Product ID was null, summary index id="
-									+ summaryIndexId, npx);
-					throw new InvalidProductException("Product ID was null",
-							npx);
-				}
+				parseSummaryRow(results, summary);
+			}
+		} finally {
+			// must close result set to keep from blocking transaction
+			try {
+				results.close();
+			} catch (Exception e) {
+			}
+		}
 
-				// Set some simple types. Null values are fine.
-				try {
-					// SUMMARY_EVENT_SOURCE
-					summary.setEventSource(results.getString(6));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setEventSource(null);
-				}
+		// Add summary link information
+		summary.setLinks(getSummaryLinks(summaryIndexId));
 
-				try {
-					// SUMMARY_EVENT_SOURCE_CODE
-					summary.setEventSourceCode(results.getString(7));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setEventSourceCode(null);
-				}
+		// Add summary property information
+		setSummaryProperties(summary, getSummaryProperties(summaryIndexId));
 
-				try {
-					// SUMMARY_EVENT_TIME
-					summary.setEventTime(new Date(results.getLong(8)));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setEventTime(null);
-				}
+		// Return our generated result. Note this is never null.
+		return summary;
+	}
 
-				try {
-					// SUMMARY_EVENT_LATITUDE
-					summary.setEventLatitude(new BigDecimal(results
-							.getDouble(9)));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setEventLatitude(null);
-				}
+	/**
+	 * Parse basic summary information from the current row of a result set.
+	 *
+	 * Columns 1-16 must be in the same order as the getSummary query.
+	 *
+	 * @param results
+	 *            result set positioned on a summary row.
+	 * @param summary
+	 *            summary to update, with index id already set.
+	 * @throws SQLException
+	 * @throws InvalidProductException
+	 */
+	protected void parseSummaryRow(final ResultSet results,
+			final ProductSummary summary) throws SQLException,
+			InvalidProductException {
+		try {
+			// SUMMARY_PRODUCT_ID
+			summary.setId(ProductId.parse(results.getString(1)));
+		} catch (NullPointerException npx) {
+			// Product ID not allowed to be null
+			// Remove from index?
+			LOGGER.log(
+					Level.WARNING,
+					"["
+							+ getName()
+							+ "] Failed to get summary. Product ID was null, summary index id="
+							+ summary.getIndexId(), npx);
+			throw new InvalidProductException("Product ID was null",
+					npx);
+		}
 
-				try {
-					// SUMMARY_EVENT_LONGITUDE
-					summary.setEventLongitude(new BigDecimal(results
-							.getDouble(10)));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setEventLongitude(null);
-				}
+		// Set some simple types. Null values are fine.
+		try {
+			// SUMMARY_EVENT_SOURCE
+			summary.setEventSource(results.getString(6));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setEventSource(null);
+		}
 
-				try {
-					// SUMMARY_EVENT_DEPTH
-					summary.setEventDepth(new BigDecimal(results.getDouble(11)));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setEventDepth(null);
-				}
+		try {
+			// SUMMARY_EVENT_SOURCE_CODE
+			summary.setEventSourceCode(results.getString(7));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setEventSourceCode(null);
+		}
 
-				try {
-					// SUMMARY_EVENT_MAGNITUDE
-					summary.setEventMagnitude(new BigDecimal(results
-							.getDouble(12)));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setEventMagnitude(null);
-				}
+		try {
+			// SUMMARY_EVENT_TIME
+			summary.setEventTime(new Date(results.getLong(8)));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setEventTime(null);
+		}
 
-				// Set some more simple values
-				try {
-					// SUMMARY_VERSION
-					summary.setVersion(results.getString(13));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setVersion(null);
-				}
+		try {
+			// SUMMARY_EVENT_LATITUDE
+			summary.setEventLatitude(new BigDecimal(results
+					.getDouble(9)));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setEventLatitude(null);
+		}
 
-				try {
-					// SUMMARY_STATUS
-					summary.setStatus(results.getString(14));
-				} catch (Exception e) {
-					// ignore
-				}
-				if (results.wasNull()) {
-					summary.setStatus(null);
-				}
+		try {
+			// SUMMARY_EVENT_LONGITUDE
+			summary.setEventLongitude(new BigDecimal(results
+					.getDouble(10)));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setEventLongitude(null);
+		}
 
-				try {
-					// SUMMARY_TRACKER_URL
-					summary.setTrackerURL(new URL(results.getString(15)));
-				} catch (MalformedURLException mux) {
+		try {
+			// SUMMARY_EVENT_DEPTH
+			summary.setEventDepth(new BigDecimal(results.getDouble(11)));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setEventDepth(null);
+		}
 
-					// Tracker URL is not allowed to be null
-					// Log a message?
-					// Remove this product from the index?
+		try {
+			// SUMMARY_EVENT_MAGNITUDE
+			summary.setEventMagnitude(new BigDecimal(results
+					.getDouble(12)));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setEventMagnitude(null);
+		}
 
-					// Throw a more informative exception
-					LOGGER.log(Level.INFO, "[" + getName()
-							+ "] Bad TrackerURL value", mux);
-					throw new InvalidProductException("[" + getName()
-							+ "] Bad TrackerURL value", mux);
-				}
+		// Set some more simple values
+		try {
+			// SUMMARY_VERSION
+			summary.setVersion(results.getString(13));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setVersion(null);
+		}
 
-				// This will default to 0 if not set in index db
-				// SUMMARY_PREFERRED
-				summary.setPreferredWeight(results.getLong(16));
-			}
-		} finally {
-			// must close result set to keep from blocking transaction
-			try {
-				results.close();
-			} catch (Exception e) {
-			}
+		try {
+			// SUMMARY_STATUS
+			summary.setStatus(results.getString(14));
+		} catch (Exception e) {
+			// ignore
+		}
+		if (results.wasNull()) {
+			summary.setStatus(null);
 		}
 
-		// Add summary link information
-		summary.setLinks(getSummaryLinks(summaryIndexId));
+		try {
+			// SUMMARY_TRACKER_URL
+			summary.setTrackerURL(new URL(results.getString(15)));
+		} catch (MalformedURLException mux) {
 
-		// Add summary property information
-		Map<String, String> properties = getSummaryProperties(summaryIndexId);
+			// Tracker URL is not allowed to be null
+			// Log a message?
+			// Remove this product from the index?
+
+			// Throw a more informative exception
+			LOGGER.log(Level.INFO, "[" + getName()
+					+ "] Bad TrackerURL value", mux);
+			throw new InvalidProductException("[" + getName()
+					+ "] Bad TrackerURL value", mux);
+		}
+
+		// This will default to 0 if not set in index db
+		// SUMMARY_PREFERRED
+		summary.setPreferredWeight(results.getLong(16));
+	}
+
+	/**
+	 * Set summary properties, and numeric attributes based on property values
+	 * to preserve original precision.
+	 *
+	 * @param summary
+	 *            summary to update.
+	 * @param properties
+	 *            properties loaded from the index.
+	 */
+	protected void setSummaryProperties(final ProductSummary summary,
+			final Map<String, String> properties) {
 		summary.setProperties(properties);
 
 		// set numeric attributes based on string values to preserve original precision
@@ -1324,9 +2132,6 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 			summary.setEventMagnitude(new BigDecimal(
 					properties.get(Product.MAGNITUDE_PROPERTY)));
 		}
-
-		// Return our generated result. Note this is never null.
-		return summary;
 	}
 
 	/**
@@ -1887,7 +2692,10 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 	 */
 	protected synchronized void addProductProperties(long productId,
 			Map<String, String> properties) throws SQLException {
-		// Loop through the properties list and add them all to the database
+		if (properties.isEmpty()) {
+			return;
+		}
+		// Loop through the properties list and add them all to one batch
 		Set<String> keys = properties.keySet();
 		for (String key : keys) {
 			JDBCUtils.setParameter(insertProperty, 1, productId, Types.BIGINT);
@@ -1895,13 +2703,14 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 			JDBCUtils.setParameter(insertProperty, 3, properties.get(key),
 					Types.VARCHAR);
 
-			insertProperty.executeUpdate();
+			insertProperty.addBatch();
 			if (LOGGER.isLoggable(Level.FINEST)) {
 				LOGGER.log(Level.FINEST, "[" + getName() + "] Added property "
 						+ key + ":" + properties.get(key) + " for product "
 						+ productId);
 			}
 		}
+		insertProperty.executeBatch();
 	}
 
 	/**
@@ -2000,7 +2809,8 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 	 */
 	protected synchronized void addProductLinks(long productId,
 			Map<String, List<URI>> links) throws SQLException {
-		// Loop through the properties list and add them all to the database
+		// Loop through the links list and add them all to one batch
+		boolean hasLinks = false;
 		Set<String> keys = links.keySet();
 		for (String key : keys) {
 			List<URI> uris = links.get(key);
@@ -2010,12 +2820,16 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 				JDBCUtils.setParameter(insertLink, 3, uri.toString(),
 						Types.VARCHAR);
 
-				insertLink.executeUpdate();
+				insertLink.addBatch();
+				hasLinks = true;
 				LOGGER.log(Level.FINEST, "[" + getName() + "] Added link "
 						+ key + ":" + uri.toString() + " for product "
 						+ productId);
 			}
 		}
+		if (hasLinks) {
+			insertLink.executeBatch();
+		}
 	}
 
 	/**
@@ -2159,6 +2973,17 @@ public class JDBCProductIndex extends JDBCConnection implements ProductIndex {
 							Types.BIGINT);
 
 					updateEvent.executeUpdate();
+
+					if (locationIndex != null) {
+						if (eventTime != null && latitude != null
+								&& longitude != null
+								&& updated.getAllProductList().size() > 0) {
+							locationIndex.put(indexId, eventTime, latitude,
+									longitude);
+						} else {
+							locationIndex.remove(indexId);
+						}
+					}
 				}
 
 				LOGGER.log(Level.FINEST, "[" + getName()
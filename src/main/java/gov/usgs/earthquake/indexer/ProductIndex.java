@@ -6,6 +6,7 @@ package gov.usgs.earthquake.indexer;
 import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.util.Configurable;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -97,6 +98,29 @@ public interface ProductIndex extends Configurable {
 	 */
 	public List<ProductId> removeEvent(final Event event) throws Exception;
 
+	/**
+	 * Remove events, and all of their products, from the index.
+	 * 
+	 * The default implementation removes each product summary, then each
+	 * event. Implementations may override to remove events more efficiently.
+	 * 
+	 * @param events
+	 *            the events to remove.
+	 * @return ids of removed products.
+	 * @throws Exception
+	 */
+	public default List<ProductId> removeEvents(final List<Event> events)
+			throws Exception {
+		List<ProductId> removed = new ArrayList<ProductId>();
+		for (Event event : events) {
+			for (ProductSummary summary : event.getAllProductList()) {
+				removed.add(removeProductSummary(summary));
+			}
+			removeEvent(event);
+		}
+		return removed;
+	}
+
 	/**
 	 * Add a product summary to the index.
 	 * 
@@ -120,6 +144,28 @@ public interface ProductIndex extends Configurable {
 	public ProductId removeProductSummary(final ProductSummary summary)
 			throws Exception;
 
+	/**
+	 * Remove product summaries from the index.
+	 * 
+	 * Events that summaries are associated to are not updated.
+	 * 
+	 * The default implementation removes each product summary.
+	 * Implementations may override to remove summaries more efficiently.
+	 * 
+	 * @param summaries
+	 *            the summaries to remove.
+	 * @return ids of removed summaries.
+	 * @throws Exception
+	 */
+	public default List<ProductId> removeProductSummaries(
+			final List<ProductSummary> summaries) throws Exception {
+		List<ProductId> removed = new ArrayList<ProductId>();
+		for (ProductSummary summary : summaries) {
+			removed.add(removeProductSummary(summary));
+		}
+		return removed;
+	}
+
 	/**
 	 * Associate an Event and ProductSummary that are already in the index.
 	 * 
@@ -2,6 +2,7 @@ package gov.usgs.earthquake.nats;
 
 import gov.usgs.earthquake.distribution.ConfigurationException;
 import gov.usgs.earthquake.distribution.DefaultNotificationReceiver;
+import gov.usgs.earthquake.distribution.SequenceCheckpointer;
 import gov.usgs.earthquake.distribution.URLNotification;
 import gov.usgs.earthquake.distribution.URLNotificationJSONConverter;
 import gov.usgs.util.Config;
@@ -18,6 +19,9 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,19 +37,32 @@ public class NATSStreamingNotificationReceiver extends DefaultNotificationReceiv
   public static String TRACKING_FILE_NAME_PROPERTY = "trackingFile";
   public static String UPDATE_SEQUENCE_AFTER_EXCEPTION_PROPERTY = "updateSequenceAfterException";
   public static String SEQUENCE_PROPERTY = "sequence";
+  public static String MESSAGE_QUEUE_SIZE_PROPERTY = "messageQueueSize";
 
   public static String DEFAULT_TRACKING_FILE_NAME_PROPERTY = "data/STANReceiverInfo.json";
   public static String DEFAULT_UPDATE_SEQUENCE_AFTER_EXCEPTION_PROPERTY = "true";
+  public static String DEFAULT_MESSAGE_QUEUE_SIZE = "1000";
 
   private NATSClient client = new NATSClient();
   private Subscription subscription;
 
   private String subject;
-  private long sequence = 0;
+  private volatile long sequence = 0;
   private String trackingFileName;
   private boolean updateSequenceAfterException;
   private boolean exceptionThrown = false;
 
+  private int checkpointMessages = Integer.parseInt(SequenceCheckpointer.DEFAULT_CHECKPOINT_MESSAGES);
+  private long checkpointInterval = Long.parseLong(SequenceCheckpointer.DEFAULT_CHECKPOINT_INTERVAL);
+  private SequenceCheckpointer checkpointer;
+
+  /** Messages waiting to be processed, so the STAN thread doesn't wait on listeners or disk. */
+  private int messageQueueSize = Integer.parseInt(DEFAULT_MESSAGE_QUEUE_SIZE);
+  private BlockingQueue<Message> messageQueue;
+  private Thread messageThread;
+  /** Set to stop message thread, once queue is empty. */
+  private volatile boolean stopMessages = false;
+
   /**
    * Configures receiver based on included properties
    *
@@ -68,6 +85,19 @@ public class NATSStreamingNotificationReceiver extends DefaultNotificationReceiv
     updateSequenceAfterException = Boolean.parseBoolean(config.getProperty(
       UPDATE_SEQUENCE_AFTER_EXCEPTION_PROPERTY,
       DEFAULT_UPDATE_SEQUENCE_AFTER_EXCEPTION_PROPERTY));
+
+    checkpointMessages = Integer.parseInt(config.getProperty(
+      SequenceCheckpointer.CHECKPOINT_MESSAGES_PROPERTY,
+      SequenceCheckpointer.DEFAULT_CHECKPOINT_MESSAGES));
+    checkpointInterval = Long.parseLong(config.getProperty(
+      SequenceCheckpointer.CHECKPOINT_INTERVAL_PROPERTY,
+      SequenceCheckpointer.DEFAULT_CHECKPOINT_INTERVAL));
+    LOGGER.config("[" + getName() + "] checkpoint every " + checkpointMessages
+      + " messages or " + checkpointInterval + " ms");
+
+    messageQueueSize = Integer.parseInt(config.getProperty(
+      MESSAGE_QUEUE_SIZE_PROPERTY, DEFAULT_MESSAGE_QUEUE_SIZE));
+    LOGGER.config("[" + getName() + "] message queue size " + messageQueueSize);
   }
 
   /**
@@ -95,6 +125,19 @@ public class NATSStreamingNotificationReceiver extends DefaultNotificationReceiv
       sequence = Long.parseLong(properties.get(SEQUENCE_PROPERTY).toString());
     }
 
+    checkpointer = new SequenceCheckpointer(getName(), () -> {
+      writeTrackingFile();
+      return null;
+    }, checkpointMessages, checkpointInterval);
+    checkpointer.startup();
+
+    if (messageQueueSize > 0) {
+      stopMessages = false;
+      messageQueue = new ArrayBlockingQueue<Message>(messageQueueSize);
+      messageThread = new Thread(this::processMessages, getName() + " messages");
+      messageThread.start();
+    }
+
     subscription = client.getConnection().subscribe(
       subject,
       this,
@@ -112,17 +155,32 @@ public class NATSStreamingNotificationReceiver extends DefaultNotificationReceiv
    */
   @Override
   public void shutdown() throws Exception {
-    try {
-      writeTrackingFile();
-    } catch (Exception e) {
-      LOGGER.log(Level.WARNING, "[" + getName() + "] failed to write to tracking file");
-    }
     try {
       subscription.unsubscribe();
     } catch (Exception e) {
       LOGGER.log(Level.WARNING, "[" + getName() + "] failed to unsubscribe from NATS channel");
     }
     subscription = null;
+    // process queued messages before saving sequence
+    if (messageThread != null) {
+      try {
+        stopMessages = true;
+        messageThread.join();
+      } catch (Exception e) {
+        LOGGER.log(Level.WARNING, "[" + getName() + "] interrupted processing queued messages");
+      }
+      messageThread = null;
+      messageQueue = null;
+    }
+    try {
+      if (checkpointer != null) {
+        checkpointer.shutdown();
+      }
+      writeTrackingFile();
+    } catch (Exception e) {
+      LOGGER.log(Level.WARNING, "[" + getName() + "] failed to write to tracking file");
+    }
+    checkpointer = null;
     client.shutdown();
     super.shutdown();
   }
@@ -165,14 +223,49 @@ public class NATSStreamingNotificationReceiver extends DefaultNotificationReceiv
   }
 
   /**
-   * Defines behavior for message receipt. Attempts to process notifications, with configurable behavior
-   * for exception handling
+   * Defines behavior for message receipt. Queues messages for processing, or processes them
+   * in this thread when there is no queue
    *
    * @param message
    *            The message received from the STAN server
    */
   @Override
   public void onMessage(Message message) {
+    if (messageQueue == null) {
+      processMessage(message);
+      return;
+    }
+    try {
+      // blocks when queue is full, so the server slows down instead of memory filling up
+      messageQueue.put(message);
+    } catch (InterruptedException e) {
+      LOGGER.log(Level.WARNING, "[" + getName() + "] interrupted queueing NATSStreaming message");
+    }
+  }
+
+  /**
+   * Processes queued messages, in order, until stopped
+   */
+  protected void processMessages() {
+    try {
+      while (!stopMessages || !messageQueue.isEmpty()) {
+        Message message = messageQueue.poll(100L, TimeUnit.MILLISECONDS);
+        if (message != null) {
+          processMessage(message);
+        }
+      }
+    } catch (InterruptedException e) {
+      LOGGER.log(Level.WARNING, "[" + getName() + "] interrupted processing NATSStreaming messages");
+    }
+  }
+
+  /**
+   * Attempts to process notifications, with configurable behavior for exception handling
+   *
+   * @param message
+   *            The message received from the STAN server
+   */
+  protected void processMessage(Message message) {
     try {
       // parse message, send to listeners
       URLNotification notification = URLNotificationJSONConverter.parseJSON(new ByteArrayInputStream(message.getData()));
@@ -180,7 +273,11 @@ public class NATSStreamingNotificationReceiver extends DefaultNotificationReceiv
       // update sequence and tracking file if exception not thrown or we still want to update sequence anyway
       if (!exceptionThrown || updateSequenceAfterException) {
         sequence = message.getSequence();
-        writeTrackingFile();
+        if (checkpointer != null) {
+          checkpointer.update();
+        } else {
+          writeTrackingFile();
+        }
       }
     } catch (Exception e) {
       exceptionThrown = true;
@@ -216,4 +313,28 @@ public class NATSStreamingNotificationReceiver extends DefaultNotificationReceiv
     this.subject = subject;
   }
 
+  public int getCheckpointMessages() {
+    return checkpointMessages;
+  }
+
+  public void setCheckpointMessages(int checkpointMessages) {
+    this.checkpointMessages = checkpointMessages;
+  }
+
+  public long getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  public void setCheckpointInterval(long checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  public int getMessageQueueSize() {
+    return messageQueueSize;
+  }
+
+  public void setMessageQueueSize(int messageQueueSize) {
+    this.messageQueueSize = messageQueueSize;
+  }
+
 }
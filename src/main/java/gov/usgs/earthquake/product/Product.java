@@ -346,14 +346,33 @@ public class Product {
 	}
 
 	public PublicKey verifySignatureKey(final PublicKey[] publicKeys) throws Exception {
+		return verifySignatureKey(publicKeys, null);
+	}
+
+	/**
+	 * Verify this product's signature using a digest that was already
+	 * computed.
+	 *
+	 * @param publicKeys
+	 *            an array of publicKeys to test.
+	 * @param digest
+	 *            digest of this product, or null to compute the digest.
+	 * @return the key that verified the signature, or null if not verified.
+	 * @throws Exception
+	 */
+	public PublicKey verifySignatureKey(final PublicKey[] publicKeys,
+			final byte[] digest) throws Exception {
 		if (signature == null) {
 			return null;
 		}
 
-		byte[] digest = ProductDigest.digestProduct(this);
+		byte[] productDigest = digest;
+		if (productDigest == null) {
+			productDigest = ProductDigest.digestProduct(this);
+		}
 		for (PublicKey key : publicKeys) {
 			try {
-				if (CryptoUtils.verify(key, digest, getSignature())) {
+				if (CryptoUtils.verify(key, productDigest, getSignature())) {
 					return key;
 				}
 			} catch (Exception e) {
@@ -11,6 +11,7 @@ import gov.usgs.util.StreamUtils;
 import gov.usgs.util.XmlUtils;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
 import java.security.DigestOutputStream;
@@ -113,13 +114,28 @@ public class ProductDigest implements ProductHandler {
 	 */
 	public void onContent(ProductId id, String path, Content content)
 			throws Exception {
+		onContentAttributes(path, content);
+		StreamUtils.transferStream(content.getInputStream(),
+				new StreamUtils.UnclosableOutputStream(digestStream));
+	}
+
+	/**
+	 * Digest the path and content attributes, but not content bytes.
+	 */
+	protected void onContentAttributes(String path, Content content)
+			throws Exception {
 		digestStream.write(path.getBytes(CHARSET));
 		digestStream.write(content.getContentType().getBytes(CHARSET));
 		digestStream.write(XmlUtils.formatDate(content.getLastModified())
 				.getBytes(CHARSET));
 		digestStream.write(content.getLength().toString().getBytes(CHARSET));
-		StreamUtils.transferStream(content.getInputStream(),
-				new StreamUtils.UnclosableOutputStream(digestStream));
+	}
+
+	/**
+	 * @return the stream used to compute the product digest.
+	 */
+	protected OutputStream getDigestStream() {
+		return digestStream;
 	}
 
 	/**
@@ -0,0 +1,336 @@
+/*
+ * StreamingProductDigest
+ */
+package gov.usgs.earthquake.product;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compute a product digest while a product is being streamed somewhere else.
+ *
+ * ProductDigest requires ProductHandler calls in the order generated by
+ * ObjectProductSource. This class checks the order of calls, and when they
+ * are out of order, or content length is not known in advance, the digest is
+ * not available and the caller must digest the product another way.
+ *
+ * Content bytes are digested as they are read, using {@link #teeContent}:
+ * <pre>
+ * Content tee = digest.teeContent(id, path, content);
+ * out.onContent(id, path, tee);
+ * digest.endContent();
+ * </pre>
+ */
+public class StreamingProductDigest extends ProductDigest {
+
+	/** Logging object. */
+	private static final Logger LOGGER = Logger
+			.getLogger(StreamingProductDigest.class.getName());
+
+	/** Call order, same as ObjectProductSource. */
+	private static final int BEGIN = 0;
+	private static final int PROPERTIES = 1;
+	private static final int LINKS = 2;
+	private static final int CONTENTS = 3;
+	private static final int SIGNATURE = 4;
+	private static final int END = 5;
+
+	/** Most recent call. */
+	private int state = -1;
+
+	/** Whether calls have been in order so far. */
+	private boolean valid = true;
+
+	/** Previous property name. */
+	private String lastProperty = null;
+	/** Previous link relation. */
+	private String lastRelation = null;
+	/** Previous link href. */
+	private URI lastHref = null;
+	/** Previous content path. */
+	private String lastPath = null;
+
+	/** Expected length of content being teed. */
+	private long contentLength = -1L;
+	/** Number of bytes of content that have been teed. */
+	private long contentRead = 0L;
+
+	/** Product id. */
+	private ProductId id = null;
+	/** Product signature. */
+	private String signature = null;
+
+	/**
+	 * Construct a new StreamingProductDigest.
+	 */
+	public StreamingProductDigest() {
+		super();
+	}
+
+	/**
+	 * @return true if calls were in order and the digest is complete.
+	 */
+	public boolean isValid() {
+		return valid && state == END;
+	}
+
+	/**
+	 * @return the computed digest, or null if not valid.
+	 */
+	@Override
+	public byte[] getDigest() {
+		return isValid() ? super.getDigest() : null;
+	}
+
+	/**
+	 * @return product with the streamed id and signature, used to verify the
+	 *         digest, or null if the digest is not valid.
+	 */
+	public Product getSignedProduct() {
+		if (!isValid()) {
+			return null;
+		}
+		Product product = new Product(id);
+		product.setSignature(signature);
+		return product;
+	}
+
+	@Override
+	public void onBeginProduct(ProductId id, String status, URL trackerURL)
+			throws Exception {
+		if (checkState(BEGIN)) {
+			this.id = id;
+			try {
+				super.onBeginProduct(id, status, trackerURL);
+			} catch (Exception e) {
+				fail(e);
+			}
+		}
+	}
+
+	@Override
+	public void onProperty(ProductId id, String name, String value)
+			throws Exception {
+		if (checkState(PROPERTIES)
+				&& checkOrder(lastProperty == null
+						|| lastProperty.compareTo(name) < 0)) {
+			lastProperty = name;
+			try {
+				super.onProperty(id, name, value);
+			} catch (Exception e) {
+				fail(e);
+			}
+		}
+	}
+
+	@Override
+	public void onLink(ProductId id, String relation, URI href)
+			throws Exception {
+		if (checkState(LINKS)) {
+			int compare = (lastRelation == null ? -1 : lastRelation
+					.compareTo(relation));
+			if (compare == 0) {
+				compare = lastHref.compareTo(href);
+			}
+			if (checkOrder(compare < 0)) {
+				lastRelation = relation;
+				lastHref = href;
+				try {
+					super.onLink(id, relation, href);
+				} catch (Exception e) {
+					fail(e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void onContent(ProductId id, String path, Content content)
+			throws Exception {
+		if (checkContent(path, content)) {
+			try {
+				super.onContent(id, path, content);
+			} catch (Exception e) {
+				fail(e);
+			}
+		}
+	}
+
+	/**
+	 * Digest content as it is read by another handler.
+	 *
+	 * Call {@link #endContent()} once the returned content has been read.
+	 *
+	 * @param id
+	 *            product id.
+	 * @param path
+	 *            content path.
+	 * @param content
+	 *            content to digest.
+	 * @return content that digests bytes as they are read, or the original
+	 *         content if the digest is no longer valid.
+	 */
+	public Content teeContent(ProductId id, String path, Content content)
+			throws Exception {
+		if (!checkContent(path, content)) {
+			return content;
+		}
+		try {
+			onContentAttributes(path, content);
+		} catch (Exception e) {
+			fail(e);
+			return content;
+		}
+		contentLength = content.getLength();
+		contentRead = 0L;
+		return new TeeContent(content);
+	}
+
+	/**
+	 * Check content passed to {@link #teeContent} was read completely, once.
+	 */
+	public void endContent() {
+		if (valid && contentRead != contentLength) {
+			LOGGER.finer("content length " + contentLength + ", but read "
+					+ contentRead + " bytes");
+			valid = false;
+		}
+		contentLength = -1L;
+	}
+
+	@Override
+	public void onSignature(ProductId id, String signature) throws Exception {
+		if (checkState(SIGNATURE)) {
+			this.signature = signature;
+		}
+	}
+
+	@Override
+	public void onEndProduct(ProductId id) throws Exception {
+		if (checkState(END)) {
+			try {
+				super.onEndProduct(id);
+			} catch (Exception e) {
+				fail(e);
+			}
+		}
+	}
+
+	/**
+	 * Check content order and attributes required for digest.
+	 */
+	private boolean checkContent(String path, Content content) {
+		if (checkState(CONTENTS)
+				&& checkOrder(lastPath == null || lastPath.compareTo(path) < 0)
+				&& checkOrder(content.getContentType() != null
+						&& content.getLastModified() != null
+						&& content.getLength() != null
+						&& content.getLength() >= 0)) {
+			lastPath = path;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Move to a new state, invalidating the digest if out of order.
+	 */
+	private boolean checkState(final int next) {
+		if (next < state || (next == state && next != PROPERTIES
+				&& next != LINKS && next != CONTENTS)) {
+			valid = false;
+		}
+		state = next;
+		return valid;
+	}
+
+	/**
+	 * Invalidate digest after an exception.
+	 */
+	private void fail(final Exception e) {
+		LOGGER.log(Level.FINE, "exception computing digest", e);
+		valid = false;
+	}
+
+	/**
+	 * Invalidate digest unless ordered.
+	 */
+	private boolean checkOrder(final boolean ordered) {
+		if (!ordered && valid) {
+			LOGGER.finer("product not streamed in digest order");
+			valid = false;
+		}
+		return valid;
+	}
+
+	/**
+	 * Content that digests bytes as they are read.
+	 */
+	private class TeeContent extends AbstractContent {
+
+		private final Content content;
+
+		public TeeContent(final Content content) {
+			super(content);
+			this.content = content;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return new FilterInputStream(content.getInputStream()) {
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b != -1) {
+						digest(new byte[] { (byte) b }, 0, 1);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len)
+						throws IOException {
+					int read = super.read(b, off, len);
+					if (read > 0) {
+						digest(b, off, read);
+					}
+					return read;
+				}
+
+				@Override
+				public long skip(long n) throws IOException {
+					// skipped bytes are not digested
+					valid = false;
+					return super.skip(n);
+				}
+
+				@Override
+				public boolean markSupported() {
+					return false;
+				}
+			};
+		}
+
+		@Override
+		public void close() {
+			content.close();
+		}
+
+		private void digest(final byte[] b, final int off, final int len) {
+			contentRead += len;
+			if (valid) {
+				try {
+					getDigestStream().write(b, off, len);
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+		}
+	}
+
+}
@@ -1,23 +1,61 @@
 package gov.usgs.earthquake.product.io;
 
 import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.InputStream;
 
-import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
+/**
+ * Read and write primitives used by the binary product format.
+ *
+ * Buffers are reused between calls, so a BinaryIO object should only be used
+ * by one thread at a time, usually one per stream.
+ */
 public class BinaryIO {
 
+	/** Size of buffer used to transfer streams. */
+	public static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+	/** Strings up to this length are encoded and decoded without copying. */
+	public static final int STRING_BUFFER_SIZE = 1024;
+
+	/** Buffer for ints and longs. */
+	private final byte[] numberBuffer = new byte[8];
+
+	/** Buffer for strings, allocated when first used. */
+	private byte[] stringBuffer;
+
+	/** Buffer for streams, allocated when first used. */
+	private byte[] transferBuffer;
+
 	public void writeInt(final int in, final OutputStream out)
 			throws IOException {
-		out.write(ByteBuffer.allocate(4).putInt(in).array());
+		byte[] buffer = numberBuffer;
+		buffer[0] = (byte) (in >>> 24);
+		buffer[1] = (byte) (in >>> 16);
+		buffer[2] = (byte) (in >>> 8);
+		buffer[3] = (byte) in;
+		out.write(buffer, 0, 4);
 	}
 
 	public void writeLong(final long in, final OutputStream out)
 			throws IOException {
-		out.write(ByteBuffer.allocate(8).putLong(in).array());
+		byte[] buffer = numberBuffer;
+		buffer[0] = (byte) (in >>> 56);
+		buffer[1] = (byte) (in >>> 48);
+		buffer[2] = (byte) (in >>> 40);
+		buffer[3] = (byte) (in >>> 32);
+		buffer[4] = (byte) (in >>> 24);
+		buffer[5] = (byte) (in >>> 16);
+		buffer[6] = (byte) (in >>> 8);
+		buffer[7] = (byte) in;
+		out.write(buffer, 0, 8);
 	}
 
 	public void writeBytes(final byte[] toWrite, final OutputStream out)
@@ -30,7 +68,25 @@ public class BinaryIO {
 
 	public void writeString(final String toWrite, final OutputStream out)
 			throws IOException {
-		writeBytes(toWrite.getBytes("UTF8"), out);
+		int length = toWrite.length();
+		if (length <= STRING_BUFFER_SIZE) {
+			// ascii strings are the same in UTF8, copy without encoding
+			byte[] buffer = getStringBuffer();
+			int i = 0;
+			for (; i < length; i++) {
+				char c = toWrite.charAt(i);
+				if (c >= 0x80) {
+					break;
+				}
+				buffer[i] = (byte) c;
+			}
+			if (i == length) {
+				writeInt(length, out);
+				out.write(buffer, 0, length);
+				return;
+			}
+		}
+		writeBytes(toWrite.getBytes(StandardCharsets.UTF_8), out);
 	}
 
 	public void writeDate(final Date toWrite, final OutputStream out)
@@ -42,25 +98,54 @@ public class BinaryIO {
 			final OutputStream out) throws IOException {
 		writeLong(length, out);
 
+		if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+			// file to file, let channels transfer
+			FileChannel inChannel = ((FileInputStream) in).getChannel();
+			FileChannel outChannel = ((FileOutputStream) out).getChannel();
+			long position = inChannel.position();
+			long remaining = Math.min(length, inChannel.size() - position);
+			while (remaining > 0) {
+				long transferred = inChannel.transferTo(position, remaining,
+						outChannel);
+				if (transferred <= 0) {
+					break;
+				}
+				position += transferred;
+				remaining -= transferred;
+			}
+			inChannel.position(position);
+			return;
+		}
+
 		// transfer stream bytes
+		byte[] bytes = getTransferBuffer();
 		int read = -1;
-		byte[] bytes = new byte[1024];
+		long remaining = length;
 		// read no more than length bytes
-		while ((read = in.read(bytes)) != -1) {
+		while (remaining > 0 && (read = in.read(bytes, 0,
+				(int) Math.min(bytes.length, remaining))) != -1) {
 			out.write(bytes, 0, read);
+			remaining -= read;
 		}
 	}
 
 	public int readInt(final InputStream in) throws IOException {
-		byte[] buffer = new byte[4];
-		readFully(buffer, in);
-		return ByteBuffer.wrap(buffer).getInt();
+		byte[] buffer = numberBuffer;
+		readFully(buffer, 0, 4, in);
+		return ((buffer[0] & 0xff) << 24) | ((buffer[1] & 0xff) << 16)
+				| ((buffer[2] & 0xff) << 8) | (buffer[3] & 0xff);
 	}
 
 	public long readLong(final InputStream in) throws IOException {
-		byte[] buffer = new byte[8];
-		readFully(buffer, in);
-		return ByteBuffer.wrap(buffer).getLong();
+		byte[] buffer = numberBuffer;
+		readFully(buffer, 0, 8, in);
+		return ((long) (buffer[0] & 0xff) << 56)
+				| ((long) (buffer[1] & 0xff) << 48)
+				| ((long) (buffer[2] & 0xff) << 40)
+				| ((long) (buffer[3] & 0xff) << 32)
+				| ((long) (buffer[4] & 0xff) << 24)
+				| ((buffer[5] & 0xff) << 16) | ((buffer[6] & 0xff) << 8)
+				| (buffer[7] & 0xff);
 	}
 
 	public byte[] readBytes(final InputStream in) throws IOException {
@@ -80,9 +165,10 @@ public class BinaryIO {
 		if (maxLength > 0 && length > maxLength) {
 			throw new IOException("request string length " + length + " greater than maxLength " + maxLength);
 		}
-		byte[] buffer = new byte[length];
-		readFully(buffer, in);
-		return new String(buffer, "UTF8");
+		byte[] buffer = (length <= STRING_BUFFER_SIZE ? getStringBuffer()
+				: new byte[length]);
+		readFully(buffer, 0, length, in);
+		return new String(buffer, 0, length, StandardCharsets.UTF_8);
 	}
 
 	public Date readDate(final InputStream in) throws IOException {
@@ -99,9 +185,29 @@ public class BinaryIO {
 			final OutputStream out) throws IOException {
 		long remaining = length;
 
+		if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+			// file to file, let channels transfer
+			FileChannel inChannel = ((FileInputStream) in).getChannel();
+			FileChannel outChannel = ((FileOutputStream) out).getChannel();
+			long position = outChannel.position();
+			while (remaining > 0) {
+				long transferred = outChannel.transferFrom(inChannel,
+						position, remaining);
+				if (transferred <= 0) {
+					// shouldn't be at eof, since reading length specified in
+					// stream
+					throw new EOFException();
+				}
+				position += transferred;
+				remaining -= transferred;
+			}
+			outChannel.position(position);
+			return;
+		}
+
 		// transfer stream bytes, not going over total
 		int read = -1;
-		byte[] bytes = new byte[1024];
+		byte[] bytes = getTransferBuffer();
 		int readSize = bytes.length;
 
 		while (remaining > 0) {
@@ -125,15 +231,18 @@ public class BinaryIO {
 
 	protected void readFully(final byte[] buffer, final InputStream in)
 			throws IOException {
-		int length = buffer.length;
+		readFully(buffer, 0, buffer.length, in);
+	}
+
+	protected void readFully(final byte[] buffer, final int offset,
+			final int length, final InputStream in) throws IOException {
 		int totalRead = 0;
 		int read = -1;
 
-		while ((read = in.read(buffer, totalRead, length - totalRead)) != -1) {
+		while (totalRead < length
+				&& (read = in.read(buffer, offset + totalRead, length
+						- totalRead)) != -1) {
 			totalRead += read;
-			if (totalRead == length) {
-				break;
-			}
 		}
 
 		if (totalRead != length) {
@@ -141,4 +250,24 @@ public class BinaryIO {
 		}
 	}
 
+	/**
+	 * @return reusable buffer for strings.
+	 */
+	private byte[] getStringBuffer() {
+		if (stringBuffer == null) {
+			stringBuffer = new byte[STRING_BUFFER_SIZE];
+		}
+		return stringBuffer;
+	}
+
+	/**
+	 * @return reusable buffer for streams.
+	 */
+	private byte[] getTransferBuffer() {
+		if (transferBuffer == null) {
+			transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+		}
+		return transferBuffer;
+	}
+
 }
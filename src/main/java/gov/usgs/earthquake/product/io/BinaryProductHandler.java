@@ -2,9 +2,11 @@ package gov.usgs.earthquake.product.io;
 
 import gov.usgs.earthquake.product.ByteContent;
 import gov.usgs.earthquake.product.Content;
+import gov.usgs.earthquake.product.FileContent;
 import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.util.StreamUtils;
 
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
@@ -146,7 +148,14 @@ public class BinaryProductHandler implements ProductHandler {
 
 		io.writeString(content.getContentType(), out);
 		io.writeDate(content.getLastModified(), out);
-		InputStream contentInputStream = content.getInputStream();
+		InputStream contentInputStream;
+		if (content instanceof FileContent) {
+			// BinaryIO buffers, and can transfer unbuffered files directly
+			contentInputStream = new FileInputStream(
+					((FileContent) content).getFile());
+		} else {
+			contentInputStream = content.getInputStream();
+		}
 		try {
 			io.writeStream(content.getLength().longValue(), contentInputStream, out);
 		} finally {
@@ -2,6 +2,7 @@ package gov.usgs.earthquake.product.io;
 
 import gov.usgs.earthquake.product.InputStreamContent;
 import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.earthquake.util.BoundedInputStream;
 import gov.usgs.util.StreamUtils;
 
 import java.io.InputStream;
@@ -13,6 +14,9 @@ import java.util.Date;
 
 /**
  * Parser for binary format for product data.
+ *
+ * Content is delivered in the thread calling streamTo, as a view of the
+ * stream being parsed, and must be read before onContent returns.
  */
 public class BinaryProductSource implements ProductSource {
 
@@ -23,6 +27,9 @@ public class BinaryProductSource implements ProductSource {
 	/** binary io utility. */
 	private BinaryIO io;
 
+	/** whether to deliver content from a separate thread. */
+	private boolean contentThread = false;
+
 	public BinaryProductSource(final InputStream in) {
 		this.in = in;
 		this.io = new BinaryIO();
@@ -59,42 +66,13 @@ public class BinaryProductSource implements ProductSource {
 					Date lastModified = io.readDate(in);
 					Long length = io.readLong(in);
 
-					// use a piped output stream to deliver content to separate
-					// processing thread. this thread will continue to read
-					// InputStream, transfer content to pipedOutputStream.
-					// Background thread calls onContent, and reads from
-					// pipedInputStream.
-					PipedOutputStream pipedOut = new PipedOutputStream();
-					PipedInputStream pipedIn = new PipedInputStream(pipedOut);
-
-					final InputStreamContent content = new InputStreamContent(
-							pipedIn);
-					content.setContentType(contentType);
-					content.setLastModified(lastModified);
-					content.setLength(length);
-
-					// background thread delivers content object to product handler
-					ContentOutputThread outputThread = new ContentOutputThread(out, id, path, content);
-
-					try {
-						outputThread.start();
-
-						// read stream content
-						io.readStream(length, in, pipedOut);
-					} finally {
-						// done reading content, close piped stream to signal EOF.
-						StreamUtils.closeStream(pipedOut);
-						pipedOut = null;
-						try {
-							// wait for background thread to complete
-							outputThread.join();
-						} catch (Exception e) {
-							// ignore
-						}
-						outputThread = null;
-						content.close();
+					if (contentThread) {
+						readContentThread(out, path, contentType, lastModified,
+								length);
+					} else {
+						readContent(out, path, contentType, lastModified,
+								length);
 					}
-
 				} else if (next.equals(BinaryProductHandler.SIGNATURE)) {
 					String signature = io.readString(in);
 					out.onSignature(id, signature);
@@ -111,6 +89,88 @@ public class BinaryProductSource implements ProductSource {
 		}
 	}
 
+	/**
+	 * Deliver content in the calling thread.
+	 *
+	 * The handler reads a view of the stream being parsed, limited to length
+	 * bytes. Bytes the handler does not read are skipped after onContent
+	 * returns.
+	 */
+	protected void readContent(final ProductHandler out, final String path,
+			final String contentType, final Date lastModified,
+			final Long length) throws Exception {
+		BoundedInputStream contentIn = new BoundedInputStream(in, length);
+		InputStreamContent content = new InputStreamContent(contentIn);
+		content.setContentType(contentType);
+		content.setLastModified(lastModified);
+		content.setLength(length);
+		try {
+			out.onContent(id, path, content);
+		} finally {
+			content.close();
+		}
+		// position stream after content
+		contentIn.skipRemaining();
+	}
+
+	/**
+	 * Deliver content using a separate thread.
+	 *
+	 * This thread continues to read the stream being parsed and transfers
+	 * content to a piped output stream, while a background thread calls
+	 * onContent and reads from the piped input stream.
+	 */
+	protected void readContentThread(final ProductHandler out,
+			final String path, final String contentType,
+			final Date lastModified, final Long length) throws Exception {
+		PipedOutputStream pipedOut = new PipedOutputStream();
+		PipedInputStream pipedIn = new PipedInputStream(pipedOut);
+
+		final InputStreamContent content = new InputStreamContent(pipedIn);
+		content.setContentType(contentType);
+		content.setLastModified(lastModified);
+		content.setLength(length);
+
+		// background thread delivers content object to product handler
+		ContentOutputThread outputThread = new ContentOutputThread(out, id,
+				path, content);
+
+		try {
+			outputThread.start();
+
+			// read stream content
+			io.readStream(length, in, pipedOut);
+		} finally {
+			// done reading content, close piped stream to signal EOF.
+			StreamUtils.closeStream(pipedOut);
+			pipedOut = null;
+			try {
+				// wait for background thread to complete
+				outputThread.join();
+			} catch (Exception e) {
+				// ignore
+			}
+			outputThread = null;
+			content.close();
+		}
+	}
+
+	/**
+	 * @return whether content is delivered from a separate thread.
+	 */
+	public boolean isContentThread() {
+		return contentThread;
+	}
+
+	/**
+	 * @param contentThread
+	 *            true to deliver content from a separate thread, using piped
+	 *            streams, instead of the thread calling streamTo. Exceptions
+	 *            thrown by onContent are logged instead of thrown when true.
+	 */
+	public void setContentThread(final boolean contentThread) {
+		this.contentThread = contentThread;
+	}
 
 	/**
 	 * Free any resources associated with this source.
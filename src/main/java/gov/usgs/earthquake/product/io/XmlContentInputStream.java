@@ -0,0 +1,204 @@
+/*
+ * XmlContentInputStream
+ */
+package gov.usgs.earthquake.product.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Stream that reads the text of the current element from an XMLStreamReader.
+ *
+ * Text is read from the reader as this stream is read, so element text is
+ * never held in memory. The stream ends at the end of the current element,
+ * and closing this stream does not close the reader.
+ *
+ * Call {@link #skipRemaining()} to position the reader at the end of the
+ * element, whether or not the text was read.
+ */
+public class XmlContentInputStream extends InputStream {
+
+	/** Number of characters converted at once. */
+	public static final int BUFFER_SIZE = 8192;
+
+	/** Reader positioned at the element being read. */
+	private final XMLStreamReader reader;
+
+	/** Characters copied from the current text event. */
+	private final char[] chars = new char[BUFFER_SIZE];
+	/** Converted characters. */
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	/** Position of next byte in buffer. */
+	private int position = 0;
+	/** Number of bytes in buffer. */
+	private int limit = 0;
+
+	/** Whether the reader is at a text event. */
+	private boolean inText = false;
+	/** Characters already copied from the current text event. */
+	private int textPosition = 0;
+	/** Depth of nested elements, which are not expected. */
+	private int depth = 0;
+	/** Whether the end of the element was reached. */
+	private boolean done = false;
+	/** Whether this stream was closed. */
+	private boolean closed = false;
+
+	/**
+	 * Construct a new XmlContentInputStream.
+	 *
+	 * @param reader
+	 *            reader positioned at the START_ELEMENT event of the element
+	 *            to read.
+	 */
+	public XmlContentInputStream(final XMLStreamReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * Read one byte.
+	 */
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		if (position >= limit && !fill()) {
+			return -1;
+		}
+		return buffer[position++] & 0xFF;
+	}
+
+	/**
+	 * Read bytes into an array.
+	 */
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		checkClosed();
+		if (len == 0) {
+			return 0;
+		}
+		if (position >= limit && !fill()) {
+			return -1;
+		}
+		int read = Math.min(len, limit - position);
+		System.arraycopy(buffer, position, b, off, read);
+		position += read;
+		return read;
+	}
+
+	/**
+	 * @return number of bytes that can be read without reading the reader.
+	 */
+	@Override
+	public int available() throws IOException {
+		return limit - position;
+	}
+
+	/**
+	 * Mark this stream closed, without closing the reader.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Read through the end of the element.
+	 *
+	 * May be called after close.
+	 *
+	 * @throws IOException
+	 *             if the reader throws an exception.
+	 */
+	public void skipRemaining() throws IOException {
+		position = limit;
+		while (fill()) {
+			position = limit;
+		}
+	}
+
+	/**
+	 * Convert the next characters of element text into buffer.
+	 *
+	 * @return false at the end of the element.
+	 */
+	private boolean fill() throws IOException {
+		try {
+			while (true) {
+				if (inText) {
+					int length = Math.min(chars.length,
+							reader.getTextLength() - textPosition);
+					if (length > 0) {
+						reader.getTextCharacters(textPosition, chars, 0,
+								length);
+						textPosition += length;
+						convert(length);
+						return true;
+					}
+					inText = false;
+				}
+				if (done) {
+					return false;
+				}
+				int event = reader.next();
+				if (event == XMLStreamConstants.CHARACTERS
+						|| event == XMLStreamConstants.CDATA
+						|| event == XMLStreamConstants.SPACE) {
+					if (depth == 0) {
+						inText = true;
+						textPosition = 0;
+					}
+				} else if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == 0) {
+						done = true;
+					} else {
+						depth--;
+					}
+				} else if (event == XMLStreamConstants.END_DOCUMENT) {
+					throw new EOFException("document ended before element");
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Convert characters to bytes, the same way as String.getBytes().
+	 *
+	 * Base64 encoded content is always ascii, and converted without
+	 * allocating.
+	 */
+	private void convert(final int length) {
+		if (buffer.length < length) {
+			buffer = new byte[BUFFER_SIZE];
+		}
+		for (int i = 0; i < length; i++) {
+			char c = chars[i];
+			if (c >= 0x80) {
+				// not ascii, use default charset
+				buffer = new String(chars, 0, length).getBytes();
+				position = 0;
+				limit = buffer.length;
+				return;
+			}
+			buffer[i] = (byte) c;
+		}
+		position = 0;
+		limit = length;
+	}
+
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+	}
+
+}
@@ -12,6 +12,10 @@ import java.net.URL;
 import java.util.Base64;
 import java.util.Date;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -26,6 +30,11 @@ import gov.usgs.earthquake.product.ProductId;
 
 /**
  * Load a product from an InputStream containing XML.
+ *
+ * When reading from an InputStream, content is decoded as the xml is read
+ * and delivered in the thread calling streamTo, and must be read before
+ * onContent returns. When used as a SAX handler, content is delivered from a
+ * separate thread.
  */
 public class XmlProductSource extends DefaultHandler implements ProductSource {
 
@@ -50,6 +59,9 @@ public class XmlProductSource extends DefaultHandler implements ProductSource {
 	/** Used for signature ProductOutput. */
 	private StringBuffer signatureBuffer;
 
+	/** Whether streamTo uses SAX and delivers content from a separate thread. */
+	private boolean contentThread = false;
+
 	/**
 	 * Create a new XmlProductSource.
 	 * 
@@ -79,12 +91,154 @@ public class XmlProductSource extends DefaultHandler implements ProductSource {
 	public synchronized void streamTo(ProductHandler out) throws Exception {
 		try {
 			this.out = out;
-			XmlUtils.parse(in, this);
+			if (contentThread) {
+				XmlUtils.parse(in, this);
+			} else {
+				readProduct();
+			}
 		} finally {
 			StreamUtils.closeStream(in);
 		}
 	}
 
+	/**
+	 * Read the input stream using a pull parser, sending events to out.
+	 *
+	 * Embedded content is decoded while the handler reads it, without
+	 * buffering or a separate thread.
+	 *
+	 * @throws Exception
+	 *             if unable to parse, or thrown by the handler.
+	 */
+	protected void readProduct() throws Exception {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if ((event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT)
+						|| !XmlProductHandler.PRODUCT_XML_NAMESPACE
+								.equals(reader.getNamespaceURI())) {
+					continue;
+				}
+				String localName = reader.getLocalName();
+
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					if (XmlProductHandler.PRODUCT_ELEMENT.equals(localName)) {
+						out.onEndProduct(id);
+					}
+				}
+				// PRODUCT
+				else if (XmlProductHandler.PRODUCT_ELEMENT.equals(localName)) {
+					id = ProductId.parse(reader.getAttributeValue(null,
+							XmlProductHandler.PRODUCT_ATTRIBUTE_ID));
+					id.setUpdateTime(XmlUtils.getDate(reader.getAttributeValue(
+							null, XmlProductHandler.PRODUCT_ATTRIBUTE_UPDATED)));
+					String status = reader.getAttributeValue(null,
+							XmlProductHandler.PRODUCT_ATTRIBUTE_STATUS);
+					URL trackerURL = null;
+					try {
+						trackerURL = new URL(reader.getAttributeValue(null,
+								XmlProductHandler.PRODUCT_ATTRIBUTE_TRACKER_URL));
+					} catch (Exception e) {
+						// ignore
+					}
+					out.onBeginProduct(id, status, trackerURL);
+				}
+				// PROPERTY
+				else if (XmlProductHandler.PROPERTY_ELEMENT.equals(localName)) {
+					out.onProperty(id, reader.getAttributeValue(null,
+							XmlProductHandler.PROPERTY_ATTRIBUTE_NAME), reader
+							.getAttributeValue(null,
+									XmlProductHandler.PROPERTY_ATTRIBUTE_VALUE));
+				}
+				// LINK
+				else if (XmlProductHandler.LINK_ELEMENT.equals(localName)) {
+					String relation = reader.getAttributeValue(null,
+							XmlProductHandler.LINK_ATTRIBUTE_RELATION);
+					URI href = null;
+					try {
+						href = new URI(reader.getAttributeValue(null,
+								XmlProductHandler.LINK_ATTRIBUTE_HREF));
+					} catch (Exception e) {
+						continue;
+					}
+					out.onLink(id, relation, href);
+				}
+				// CONTENT
+				else if (XmlProductHandler.CONTENT_ELEMENT.equals(localName)) {
+					readContent(reader);
+				}
+				// SIGNATURE
+				else if (XmlProductHandler.SIGNATURE_ELEMENT.equals(localName)) {
+					// reads through end element
+					out.onSignature(id, reader.getElementText());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Deliver a content element in the calling thread.
+	 *
+	 * Embedded content is a view of the element text, decoded as the handler
+	 * reads it. Text the handler does not read is skipped after onContent
+	 * returns.
+	 *
+	 * @param reader
+	 *            reader positioned at the content START_ELEMENT.
+	 * @throws Exception
+	 */
+	protected void readContent(final XMLStreamReader reader) throws Exception {
+		String type = reader.getAttributeValue(null,
+				XmlProductHandler.CONTENT_ATTRIBUTE_TYPE);
+		Long length = Long.valueOf(reader.getAttributeValue(null,
+				XmlProductHandler.CONTENT_ATTRIBUTE_LENGTH));
+		Date modified = XmlUtils.getDate(reader.getAttributeValue(null,
+				XmlProductHandler.CONTENT_ATTRIBUTE_MODIFIED));
+		String path = reader.getAttributeValue(null,
+				XmlProductHandler.CONTENT_ATTRIBUTE_PATH);
+		String encoded = reader.getAttributeValue(null,
+				XmlProductHandler.CONTENT_ATTRIBUTE_ENCODED);
+		String href = reader.getAttributeValue(null,
+				XmlProductHandler.CONTENT_ATTRIBUTE_HREF);
+
+		if (href != null) {
+			// URL CONTENT
+			URLContent content = new URLContent(new URL(href));
+			content.setContentType(type);
+			content.setLength(length);
+			content.setLastModified(modified);
+			out.onContent(id, path, content);
+			return;
+		}
+
+		// EMBEDDED CONTENT
+		XmlContentInputStream contentIn = new XmlContentInputStream(reader);
+		InputStream contentInputStream = contentIn;
+		if ("true".equals(encoded)) {
+			contentInputStream = Base64.getDecoder().wrap(contentInputStream);
+		}
+		InputStreamContent content = new InputStreamContent(
+				contentInputStream);
+		content.setContentType(type);
+		content.setLength(length);
+		content.setLastModified(modified);
+		try {
+			out.onContent(id, path, content);
+		} finally {
+			content.close();
+		}
+		// position reader after content
+		contentIn.skipRemaining();
+	}
+
 	/**
 	 * Override DefaultHandler startElement. Adds a new element content buffer
 	 * and calls onStartElement.
@@ -294,6 +448,25 @@ public class XmlProductSource extends DefaultHandler implements ProductSource {
 		}
 	}
 
+	/**
+	 * @return whether streamTo uses SAX and delivers content from a separate
+	 *         thread.
+	 */
+	public boolean isContentThread() {
+		return contentThread;
+	}
+
+	/**
+	 * @param contentThread
+	 *            true for streamTo to use SAX and deliver content from a
+	 *            separate thread, using piped streams, instead of the thread
+	 *            calling streamTo. Exceptions thrown by onContent are logged
+	 *            instead of thrown when true.
+	 */
+	public void setContentThread(final boolean contentThread) {
+		this.contentThread = contentThread;
+	}
+
 	protected synchronized ProductHandler getHandler() {
 		return out;
 	}
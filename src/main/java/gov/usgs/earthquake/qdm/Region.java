@@ -27,41 +27,54 @@ public class Region {
    * Benkovitz translated to C by Andy Michael and into Java by Alan Jones.
    */
   public boolean inpoly(Point xy) {
+    Point p[] = (Point[]) this.points.toArray(new Point[0]);
+    double xs[] = new double[p.length];
+    double ys[] = new double[p.length];
+    for (int i = 0; i < p.length; ++i) {
+      xs[i] = p[i].x;
+      ys[i] = p[i].y;
+    }
+    return inpoly(xs, ys, xy.x, xy.y);
+  }
+
+  /**
+   * Point in polygon test using vertex arrays, so callers that test many
+   * points can convert the polygon once.
+   *
+   * @param px polygon vertex x coordinates.
+   * @param py polygon vertex y coordinates.
+   * @param x point x coordinate.
+   * @param y point y coordinate.
+   * @return true if the point is inside or on the boundary of the polygon, or
+   *         the polygon has no vertices.
+   */
+  public static boolean inpoly(double px[], double py[], double x, double y) {
     int in;
     double sine;
     boolean bool = false;
-    int inside = 0;
-    int nvert = this.points.size();
+    int nvert = px.length;
     // If there are no points in the region, assume default region
     // and declare the point inside
     if (nvert == 0)
       return true;
-    Point p[] = (Point[]) this.points.toArray(new Point[0]);
-    double x = xy.x;
-    double y = xy.y;
     for (int i = 0; i < nvert; ++i) {
       in = i + 1;
       if (in >= nvert)
         in = 0;
-      if (p[in].y == p[i].y && p[in].x == p[i].x)
+      if (py[in] == py[i] && px[in] == px[i])
         continue;
-      sine = (x - p[i].x) * (p[in].y - p[i].y) - (y - p[i].y) * (p[in].x - p[i].x);
+      sine = (x - px[i]) * (py[in] - py[i]) - (y - py[i]) * (px[in] - px[i]);
       if (sine == 0) {
-        if (((x - p[i].x) * (p[in].x - p[i].x) + (y - p[i].y) * (p[in].y - p[i].y))
-            * ((x - p[in].x) * (p[in].x - p[i].x) + (y - p[in].y) * (p[in].y - p[i].y)) > 0)
+        if (((x - px[i]) * (px[in] - px[i]) + (y - py[i]) * (py[in] - py[i]))
+            * ((x - px[in]) * (px[in] - px[i]) + (y - py[in]) * (py[in] - py[i])) > 0)
           continue;
         return true;
       }
-      if (y > p[in].y && y <= p[i].y && sine < 0 || y <= p[in].y && y > p[i].y && sine > 0) {
+      if (y > py[in] && y <= py[i] && sine < 0 || y <= py[in] && y > py[i] && sine > 0) {
         bool = !bool;
       }
     }
-    if (bool)
-      inside = 1;
-    if (inside != 0)
-      return true;
-    else
-      return false;
+    return bool;
   }
 
 }
@@ -0,0 +1,234 @@
+package gov.usgs.earthquake.qdm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Grid index of region bounding boxes, used to find regions containing a point
+ * without testing every region.
+ *
+ * The bounding box of all regions is divided into a grid of cells. Each cell
+ * lists the regions whose bounding box overlaps the cell. Region vertices are
+ * copied into arrays when the index is built, so point in polygon tests do not
+ * allocate.
+ *
+ * The index is a snapshot. Build a new index if regions change.
+ */
+public class RegionIndex {
+
+    /** Number of grid cells in each dimension. */
+    public static final int DEFAULT_GRID_SIZE = 64;
+
+    /** Candidates for points outside the grid. */
+    private static final int[] NO_REGIONS = new int[0];
+
+    /** Regions that are indexed. */
+    private final Region[] regions;
+    /** Region vertex x coordinates. */
+    private final double[][] xs;
+    /** Region vertex y coordinates. */
+    private final double[][] ys;
+    /** Region bounding boxes. */
+    private final double[] minX;
+    private final double[] maxX;
+    private final double[] minY;
+    private final double[] maxY;
+
+    /** Regions without points, which contain every point. */
+    private final int[] unbounded;
+
+    /** Bounding box of all bounded regions. */
+    private double gridMinX = Double.POSITIVE_INFINITY;
+    private double gridMaxX = Double.NEGATIVE_INFINITY;
+    private double gridMinY = Double.POSITIVE_INFINITY;
+    private double gridMaxY = Double.NEGATIVE_INFINITY;
+    /** Size of grid cells. */
+    private final int gridSize;
+    private double cellWidth;
+    private double cellHeight;
+    /** Regions that overlap each cell, indexed by row * gridSize + column. */
+    private final int[][] cells;
+
+    /**
+     * Index regions using the default grid size.
+     *
+     * @param regions regions to index.
+     */
+    public RegionIndex(final List<Region> regions) {
+        this(regions, DEFAULT_GRID_SIZE);
+    }
+
+    /**
+     * Index regions.
+     *
+     * @param regions  regions to index.
+     * @param gridSize number of grid cells in each dimension.
+     */
+    public RegionIndex(final List<Region> regions, final int gridSize) {
+        final int count = regions.size();
+        this.regions = regions.toArray(new Region[count]);
+        this.xs = new double[count][];
+        this.ys = new double[count][];
+        this.minX = new double[count];
+        this.maxX = new double[count];
+        this.minY = new double[count];
+        this.maxY = new double[count];
+        this.gridSize = gridSize;
+
+        final List<Integer> unboundedRegions = new ArrayList<Integer>();
+        for (int r = 0; r < count; r++) {
+            final Point[] points = this.regions[r].points.toArray(new Point[0]);
+            final double[] x = new double[points.length];
+            final double[] y = new double[points.length];
+            double regionMinX = Double.POSITIVE_INFINITY;
+            double regionMaxX = Double.NEGATIVE_INFINITY;
+            double regionMinY = Double.POSITIVE_INFINITY;
+            double regionMaxY = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < points.length; i++) {
+                x[i] = points[i].x;
+                y[i] = points[i].y;
+                regionMinX = Math.min(regionMinX, x[i]);
+                regionMaxX = Math.max(regionMaxX, x[i]);
+                regionMinY = Math.min(regionMinY, y[i]);
+                regionMaxY = Math.max(regionMaxY, y[i]);
+            }
+            xs[r] = x;
+            ys[r] = y;
+            minX[r] = regionMinX;
+            maxX[r] = regionMaxX;
+            minY[r] = regionMinY;
+            maxY[r] = regionMaxY;
+            if (points.length == 0) {
+                unboundedRegions.add(r);
+            } else {
+                gridMinX = Math.min(gridMinX, regionMinX);
+                gridMaxX = Math.max(gridMaxX, regionMaxX);
+                gridMinY = Math.min(gridMinY, regionMinY);
+                gridMaxY = Math.max(gridMaxY, regionMaxY);
+            }
+        }
+        this.unbounded = toArray(unboundedRegions);
+
+        // assign bounded regions to every cell their bounding box overlaps
+        this.cells = new int[gridSize * gridSize][];
+        if (unboundedRegions.size() == count) {
+            // nothing to grid
+            return;
+        }
+        cellWidth = (gridMaxX - gridMinX) / gridSize;
+        cellHeight = (gridMaxY - gridMinY) / gridSize;
+        final List<List<Integer>> cellRegions = new ArrayList<List<Integer>>();
+        for (int c = 0; c < cells.length; c++) {
+            cellRegions.add(new ArrayList<Integer>());
+        }
+        for (int r = 0; r < count; r++) {
+            if (xs[r].length == 0) {
+                continue;
+            }
+            final int minColumn = column(minX[r]);
+            final int maxColumn = column(maxX[r]);
+            final int minRow = row(minY[r]);
+            final int maxRow = row(maxY[r]);
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellRegions.get(row * gridSize + column).add(r);
+                }
+            }
+        }
+        for (int c = 0; c < cells.length; c++) {
+            cells[c] = toArray(cellRegions.get(c));
+        }
+    }
+
+    /**
+     * Find regions that contain a point.
+     *
+     * Uses the same point in polygon test as {@link Region#inpoly(Point)}, so
+     * points on a region boundary are inside the region.
+     *
+     * @param p point to test.
+     * @return regions containing the point.
+     */
+    public List<Region> getRegions(final Point p) {
+        final List<Region> matches = new ArrayList<Region>();
+        for (int r : candidates(p)) {
+            if (contains(r, p)) {
+                matches.add(regions[r]);
+            }
+        }
+        for (int r : unbounded) {
+            matches.add(regions[r]);
+        }
+        return matches;
+    }
+
+    /**
+     * Check whether any region containing a point has (or does not have) a
+     * network id.
+     *
+     * @param netid network id, compared ignoring case.
+     * @param match when true, look for regions with this netid, otherwise
+     *              look for regions with a different netid.
+     * @param p     point to test.
+     * @return true if a matching region contains the point.
+     */
+    public boolean containedBy(final String netid, final boolean match, final Point p) {
+        for (int r : unbounded) {
+            if (regions[r].netid.equalsIgnoreCase(netid) == match) {
+                return true;
+            }
+        }
+        for (int r : candidates(p)) {
+            if (regions[r].netid.equalsIgnoreCase(netid) == match && contains(r, p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Bounded regions whose grid cell includes a point.
+     */
+    private int[] candidates(final Point p) {
+        if (!(p.x >= gridMinX && p.x <= gridMaxX && p.y >= gridMinY && p.y <= gridMaxY)) {
+            // outside all bounding boxes, NaN, or no bounded regions
+            return NO_REGIONS;
+        }
+        return cells[row(p.y) * gridSize + column(p.x)];
+    }
+
+    /**
+     * Test one region, using its bounding box and then its polygon.
+     */
+    private boolean contains(final int r, final Point p) {
+        if (p.x < minX[r] || p.x > maxX[r] || p.y < minY[r] || p.y > maxY[r]) {
+            return false;
+        }
+        return Region.inpoly(xs[r], ys[r], p.x, p.y);
+    }
+
+    private int column(final double x) {
+        return cell(x, gridMinX, cellWidth);
+    }
+
+    private int row(final double y) {
+        return cell(y, gridMinY, cellHeight);
+    }
+
+    private int cell(final double value, final double min, final double size) {
+        if (size == 0) {
+            return 0;
+        }
+        final int cell = (int) ((value - min) / size);
+        return Math.max(0, Math.min(gridSize - 1, cell));
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+}
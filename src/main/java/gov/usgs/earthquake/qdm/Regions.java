@@ -22,6 +22,9 @@ public class Regions {
     public ArrayList<String> netids; // Array of network ids, e.g. nc, us, etc.
     public ArrayList<Region> regions; // Array of regions
 
+    // Spatial index of regions, or null to test every region
+    private volatile RegionIndex index;
+
     /**
      * Create a new set of regions.
      */
@@ -31,6 +34,25 @@ public class Regions {
         this.regions = new ArrayList<Region>();
     }
 
+    /**
+     * Build a spatial index of the current regions, used by isAuthor.
+     *
+     * Call again after changing regions, the index is not updated
+     * automatically.
+     */
+    public void buildIndex() {
+        this.index = new RegionIndex(this.regions);
+    }
+
+    /**
+     * Get the spatial index built by buildIndex.
+     *
+     * @return index, or null if not built.
+     */
+    public RegionIndex getIndex() {
+        return this.index;
+    }
+
     /**
      * Is this netid in the set of regions? The default net covers the whole world
      * so it is always valid since it has no finite boundaries.
@@ -76,6 +98,16 @@ public class Regions {
      * @return true if event is authoritative
      */
     public boolean isAuthor(final String netid, final Point p) {
+        final RegionIndex index = this.index;
+        if (index != null) {
+            if (this.isDefaultNetID(netid)) {
+                // default is authoritative unless another region matches
+                return !index.containedBy(netid, false, p);
+            } else {
+                return index.containedBy(netid, true, p);
+            }
+        }
+
         if (this.isDefaultNetID(netid)) {
             // if any non-default regions match, default is not authoritative
             for (Region region : this.regions) {
@@ -0,0 +1,170 @@
+package gov.usgs.earthquake.util;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream that views a fixed number of bytes of another stream.
+ *
+ * Unlike SizeLimitInputStream, reaching the limit is end of stream, and
+ * closing this stream does not close the underlying stream. Reaching the end
+ * of the underlying stream before the limit throws an EOFException.
+ *
+ * Call {@link #skipRemaining()} to position the underlying stream after the
+ * viewed bytes, whether or not they were read.
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+	/** Number of bytes that may still be read. */
+	private long remaining;
+	/** Whether this stream was closed. */
+	private boolean closed = false;
+
+	/**
+	 * Construct a new BoundedInputStream.
+	 *
+	 * @param in
+	 *            underlying stream.
+	 * @param length
+	 *            number of bytes to view.
+	 */
+	public BoundedInputStream(final InputStream in, final long length) {
+		super(in);
+		this.remaining = length;
+	}
+
+	/**
+	 * @return number of bytes that have not been read.
+	 */
+	public long getRemaining() {
+		return remaining;
+	}
+
+	/**
+	 * Read one byte.
+	 */
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		if (remaining <= 0) {
+			return -1;
+		}
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("stream ended with " + remaining
+					+ " bytes remaining");
+		}
+		remaining--;
+		return b;
+	}
+
+	/**
+	 * Read into an array of bytes.
+	 */
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	/**
+	 * Read into an array of bytes.
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkClosed();
+		if (len == 0) {
+			return 0;
+		}
+		if (remaining <= 0) {
+			return -1;
+		}
+		int read = in.read(b, off, (int) Math.min(len, remaining));
+		if (read == -1) {
+			throw new EOFException("stream ended with " + remaining
+					+ " bytes remaining");
+		}
+		remaining -= read;
+		return read;
+	}
+
+	/**
+	 * Skip bytes, not past the limit.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		checkClosed();
+		long skipped = in.skip(Math.min(n, remaining));
+		remaining -= skipped;
+		return skipped;
+	}
+
+	/**
+	 * Bytes available, not past the limit.
+	 */
+	@Override
+	public int available() throws IOException {
+		if (closed) {
+			return 0;
+		}
+		return (int) Math.min(in.available(), remaining);
+	}
+
+	/**
+	 * Mark is not supported.
+	 */
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Close this view, leaving the underlying stream open.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * Read and discard any bytes that have not been read.
+	 *
+	 * @throws IOException
+	 *             if the underlying stream ends first.
+	 */
+	public void skipRemaining() throws IOException {
+		if (remaining <= 0) {
+			return;
+		}
+		byte[] buffer = new byte[(int) Math.min(remaining, 8192)];
+		while (remaining > 0) {
+			int read = in.read(buffer, 0, (int) Math.min(buffer.length,
+					remaining));
+			if (read == -1) {
+				throw new EOFException("stream ended with " + remaining
+						+ " bytes remaining");
+			}
+			remaining -= read;
+		}
+	}
+
+	/**
+	 * Check whether this view was closed.
+	 */
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+package gov.usgs.earthquake.util;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream that reads content written by ChunkedOutputStream.
+ *
+ * Returns end of stream when the end marker is read, leaving the underlying
+ * stream positioned after the marker. Closing this stream skips any unread
+ * content up to the end marker, but does not close the underlying stream.
+ *
+ * Current implementation ignores any mark or reset calls.
+ */
+public class ChunkedInputStream extends FilterInputStream {
+
+	/** Largest chunk length accepted. */
+	public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	/** Bytes remaining in current chunk. */
+	private int remaining = 0;
+	/** Whether end marker was read. */
+	private boolean finished = false;
+
+	/**
+	 * Construct a new ChunkedInputStream.
+	 *
+	 * @param in
+	 *            stream to read chunks.
+	 */
+	public ChunkedInputStream(final InputStream in) {
+		super(in);
+	}
+
+	/**
+	 * Read one byte.
+	 */
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("stream ended inside chunk");
+		}
+		remaining--;
+		return b;
+	}
+
+	/**
+	 * Read into an array of bytes.
+	 */
+	@Override
+	public int read(final byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	/**
+	 * Read into an array of bytes.
+	 */
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+			throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!nextChunk()) {
+			return -1;
+		}
+		int read = in.read(b, off, Math.min(len, remaining));
+		if (read == -1) {
+			throw new EOFException("stream ended inside chunk");
+		}
+		remaining -= read;
+		return read;
+	}
+
+	/**
+	 * Skip bytes, within the current chunk.
+	 */
+	@Override
+	public long skip(final long n) throws IOException {
+		if (n <= 0 || !nextChunk()) {
+			return 0L;
+		}
+		long skipped = in.skip(Math.min(n, remaining));
+		remaining -= skipped;
+		return skipped;
+	}
+
+	/**
+	 * Bytes available without blocking, within the current chunk.
+	 */
+	@Override
+	public int available() throws IOException {
+		return Math.min(remaining, in.available());
+	}
+
+	/**
+	 * Skip unread content up to the end marker, without closing the underlying
+	 * stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		byte[] discard = new byte[8192];
+		while (read(discard, 0, discard.length) != -1) {
+			// skip
+		}
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(final int readlimit) {
+		// not supported
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Read next chunk length when current chunk is exhausted.
+	 *
+	 * @return false when the end marker has been read.
+	 */
+	private boolean nextChunk() throws IOException {
+		while (!finished && remaining == 0) {
+			int length = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = in.read();
+				if (b == -1) {
+					throw new EOFException("stream ended before end marker");
+				}
+				length = (length << 8) | b;
+			}
+			if (length < 0 || length > MAX_CHUNK_SIZE) {
+				throw new IOException("invalid chunk length " + length);
+			}
+			if (length == 0) {
+				finished = true;
+			}
+			remaining = length;
+		}
+		return !finished;
+	}
+
+}
@@ -0,0 +1,137 @@
+package gov.usgs.earthquake.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream that writes content as length prefixed chunks, so the end of content
+ * can be marked without closing the underlying stream.
+ *
+ * Each chunk is a 4 byte big endian length followed by that many bytes. A zero
+ * length chunk marks the end of content. Read using ChunkedInputStream.
+ *
+ * Closing this stream writes the end marker, but does not close the underlying
+ * stream.
+ */
+public class ChunkedOutputStream extends FilterOutputStream {
+
+	/** Default chunk size. */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	/** Buffered content for current chunk. */
+	private final byte[] buffer;
+	/** Number of bytes in buffer. */
+	private int count = 0;
+	/** Whether end marker was written. */
+	private boolean finished = false;
+
+	/**
+	 * Construct a new ChunkedOutputStream using the default chunk size.
+	 *
+	 * @param out
+	 *            stream to write chunks.
+	 */
+	public ChunkedOutputStream(final OutputStream out) {
+		this(out, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Construct a new ChunkedOutputStream.
+	 *
+	 * @param out
+	 *            stream to write chunks.
+	 * @param chunkSize
+	 *            maximum number of bytes per chunk.
+	 */
+	public ChunkedOutputStream(final OutputStream out, final int chunkSize) {
+		super(out);
+		this.buffer = new byte[chunkSize];
+	}
+
+	/**
+	 * Write one byte.
+	 */
+	@Override
+	public void write(final int b) throws IOException {
+		checkFinished();
+		if (count == buffer.length) {
+			writeChunk();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	/**
+	 * Write an array of bytes.
+	 */
+	@Override
+	public void write(final byte[] b, final int off, final int len)
+			throws IOException {
+		checkFinished();
+		int offset = off;
+		int remaining = len;
+		while (remaining > 0) {
+			if (count == buffer.length) {
+				writeChunk();
+			}
+			int length = Math.min(remaining, buffer.length - count);
+			System.arraycopy(b, offset, buffer, count, length);
+			count += length;
+			offset += length;
+			remaining -= length;
+		}
+	}
+
+	/**
+	 * Write buffered content as a chunk, and flush the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		writeChunk();
+		out.flush();
+	}
+
+	/**
+	 * Write buffered content and the end marker, without closing the
+	 * underlying stream.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		writeChunk();
+		writeLength(0);
+		finished = true;
+		out.flush();
+	}
+
+	/**
+	 * Calls finish, does not close the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	private void checkFinished() throws IOException {
+		if (finished) {
+			throw new IOException("stream already finished");
+		}
+	}
+
+	private void writeChunk() throws IOException {
+		if (count > 0) {
+			writeLength(count);
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void writeLength(final int length) throws IOException {
+		out.write(length >>> 24);
+		out.write(length >>> 16);
+		out.write(length >>> 8);
+		out.write(length);
+	}
+
+}
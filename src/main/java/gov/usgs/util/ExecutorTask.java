@@ -14,8 +14,13 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,6 +29,9 @@ import java.util.logging.Logger;
  * 
  * Can be used to schedule interrupt based timeouts, multiple attempts, and
  * Future style exception tracking for Runnable or Callable objects.
+ *
+ * Timeouts, and retries without a retryTimer, are scheduled using one
+ * scheduler thread shared by all tasks.
  * 
  * @param <T> return type for callable.
  */
@@ -42,6 +50,18 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 	/** Default timeout for this task. */
 	public static final long DEFAULT_TIMEOUT = 0L;
 
+	/** Scheduler shared by all tasks, for timeouts and retries. */
+	private static ScheduledThreadPoolExecutor SCHEDULER = null;
+
+	/** Number of tasks created that are not done. */
+	private static final AtomicInteger OUTSTANDING_TASKS = new AtomicInteger();
+
+	/** Number of retries waiting for their delay. */
+	private static final AtomicInteger SCHEDULED_RETRIES = new AtomicInteger();
+
+	/** Number of times a task was interrupted because of timeout. */
+	private static final AtomicLong TIMEOUTS = new AtomicLong();
+
 	/** ExecutorService used to execute this task. */
 	private ExecutorService service;
 
@@ -78,6 +98,9 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 	/** The thread where this is running, used to interrupt. */
 	private Thread runThread = null;
 
+	/** Whether this task is counted in OUTSTANDING_TASKS. */
+	private boolean outstanding = false;
+
 	/** Name for this task. */
 	private String name = null;
 
@@ -144,6 +167,33 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 		this.exceptions = new ArrayList<Exception>(maxTries);
 		this.retryTimer = retryTimer;
 		this.retryDelay = retryDelay;
+		if (maxTries > 0) {
+			outstanding = true;
+			OUTSTANDING_TASKS.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Construct a new ExecutorTask that schedules retries using the shared
+	 * scheduler.
+	 *
+	 * @param service
+	 *            ExecutorService that this task will be submitted to.
+	 * @param maxTries
+	 *            maximum number of tries callable can throw an exception or
+	 *            timeout before giving up. &lt; 1 means never run.
+	 * @param timeout
+	 *            number of milliseconds to allow callable to run before it is
+	 *            interrupted. &lt;= 0 means never timeout.
+	 * @param callable
+	 *            the callable to call.
+	 * @param retryDelay
+	 *            the number of milliseconds to wait before retrying after an
+	 *            exception.
+	 */
+	public ExecutorTask(ExecutorService service, int maxTries, long timeout,
+			Callable<T> callable, long retryDelay) {
+		this(service, maxTries, timeout, callable, null, retryDelay);
 	}
 
 	/**
@@ -152,30 +202,27 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 	 */
 	@Override
 	public void run() {
-		// used to schedule timeout
-		Timer timeoutTimer = new Timer();
+		// used to interrupt on timeout
+		TimeoutInterrupt timeoutInterrupt = null;
+		// whether another try was submitted or scheduled
+		boolean retrying = false;
+
+		// synchronized (this) {
+		if (done || cancelled || numTries >= maxTries) {
+			// already done, cancelled, or out of attempts
+			return;
+		}
+		// }
 
 		try {
 			// synchronized (this) {
-			if (done || cancelled || numTries >= maxTries) {
-				// already done, cancelled, or out of attempts
-				return;
-			}
-
-			// otherwise,
 			++numTries;
 			// signal that we are running
 			runThread = Thread.currentThread();
 			if (timeout > 0) {
 				// schedule interrupt
-				final Thread currentThread = runThread;
-				timeoutTimer.schedule(new TimerTask() {
-					@Override
-					public void run() {
-						LOGGER.fine("Interrupting executor thread");
-						currentThread.interrupt();
-					}
-				}, timeout);
+				timeoutInterrupt = new TimeoutInterrupt(runThread);
+				timeoutInterrupt.schedule(timeout);
 			}
 			// }
 
@@ -185,9 +232,6 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 			// synchronized (this) {
 			// signal that we are done running
 			runThread = null;
-
-			// computed without exceptions, done
-			done();
 			// }
 		} catch (Exception e) {
 			LOGGER.log(Level.INFO, "Exception executing task", e);
@@ -203,19 +247,41 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 				LOGGER.info("Resubmitting task to executor " + numTries + "/"
 						+ maxTries + " attempts");
 				SubmitTaskToExecutor retryTask = new SubmitTaskToExecutor(this);
-				if (retryDelay <= 0L || retryTimer == null) {
-					retryTask.run();
-				} else {
-					retryTimer.schedule(retryTask, retryDelay);
+				try {
+					if (retryDelay <= 0L) {
+						retryTask.run();
+					} else if (retryTimer != null) {
+						retryTimer.schedule(retryTask, retryDelay);
+					} else {
+						SCHEDULED_RETRIES.incrementAndGet();
+						try {
+							getScheduler().schedule((Runnable) () -> {
+								SCHEDULED_RETRIES.decrementAndGet();
+								retryTask.run();
+							}, retryDelay, TimeUnit.MILLISECONDS);
+						} catch (RejectedExecutionException ree) {
+							SCHEDULED_RETRIES.decrementAndGet();
+							throw ree;
+						}
+					}
+					retrying = true;
+				} catch (IllegalStateException | RejectedExecutionException se) {
+					// timer cancelled or scheduler shutdown, no more tries
+					LOGGER.log(Level.FINE, "Unable to schedule retry", se);
 				}
-			} else {
-				// cancelled or out of tries, done
-				done();
 			}
 			// }
 		} finally {
 			// cancel timeout based interrupt
-			timeoutTimer.cancel();
+			if (timeoutInterrupt != null) {
+				timeoutInterrupt.cancel();
+			}
+			if (!retrying) {
+				// completed, cancelled, out of tries, or unable to retry.
+				// also reached when the callable throws an Error, so the
+				// task is never left outstanding.
+				done();
+			}
 		}
 	}
 
@@ -224,10 +290,14 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 	 * has no more tries
 	 */
 	private void done() {
-		// done running, either successfully or because out of tries
-		done = true;
 		// notify anyone waiting for task to complete
 		synchronized (syncObject) {
+			if (outstanding) {
+				outstanding = false;
+				OUTSTANDING_TASKS.decrementAndGet();
+			}
+			// done running, either successfully or because out of tries
+			done = true;
 			syncObject.notifyAll();
 		}
 	}
@@ -267,8 +337,10 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 	 */
 	@Override
 	public T get() throws InterruptedException, ExecutionException {
-		while (!cancelled && !done && numTries < maxTries) {
-			synchronized (syncObject) {
+		synchronized (syncObject) {
+			// numTries is incremented when the last try starts, so wait for
+			// done instead of checking numTries
+			while (!cancelled && !done && maxTries > 0) {
 				syncObject.wait();
 			}
 		}
@@ -287,8 +359,8 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 	@Override
 	public T get(long timeout, TimeUnit unit) throws InterruptedException,
 			ExecutionException, TimeoutException {
-		if (!cancelled && !done && numTries < maxTries) {
-			synchronized (syncObject) {
+		synchronized (syncObject) {
+			if (!cancelled && !done && maxTries > 0) {
 				unit.timedWait(syncObject, timeout);
 			}
 		}
@@ -382,6 +454,96 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 		this.retryTimer = retryTimer;
 	}
 
+	/**
+	 * @return number of tasks that have been created, and are not done.
+	 */
+	public static int getOutstandingTasks() {
+		return OUTSTANDING_TASKS.get();
+	}
+
+	/**
+	 * @return number of retries waiting in the shared scheduler.
+	 */
+	public static int getScheduledRetries() {
+		return SCHEDULED_RETRIES.get();
+	}
+
+	/**
+	 * @return number of times tasks have been interrupted by a timeout.
+	 */
+	public static long getTimeouts() {
+		return TIMEOUTS.get();
+	}
+
+	/**
+	 * Get the scheduler shared by all tasks, creating it if needed.
+	 *
+	 * Uses one daemon thread, since scheduled actions only interrupt threads
+	 * or submit tasks to other executors.
+	 *
+	 * @return shared scheduler.
+	 */
+	protected static synchronized ScheduledThreadPoolExecutor getScheduler() {
+		if (SCHEDULER == null) {
+			SCHEDULER = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+				Thread thread = new Thread(runnable, "ExecutorTask scheduler");
+				thread.setDaemon(true);
+				return thread;
+			});
+			// don't keep cancelled timeouts in queue until they expire
+			SCHEDULER.setRemoveOnCancelPolicy(true);
+		}
+		return SCHEDULER;
+	}
+
+	/**
+	 * Interrupts a thread after a timeout, unless cancelled first.
+	 */
+	private static class TimeoutInterrupt implements Runnable {
+
+		/** Thread to interrupt. */
+		private final Thread thread;
+		/** Scheduled interrupt. */
+		private ScheduledFuture<?> future;
+		/** Whether task completed before timeout. */
+		private boolean cancelled = false;
+
+		public TimeoutInterrupt(final Thread thread) {
+			this.thread = thread;
+		}
+
+		/**
+		 * Schedule interrupt.
+		 */
+		public synchronized void schedule(final long timeout) {
+			future = getScheduler().schedule(this, timeout,
+					TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Interrupt thread, unless already cancelled.
+		 */
+		@Override
+		public synchronized void run() {
+			if (!cancelled) {
+				LOGGER.fine("Interrupting executor thread");
+				TIMEOUTS.incrementAndGet();
+				thread.interrupt();
+			}
+		}
+
+		/**
+		 * Cancel interrupt, so thread is not interrupted after the task is
+		 * complete.
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+
 	/**
 	 * Submit an ExecutorTask to an ExecutorService.
 	 * 
@@ -407,7 +569,13 @@ public final class ExecutorTask<T> implements Future<T>, Runnable {
 		 * Submits the task to the executor.
 		 */
 		public void run() {
-			service.submit(task);
+			try {
+				service.submit(task);
+			} catch (RejectedExecutionException e) {
+				// executor was shutdown, no more tries
+				LOGGER.log(Level.FINE, "Unable to resubmit task", e);
+				task.done();
+			}
 		}
 
 	}
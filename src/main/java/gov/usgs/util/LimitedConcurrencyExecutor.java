@@ -0,0 +1,197 @@
+/*
+ * LimitedConcurrencyExecutor
+ */
+package gov.usgs.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An ExecutorService that runs tasks on another, shared, Executor.
+ *
+ * Tasks are started in the order they are submitted, and at most
+ * maxConcurrent tasks run at once. With maxConcurrent of 1, tasks run one at a
+ * time in FIFO order, like a single thread executor, but without a dedicated
+ * thread.
+ *
+ * Each dispatch to the shared executor runs one task, then dispatches again
+ * if more tasks are queued, so one busy queue does not keep a shared thread
+ * from other queues.
+ */
+public class LimitedConcurrencyExecutor extends AbstractExecutorService {
+
+	/** Logging object. */
+	private static final Logger LOGGER = Logger
+			.getLogger(LimitedConcurrencyExecutor.class.getName());
+
+	/** Executor where tasks run. */
+	private final Executor executor;
+
+	/** Maximum number of tasks running at once. */
+	private final int maxConcurrent;
+
+	/** Tasks waiting to run. */
+	private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+
+	/** Number of dispatches to executor that have not finished. */
+	private int running = 0;
+
+	/** Whether shutdown has been called. */
+	private boolean shutdown = false;
+
+	/**
+	 * Create a new LimitedConcurrencyExecutor.
+	 *
+	 * @param executor
+	 *            executor where tasks run.
+	 * @param maxConcurrent
+	 *            maximum number of tasks running at once, at least 1.
+	 */
+	public LimitedConcurrencyExecutor(final Executor executor,
+			final int maxConcurrent) {
+		if (maxConcurrent < 1) {
+			throw new IllegalArgumentException("maxConcurrent must be >= 1");
+		}
+		this.executor = executor;
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	@Override
+	public void execute(final Runnable task) {
+		if (task == null) {
+			throw new NullPointerException();
+		}
+		synchronized (this) {
+			if (shutdown) {
+				throw new RejectedExecutionException("executor is shutdown");
+			}
+			queue.add(task);
+			if (running >= maxConcurrent) {
+				// a running dispatch will start this task
+				return;
+			}
+			running++;
+		}
+		try {
+			executor.execute(this::runNext);
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				queue.removeLastOccurrence(task);
+				running--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Run the next queued task, then dispatch again if more are queued.
+	 */
+	private void runNext() {
+		while (true) {
+			Runnable task;
+			synchronized (this) {
+				task = queue.poll();
+				if (task == null) {
+					running--;
+					notifyAll();
+					return;
+				}
+			}
+
+			try {
+				task.run();
+			} catch (Throwable t) {
+				LOGGER.log(Level.WARNING, "Exception running task", t);
+			} finally {
+				// an interrupt meant for this task, not the next one
+				Thread.interrupted();
+			}
+
+			synchronized (this) {
+				if (queue.isEmpty()) {
+					running--;
+					notifyAll();
+					return;
+				}
+			}
+			try {
+				executor.execute(this::runNext);
+				return;
+			} catch (RejectedExecutionException e) {
+				// shared executor is shutdown, finish queue on this thread
+			}
+		}
+	}
+
+	/**
+	 * @return number of tasks waiting to run.
+	 */
+	public synchronized int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * @return maximum number of tasks running at once.
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	/**
+	 * Stop accepting tasks. Queued tasks still run.
+	 */
+	@Override
+	public synchronized void shutdown() {
+		shutdown = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stop accepting tasks, and remove queued tasks.
+	 *
+	 * Running tasks are not interrupted, since they run on shared threads.
+	 *
+	 * @return tasks that were queued and will not run.
+	 */
+	@Override
+	public synchronized List<Runnable> shutdownNow() {
+		shutdown = true;
+		List<Runnable> tasks = new ArrayList<Runnable>(queue);
+		queue.clear();
+		notifyAll();
+		return tasks;
+	}
+
+	@Override
+	public synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public synchronized boolean isTerminated() {
+		return shutdown && running == 0 && queue.isEmpty();
+	}
+
+	@Override
+	public synchronized boolean awaitTermination(final long timeout,
+			final TimeUnit unit) throws InterruptedException {
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		while (!isTerminated()) {
+			long remaining = end - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return true;
+	}
+
+}
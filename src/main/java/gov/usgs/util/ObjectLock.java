@@ -6,7 +6,7 @@
  */
 package gov.usgs.util;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -15,6 +15,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * This is intended for use when multiple sections of code should allow
  * concurrent access, but only when operating on independent objects.
  *
+ * Locks are kept in a ConcurrentHashMap, and reference counted so they can be
+ * removed once no threads are using them. Threads locking different objects
+ * do not synchronize on a shared monitor.
+ *
  * @param <T>
  *            The type of object used for locking. This object is used as a key
  *            in a HashMap. Objects that are equal, but not necessarily ==,
@@ -23,16 +27,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class ObjectLock<T> {
 
 	/** map object to corresponding lock for object. */
-	private HashMap<T, ReentrantReadWriteLock> locks = new HashMap<T, ReentrantReadWriteLock>();
-
-	/**
-	 * keep track of how many threads have, or are about to, use the lock object
-	 * in the map 'locks'. When this count reaches zero, it is safe to remove
-	 * the lock object.
-	 */
-	private HashMap<T, Integer> lockThreadCounts = new HashMap<T, Integer>();
-
-	private final Object syncObject = new Object();
+	private final ConcurrentHashMap<T, ObjectLockEntry> locks = new ConcurrentHashMap<T, ObjectLockEntry>();
 
 	/**
 	 * Construct a new ObjectLock object.
@@ -41,66 +36,53 @@ public class ObjectLock<T> {
 	}
 
 	/**
-	 * Get the lock for an object.
-	 *
-	 * This method must only be called by one thread at a time. synchronization
-	 * is handled by other methods in this class.
+	 * Get the lock for an object, and increment the thread count.
 	 *
 	 * @param object
 	 *            object to lock.
 	 * @return lock corresponding to object.
 	 */
 	private ReentrantReadWriteLock getLock(final T object) {
-		ReentrantReadWriteLock lock = locks.get(object);
-		if (lock == null) {
-			lock = new ReentrantReadWriteLock(true);
-			locks.put(object, lock);
-		}
-
-		return lock;
+		return locks.compute(object, (key, entry) -> {
+			if (entry == null) {
+				entry = new ObjectLockEntry();
+			}
+			entry.threadCount++;
+			return entry;
+		}).lock;
 	}
 
 	/**
-	 * Increment the thread count for an object.
-	 *
-	 * This method must only be called by one thread at a time. synchronization
-	 * is handled by other methods in this class.
+	 * Decrement the thread count for an object. Also, when the thread count
+	 * reaches zero, the lock corresponding to this object is removed from the
+	 * locks map.
 	 *
 	 * @param object
 	 */
-	private void incrementThreadCount(final T object) {
-		Integer threadCount = lockThreadCounts.get(object);
-		if (threadCount == null) {
-			threadCount = Integer.valueOf(0);
-		}
-		threadCount = threadCount + 1;
-		lockThreadCounts.put(object, threadCount);
+	private void decrementThreadCount(final T object) {
+		locks.computeIfPresent(object, (key, entry) -> {
+			entry.threadCount--;
+			// no threads are using this lock anymore, cleanup
+			return entry.threadCount == 0 ? null : entry;
+		});
 	}
 
 	/**
-	 * Decrement the thread count for an object. Also, when the thread count
-	 * reaches zero, the lock corresponding to this object is removed from the
-	 * locks map.
-	 *
-	 * This method must only be called by one thread at a time. synchronization
-	 * is handled by other methods in this class.
+	 * Get the lock for an object that is already in use.
 	 *
 	 * @param object
+	 *            object that was locked.
+	 * @return lock corresponding to object.
+	 * @throws IllegalStateException
+	 *             if no thread is using a lock for object.
 	 */
-	private void decrementThreadCount(final T object) {
-		Integer threadCount = lockThreadCounts.get(object);
-		if (threadCount == null) {
+	private ReentrantReadWriteLock getHeldLock(final T object) {
+		ObjectLockEntry entry = locks.get(object);
+		if (entry == null) {
 			throw new IllegalStateException(
 					"Trying to decrement thread count that does not exist.");
 		}
-		threadCount = threadCount - 1;
-		lockThreadCounts.put(object, threadCount);
-
-		if (threadCount == 0) {
-			// no threads are using this lock anymore, cleanup
-			locks.remove(object);
-			lockThreadCounts.remove(object);
-		}
+		return entry.lock;
 	}
 
 	/**
@@ -113,13 +95,13 @@ public class ObjectLock<T> {
 	 * @throws InterruptedException
 	 */
 	public void acquireReadLock(final T object) throws InterruptedException {
-		ReentrantReadWriteLock lock = null;
-		synchronized (syncObject) {
-			lock = getLock(object);
-			incrementThreadCount(object);
+		ReentrantReadWriteLock lock = getLock(object);
+		try {
+			lock.readLock().lockInterruptibly();
+		} catch (InterruptedException e) {
+			decrementThreadCount(object);
+			throw e;
 		}
-		// do this outside synchronized for concurrency
-		lock.readLock().lockInterruptibly();
 	}
 
 	/**
@@ -131,11 +113,11 @@ public class ObjectLock<T> {
 	 *         otherwise.
 	 */
 	public boolean haveWriteLock(final T object) {
-		ReentrantReadWriteLock lock = locks.get(object);
-		if (lock == null) {
+		ObjectLockEntry entry = locks.get(object);
+		if (entry == null) {
 			return false;
 		}
-		return lock.isWriteLockedByCurrentThread();
+		return entry.lock.isWriteLockedByCurrentThread();
 	}
 
 	/**
@@ -147,10 +129,11 @@ public class ObjectLock<T> {
 	 *            the object to unlock for reading.
 	 */
 	public void releaseReadLock(final T object) {
-		synchronized (syncObject) {
-			ReentrantReadWriteLock lock = getLock(object);
-			decrementThreadCount(object);
+		ReentrantReadWriteLock lock = getHeldLock(object);
+		try {
 			lock.readLock().unlock();
+		} finally {
+			decrementThreadCount(object);
 		}
 	}
 
@@ -164,13 +147,13 @@ public class ObjectLock<T> {
 	 * @throws InterruptedException
 	 */
 	public void acquireWriteLock(final T object) throws InterruptedException {
-		ReentrantReadWriteLock lock = null;
-		synchronized (syncObject) {
-			lock = getLock(object);
-			incrementThreadCount(object);
+		ReentrantReadWriteLock lock = getLock(object);
+		try {
+			lock.writeLock().lockInterruptibly();
+		} catch (InterruptedException e) {
+			decrementThreadCount(object);
+			throw e;
 		}
-		// do this outside synchronized for concurrency
-		lock.writeLock().lockInterruptibly();
 	}
 
 	/**
@@ -182,10 +165,11 @@ public class ObjectLock<T> {
 	 *            the object to unlock for writing.
 	 */
 	public void releaseWriteLock(final T object) {
-		synchronized (syncObject) {
-			ReentrantReadWriteLock lock = getLock(object);
-			decrementThreadCount(object);
+		ReentrantReadWriteLock lock = getHeldLock(object);
+		try {
 			lock.writeLock().unlock();
+		} finally {
+			decrementThreadCount(object);
 		}
 	}
 
@@ -212,4 +196,23 @@ public class ObjectLock<T> {
 		releaseWriteLock(object);
 	}
 
+	/**
+	 * @return number of objects that currently have locks.
+	 */
+	public int getLockCount() {
+		return locks.size();
+	}
+
+	/**
+	 * A lock, and the number of threads using or waiting for it.
+	 *
+	 * threadCount is only modified inside ConcurrentHashMap compute methods,
+	 * which are atomic per key.
+	 */
+	private static class ObjectLockEntry {
+		public final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(
+				true);
+		public int threadCount = 0;
+	}
+
 }
@@ -0,0 +1,434 @@
+/*
+ * ProcessWorkerPool
+ */
+package gov.usgs.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+
+/**
+ * A pool of long running external processes that handle requests, instead of
+ * starting a process for each request.
+ *
+ * Requests are written to worker stdin as one JSON object per line:
+ *
+ * <pre>
+ * {"id":1,"arguments":["--type=origin","--code=abcd",...],"content":"base64"}
+ * </pre>
+ *
+ * where arguments are the arguments that would be passed on the command line,
+ * and content is only present when content would be passed on stdin.
+ *
+ * Workers reply on stdout with one JSON object per line:
+ *
+ * <pre>
+ * {"id":1,"status":0,"message":"optional"}
+ * </pre>
+ *
+ * where status is used like a process exit value. Replies may be sent in any
+ * order, and other stdout lines are ignored. Stderr is logged.
+ *
+ * Each worker is sent at most maxInFlight requests at a time. Workers that
+ * exit or time out are destroyed, requests in progress on that worker fail,
+ * and the worker is started again for the next request.
+ */
+public class ProcessWorkerPool {
+
+	private static final Logger LOGGER = Logger
+			.getLogger(ProcessWorkerPool.class.getName());
+
+	/** Milliseconds to wait for workers to exit after stdin is closed. */
+	public static final long SHUTDOWN_WAIT = 5000L;
+
+	/** Name used in log messages. */
+	private final String name;
+
+	/** Worker command and arguments. */
+	private final String[] command;
+
+	/** Workers in pool. */
+	private final Worker[] workers;
+
+	/** Requests sent to each worker at a time. */
+	private final int maxInFlight;
+
+	/** Id of last request. */
+	private long lastId = 0L;
+
+	/** Whether pool is shut down. */
+	private boolean shutdown = false;
+
+	/**
+	 * Create a pool. Workers are started when first used.
+	 *
+	 * @param name
+	 *            name used in log messages.
+	 * @param command
+	 *            worker command and arguments.
+	 * @param size
+	 *            number of workers.
+	 * @param maxInFlight
+	 *            requests sent to each worker at a time.
+	 */
+	public ProcessWorkerPool(final String name, final String[] command,
+			final int size, final int maxInFlight) {
+		this.name = name;
+		this.command = command;
+		this.workers = new Worker[Math.max(1, size)];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Worker(i);
+		}
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * Send a request to a worker, and wait for the reply.
+	 *
+	 * @param arguments
+	 *            request arguments.
+	 * @param content
+	 *            request content, or null.
+	 * @param timeout
+	 *            milliseconds to wait for reply, or &lt;= 0 to wait forever.
+	 *            The worker is destroyed when a request times out.
+	 * @return reply from worker.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting, the worker is destroyed.
+	 * @throws TimeoutException
+	 *             if timeout elapses, the worker is destroyed.
+	 * @throws IOException
+	 *             if unable to start worker, or worker exits before replying.
+	 */
+	public Response process(final List<String> arguments,
+			final byte[] content, final long timeout)
+			throws InterruptedException, TimeoutException, IOException {
+		Worker worker;
+		long id;
+		synchronized (this) {
+			while (true) {
+				if (shutdown) {
+					throw new IOException("[" + name + "] worker pool shut down");
+				}
+				worker = null;
+				for (Worker w : workers) {
+					if (w.inFlight < maxInFlight
+							&& (worker == null || w.inFlight < worker.inFlight)) {
+						worker = w;
+					}
+				}
+				if (worker != null) {
+					break;
+				}
+				wait();
+			}
+			worker.inFlight++;
+			id = ++lastId;
+		}
+
+		try {
+			CompletableFuture<Response> future = worker.send(id,
+					toJSON(id, arguments, content));
+			try {
+				if (timeout > 0) {
+					return future.get(timeout, TimeUnit.MILLISECONDS);
+				}
+				return future.get();
+			} catch (ExecutionException e) {
+				throw (IOException) e.getCause();
+			} catch (InterruptedException | TimeoutException e) {
+				LOGGER.warning("[" + name + "] worker " + worker.index
+						+ " did not reply to request " + id + ", destroying");
+				worker.destroy();
+				throw e;
+			}
+		} finally {
+			synchronized (this) {
+				worker.inFlight--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Close worker stdin, so workers exit after finishing requests, and
+	 * destroy workers that do not exit.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			shutdown = true;
+			notifyAll();
+		}
+		for (Worker worker : workers) {
+			worker.close();
+		}
+		long end = System.currentTimeMillis() + SHUTDOWN_WAIT;
+		for (Worker worker : workers) {
+			worker.waitFor(Math.max(1L, end - System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * @return number of workers.
+	 */
+	public int getSize() {
+		return workers.length;
+	}
+
+	/**
+	 * @return requests sent to each worker at a time.
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * Format a request.
+	 */
+	private static String toJSON(final long id, final List<String> arguments,
+			final byte[] content) {
+		JsonArrayBuilder args = Json.createArrayBuilder();
+		for (String argument : arguments) {
+			args.add(argument);
+		}
+		JsonObjectBuilder json = Json.createObjectBuilder().add("id", id)
+				.add("arguments", args);
+		if (content != null) {
+			json.add("content", Base64.getEncoder().encodeToString(content));
+		}
+		return json.build().toString();
+	}
+
+	/**
+	 * A reply from a worker.
+	 */
+	public static class Response {
+		/** Status, like a process exit value. */
+		public final int status;
+		/** Message from worker, or null. */
+		public final String message;
+
+		public Response(final int status, final String message) {
+			this.status = status;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * One worker process, and requests waiting for a reply.
+	 */
+	private class Worker {
+
+		private final int index;
+		/** Guarded by pool. */
+		private int inFlight = 0;
+
+		private Process process = null;
+		private Writer stdin = null;
+		private final Map<Long, CompletableFuture<Response>> pending = new ConcurrentHashMap<Long, CompletableFuture<Response>>();
+
+		public Worker(final int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Send a request, starting process if needed.
+		 */
+		public synchronized CompletableFuture<Response> send(final long id,
+				final String request) throws IOException {
+			if (process == null) {
+				start();
+			}
+			CompletableFuture<Response> future = new CompletableFuture<Response>();
+			pending.put(id, future);
+			try {
+				stdin.write(request);
+				stdin.write('\n');
+				stdin.flush();
+			} catch (IOException e) {
+				pending.remove(id);
+				destroy();
+				throw e;
+			}
+			return future;
+		}
+
+		private void start() throws IOException {
+			LOGGER.fine("[" + name + "] starting worker " + index + " "
+					+ Arrays.toString(command));
+			final Process started = new ProcessBuilder(command).start();
+			process = started;
+			stdin = new BufferedWriter(new OutputStreamWriter(
+					started.getOutputStream(), StandardCharsets.UTF_8));
+
+			Thread reader = new Thread(() -> readReplies(started), name
+					+ "-worker-" + index);
+			reader.setDaemon(true);
+			reader.start();
+
+			Thread errors = new Thread(() -> {
+				try (BufferedReader in = new BufferedReader(
+						new InputStreamReader(started.getErrorStream(),
+								StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = in.readLine()) != null) {
+						LOGGER.fine("[" + name + "] worker " + index
+								+ " stderr: " + line);
+					}
+				} catch (IOException e) {
+					// process exited
+				}
+			}, name + "-worker-" + index + "-stderr");
+			errors.setDaemon(true);
+			errors.start();
+		}
+
+		/**
+		 * Complete pending requests as replies arrive, and fail pending
+		 * requests when the process exits.
+		 */
+		private void readReplies(final Process started) {
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(
+					started.getInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					try {
+						readReply(line);
+					} catch (RuntimeException e) {
+						LOGGER.log(Level.WARNING, "[" + name + "] worker "
+								+ index + " invalid reply: " + line, e);
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "[" + name + "] worker " + index
+						+ " stdout closed", e);
+			} finally {
+				exited(started);
+			}
+		}
+
+		/**
+		 * Complete the pending request for one stdout line, lines that are not
+		 * replies are ignored.
+		 */
+		private void readReply(final String line) {
+			JsonObject json;
+			try (JsonReader reader = Json.createReader(new StringReader(line))) {
+				json = reader.readObject();
+			} catch (Exception e) {
+				LOGGER.finer("[" + name + "] worker " + index + " stdout: "
+						+ line);
+				return;
+			}
+			JsonValue id = json.get("id");
+			if (id == null || id.getValueType() != JsonValue.ValueType.NUMBER) {
+				LOGGER.finer("[" + name + "] worker " + index + " stdout: "
+						+ line);
+				return;
+			}
+			CompletableFuture<Response> future = pending.remove(((JsonNumber) id)
+					.longValue());
+			if (future != null) {
+				future.complete(new Response(json.getInt("status", -1), json
+						.getString("message", null)));
+			}
+		}
+
+		/**
+		 * Forget process and fail its pending requests.
+		 */
+		private void exited(final Process exited) {
+			List<CompletableFuture<Response>> failed = new ArrayList<CompletableFuture<Response>>();
+			synchronized (this) {
+				if (process != exited) {
+					// already replaced
+					return;
+				}
+				process = null;
+				StreamUtils.closeStream(stdin);
+				stdin = null;
+				Iterator<CompletableFuture<Response>> iter = pending.values()
+						.iterator();
+				while (iter.hasNext()) {
+					failed.add(iter.next());
+					iter.remove();
+				}
+			}
+			if (!failed.isEmpty()) {
+				LOGGER.warning("[" + name + "] worker " + index
+						+ " exited with " + failed.size() + " pending requests");
+			}
+			for (CompletableFuture<Response> future : failed) {
+				future.completeExceptionally(new IOException("[" + name
+						+ "] worker exited before replying"));
+			}
+		}
+
+		/**
+		 * Kill process, pending requests fail.
+		 */
+		public void destroy() {
+			Process destroyed;
+			synchronized (this) {
+				destroyed = process;
+			}
+			if (destroyed != null) {
+				destroyed.destroy();
+				exited(destroyed);
+			}
+		}
+
+		/**
+		 * Close stdin, so process exits after finishing requests.
+		 */
+		public synchronized void close() {
+			StreamUtils.closeStream(stdin);
+		}
+
+		/**
+		 * Wait for process to exit, then destroy it.
+		 */
+		public void waitFor(final long millis) {
+			Process waiting;
+			synchronized (this) {
+				waiting = process;
+			}
+			if (waiting == null) {
+				return;
+			}
+			try {
+				waiting.waitFor(millis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			destroy();
+		}
+	}
+
+}
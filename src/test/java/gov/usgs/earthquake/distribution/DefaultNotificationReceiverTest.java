@@ -0,0 +1,191 @@
+/*
+ * DefaultNotificationReceiverTest
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.Product;
+import gov.usgs.earthquake.product.ProductTest;
+import gov.usgs.earthquake.product.io.BinaryProductHandler;
+import gov.usgs.earthquake.product.io.ObjectProductSource;
+import gov.usgs.util.FileUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class DefaultNotificationReceiverTest {
+
+	private static final File TEST_DIRECTORY = new File(
+			"data/defaultnotificationreceivertest");
+
+	private DefaultNotificationReceiver receiver;
+	private Product product;
+	private byte[] productBytes;
+	private List<HttpServer> servers = new ArrayList<HttpServer>();
+
+	@Before
+	public void setup() throws Exception {
+		FileUtils.deleteTree(TEST_DIRECTORY);
+		TEST_DIRECTORY.mkdirs();
+
+		product = new ProductTest().getProduct();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ObjectProductSource(product).streamTo(new BinaryProductHandler(
+				out));
+		productBytes = out.toByteArray();
+
+		receiver = new DefaultNotificationReceiver();
+		receiver.setName("receiver");
+		receiver.setReceiverCleanupInterval(0L);
+		receiver.setNotificationIndex(new JDBCNotificationIndex(new File(
+				TEST_DIRECTORY, "index.db").getPath()));
+		receiver.setProductStorage(new FileProductStorage(new File(
+				TEST_DIRECTORY, "storage")));
+		receiver.startup();
+	}
+
+	@After
+	public void teardown() throws Exception {
+		for (HttpServer server : servers) {
+			server.stop(0);
+		}
+		receiver.shutdown();
+		FileUtils.deleteTree(TEST_DIRECTORY);
+	}
+
+	/**
+	 * A slow hub does not delay download when hedging.
+	 */
+	@Test
+	public void hedgedDownloadTest() throws Exception {
+		URL slowURL = startServer(3000L);
+		URL fastURL = startServer(0L);
+		addNotification(slowURL);
+		addNotification(fastURL);
+		receiver.setHedgeDelay(200L);
+
+		long start = System.currentTimeMillis();
+		Product retrieved = receiver.retrieveProduct(product.getId());
+		long elapsed = System.currentTimeMillis() - start;
+
+		Assert.assertNotNull(retrieved);
+		Assert.assertEquals(product.getId(), retrieved.getId());
+		Assert.assertTrue("retrieved in " + elapsed + " ms", elapsed < 2000L);
+		// fast hub now ranked first
+		Assert.assertTrue(receiver.getHubRate(fastURL) > receiver
+				.getHubRate(slowURL));
+	}
+
+	/**
+	 * When a hedged download fails, the next hub is tried without waiting for
+	 * the hedge delay.
+	 */
+	@Test
+	public void hedgedDownloadFailureTest() throws Exception {
+		URL slowURL = startServer(5000L);
+		URL failURL = startServer(-1L);
+		URL fastURL = startServer(0L);
+		addNotification(slowURL);
+		addNotification(failURL);
+		addNotification(fastURL);
+		// try slow, then failing, then fast
+		receiver.updateHubRate(slowURL, 3L);
+		receiver.updateHubRate(failURL, 2L);
+		receiver.updateHubRate(fastURL, 1L);
+		receiver.setHedgeDelay(1000L);
+
+		long start = System.currentTimeMillis();
+		Product retrieved = receiver.retrieveProduct(product.getId());
+		long elapsed = System.currentTimeMillis() - start;
+
+		Assert.assertNotNull(retrieved);
+		// fast hub started when failing hub failed, not one delay later
+		Assert.assertTrue("retrieved in " + elapsed + " ms", elapsed < 1800L);
+	}
+
+	/**
+	 * Hedged downloads are written under the storage directory.
+	 */
+	@Test
+	public void downloadDirectoryTest() throws Exception {
+		File storageDirectory = ((FileProductStorage) receiver
+				.getProductStorage()).getBaseDirectory();
+		Assert.assertEquals(storageDirectory.getCanonicalFile(), receiver
+				.getDownloadDirectory().getParentFile().getCanonicalFile());
+		Assert.assertTrue(receiver.getDownloadDirectory().isDirectory());
+	}
+
+	/**
+	 * Notifications are ranked by hub download rate.
+	 */
+	@Test
+	public void rankNotificationsTest() throws Exception {
+		URL slowURL = new URL("http://slow:8080/product");
+		URL fastURL = new URL("http://fast:8080/product");
+		URL newURL = new URL("http://new:8080/product");
+		receiver.updateHubRate(slowURL, 1000L);
+		receiver.updateHubRate(fastURL, 100000L);
+
+		URLNotification slow = createNotification(slowURL);
+		URLNotification fast = createNotification(fastURL);
+		URLNotification unknown = createNotification(newURL);
+		List<URLNotification> ranked = receiver.rankNotifications(Arrays
+				.asList(new Notification[] { slow, fast, unknown }));
+		Assert.assertEquals(Arrays.asList(unknown, fast, slow), ranked);
+	}
+
+	private URLNotification createNotification(final URL url) {
+		return new URLNotification(product.getId(), new Date(
+				new Date().getTime() + 60000L), product.getTrackerURL(), url);
+	}
+
+	private void addNotification(final URL url) throws Exception {
+		receiver.getNotificationIndex().addNotification(
+				createNotification(url));
+	}
+
+	/**
+	 * Start a server that waits before sending the product.
+	 *
+	 * @param delay
+	 *            milliseconds to wait, or negative to fail immediately.
+	 */
+	private URL startServer(final long delay) throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		server.createContext("/product", exchange -> {
+			if (delay < 0) {
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+				return;
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				// send now
+			}
+			exchange.sendResponseHeaders(200, productBytes.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(productBytes);
+			out.close();
+		});
+		server.start();
+		servers.add(server);
+		return new URL("http://localhost:" + server.getAddress().getPort()
+				+ "/product");
+	}
+
+}
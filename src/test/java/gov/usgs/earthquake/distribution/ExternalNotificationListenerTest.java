@@ -6,6 +6,8 @@ package gov.usgs.earthquake.distribution;
 import gov.usgs.earthquake.product.Product;
 import gov.usgs.earthquake.product.ProductTest;
 
+import java.util.Arrays;
+
 import org.junit.Test;
 import org.junit.Assert;
 
@@ -57,4 +59,13 @@ public class ExternalNotificationListenerTest {
 
 	}
 
+	@Test
+	public void testWorkerArguments() {
+		Assert.assertEquals("arguments after command",
+				Arrays.asList("--type=test", "--property-a=b c"),
+				ExternalNotificationListener.getWorkerArguments(
+						"\"/path with/command\" --flag",
+						"\"/path with/command\" --flag --type=test \"--property-a=b c\""));
+	}
+
 }
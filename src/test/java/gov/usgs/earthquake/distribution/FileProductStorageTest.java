@@ -8,10 +8,18 @@ import gov.usgs.earthquake.product.FileContent;
 import gov.usgs.earthquake.product.Product;
 import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.earthquake.product.ProductTest;
+import gov.usgs.earthquake.product.URLContent;
+import gov.usgs.earthquake.product.io.BinaryProductHandler;
+import gov.usgs.earthquake.product.io.BinaryProductSource;
+import gov.usgs.earthquake.product.io.ObjectProductSource;
 import gov.usgs.util.Config;
 import gov.usgs.util.FileUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -230,6 +238,84 @@ public class FileProductStorageTest {
 
 	}
 
+	/**
+	 * Signatures of streamed products are verified while they are stored.
+	 */
+	@Test
+	public void verifyStreamedProductSignature() throws Exception {
+		// empty the store
+		FileUtils.deleteTree(TESTING_DIRECTORY);
+
+		FileProductStorage storage = new FileProductStorage(TESTING_DIRECTORY);
+		ProductKeyChain chain = new ProductKeyChain();
+		chain.getKeychain().add(new ProductKey(
+				ProductTest.SIGNATURE_KEY_PAIR.getPublic(), null, null));
+		storage.setKeychain(chain);
+		storage.setRejectInvalidSignatures(true);
+
+		product1.sign(ProductTest.SIGNATURE_KEY_PAIR.getPrivate());
+		storage.storeProductSource(new BinaryProductSource(
+				new ByteArrayInputStream(toBinary(product1))));
+		Assert.assertTrue(storage.hasProduct(product1.getId()));
+
+		// modified after signing
+		product2.sign(ProductTest.SIGNATURE_KEY_PAIR.getPrivate());
+		product2.getProperties().put("modified", "true");
+		try {
+			storage.storeProductSource(new BinaryProductSource(
+					new ByteArrayInputStream(toBinary(product2))));
+			Assert.fail();
+		} catch (InvalidSignatureException e) {
+			// Test passed
+		}
+		Assert.assertFalse(storage.hasProduct(product2.getId()));
+	}
+
+	/**
+	 * URL content is downloaded once, and the signature is verified against
+	 * the bytes that were stored.
+	 */
+	@Test
+	public void verifyURLContentSignature() throws Exception {
+		// empty the store
+		FileUtils.deleteTree(TESTING_DIRECTORY);
+
+		FileProductStorage storage = new FileProductStorage(TESTING_DIRECTORY);
+		ProductKeyChain chain = new ProductKeyChain();
+		chain.getKeychain().add(new ProductKey(
+				ProductTest.SIGNATURE_KEY_PAIR.getPublic(), null, null));
+		storage.setKeychain(chain);
+		storage.setRejectInvalidSignatures(true);
+
+		File file = File.createTempFile("urlcontent", ".txt");
+		try {
+			FileUtils.writeFile(file, "url content".getBytes());
+			final int[] downloads = { 0 };
+			URLContent content = new URLContent(new FileContent(file)) {
+				@Override
+				public InputStream getInputStream() throws IOException {
+					downloads[0]++;
+					return super.getInputStream();
+				}
+			};
+			product1.getContents().put("url.txt", content);
+			product1.sign(ProductTest.SIGNATURE_KEY_PAIR.getPrivate());
+			downloads[0] = 0;
+
+			storage.storeProductSource(new ObjectProductSource(product1));
+			Assert.assertTrue(storage.hasProduct(product1.getId()));
+			Assert.assertEquals(1, downloads[0]);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static byte[] toBinary(final Product product) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ObjectProductSource(product).streamTo(new BinaryProductHandler(out));
+		return out.toByteArray();
+	}
+
 	@Test
 	public void notifyListeners() {
 		Assert.assertTrue("TODO :: Implement notifyListener test.", true);
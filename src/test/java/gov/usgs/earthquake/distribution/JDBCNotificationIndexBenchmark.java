@@ -0,0 +1,148 @@
+/*
+ * JDBCNotificationIndexBenchmark
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.BenchmarkUtils;
+import gov.usgs.util.Config;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measure mixed add/find throughput of JDBCNotificationIndex with many
+ * threads.
+ *
+ * The current index, with WAL mode, read connections, and group commit, is
+ * compared to a serialized index that uses the previous locking: one
+ * connection, a rollback journal, and every method synchronized on the
+ * index.
+ *
+ * Each thread adds a notification, then looks up recently added products,
+ * like receivers checking whether a product was already seen.
+ *
+ * Not a unit test, run using:
+ * java gov.usgs.earthquake.distribution.JDBCNotificationIndexBenchmark
+ * [threads [findsPerAdd [seconds]]]
+ */
+public class JDBCNotificationIndexBenchmark {
+
+	/** Number of notifications in index before measuring. */
+	public static final int PRELOAD = 2000;
+
+	/**
+	 * Run threads that add and find notifications for some time.
+	 *
+	 * @return operations per second.
+	 */
+	public static double run(final JDBCNotificationIndex index,
+			final int threads, final int findsPerAdd, final long millis)
+			throws Exception {
+		final List<Notification> added = new ArrayList<Notification>();
+		for (int i = 0; i < PRELOAD; i++) {
+			Notification notification = createNotification(i);
+			index.addNotification(notification);
+			added.add(notification);
+		}
+
+		final AtomicLong counter = new AtomicLong(PRELOAD);
+		return BenchmarkUtils.runThreads(threads, millis, (thread) -> {
+			final Random random = new Random(thread);
+			return () -> {
+				index.addNotification(createNotification(counter
+						.incrementAndGet()));
+				for (int i = 0; i < findsPerAdd; i++) {
+					Notification find = added.get(random.nextInt(PRELOAD));
+					index.findNotifications(find.getProductId());
+				}
+				return 1 + findsPerAdd;
+			};
+		});
+	}
+
+	public static void main(final String[] args) throws Exception {
+		int threads = (int) BenchmarkUtils.getArg(args, 0, 8);
+		int findsPerAdd = (int) BenchmarkUtils.getArg(args, 1, 4);
+		long millis = BenchmarkUtils.getArg(args, 2, 10) * 1000L;
+
+		System.out.println("threads=" + threads + ", findsPerAdd="
+				+ findsPerAdd + ", seconds=" + (millis / 1000));
+
+		File serializedFile = new File("benchmark_serialized_index.db");
+		File currentFile = new File("benchmark_current_index.db");
+		try {
+			SerializedIndex serialized = new SerializedIndex(
+					serializedFile.getPath());
+			serialized.startup();
+			BenchmarkUtils.report("serialized",
+					run(serialized, threads, findsPerAdd, millis), "ops/s");
+			serialized.shutdown();
+
+			JDBCNotificationIndex current = new JDBCNotificationIndex(
+					currentFile.getPath());
+			Config config = new Config();
+			config.setProperty(JDBCNotificationIndex.JDBC_FILE_PROPERTY,
+					currentFile.getPath());
+			config.setProperty(JDBCNotificationIndex.WAL_MODE_PROPERTY, "true");
+			current.configure(config);
+			current.startup();
+			double ops = run(current, threads, findsPerAdd, millis);
+			BenchmarkUtils.report("current", ops, "ops/s, "
+					+ current.getWriteTransactions() + " write transactions");
+			current.shutdown();
+		} finally {
+			deleteIndex(serializedFile);
+			deleteIndex(currentFile);
+		}
+	}
+
+	private static void deleteIndex(final File file) {
+		file.delete();
+		new File(file.getPath() + "-wal").delete();
+		new File(file.getPath() + "-shm").delete();
+	}
+
+	private static Notification createNotification(final long i)
+			throws Exception {
+		ProductId id = new ProductId("us", "benchmark", "code" + i, new Date(
+				i));
+		return new URLNotification(id, new Date(
+				System.currentTimeMillis() + 3600000L), new URL(
+				"http://localhost/tracker"), new URL("http://localhost/product"
+				+ i));
+	}
+
+	/**
+	 * Index using the previous locking, one connection for every call.
+	 */
+	public static class SerializedIndex extends JDBCNotificationIndex {
+
+		public SerializedIndex(final String filename) throws Exception {
+			super(filename);
+			Config config = new Config();
+			config.setProperty(JDBC_FILE_PROPERTY, filename);
+			config.setProperty(READ_CONNECTIONS_PROPERTY, "1");
+			config.setProperty(WAL_MODE_PROPERTY, "false");
+			configure(config);
+		}
+
+		@Override
+		public synchronized void addNotification(Notification notification)
+				throws Exception {
+			super.addNotification(notification);
+		}
+
+		@Override
+		public synchronized List<Notification> findNotifications(
+				ProductId id) throws Exception {
+			return super.findNotifications(id);
+		}
+	}
+
+}
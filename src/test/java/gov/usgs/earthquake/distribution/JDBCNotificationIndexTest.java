@@ -11,6 +11,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -453,6 +454,91 @@ public class JDBCNotificationIndexTest {
 				+ EXPIRED_NOTIFICATIONS.size() + 4, getIndexSize());
 	}
 
+	/**
+	 * Concurrent writes are committed while other threads search.
+	 */
+	@Test
+	public void testConcurrentReadsAndWrites() throws Exception {
+		final int threads = 4;
+		final int perThread = 25;
+		final List<Exception> errors = new ArrayList<Exception>();
+
+		Thread[] writers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			writers[t] = new Thread(() -> {
+				try {
+					for (int i = 0; i < perThread; i++) {
+						Notification n = createRandomNotification("concurrent",
+								"test");
+						index.addNotification(n);
+						// a search on another connection sees the write
+						Assert.assertEquals(1, index.findNotifications(
+								n.getProductId()).size());
+						index.findNotifications(null, Arrays.asList("test"),
+								null);
+					}
+				} catch (Exception | AssertionError e) {
+					synchronized (errors) {
+						errors.add(new Exception(e));
+					}
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		Assert.assertEquals(errors.toString(), 0, errors.size());
+		Assert.assertEquals(threads * perThread, index.findNotifications(
+				"concurrent", "test", null).size());
+	}
+
+	/**
+	 * Writes queued while another transaction holds the write lock are
+	 * committed together.
+	 */
+	@Test
+	public void testWritesShareTransactions() throws Exception {
+		final int threads = 8;
+		final List<Exception> errors = new ArrayList<Exception>();
+		long transactions = index.getWriteTransactions();
+
+		Thread[] writers = new Thread[threads];
+		// hold the write lock, so every writer queues before any commits
+		synchronized (index) {
+			for (int t = 0; t < threads; t++) {
+				writers[t] = new Thread(() -> {
+					try {
+						index.addNotification(createRandomNotification(
+								"shared", "test"));
+					} catch (Exception e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				});
+				writers[t].start();
+			}
+			// writers block on the lock after queueing their write
+			for (Thread writer : writers) {
+				while (writer.getState() != Thread.State.BLOCKED) {
+					Thread.sleep(1L);
+				}
+			}
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		Assert.assertEquals(errors.toString(), 0, errors.size());
+		Assert.assertEquals(threads, index.findNotifications("shared", "test",
+				null).size());
+		long committed = index.getWriteTransactions() - transactions;
+		Assert.assertTrue("expected fewer than " + threads
+				+ " transactions, got " + committed, committed < threads);
+	}
+
 	// ------------------------------------------------------------------------
 	// Helper/Utility Methods
 	// ------------------------------------------------------------------------
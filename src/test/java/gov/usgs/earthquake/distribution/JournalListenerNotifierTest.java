@@ -0,0 +1,118 @@
+/*
+ * JournalListenerNotifierTest
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.FileUtils;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalListenerNotifierTest {
+
+	private static final File JOURNAL_DIRECTORY = new File(
+			"JournalListenerNotifierTest");
+
+	@Before
+	@After
+	public void cleanup() {
+		FileUtils.deleteTree(JOURNAL_DIRECTORY);
+	}
+
+	/**
+	 * Only a window of notifications is queued in memory, and all are
+	 * delivered in order.
+	 */
+	@Test
+	public void windowTest() throws Exception {
+		DefaultNotificationReceiver receiver = new DefaultNotificationReceiver();
+		receiver.setName("receiver");
+		JournalListenerNotifier notifier = new JournalListenerNotifier(
+				receiver, JOURNAL_DIRECTORY, 2, 0L);
+		TestListener listener = new TestListener(10);
+		notifier.addNotificationListener(listener);
+
+		for (int i = 0; i < 10; i++) {
+			notifier.notifyListeners(new NotificationEvent(receiver,
+					getNotification(i)));
+		}
+
+		ListenerJournal journal = notifier.getJournals().get(listener);
+		Assert.assertEquals(10, journal.getPending());
+		Assert.assertEquals(2, journal.getInFlight());
+		Assert.assertTrue(((ThreadPoolExecutor) notifier.getExecutors().get(
+				listener)).getQueue().size() <= 2);
+
+		listener.release.countDown();
+		Assert.assertTrue(listener.finished.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals(getNotification(i).getProductId(),
+					listener.received.get(i));
+		}
+		// the failed first try of the last notification was retried
+		Assert.assertEquals(11, listener.calls.get());
+		// listener returns after counting down
+		for (int i = 0; i < 50 && journal.getPending() > 0; i++) {
+			Thread.sleep(100L);
+		}
+		Assert.assertEquals(0, journal.getPending());
+		notifier.shutdown();
+	}
+
+	private static URLNotification getNotification(final int i)
+			throws Exception {
+		return new URLNotification(new ProductId("us", "test", "code" + i,
+				new Date(1000L * i)), new Date(2000000000000L), new URL(
+				"http://localhost/tracker"), new URL("http://localhost/product"
+				+ i + ".xml"));
+	}
+
+	/**
+	 * Listener that waits to be released, and fails the first try of the
+	 * last notification.
+	 */
+	private static class TestListener extends DefaultNotificationListener {
+
+		public final List<ProductId> received = Collections
+				.synchronizedList(new ArrayList<ProductId>());
+		public final CountDownLatch release = new CountDownLatch(1);
+		public final CountDownLatch finished;
+		public final AtomicInteger calls = new AtomicInteger();
+		private boolean failed = false;
+
+		public TestListener(final int expected) {
+			setName("listener");
+			setMaxTries(2);
+			setRetryDelay(0L);
+			finished = new CountDownLatch(expected);
+		}
+
+		@Override
+		public void onNotification(final NotificationEvent event)
+				throws Exception {
+			release.await();
+			calls.incrementAndGet();
+			if (!failed && finished.getCount() == 1) {
+				failed = true;
+				throw new Exception("first try fails");
+			}
+			received.add(event.getNotification().getProductId());
+			finished.countDown();
+		}
+	}
+
+}
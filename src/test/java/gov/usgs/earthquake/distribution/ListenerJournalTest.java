@@ -0,0 +1,136 @@
+/*
+ * ListenerJournalTest
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ListenerJournalTest {
+
+	private static final File JOURNAL_DIRECTORY = new File(
+			"ListenerJournalTest");
+
+	@Before
+	@After
+	public void cleanup() {
+		FileUtils.deleteTree(JOURNAL_DIRECTORY);
+	}
+
+	/**
+	 * Notifications that were not complete are read again after reopening,
+	 * and complete segments are deleted.
+	 */
+	@Test
+	public void resumeTest() throws Exception {
+		ListenerJournal journal = new ListenerJournal(JOURNAL_DIRECTORY, 3);
+		journal.open();
+		Assert.assertFalse(journal.isResumed());
+		for (int i = 0; i < 10; i++) {
+			journal.append(getNotification(i));
+		}
+		Assert.assertEquals(10, journal.getPending());
+
+		// complete 0-3, and 5, leaving 4 in progress
+		for (int i = 0; i < 6; i++) {
+			Assert.assertEquals(i, journal.next().index);
+		}
+		for (int i = 0; i < 6; i++) {
+			if (i != 4) {
+				journal.complete(i);
+			}
+		}
+		Assert.assertEquals(6, journal.getPending());
+		Assert.assertEquals(1, journal.getInFlight());
+		// segment 0-2 deleted, 3-5 still has 4
+		Assert.assertEquals(4, JOURNAL_DIRECTORY.list().length);
+		journal.close();
+
+		journal = new ListenerJournal(JOURNAL_DIRECTORY, 3);
+		journal.open();
+		Assert.assertTrue(journal.isResumed());
+		Assert.assertEquals(6, journal.getUnread());
+		// 4 and 5 are delivered again
+		ListenerJournal.Entry entry = journal.next();
+		Assert.assertEquals(4, entry.index);
+		Assert.assertEquals(getNotification(4).getProductId(),
+				entry.notification.getProductId());
+		Assert.assertEquals(5, journal.next().index);
+
+		// appending continues after existing notifications
+		Assert.assertEquals(10L, journal.append(getNotification(10)));
+		journal.close();
+	}
+
+	/**
+	 * A partial record from a crash is removed when the journal is opened.
+	 */
+	@Test
+	public void partialRecordTest() throws Exception {
+		ListenerJournal journal = new ListenerJournal(JOURNAL_DIRECTORY);
+		journal.open();
+		journal.append(getNotification(0));
+		journal.close();
+
+		File segment = new File(JOURNAL_DIRECTORY, String.format("%020d", 0)
+				+ ListenerJournal.SEGMENT_SUFFIX);
+		try (FileOutputStream out = new FileOutputStream(segment, true)) {
+			out.write("{\"id\":\"urn:".getBytes());
+		}
+
+		journal = new ListenerJournal(JOURNAL_DIRECTORY);
+		journal.open();
+		Assert.assertEquals(1, journal.getUnread());
+		Assert.assertEquals(1L, journal.append(getNotification(1)));
+		Assert.assertEquals(0, journal.next().index);
+		Assert.assertEquals(getNotification(1).getProductId(),
+				journal.next().notification.getProductId());
+		Assert.assertNull(journal.next());
+		journal.close();
+	}
+
+	/**
+	 * awaitCapacity waits until notifications are complete.
+	 */
+	@Test
+	public void capacityTest() throws Exception {
+		final ListenerJournal journal = new ListenerJournal(JOURNAL_DIRECTORY);
+		journal.open();
+		journal.append(getNotification(0));
+		journal.append(getNotification(1));
+		final long index = journal.next().index;
+
+		Thread completer = new Thread(() -> {
+			try {
+				Thread.sleep(100L);
+				journal.complete(index);
+			} catch (Exception e) {
+				// ignore
+			}
+		});
+		completer.start();
+		journal.awaitCapacity(2);
+		Assert.assertEquals(1, journal.getPending());
+		completer.join();
+		journal.close();
+	}
+
+	private static URLNotification getNotification(final int i)
+			throws Exception {
+		return new URLNotification(new ProductId("us", "test", "code" + i,
+				new Date(1000L * i)), new Date(2000000000000L), new URL(
+				"http://localhost/tracker"), new URL("http://localhost/product"
+				+ i + ".xml"));
+	}
+
+}
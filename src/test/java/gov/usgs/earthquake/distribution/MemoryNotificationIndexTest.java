@@ -0,0 +1,193 @@
+/*
+ * MemoryNotificationIndexTest
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.FileUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryNotificationIndexTest {
+
+	private static final File INDEX_DIRECTORY = new File(
+			"MemoryNotificationIndexTest");
+
+	/** Expiration dates are relative to when each test starts. */
+	private final long now = System.currentTimeMillis();
+
+	@Before
+	@After
+	public void cleanup() {
+		FileUtils.deleteTree(INDEX_DIRECTORY);
+	}
+
+	/**
+	 * Searches by id, by source/type/code, and for expired notifications.
+	 */
+	@Test
+	public void searchTest() throws Exception {
+		MemoryNotificationIndex index = new MemoryNotificationIndex();
+		index.startup();
+
+		Notification expired = getNotification("us", "origin", "a", 1L, -1000L);
+		Notification origin = getNotification("us", "origin", "a", 2L, 60000L);
+		Notification newer = getNotification("us", "origin", "a", 3L, 60000L);
+		Notification shakemap = getNotification("ci", "shakemap", "b", 1L,
+				60000L);
+		index.addNotification(expired);
+		index.addNotification(origin);
+		index.addNotification(newer);
+		index.addNotification(shakemap);
+		// identical notification is not added again
+		index.addNotification(getNotification("us", "origin", "a", 2L, 60000L));
+		Assert.assertEquals(4, index.size());
+
+		List<Notification> found = index.findNotifications(origin
+				.getProductId());
+		Assert.assertEquals(1, found.size());
+		Assert.assertTrue(isSame(origin, found.get(0)));
+		Assert.assertTrue(index.findNotifications(
+				new ProductId("us", "origin", "z")).isEmpty());
+
+		// single values ignore case
+		Assert.assertEquals(3, index.findNotifications("US", "origin", null)
+				.size());
+		Assert.assertEquals(1, index.findNotifications(null, null, "B").size());
+		Assert.assertEquals(4, index.findNotifications((String) null,
+				null, null).size());
+
+		// lists match case, ordered by update time
+		found = index.findNotifications(Arrays.asList("us", "ci"),
+				Arrays.asList("origin"), null);
+		Assert.assertEquals(3, found.size());
+		Assert.assertEquals(new Date(1L), found.get(0).getProductId()
+				.getUpdateTime());
+		Assert.assertEquals(new Date(3L), found.get(2).getProductId()
+				.getUpdateTime());
+		Assert.assertTrue(index.findNotifications(Arrays.asList("US"), null,
+				null).isEmpty());
+		Assert.assertEquals(4,
+				index.findNotifications((List<String>) null, null, null).size());
+
+		found = index.findExpiredNotifications();
+		Assert.assertEquals(1, found.size());
+		Assert.assertTrue(isSame(expired, found.get(0)));
+
+		index.removeNotification(expired);
+		Assert.assertTrue(index.findExpiredNotifications().isEmpty());
+		Assert.assertTrue(index.findNotifications(expired.getProductId())
+				.isEmpty());
+		Assert.assertEquals(3, index.size());
+		index.shutdown();
+	}
+
+	/**
+	 * Like the JDBCNotificationIndex, list searches return every matching
+	 * notification when filtered, and only the latest per product otherwise.
+	 */
+	@Test
+	public void listSearchDuplicatesTest() throws Exception {
+		MemoryNotificationIndex index = new MemoryNotificationIndex();
+		index.startup();
+
+		Notification first = getNotification("us", "origin", "a", 1L, 60000L);
+		Notification second = getNotification("us", "origin", "a", 1L, 120000L);
+		index.addNotification(first);
+		index.addNotification(second);
+		index.addNotification(getNotification("ci", "origin", "b", 1L, 60000L));
+
+		List<Notification> found = index.findNotifications(
+				Arrays.asList("us"), null, null);
+		Assert.assertEquals("every matching notification", 2, found.size());
+		Assert.assertTrue(isSame(first, found.get(0)));
+		Assert.assertTrue(isSame(second, found.get(1)));
+
+		found = index.findNotifications((List<String>) null, null, null);
+		Assert.assertEquals("latest notification per product", 2,
+				found.size());
+		for (Notification notification : found) {
+			if (notification.getProductId().equals(first.getProductId())) {
+				Assert.assertTrue(isSame(second, notification));
+			}
+		}
+		index.shutdown();
+	}
+
+	/**
+	 * Notifications are restored from the snapshot and log after a restart,
+	 * even when the index was not shut down.
+	 */
+	@Test
+	public void restartTest() throws Exception {
+		MemoryNotificationIndex index = new MemoryNotificationIndex(
+				INDEX_DIRECTORY);
+		index.startup();
+		Notification one = getNotification("us", "origin", "a", 1L, 60000L);
+		Notification two = getNotification("us", "origin", "b", 1L, 60000L);
+		Notification three = getNotification("us", "origin", "c", 1L, 60000L);
+		index.addNotification(one);
+		index.addNotification(two);
+		index.snapshot();
+		// only in log
+		index.addNotification(three);
+		index.removeNotification(one);
+		// partial line from a crash
+		File[] logs = INDEX_DIRECTORY.listFiles((dir, name) -> name
+				.endsWith(MemoryNotificationIndex.LOG_SUFFIX));
+		Assert.assertEquals(1, logs.length);
+		try (FileOutputStream out = new FileOutputStream(logs[0], true)) {
+			out.write("+{\"id\":\"urn:".getBytes());
+		}
+
+		MemoryNotificationIndex restarted = new MemoryNotificationIndex(
+				INDEX_DIRECTORY);
+		restarted.startup();
+		Assert.assertEquals(2, restarted.size());
+		Assert.assertTrue(restarted.findNotifications(one.getProductId())
+				.isEmpty());
+		Assert.assertEquals(1, restarted.findNotifications(two.getProductId())
+				.size());
+		Assert.assertEquals(1,
+				restarted.findNotifications(three.getProductId()).size());
+		restarted.removeNotification(two);
+		restarted.shutdown();
+
+		// shutdown writes snapshot, and only the latest log is kept
+		Assert.assertEquals(1, INDEX_DIRECTORY.listFiles((dir, name) -> name
+				.endsWith(MemoryNotificationIndex.LOG_SUFFIX)).length);
+		restarted = new MemoryNotificationIndex(INDEX_DIRECTORY);
+		restarted.startup();
+		Assert.assertEquals(1, restarted.size());
+		Assert.assertEquals(1,
+				restarted.findNotifications(three.getProductId()).size());
+		restarted.shutdown();
+		// index is never shut down, since it simulates a crash, and its
+		// shutdown would overwrite the snapshot written by restarted
+	}
+
+	private static boolean isSame(final Notification a, final Notification b) {
+		return a.getProductId().equals(b.getProductId())
+				&& a.getExpirationDate().equals(b.getExpirationDate());
+	}
+
+	private Notification getNotification(final String source,
+			final String type, final String code, final long updateTime,
+			final long expiresIn) throws Exception {
+		ProductId id = new ProductId(source, type, code, new Date(updateTime));
+		return new URLNotification(id, new Date(now + expiresIn), new URL(
+				"http://localhost/tracker"), new URL("http://localhost/" + code
+				+ ".xml"));
+	}
+
+}
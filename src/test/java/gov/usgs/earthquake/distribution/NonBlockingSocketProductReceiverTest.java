@@ -0,0 +1,107 @@
+package gov.usgs.earthquake.distribution;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Random;
+
+import gov.usgs.earthquake.product.ByteContent;
+import gov.usgs.earthquake.product.Product;
+import gov.usgs.earthquake.product.io.ObjectProductSource;
+import gov.usgs.earthquake.product.io.XmlProductHandler;
+import gov.usgs.util.StreamUtils.UnclosableOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Run SocketProductReceiverTest using SocketProductReceiverServer.
+ */
+public class NonBlockingSocketProductReceiverTest extends
+		SocketProductReceiverTest {
+
+	public NonBlockingSocketProductReceiverTest() {
+		nonBlocking = true;
+	}
+
+	/**
+	 * Senders that stop sending do not prevent other senders from sending,
+	 * even when more senders are connected than there are threads.
+	 */
+	@Test
+	public void testSlowSender() throws Exception {
+		receiver.getProductStorage().removeProduct(product.getId());
+		Assert.assertEquals(10, receiver.getThreads());
+
+		Socket slow = new Socket("localhost", 1984);
+		Socket[] idle = new Socket[20];
+		try {
+			// start sending, but never finish
+			OutputStream slowOut = slow.getOutputStream();
+			slowOut.write("<?xml version=\"1.0\"?>".getBytes());
+			slowOut.flush();
+			for (int i = 0; i < idle.length; i++) {
+				idle[i] = new Socket("localhost", 1984);
+			}
+
+			TestNotificationListener listener = new TestNotificationListener();
+			receiver.addNotificationListener(listener);
+
+			Socket socket = new Socket("localhost", 1984);
+			OutputStream out = socket.getOutputStream();
+			new ObjectProductSource(product).streamTo(new XmlProductHandler(
+					new UnclosableOutputStream(out)));
+			socket.shutdownOutput();
+
+			Product received = listener.getProduct();
+			productTest.compareProducts(product, received);
+			socket.close();
+		} finally {
+			slow.close();
+			for (Socket socket : idle) {
+				if (socket != null) {
+					socket.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Products larger than SPOOL_MEMORY_LIMIT are spooled to a file in the
+	 * spool directory, which is removed once the product is stored.
+	 */
+	@Test
+	public void testSpoolLargeProduct() throws Exception {
+		File spoolDirectory = receiver.getSpoolDirectory();
+		Assert.assertEquals("spool under storage", new File(
+				((FileProductStorage) receiver.getProductStorage())
+						.getBaseDirectory(), SocketProductReceiver.SPOOL_DIRECTORY),
+				spoolDirectory);
+		Assert.assertTrue(spoolDirectory.isDirectory());
+
+		byte[] bytes = new byte[3 * SocketProductReceiverServer.SPOOL_MEMORY_LIMIT];
+		new Random(1984).nextBytes(bytes);
+		product.getContents().put("large.bin", new ByteContent(bytes));
+		Product otherProduct = productTest.getOtherProduct();
+		ProductStorage ps = receiver.getProductStorage();
+		ps.removeProduct(product.getId());
+		ps.removeProduct(otherProduct.getId());
+
+		SocketProductSender sps = new SocketProductSender("localhost", 1984);
+		sps.setPersistentConnections(true);
+		sps.setBinaryFormat(true);
+		try {
+			sps.sendProduct(product);
+			// connection reads again after spool file is written
+			sps.sendProduct(otherProduct);
+		} finally {
+			sps.shutdown();
+		}
+		productTest.compareProducts(product, ps.getProduct(product.getId()));
+		productTest.compareProducts(otherProduct,
+				ps.getProduct(otherProduct.getId()));
+		Assert.assertEquals("spool files removed", 0,
+				spoolDirectory.list().length);
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * ProductTrackerQueueTest
+ */
+package gov.usgs.earthquake.distribution;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.StreamUtils;
+
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class ProductTrackerQueueTest {
+
+	private HttpServer server;
+	private URL trackerURL;
+	private final List<String> posts = Collections
+			.synchronizedList(new ArrayList<String>());
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void startServer() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/tracker", (exchange) -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				// respond anyways
+			}
+			posts.add(new String(StreamUtils.readStream(exchange
+					.getRequestBody())));
+			exchange.sendResponseHeaders(200, 0);
+			exchange.close();
+		});
+		server.start();
+		trackerURL = new URL("http://localhost:"
+				+ server.getAddress().getPort() + "/tracker");
+	}
+
+	@After
+	public void stopServer() {
+		release.countDown();
+		server.stop(0);
+	}
+
+	/**
+	 * Updates are dropped when the queue is full, and duplicates in a batch
+	 * are only sent once.
+	 */
+	@Test
+	public void dropAndCoalesceTest() throws Exception {
+		ProductTrackerQueue queue = new ProductTrackerQueue(3, 5000);
+		queue.start();
+
+		// sender blocks posting first update
+		Assert.assertTrue(queue.offer(getUpdate("first")));
+		for (int i = 0; i < 50 && queue.getPending() > 0; i++) {
+			Thread.sleep(20L);
+		}
+		// queued while sender is blocked
+		Assert.assertTrue(queue.offer(getUpdate("second")));
+		Assert.assertTrue(queue.offer(getUpdate("second")));
+		Assert.assertTrue(queue.offer(getUpdate("third")));
+		// queue full
+		Assert.assertFalse(queue.offer(getUpdate("fourth")));
+		Assert.assertEquals(1, queue.getDropped());
+
+		release.countDown();
+		for (int i = 0; i < 100 && queue.getSent() < 3; i++) {
+			Thread.sleep(20L);
+		}
+		Assert.assertEquals(3, queue.getSent());
+		Assert.assertEquals(1, queue.getCoalesced());
+		Assert.assertEquals(3, posts.size());
+		Assert.assertTrue(posts.get(1).contains("message=second"));
+		Assert.assertTrue(posts.get(2).contains("message=third"));
+		queue.shutdown();
+	}
+
+	/**
+	 * A tracker that fails does not get the rest of its batch.
+	 */
+	@Test
+	public void failedTrackerTest() throws Exception {
+		ProductTrackerQueue queue = new ProductTrackerQueue(10, 1000);
+		URL missing = new URL("http://localhost:"
+				+ server.getAddress().getPort() + "/missing");
+		List<ProductTrackerUpdate> batch = new ArrayList<ProductTrackerUpdate>();
+		batch.add(new ProductTrackerUpdate(missing, getUpdate("a").getId(),
+				"test", "a"));
+		batch.add(new ProductTrackerUpdate(missing, getUpdate("b").getId(),
+				"test", "b"));
+		release.countDown();
+		batch.add(getUpdate("c"));
+		queue.sendBatch(batch);
+		Assert.assertEquals(2, queue.getFailed());
+		Assert.assertEquals(1, queue.getSent());
+	}
+
+	private ProductTrackerUpdate getUpdate(final String message) {
+		return new ProductTrackerUpdate(trackerURL, new ProductId("us", "test",
+				"code"), "test", message);
+	}
+
+}
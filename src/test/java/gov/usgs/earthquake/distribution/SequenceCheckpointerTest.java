@@ -0,0 +1,79 @@
+/*
+ * SequenceCheckpointerTest
+ */
+package gov.usgs.earthquake.distribution;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SequenceCheckpointerTest {
+
+	private final AtomicInteger writes = new AtomicInteger();
+
+	private SequenceCheckpointer create(final int maxUpdates,
+			final long interval) {
+		return new SequenceCheckpointer("test", () -> {
+			return writes.incrementAndGet();
+		}, maxUpdates, interval);
+	}
+
+	/**
+	 * Without an interval, every update is written in the calling thread.
+	 */
+	@Test
+	public void synchronousTest() throws Exception {
+		SequenceCheckpointer checkpointer = create(100, 0L);
+		checkpointer.startup();
+		checkpointer.update();
+		checkpointer.update();
+		Assert.assertEquals(2, writes.get());
+		checkpointer.shutdown();
+		Assert.assertEquals(2, writes.get());
+	}
+
+	/**
+	 * Updates are written after maxUpdates, or on shutdown.
+	 */
+	@Test
+	public void batchTest() throws Exception {
+		SequenceCheckpointer checkpointer = create(3, 60000L);
+		checkpointer.startup();
+		checkpointer.update();
+		checkpointer.update();
+		Thread.sleep(100L);
+		Assert.assertEquals(0, writes.get());
+		Assert.assertEquals(2, checkpointer.getPendingUpdates());
+
+		checkpointer.update();
+		// written in background
+		for (int i = 0; i < 50 && writes.get() == 0; i++) {
+			Thread.sleep(20L);
+		}
+		Assert.assertEquals(1, writes.get());
+
+		checkpointer.update();
+		checkpointer.shutdown();
+		Assert.assertEquals(2, writes.get());
+		Assert.assertEquals(0, checkpointer.getPendingUpdates());
+	}
+
+	/**
+	 * Updates are written after interval.
+	 */
+	@Test
+	public void intervalTest() throws Exception {
+		SequenceCheckpointer checkpointer = create(0, 50L);
+		checkpointer.startup();
+		checkpointer.update();
+		for (int i = 0; i < 50 && writes.get() == 0; i++) {
+			Thread.sleep(20L);
+		}
+		Assert.assertEquals(1, writes.get());
+		checkpointer.shutdown();
+		// nothing pending
+		Assert.assertEquals(1, writes.get());
+	}
+
+}
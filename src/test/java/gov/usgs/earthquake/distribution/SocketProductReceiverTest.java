@@ -21,7 +21,9 @@ import org.junit.Test;
 
 public class SocketProductReceiverTest {
 
-	private SocketProductReceiver receiver = null;
+	protected SocketProductReceiver receiver = null;
+	/** Whether to use the non-blocking server. */
+	protected boolean nonBlocking = false;
 	final ProductTest productTest = new ProductTest();
 	final Product product = productTest.getProduct();
 
@@ -39,6 +41,7 @@ public class SocketProductReceiverTest {
 		Config config = new Config();
 		config.setProperty("port", "1984");
 		config.setProperty("storageage", "50000");
+		config.setProperty("nonBlocking", Boolean.toString(nonBlocking));
 
 		config.setProperty("index", "myindex");
 		config.setSectionProperty("myindex",
@@ -177,7 +180,39 @@ public class SocketProductReceiverTest {
 		}
 	}
 
-	private class TestNotificationListener extends DefaultConfigurable
+	@Test
+	public void testPersistentConnection() throws Exception {
+		Product otherProduct = productTest.getOtherProduct();
+		ProductStorage ps = receiver.getProductStorage();
+		ps.removeProduct(product.getId());
+		ps.removeProduct(otherProduct.getId());
+
+		final int[] opened = new int[] { 0 };
+		SocketProductSender sps = new SocketProductSender("localhost", 1984) {
+			@Override
+			protected PersistentConnection openConnection()
+					throws java.io.IOException {
+				opened[0]++;
+				return super.openConnection();
+			}
+		};
+		sps.setPersistentConnections(true);
+		sps.setBinaryFormat(true);
+		try {
+			sps.sendProduct(product);
+			sps.sendProduct(otherProduct);
+			// already have product
+			sps.sendProduct(product);
+		} finally {
+			sps.shutdown();
+		}
+		Assert.assertEquals("one connection", 1, opened[0]);
+		productTest.compareProducts(product, ps.getProduct(product.getId()));
+		productTest.compareProducts(otherProduct,
+				ps.getProduct(otherProduct.getId()));
+	}
+
+	protected class TestNotificationListener extends DefaultConfigurable
 			implements NotificationListener {
 
 		private Product product = null;
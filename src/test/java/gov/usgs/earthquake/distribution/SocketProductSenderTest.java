@@ -1,17 +1,33 @@
 package gov.usgs.earthquake.distribution;
 
+import gov.usgs.earthquake.product.ByteContent;
 import gov.usgs.earthquake.product.Product;
 import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.earthquake.product.ProductTest;
+import gov.usgs.earthquake.product.io.BinaryIO;
 import gov.usgs.earthquake.product.io.ObjectProductHandler;
 import gov.usgs.earthquake.product.io.ProductSource;
 import gov.usgs.util.DefaultConfigurable;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 public class SocketProductSenderTest {
@@ -39,6 +55,182 @@ public class SocketProductSenderTest {
 		testSendProduct(/* binaryFormat */true, /* enableDeflate */false);
 	}
 
+	@Test
+	public void testSendEncodedXmlWithDeflate() throws Exception {
+		testSendProduct(/* binaryFormat */false, /* enableDeflate */true,
+				/* memoryLimit */EncodedProduct.DEFAULT_MEMORY_LIMIT);
+	}
+
+	@Test
+	public void testSendEncodedBinaryFromFile() throws Exception {
+		testSendProduct(/* binaryFormat */true, /* enableDeflate */false,
+				/* memoryLimit */0);
+	}
+
+	/**
+	 * A product sent to several senders at once is encoded once, and each
+	 * sender streams it while it is encoded.
+	 */
+	@Test
+	public void testEncodeOnceForSeveralSenders() throws Exception {
+		final AtomicInteger encodes = new AtomicInteger();
+		byte[] bytes = new byte[256 * 1024];
+		new Random(1L).nextBytes(bytes);
+		final Product p = new Product(new ProductId("test", "product",
+				"shared", new Date()));
+		p.getContents().put("content.bin", new ByteContent(bytes) {
+			@Override
+			public InputStream getInputStream() throws IOException {
+				encodes.incrementAndGet();
+				return super.getInputStream();
+			}
+		});
+		// part in memory, part in a file
+		final EncodedProduct encoded = new EncodedProduct(p, 64 * 1024);
+
+		int senders = 3;
+		TestSocketAcceptor[] servers = new TestSocketAcceptor[senders];
+		Thread[] sends = new Thread[senders];
+		final List<Exception> errors = new ArrayList<Exception>();
+		for (int i = 0; i < senders; i++) {
+			servers[i] = new TestSocketAcceptor(null, 0);
+			servers[i].start();
+			final SocketProductSender sender = new SocketProductSender(
+					"localhost", servers[i].getPort());
+			sender.setBinaryFormat(true);
+			sends[i] = new Thread(() -> {
+				try {
+					sender.sendProduct(p, encoded);
+				} catch (Exception e) {
+					synchronized (errors) {
+						errors.add(e);
+					}
+				}
+			});
+		}
+		for (Thread send : sends) {
+			send.start();
+		}
+		for (Thread send : sends) {
+			send.join();
+		}
+		encoded.close();
+
+		Assert.assertEquals(errors.toString(), 0, errors.size());
+		Assert.assertEquals("encoded once", 1, encodes.get());
+		ProductTest pt = new ProductTest();
+		for (TestSocketAcceptor server : servers) {
+			server.join();
+			pt.compareProducts(p, server.getReceived());
+		}
+	}
+
+	/**
+	 * Senders write encoded bytes before encoding completes, so connections
+	 * are not idle while large products are encoded.
+	 */
+	@Test
+	public void testWriteWhileEncoding() throws Exception {
+		final CountDownLatch finishContent = new CountDownLatch(1);
+		final byte[] bytes = new byte[256 * 1024];
+		Product p = new Product(new ProductId("test", "product", "slow",
+				new Date()));
+		p.getContents().put("content.bin", new ByteContent(bytes) {
+			@Override
+			public InputStream getInputStream() throws IOException {
+				return new SequenceInputStream(new ByteArrayInputStream(bytes,
+						0, bytes.length / 2), new InputStream() {
+					private InputStream rest = null;
+
+					@Override
+					public int read() throws IOException {
+						if (rest == null) {
+							try {
+								// content stalls until bytes are written
+								finishContent.await();
+							} catch (InterruptedException e) {
+								throw new InterruptedIOException();
+							}
+							rest = new ByteArrayInputStream(bytes,
+									bytes.length / 2, bytes.length / 2);
+						}
+						return rest.read();
+					}
+				});
+			}
+		});
+		final EncodedProduct encoded = new EncodedProduct(p, 64 * 1024);
+		final CountDownLatch written = new CountDownLatch(1);
+		final AtomicInteger count = new AtomicInteger();
+		Thread reader = new Thread(() -> {
+			try {
+				encoded.getEncoding(true, false, 0).writeTo(new OutputStream() {
+					@Override
+					public void write(int b) {
+						write(new byte[] { (byte) b }, 0, 1);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+						count.addAndGet(len);
+						written.countDown();
+					}
+				});
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		reader.start();
+		try {
+			Assert.assertTrue("bytes written before encoding completes",
+					written.await(10, TimeUnit.SECONDS));
+		} finally {
+			finishContent.countDown();
+		}
+		reader.join();
+		Assert.assertEquals(encoded.getEncoding(true, false, 0).getLength(),
+				count.get());
+		Assert.assertTrue(count.get() > bytes.length);
+		encoded.close();
+	}
+
+	/**
+	 * Persistent connections fall back to version 0.1, and are only disabled
+	 * after the receiver rejects version 0.2.
+	 */
+	@Test
+	public void testFallbackToVersion01() throws Exception {
+		VersionOneReceiver receiver = new VersionOneReceiver();
+		receiver.start();
+
+		SocketProductSender sender = new SocketProductSender("localhost",
+				receiver.getPort());
+		sender.setPersistentConnections(true);
+		sender.startup();
+		try {
+			Product p = new Product(new ProductId("test", "product",
+					"fallback", new Date()));
+			// connection closed before reply, use version 0.1 for this product
+			sender.sendProduct(p);
+			// version 0.2 is still tried, and rejected
+			sender.sendProduct(p);
+			// rejected, so only version 0.1 is used
+			sender.sendProduct(p);
+		} finally {
+			sender.shutdown();
+			receiver.poof();
+		}
+
+		Assert.assertEquals(3, receiver.getReceived());
+		Assert.assertEquals(Arrays.asList(
+				SocketProductSender.PROTOCOL_VERSION_0_2,
+				SocketProductSender.PROTOCOL_VERSION_0_1,
+				SocketProductSender.PROTOCOL_VERSION_0_2,
+				SocketProductSender.PROTOCOL_VERSION_0_1,
+				SocketProductSender.PROTOCOL_VERSION_0_1),
+				receiver.getVersions());
+	}
+
 	// ------------------------------------------------------------------------
 	// Helper/Utility Functions
 	// ------------------------------------------------------------------------
@@ -54,7 +246,24 @@ public class SocketProductSenderTest {
 	 */
 	protected void testSendProduct(final boolean binaryFormat,
 			final boolean enableDeflate) throws Exception {
-		TestSocketAcceptor server = new TestSocketAcceptor(this);
+		testSendProduct(binaryFormat, enableDeflate, -1);
+	}
+
+	/**
+	 * Send a product using a shared encoding.
+	 *
+	 * @param binaryFormat
+	 *            whether to use the binary format during test.
+	 * @param enableDeflate
+	 *            whether to use deflate compression during test.
+	 * @param memoryLimit
+	 *            EncodedProduct memory limit, or -1 to not use EncodedProduct.
+	 * @throws Exception
+	 */
+	protected void testSendProduct(final boolean binaryFormat,
+			final boolean enableDeflate, final int memoryLimit)
+			throws Exception {
+		TestSocketAcceptor server = new TestSocketAcceptor(this, 1984);
 		server.start();
 
 		SocketProductSender sender = new SocketProductSender();
@@ -67,8 +276,15 @@ public class SocketProductSenderTest {
 		// here is the test
 		Product p = new Product(new ProductId("test", "product", "self",
 				new Date()));
-		sender.sendProduct(p);
+		EncodedProduct encoded = null;
+		if (memoryLimit >= 0) {
+			encoded = new EncodedProduct(p, memoryLimit);
+		}
+		sender.sendProduct(p, encoded);
 		waitForProduct();
+		if (encoded != null) {
+			encoded.close();
+		}
 		ProductTest pt = new ProductTest();
 		pt.compareProducts(p, product);
 
@@ -104,12 +320,31 @@ public class SocketProductSenderTest {
 	private class TestSocketAcceptor extends Thread {
 		private ServerSocket sock = null;
 		private SocketProductSenderTest cb = null;
-
-		public TestSocketAcceptor(SocketProductSenderTest cb) throws Exception {
-			sock = new ServerSocket(1984);
+		private Product received = null;
+
+		/**
+		 * @param cb
+		 *            test notified of received product, or null.
+		 * @param port
+		 *            port to accept one connection, or 0 for any free port.
+		 */
+		public TestSocketAcceptor(SocketProductSenderTest cb, int port)
+				throws Exception {
+			sock = new ServerSocket(port);
 			this.cb = cb;
 		}
 
+		public int getPort() {
+			return sock.getLocalPort();
+		}
+
+		/**
+		 * @return product received, after thread completes.
+		 */
+		public Product getReceived() {
+			return received;
+		}
+
 		public void poof() throws Exception {
 			sock.close();
 		}
@@ -125,8 +360,10 @@ public class SocketProductSenderTest {
 					@Override
 					protected String storeAndNotify(
 							final ProductSource productSource) throws Exception {
-						cb.setProduct(ObjectProductHandler
-								.getProduct(productSource));
+						received = ObjectProductHandler.getProduct(productSource);
+						if (cb != null) {
+							cb.setProduct(received);
+						}
 						return "received product";
 					}
 				};
@@ -146,6 +383,83 @@ public class SocketProductSenderTest {
 		}
 	}
 
+	/**
+	 * A receiver that only supports protocol version 0.1, like older hubs.
+	 *
+	 * The first connection is closed without a reply, like a receiver that is
+	 * restarting.
+	 */
+	private class VersionOneReceiver extends Thread {
+		private final ServerSocket sock;
+		private final BinaryIO io = new BinaryIO();
+		private final List<String> versions = new ArrayList<String>();
+		private int received = 0;
+
+		public VersionOneReceiver() throws Exception {
+			sock = new ServerSocket(0);
+		}
+
+		public int getPort() {
+			return sock.getLocalPort();
+		}
+
+		public synchronized List<String> getVersions() {
+			return new ArrayList<String>(versions);
+		}
+
+		public synchronized int getReceived() {
+			return received;
+		}
+
+		public void poof() throws Exception {
+			sock.close();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					try (Socket socket = sock.accept()) {
+						onSocket(socket);
+					}
+				}
+			} catch (IOException iox) {
+				// closed
+			}
+		}
+
+		private void onSocket(final Socket socket) throws IOException {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			in.read(new byte[SocketProductSender.PROTOCOL_HEADER.length]);
+			String version = io.readString(in);
+			boolean first;
+			synchronized (this) {
+				first = versions.isEmpty();
+				versions.add(version);
+			}
+			if (first) {
+				return;
+			}
+			io.readString(in);
+			if (!SocketProductSender.PROTOCOL_VERSION_0_1.equals(version)) {
+				io.writeString(SocketProductSender.RECEIVE_ERROR
+						+ " 'unsupported protocol version'", out);
+				out.flush();
+				return;
+			}
+			io.writeString(SocketProductSender.UNKNOWN_PRODUCT, out);
+			out.flush();
+			// product ends when sender shuts down output
+			while (in.read(new byte[1024]) != -1) {
+			}
+			synchronized (this) {
+				received++;
+			}
+			io.writeString("received product", out);
+			out.flush();
+		}
+	}
+
 	/**
 	 * A testing product storage object, returns false for hasProduct().
 	 */
@@ -20,4 +20,27 @@ public class URLNotificationJSONConverterTest {
 
     Assert.assertTrue("Notification equal after JSON roundtrip",testNotification.equals(outNotification));
   }
+
+  /**
+   * Notifications without a product or tracker URL round trip too, as used
+   * by ListenerJournal and MemoryNotificationIndex.
+   */
+  @Test
+  public void testNotificationFormat() throws Exception{
+    URLNotification url = new URLNotification(new ProductId("testSource","testType","testCode"), new Date(),
+            new URL("http://localhost/tracker/"), new URL("http://localhost/product/"));
+    Notification parsed = URLNotificationJSONConverter.parseNotification(
+            URLNotificationJSONConverter.toJSON((Notification) url));
+    Assert.assertTrue(parsed instanceof URLNotification);
+    Assert.assertTrue("Notification equal after JSON roundtrip", url.equals(parsed));
+
+    DefaultNotification local = new DefaultNotification(
+            url.getProductId(), url.getExpirationDate(), null);
+    parsed = URLNotificationJSONConverter.parseNotification(
+            URLNotificationJSONConverter.toJSON(local));
+    Assert.assertFalse(parsed instanceof URLNotification);
+    Assert.assertEquals(local.getProductId(), parsed.getProductId());
+    Assert.assertEquals(local.getExpirationDate(), parsed.getExpirationDate());
+    Assert.assertNull(parsed.getTrackerURL());
+  }
 }
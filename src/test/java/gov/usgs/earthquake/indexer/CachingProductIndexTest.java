@@ -0,0 +1,157 @@
+/*
+ * CachingProductIndexTest
+ */
+package gov.usgs.earthquake.indexer;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.Config;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingProductIndexTest {
+
+	private static final String INDEX_DB_FILE = "cachingProductIndex.db";
+
+	private CachingProductIndex index = null;
+
+	@Before
+	public void setup() throws Exception {
+		new File(INDEX_DB_FILE).delete();
+		Config config = new Config();
+		config.setProperty("indexfile", INDEX_DB_FILE);
+		index = new CachingProductIndex();
+		index.configure(config);
+		index.startup();
+	}
+
+	@After
+	public void shutdown() throws Exception {
+		index.shutdown();
+		new File(INDEX_DB_FILE).delete();
+	}
+
+	/**
+	 * Events are loaded once, and reloaded after they are associated.
+	 */
+	@Test
+	public void eventCacheTest() throws Exception {
+		ProductSummary origin = index.addProductSummary(createSummary("origin",
+				"code1"));
+		Event event = index.addEvent(new Event());
+		index.addAssociation(event, origin);
+
+		ProductIndexQuery query = new ProductIndexQuery();
+		query.getProductIds().add(origin.getId());
+
+		List<Event> events = index.getEvents(query);
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(0, index.getEventHits());
+		Assert.assertEquals(1, index.getEventMisses());
+
+		// modifying returned event does not modify cache
+		events.get(0).getAllProducts().clear();
+		events = index.getEvents(query);
+		Assert.assertEquals(1, index.getEventHits());
+		Assert.assertEquals(1, events.get(0).getAllProductList().size());
+
+		// association invalidates event
+		ProductSummary phase = index.addProductSummary(createSummary(
+				"phase-data", "code1"));
+		index.addAssociation(events.get(0), phase);
+		events = index.getEvents(query);
+		Assert.assertEquals(2, index.getEventMisses());
+		Assert.assertEquals(2, events.get(0).getAllProductList().size());
+
+		// removing association invalidates event
+		index.removeAssociation(events.get(0), phase);
+		events = index.getEvents(query);
+		Assert.assertEquals(3, index.getEventMisses());
+		Assert.assertEquals(1, events.get(0).getAllProductList().size());
+
+		// eventsUpdated invalidates event
+		index.eventsUpdated(events);
+		index.getEvents(query);
+		Assert.assertEquals(4, index.getEventMisses());
+		Assert.assertEquals(1, index.getEventHits());
+	}
+
+	/**
+	 * Source, type, code queries are cached until a product is added.
+	 */
+	@Test
+	public void productCacheTest() throws Exception {
+		ProductSummary first = index.addProductSummary(createSummary("origin",
+				"code1"));
+
+		ProductIndexQuery query = new ProductIndexQuery();
+		query.setProductSource(first.getSource());
+		query.setProductType(first.getType());
+		query.setProductCode(first.getCode());
+
+		Assert.assertEquals(1, index.getUnassociatedProducts(query).size());
+		Assert.assertEquals(1, index.getUnassociatedProducts(query).size());
+		Assert.assertEquals(1, index.getProductMisses());
+		Assert.assertEquals(1, index.getProductHits());
+
+		// new version invalidates cached query
+		ProductSummary second = createSummary("origin", "code1");
+		second.setId(new ProductId(first.getSource(), first.getType(),
+				first.getCode(), new Date(first.getId().getUpdateTime()
+						.getTime() + 1000L)));
+		index.addProductSummary(second);
+		List<ProductSummary> summaries = index.getUnassociatedProducts(query);
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertEquals(second.getId(), summaries.get(0).getId());
+		Assert.assertEquals(2, index.getProductMisses());
+
+		// queries with other attributes are not cached
+		query.setMinEventTime(new Date(0L));
+		index.getUnassociatedProducts(query);
+		Assert.assertEquals(2, index.getProductMisses());
+		Assert.assertEquals(1, index.getProductHits());
+	}
+
+	/**
+	 * Rollback clears anything loaded during the transaction.
+	 */
+	@Test
+	public void rollbackTest() throws Exception {
+		index.beginTransaction();
+		ProductSummary origin = index.addProductSummary(createSummary("origin",
+				"code1"));
+		ProductIndexQuery query = new ProductIndexQuery();
+		query.setProductSource(origin.getSource());
+		query.setProductType(origin.getType());
+		query.setProductCode(origin.getCode());
+		Assert.assertEquals(1, index.getUnassociatedProducts(query).size());
+		index.rollbackTransaction();
+
+		Assert.assertEquals(0, index.getUnassociatedProducts(query).size());
+	}
+
+	private ProductSummary createSummary(final String type, final String code)
+			throws Exception {
+		ProductSummary summary = new ProductSummary();
+		summary.setId(new ProductId("test", type, code, new Date()));
+		summary.setStatus("UPDATE");
+		summary.setTrackerURL(new URL("http://localhost/tracker"));
+		summary.setEventSource("test");
+		summary.setEventSourceCode(code);
+		summary.setEventTime(new Date());
+		summary.setEventLatitude(new BigDecimal("34.5"));
+		summary.setEventLongitude(new BigDecimal("-118.2"));
+		summary.setEventDepth(new BigDecimal("10.0"));
+		summary.setEventMagnitude(new BigDecimal("3.2"));
+		return summary;
+	}
+
+}
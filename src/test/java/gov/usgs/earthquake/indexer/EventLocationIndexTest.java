@@ -0,0 +1,68 @@
+/*
+ * EventLocationIndexTest
+ */
+package gov.usgs.earthquake.indexer;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventLocationIndexTest {
+
+	/**
+	 * Search matches time, latitude, and longitude inclusively.
+	 */
+	@Test
+	public void searchTest() {
+		EventLocationIndex index = new EventLocationIndex(1000L);
+		index.put(1L, 10000L, 34.0, -118.0);
+		index.put(2L, 10500L, 35.0, -118.0);
+		index.put(3L, 20000L, 34.0, -118.0);
+		index.put(4L, 9000L, 34.0, -117.0);
+
+		Assert.assertEquals(Arrays.asList(1L, 2L), index.search(9500L, 10500L,
+				34.0, 35.0, -118.5, -117.5));
+		Assert.assertEquals(Arrays.asList(1L, 4L), index.search(8000L, 10000L,
+				null, null, null, null));
+		Assert.assertEquals(Arrays.asList(1L, 2L, 3L), index.search(0L,
+				30000L, null, null, -119.0, -118.0));
+	}
+
+	/**
+	 * Longitude ranges may cross the date line.
+	 */
+	@Test
+	public void dateLineTest() {
+		EventLocationIndex index = new EventLocationIndex();
+		index.put(1L, 0L, -17.0, 179.5);
+		index.put(2L, 0L, -17.0, -179.5);
+		index.put(3L, 0L, -17.0, 170.0);
+
+		Assert.assertEquals(Arrays.asList(1L, 2L),
+				index.search(0L, 0L, -18.0, -16.0, 179.0, -179.0));
+	}
+
+	/**
+	 * Updates and removals are undone by rollback.
+	 */
+	@Test
+	public void rollbackTest() {
+		EventLocationIndex index = new EventLocationIndex();
+		index.put(1L, 0L, 0.0, 0.0);
+		index.put(2L, 0L, 0.0, 0.0);
+
+		index.begin();
+		index.put(1L, 100000L, 0.0, 0.0);
+		index.remove(2L);
+		index.put(3L, 0L, 0.0, 0.0);
+		Assert.assertEquals(Arrays.asList(3L),
+				index.search(0L, 0L, null, null, null, null));
+		index.rollback();
+
+		Assert.assertEquals(Arrays.asList(1L, 2L),
+				index.search(0L, 0L, null, null, null, null));
+		Assert.assertEquals(2, index.size());
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * IndexerSearchBenchmark
+ */
+package gov.usgs.earthquake.indexer;
+
+import gov.usgs.earthquake.geoserve.ANSSRegionsFactory;
+import gov.usgs.earthquake.product.Product;
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.BenchmarkUtils;
+import gov.usgs.util.Config;
+import gov.usgs.util.FileUtils;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measure indexing and search throughput of an Indexer while both run at the
+ * same time.
+ *
+ * One thread indexes origin products, while search threads run event
+ * searches like SearchServerSocket. Compares searches using the indexer
+ * connection (searchConnections=0), which wait for indexing, to searches
+ * using separate connections.
+ *
+ * Not a unit test, run using:
+ * java gov.usgs.earthquake.indexer.IndexerSearchBenchmark
+ * [searchThreads [seconds]]
+ *
+ * Run from a directory with regions.json, or with network access, because
+ * Indexer startup loads ANSS regions.
+ */
+public class IndexerSearchBenchmark {
+
+	/** Number of products indexed before measuring. */
+	public static final int PRELOAD = 500;
+
+	/**
+	 * Index and search for some time, and report products indexed and
+	 * searches completed per second.
+	 *
+	 * @param searchConnections
+	 *            indexer searchConnections property.
+	 * @param searchThreads
+	 *            number of threads searching.
+	 * @param millis
+	 *            how long to run.
+	 */
+	public static void run(final int searchConnections,
+			final int searchThreads, final long millis) throws Exception {
+		File directory = File.createTempFile("benchmark", "");
+		directory.delete();
+		directory.mkdirs();
+
+		Config config = new Config();
+		config.setProperty(Indexer.INDEXFILE_CONFIG_PROPERTY, new File(
+				directory, "productIndex.db").getPath());
+		config.setProperty(Indexer.STORAGE_DIRECTORY_CONFIG_PROPERTY,
+				new File(directory, "storage").getPath());
+		config.setProperty(Indexer.SEARCH_CONNECTIONS_PROPERTY,
+				Integer.toString(searchConnections));
+		Config.setConfig(config);
+
+		final Indexer indexer = new Indexer();
+		indexer.configure(config);
+		indexer.setDisableArchive(true);
+		indexer.startup();
+		try {
+			for (int i = 0; i < PRELOAD; i++) {
+				indexer.onProduct(createProduct(i));
+			}
+
+			// thread 0 indexes, the others search
+			final AtomicInteger next = new AtomicInteger(PRELOAD);
+			final AtomicLong indexed = new AtomicLong();
+			double searches = BenchmarkUtils.runThreads(searchThreads + 1,
+					millis, (thread) -> {
+						if (thread == 0) {
+							return () -> {
+								indexer.onProduct(createProduct(next
+										.getAndIncrement()));
+								indexed.incrementAndGet();
+								return 0;
+							};
+						}
+						final Random random = new Random(thread);
+						return () -> {
+							indexer.search(createSearch(random));
+							return 1;
+						};
+					});
+			String name = "searchConnections=" + searchConnections
+					+ ", searchThreads=" + searchThreads;
+			BenchmarkUtils.report(name + " indexing", indexed.get() * 1000.0
+					/ millis, "products/s");
+			BenchmarkUtils.report(name + " searching", searches,
+					"searches/s");
+		} finally {
+			indexer.shutdown();
+			FileUtils.deleteTree(directory);
+		}
+	}
+
+	/**
+	 * Create an origin product, spread over a 10 by 10 degree area so most
+	 * products create a new event.
+	 */
+	public static Product createProduct(final int i) throws Exception {
+		Product product = new Product(new ProductId("bench", "origin", "code"
+				+ i, new Date()));
+		product.setTrackerURL(new URL("http://localhost/tracker"));
+		product.setEventSource("bench");
+		product.setEventSourceCode("code" + i);
+		product.setEventTime(new Date(System.currentTimeMillis() - i * 1000L));
+		product.setLatitude(BigDecimal.valueOf((i % 100) / 10.0));
+		product.setLongitude(BigDecimal.valueOf((i / 100 % 100) / 10.0));
+		product.setDepth(BigDecimal.valueOf(10.0));
+		product.setMagnitude(BigDecimal.valueOf(2.0 + (i % 30) / 10.0));
+		return product;
+	}
+
+	/**
+	 * Create a search for events in a random 2 by 2 degree area.
+	 */
+	public static SearchRequest createSearch(final Random random) {
+		ProductIndexQuery query = new ProductIndexQuery();
+		double latitude = random.nextInt(80) / 10.0;
+		double longitude = random.nextInt(80) / 10.0;
+		query.setMinEventLatitude(BigDecimal.valueOf(latitude));
+		query.setMaxEventLatitude(BigDecimal.valueOf(latitude + 2));
+		query.setMinEventLongitude(BigDecimal.valueOf(longitude));
+		query.setMaxEventLongitude(BigDecimal.valueOf(longitude + 2));
+		SearchRequest request = new SearchRequest();
+		request.addQuery(new EventsSummaryQuery(query));
+		return request;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		int searchThreads = (int) BenchmarkUtils.getArg(args, 0, 4);
+		long millis = BenchmarkUtils.getArg(args, 1, 10) * 1000L;
+
+		for (int searchConnections : new int[] { 0, searchThreads }) {
+			run(searchConnections, searchThreads, millis);
+		}
+		// stop regions update timer started by indexer
+		ANSSRegionsFactory.getFactory().shutdown();
+	}
+
+}
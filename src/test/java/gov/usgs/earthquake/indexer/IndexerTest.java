@@ -24,10 +24,18 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -79,6 +87,10 @@ public class IndexerTest extends DefaultConfigurable implements IndexerListener
 	private static final long minEventAge = 1500L;
 	/* How often to run the indexer cleanup thread (milliseconds) */
 	private static final long cleanupInterval = 500L;
+	/* Number of events indexed by the archive batch tests */
+	private static final int ARCHIVE_EVENTS = 7;
+	/* Archive batch size used by the archive batch tests */
+	private static final int ARCHIVE_BATCH_SIZE = 3;
 
 	// ------------------------------------------------------------------------
 	// -- Environment Methods
@@ -326,6 +338,160 @@ public class IndexerTest extends DefaultConfigurable implements IndexerListener
 		}
 	}
 
+	/**
+	 * Tests the indexer "onProduct" method when the same product is delivered
+	 * by multiple threads at once. Storage and summarization are not
+	 * synchronized, so the index stage must make sure the product is only
+	 * indexed once.
+	 *
+	 * @see gov.usgs.earthquake.indexer.Indexer#onProduct(Product)
+	 */
+	@Test
+	public void onProductConcurrentTest() throws Exception {
+		final Product product = createProduct();
+		final List<Exception> errors = new Vector<Exception>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 4; i++) {
+			threads.add(new Thread(() -> {
+				try {
+					indexer.onProduct(product);
+				} catch (Exception e) {
+					errors.add(e);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals("no exceptions", 0, errors.size());
+
+		ProductIndexQuery query = new ProductIndexQuery();
+		query.setResultType(ProductIndexQuery.RESULT_TYPE_ALL);
+		query.getProductIds().add(product.getId());
+		Assert.assertEquals("product indexed once", 1,
+				indexer.getProductIndex().getProducts(query).size());
+		Assert.assertEquals("one event created", 1,
+				indexer.getProductIndex().getEvents(query).size());
+	}
+
+	/**
+	 * Tests the indexer "onProduct" method when a duplicate delivery indexes
+	 * a product while the delivery that stored it is still summarizing. The
+	 * delivery that stored the product must not index it again.
+	 *
+	 * @see gov.usgs.earthquake.indexer.Indexer#onProduct(Product)
+	 */
+	@Test
+	public void onProductIndexedWhileStoringTest() throws Exception {
+		final Product product = createProduct();
+		final CountDownLatch summarizing = new CountDownLatch(1);
+		final CountDownLatch indexed = new CountDownLatch(1);
+		final AtomicInteger summaries = new AtomicInteger();
+		indexer.addModule(new DefaultIndexerModule() {
+			@Override
+			public int getSupportLevel(final Product toSummarize) {
+				return toSummarize.getId().equals(product.getId())
+						? IndexerModule.LEVEL_SUPPORTED
+						: IndexerModule.LEVEL_UNSUPPORTED;
+			}
+
+			@Override
+			public ProductSummary getProductSummary(final Product toSummarize)
+					throws Exception {
+				if (summaries.incrementAndGet() == 1) {
+					// first delivery, wait for the duplicate to be indexed
+					summarizing.countDown();
+					indexed.await();
+				}
+				return super.getProductSummary(toSummarize);
+			}
+		});
+		SummaryListener listener = new SummaryListener();
+		indexer.addListener(listener);
+
+		final List<Exception> errors = new Vector<Exception>();
+		Thread stored = new Thread(() -> {
+			try {
+				indexer.onProduct(product);
+			} catch (Exception e) {
+				errors.add(e);
+			}
+		});
+		stored.start();
+		try {
+			Assert.assertTrue("product stored",
+					summarizing.await(10, TimeUnit.SECONDS));
+			// duplicate delivery finds product in storage, but not indexed
+			indexer.onProduct(product);
+		} finally {
+			indexed.countDown();
+		}
+		stored.join();
+		Assert.assertEquals("no exceptions", 0, errors.size());
+
+		ProductIndexQuery query = new ProductIndexQuery();
+		query.setResultType(ProductIndexQuery.RESULT_TYPE_ALL);
+		query.getProductIds().add(product.getId());
+		Assert.assertEquals("product indexed once", 1,
+				indexer.getProductIndex().getProducts(query).size());
+
+		// listeners are notified in order, so once the next product is
+		// notified, any duplicate notification would have been delivered
+		Product next = createProduct();
+		next.getId().setCode("next");
+		next.setEventSourceCode("next");
+		indexer.onProduct(next);
+		listener.waitFor(next.getId());
+		Assert.assertEquals("one notification", 1,
+				listener.getCount(product.getId()));
+	}
+
+	/**
+	 * Tests the indexer "search" method with separate search connections.
+	 * Searches complete while indexing holds the indexer lock and an open
+	 * transaction, and only see committed products.
+	 *
+	 * @see gov.usgs.earthquake.indexer.Indexer#search(SearchRequest)
+	 */
+	@Test
+	public void searchWhileIndexingTest() throws Exception {
+		indexer.shutdown();
+		indexer.setSearchConnections(1);
+		indexer.startup();
+
+		Product committed = createProduct();
+		indexer.onProduct(committed);
+
+		final SearchRequest request = new SearchRequest();
+		request.addQuery(new ProductsSummaryQuery(new ProductIndexQuery()));
+		ProductIndex index = indexer.getProductIndex();
+		ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+		try {
+			synchronized (indexer) {
+				index.beginTransaction();
+				try {
+					index.addProductSummary(new ProductSummary(createProduct()));
+					SearchResponse response = searchExecutor.submit(
+							() -> indexer.search(request)).get(10,
+							TimeUnit.SECONDS);
+					List<ProductSummary> summaries = ((ProductsSummaryQuery) response
+							.getResults().get(0)).getResult();
+					Assert.assertEquals("only committed products", 1,
+							summaries.size());
+					Assert.assertEquals(committed.getId(), summaries.get(0)
+							.getId());
+				} finally {
+					index.rollbackTransaction();
+				}
+			}
+		} finally {
+			searchExecutor.shutdown();
+		}
+	}
+
 	/**
 	 * Tests the indexer "onProduct" method when a product is received that does
 	 * not associate to an existing event and is not capable of creating its own
@@ -1135,6 +1301,111 @@ public class IndexerTest extends DefaultConfigurable implements IndexerListener
 
 	}
 
+	/**
+	 * Tests that purgeExpiredProducts archives more matches than
+	 * archiveBatchSize, using several batches, and notifies listeners once for
+	 * each archived event.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void archiveBatchesTest() throws Exception {
+		ArchiveListener listener = startArchiveIndexer(
+				new JDBCProductIndex(), 0L);
+
+		int[] counts = indexer.purgeExpiredProducts();
+		Assert.assertEquals("all events archived", ARCHIVE_EVENTS, counts[0]);
+		Assert.assertEquals("no events left", 0, indexer.getProductIndex()
+				.getEvents(archiveQuery()).size());
+		listener.waitForArchived(ARCHIVE_EVENTS);
+		Assert.assertEquals("one notification per event", ARCHIVE_EVENTS,
+				listener.getArchived().size());
+	}
+
+	/**
+	 * Tests that when archiving a batch fails, the batch is rolled back and
+	 * its events are archived one at a time.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void archiveBatchFallbackTest() throws Exception {
+		FailingBatchIndex index = new FailingBatchIndex();
+		ArchiveListener listener = startArchiveIndexer(index, 0L);
+
+		int[] counts = indexer.purgeExpiredProducts();
+		Assert.assertEquals("every batch attempted",
+				(ARCHIVE_EVENTS + ARCHIVE_BATCH_SIZE - 1) / ARCHIVE_BATCH_SIZE,
+				index.getFailedBatches());
+		Assert.assertEquals("all events archived", ARCHIVE_EVENTS, counts[0]);
+		Assert.assertEquals("no events left", 0,
+				index.getEvents(archiveQuery()).size());
+		listener.waitForArchived(ARCHIVE_EVENTS);
+		Assert.assertEquals("one notification per event", ARCHIVE_EVENTS,
+				listener.getArchived().size());
+	}
+
+	/**
+	 * Tests that when every event in a batch fails to archive, later batches
+	 * skip them and archive the remaining events.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void archiveFailedBatchTest() throws Exception {
+		FailingEventIndex index = new FailingEventIndex();
+		ArchiveListener listener = startArchiveIndexer(index, 0L);
+		// fail the events the first batch finds
+		ProductIndexQuery query = archiveQuery();
+		query.setLimit(ARCHIVE_BATCH_SIZE);
+		for (Event event : index.getEvents(query)) {
+			index.failEvent(event.getIndexId());
+		}
+
+		int[] counts = indexer.purgeExpiredProducts();
+		Assert.assertEquals("events after failed batch archived",
+				ARCHIVE_EVENTS - ARCHIVE_BATCH_SIZE, counts[0]);
+		Assert.assertEquals("failed events left", ARCHIVE_BATCH_SIZE, index
+				.getEvents(archiveQuery()).size());
+		listener.waitForArchived(ARCHIVE_EVENTS - ARCHIVE_BATCH_SIZE);
+		Assert.assertEquals("one notification per event", ARCHIVE_EVENTS
+				- ARCHIVE_BATCH_SIZE, listener.getArchived().size());
+	}
+
+	/**
+	 * Tests that shutting down the indexer stops archiving between batches.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void archiveStoppedBetweenBatchesTest() throws Exception {
+		ArchiveListener listener = startArchiveIndexer(
+				new JDBCProductIndex(), 2000L);
+
+		ExecutorService archiveExecutor = Executors.newSingleThreadExecutor();
+		try {
+			Future<int[]> purge = archiveExecutor
+					.submit(() -> indexer.purgeExpiredProducts());
+			// shut down while the archiver pauses after the first batch
+			listener.waitForArchived(ARCHIVE_BATCH_SIZE);
+			indexer.shutdown();
+			int[] counts = purge.get(10, TimeUnit.SECONDS);
+			Assert.assertEquals("only first batch archived",
+					ARCHIVE_BATCH_SIZE, counts[0]);
+		} finally {
+			archiveExecutor.shutdown();
+		}
+
+		// so startup does not archive the remaining events
+		indexer.getArchivePolicies().clear();
+		indexer.startup();
+		Assert.assertEquals("remaining events not archived", ARCHIVE_EVENTS
+				- ARCHIVE_BATCH_SIZE, indexer.getProductIndex()
+				.getEvents(archiveQuery()).size());
+		Assert.assertEquals("one notification per event", ARCHIVE_BATCH_SIZE,
+				listener.getArchived().size());
+	}
+
 	/**
 	 * Normally two events that are not within the association window will not
 	 * associate (~100km, 16seconds). The associate product can override this
@@ -1754,6 +2025,231 @@ public class IndexerTest extends DefaultConfigurable implements IndexerListener
 		return product;
 	}
 
+	/**
+	 * Replaces the test indexer with one that archives in batches of
+	 * ARCHIVE_BATCH_SIZE, and indexes ARCHIVE_EVENTS separate events that
+	 * match its archive policy.
+	 * 
+	 * The archive policy is added after startup, so the archive timer does not
+	 * run and tests call purgeExpiredProducts directly.
+	 * 
+	 * @param index
+	 *            product index for the indexer.
+	 * @param batchDelay
+	 *            archiveBatchDelay for the indexer.
+	 * @return listener that collects archived events.
+	 * @throws Exception
+	 */
+	private ArchiveListener startArchiveIndexer(final ProductIndex index,
+			final long batchDelay) throws Exception {
+		indexer.shutdown();
+		FileUtils.deleteTree(new File("productIndex.db"));
+
+		Config config = new Config();
+		config.setProperty(Indexer.ARCHIVE_BATCH_SIZE_PROPERTY,
+				String.valueOf(ARCHIVE_BATCH_SIZE));
+		config.setProperty(Indexer.ARCHIVE_BATCH_DELAY_PROPERTY,
+				String.valueOf(batchDelay));
+		indexer = new Indexer();
+		indexer.configure(config);
+		indexer.setProductIndex(index);
+		ArchiveListener listener = new ArchiveListener();
+		indexer.addListener(listener);
+		indexer.startup();
+
+		for (int i = 0; i < ARCHIVE_EVENTS; i++) {
+			// far enough apart, with their own codes, to be separate events
+			Product product = createProduct();
+			product.getId().setCode("archive" + i);
+			product.setEventSourceCode("archive" + i);
+			product.setLatitude(BigDecimal.valueOf(i * 10));
+			indexer.onProduct(product);
+		}
+		Assert.assertEquals("events indexed", ARCHIVE_EVENTS, index
+				.getEvents(archiveQuery()).size());
+
+		ArchivePolicy policy = new ArchivePolicy();
+		policy.setEventSource("us");
+		indexer.getArchivePolicies().add(policy);
+		indexer.setDisableArchive(false);
+		return listener;
+	}
+
+	/**
+	 * @return query for events indexed by startArchiveIndexer.
+	 */
+	private ProductIndexQuery archiveQuery() {
+		ProductIndexQuery query = new ProductIndexQuery();
+		query.setEventSource("us");
+		return query;
+	}
+
+	/**
+	 * Collects the ids of products listeners are notified about.
+	 */
+	private static class SummaryListener extends DefaultConfigurable implements
+			IndexerListener {
+
+		private final List<ProductId> notified = new ArrayList<ProductId>();
+
+		@Override
+		public synchronized void onIndexerEvent(IndexerEvent event) {
+			if (event.getSummary() != null) {
+				notified.add(event.getSummary().getId());
+			}
+			notifyAll();
+		}
+
+		/**
+		 * Wait until listeners are notified about a product.
+		 *
+		 * @param id
+		 *            id of the product.
+		 * @throws InterruptedException
+		 */
+		public synchronized void waitFor(final ProductId id)
+				throws InterruptedException {
+			long end = new Date().getTime() + 10000L;
+			while (!notified.contains(id)) {
+				long wait = end - new Date().getTime();
+				if (wait <= 0) {
+					Assert.fail("not notified about " + id);
+				}
+				wait(wait);
+			}
+		}
+
+		/**
+		 * @param id
+		 *            id of the product.
+		 * @return number of notifications about the product.
+		 */
+		public synchronized int getCount(final ProductId id) {
+			int count = 0;
+			for (ProductId notifiedId : notified) {
+				if (notifiedId.equals(id)) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public int getMaxTries() {
+			return 1;
+		}
+
+		@Override
+		public long getTimeout() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Collects the events listeners are notified were archived.
+	 */
+	private static class ArchiveListener extends DefaultConfigurable implements
+			IndexerListener {
+
+		private final List<String> archived = new ArrayList<String>();
+
+		@Override
+		public synchronized void onIndexerEvent(IndexerEvent event) {
+			for (IndexerChange change : event.getIndexerChanges()) {
+				if (change.getType() == IndexerChange.EVENT_ARCHIVED) {
+					archived.add(change.getOriginalEvent().getEventId());
+				}
+			}
+			notifyAll();
+		}
+
+		/**
+		 * Wait until at least count archived events are notified.
+		 * 
+		 * @param count
+		 *            number of archived events.
+		 * @throws InterruptedException
+		 */
+		public synchronized void waitForArchived(final int count)
+				throws InterruptedException {
+			long end = new Date().getTime() + 10000L;
+			while (archived.size() < count) {
+				long wait = end - new Date().getTime();
+				if (wait <= 0) {
+					Assert.fail("only " + archived.size() + " of " + count
+							+ " archived events notified");
+				}
+				wait(wait);
+			}
+			Assert.assertEquals("no duplicate notifications", archived.size(),
+					new HashSet<String>(archived).size());
+		}
+
+		public synchronized List<String> getArchived() {
+			return new ArrayList<String>(archived);
+		}
+
+		@Override
+		public int getMaxTries() {
+			return 1;
+		}
+
+		@Override
+		public long getTimeout() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Product index where removing a batch of events fails, after removing
+	 * them, so the batch must be rolled back.
+	 */
+	private static class FailingBatchIndex extends JDBCProductIndex {
+
+		private int failedBatches = 0;
+
+		public FailingBatchIndex() throws Exception {
+			super();
+		}
+
+		@Override
+		public synchronized List<ProductId> removeEvents(
+				final List<Event> events) throws Exception {
+			super.removeEvents(events);
+			failedBatches++;
+			throw new Exception("batch failed");
+		}
+
+		public synchronized int getFailedBatches() {
+			return failedBatches;
+		}
+	}
+
+	/**
+	 * Product index where removing batches, and some events, fails.
+	 */
+	private static class FailingEventIndex extends FailingBatchIndex {
+
+		private final Set<Long> failing = new HashSet<Long>();
+
+		public FailingEventIndex() throws Exception {
+			super();
+		}
+
+		public synchronized void failEvent(final Long indexId) {
+			failing.add(indexId);
+		}
+
+		@Override
+		public synchronized List<ProductId> removeEvent(final Event event)
+				throws Exception {
+			if (failing.contains(event.getIndexId())) {
+				throw new Exception("event failed");
+			}
+			return super.removeEvent(event);
+		}
+	}
+
 	/**
 	 * Simple setter event for the most recently received IndexerEvent. Set from
 	 * the "onIndexerEvent" method.
@@ -0,0 +1,109 @@
+/*
+ * JDBCProductIndexBenchmark
+ */
+package gov.usgs.earthquake.indexer;
+
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.BenchmarkUtils;
+import gov.usgs.util.Config;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.Date;
+
+/**
+ * Measure product summary insert throughput of JDBCProductIndex.
+ *
+ * Each summary carries properties and links similar to an origin or shakemap
+ * product, and is added in its own transaction like Indexer.onProduct.
+ * Compares committing every transaction to group commit.
+ *
+ * Not a unit test, run using:
+ * java gov.usgs.earthquake.indexer.JDBCProductIndexBenchmark [count [driver url]]
+ *
+ * Without driver and url, uses a temporary SQLite index file.
+ */
+public class JDBCProductIndexBenchmark {
+
+	/** Number of properties per summary. */
+	public static final int NUM_PROPERTIES = 40;
+	/** Number of links per summary. */
+	public static final int NUM_LINKS = 5;
+
+	/**
+	 * Add summaries to an index, one transaction each.
+	 *
+	 * @param config
+	 *            index configuration.
+	 * @param count
+	 *            number of summaries to add.
+	 * @return elapsed milliseconds.
+	 * @throws Exception
+	 */
+	public static long run(final Config config, final int count)
+			throws Exception {
+		JDBCProductIndex index = new JDBCProductIndex();
+		index.configure(config);
+		index.startup();
+		try {
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < count; i++) {
+				index.beginTransaction();
+				index.addProductSummary(createSummary(i));
+				index.commitTransaction();
+			}
+			index.commitPendingTransactions();
+			return System.currentTimeMillis() - start;
+		} finally {
+			index.shutdown();
+		}
+	}
+
+	/**
+	 * Create a summary with NUM_PROPERTIES properties and NUM_LINKS links.
+	 */
+	public static ProductSummary createSummary(final int i) throws Exception {
+		ProductSummary summary = new ProductSummary();
+		summary.setId(new ProductId("bench", "origin", "code" + i, new Date()));
+		summary.setStatus("UPDATE");
+		summary.setEventSource("bench");
+		summary.setEventSourceCode("code" + i);
+		summary.setEventTime(new Date());
+		summary.setEventLatitude(new BigDecimal("34.5"));
+		summary.setEventLongitude(new BigDecimal("-118.2"));
+		summary.setEventDepth(new BigDecimal("10.0"));
+		summary.setEventMagnitude(new BigDecimal("3.2"));
+		for (int p = 0; p < NUM_PROPERTIES; p++) {
+			summary.getProperties().put("property" + p, "value" + p);
+		}
+		for (int l = 0; l < NUM_LINKS; l++) {
+			summary.addLink("relation" + l,
+					new URI("http://localhost/link" + l));
+		}
+		return summary;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		int count = (int) BenchmarkUtils.getArg(args, 0, 2000);
+		File indexFile = File.createTempFile("benchmark", ".db");
+
+		for (String groupCommitSize : new String[] { "1", "10", "50" }) {
+			Config config = new Config();
+			if (args.length > 2) {
+				config.setProperty("driver", args[1]);
+				config.setProperty("url", args[2]);
+			} else {
+				indexFile.delete();
+				config.setProperty("indexfile", indexFile.getPath());
+			}
+			config.setProperty("groupCommitSize", groupCommitSize);
+
+			long elapsed = run(config, count);
+			BenchmarkUtils.report("groupCommitSize=" + groupCommitSize,
+					count * 1000.0 / Math.max(1, elapsed), "summaries/s");
+		}
+		indexFile.delete();
+	}
+
+}
@@ -4,10 +4,12 @@
 package gov.usgs.earthquake.indexer;
 
 import gov.usgs.util.Config;
+import gov.usgs.earthquake.product.ProductId;
 import gov.usgs.earthquake.product.ProductTest;
 
 import java.io.File;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -146,6 +148,57 @@ public class JDBCProductIndexTest {
 		Assert.assertTrue(summaries.contains(summary));
 	}
 
+	/**
+	 * Commit several transactions together. A rolled back transaction should
+	 * not undo earlier transactions in the same group, and batched properties
+	 * and links should be stored.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void groupCommitTest() throws Exception {
+		File indexFile = new File("groupCommitIndex.db");
+		indexFile.delete();
+
+		Config config = new Config();
+		config.setProperty("indexfile", indexFile.getName());
+		config.setProperty("groupCommitSize", "3");
+		JDBCProductIndex groupIndex = new JDBCProductIndex();
+		groupIndex.configure(config);
+		groupIndex.startup();
+		try {
+			ProductSummary first = new ProductSummary(
+					productFactory.getProduct());
+			groupIndex.beginTransaction();
+			first = groupIndex.addProductSummary(first);
+			groupIndex.commitTransaction();
+
+			ProductSummary second = new ProductSummary(
+					productFactory.getOtherProduct());
+			groupIndex.beginTransaction();
+			groupIndex.addProductSummary(second);
+			groupIndex.rollbackTransaction();
+
+			// first transaction is still pending
+			Assert.assertFalse(groupIndex.getConnection().getAutoCommit());
+			groupIndex.commitPendingTransactions();
+			Assert.assertTrue(groupIndex.getConnection().getAutoCommit());
+
+			query = new ProductIndexQuery();
+			query.getProductIds().add(first.getId());
+			query.getProductIds().add(second.getId());
+			List<ProductSummary> summaries = groupIndex.getProducts(query);
+			Assert.assertEquals(1, summaries.size());
+			ProductSummary found = summaries.get(0);
+			Assert.assertEquals(first.getId(), found.getId());
+			Assert.assertEquals(first.getProperties(), found.getProperties());
+			Assert.assertEquals(first.getLinks(), found.getLinks());
+		} finally {
+			groupIndex.shutdown();
+			indexFile.delete();
+		}
+	}
+
 	/**
 	 * Test that we can associate a product with an event. Pull the event back
 	 * out and check that it is actually associated as expected.
@@ -168,6 +221,172 @@ public class JDBCProductIndexTest {
 		Assert.assertTrue(products.contains(summary));
 	}
 
+	/**
+	 * Load several events at once, and make sure they match events loaded one
+	 * at a time.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void loadEventsTest() throws Exception {
+		Event event1 = index.addEvent(new Event());
+		Event event2 = index.addEvent(new Event());
+		ProductSummary summary1 = index.addProductSummary(new ProductSummary(
+				productFactory.getProduct()));
+		ProductSummary summary2 = index.addProductSummary(new ProductSummary(
+				productFactory.getOtherProduct()));
+		index.addAssociation(event1, summary1);
+		index.addAssociation(event2, summary2);
+
+		List<Event> events = index.loadEvents(Arrays.asList(
+				event2.getIndexId(), event1.getIndexId()));
+		Assert.assertEquals(2, events.size());
+		Assert.assertEquals(event2.getIndexId(), events.get(0).getIndexId());
+		Assert.assertEquals(event1.getIndexId(), events.get(1).getIndexId());
+		for (Event loaded : events) {
+			Event expected = index.getEvent(loaded.getIndexId());
+			List<ProductSummary> expectedProducts = expected
+					.getAllProductList();
+			List<ProductSummary> loadedProducts = loaded.getAllProductList();
+			Assert.assertEquals(expectedProducts, loadedProducts);
+			for (int i = 0; i < expectedProducts.size(); i++) {
+				ProductSummary e = expectedProducts.get(i);
+				ProductSummary l = loadedProducts.get(i);
+				Assert.assertEquals(e.getIndexId(), l.getIndexId());
+				Assert.assertEquals(e.getProperties(), l.getProperties());
+				Assert.assertEquals(e.getLinks(), l.getLinks());
+				Assert.assertEquals(e.getEventLatitude(), l.getEventLatitude());
+				Assert.assertEquals(e.getPreferredWeight(),
+						l.getPreferredWeight());
+			}
+		}
+	}
+
+	/**
+	 * Remove events, products, properties, and links using set based deletes.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void removeEventsTest() throws Exception {
+		Event event1 = index.addEvent(new Event());
+		Event event2 = index.addEvent(new Event());
+		ProductSummary summary1 = index.addProductSummary(new ProductSummary(
+				productFactory.getProduct()));
+		ProductSummary summary2 = index.addProductSummary(new ProductSummary(
+				productFactory.getOtherProduct()));
+		index.addAssociation(event1, summary1);
+		index.addAssociation(event2, summary2);
+		List<Event> events = index.loadEvents(Arrays.asList(
+				event1.getIndexId(), event2.getIndexId()));
+		Assert.assertFalse(index.getSummaryProperties(summary1.getIndexId())
+				.isEmpty());
+
+		List<ProductId> removed = index.removeEvents(events);
+		Assert.assertEquals(
+				Arrays.asList(summary1.getId(), summary2.getId()), removed);
+		Assert.assertEquals(0, index.getEvent(event1.getIndexId())
+				.getAllProductList().size());
+		Assert.assertNull(index.getSummary(summary2.getIndexId()).getId());
+		Assert.assertTrue(index.getSummaryProperties(summary1.getIndexId())
+				.isEmpty());
+		Assert.assertTrue(index.getSummaryLinks(summary1.getIndexId())
+				.isEmpty());
+
+		try {
+			// events were already removed
+			index.removeEvents(events);
+			Assert.fail("expected exception removing missing events");
+		} catch (Exception e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Remove unassociated products in batches, using a query limit.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void removeProductSummariesTest() throws Exception {
+		ProductSummary summary1 = index.addProductSummary(new ProductSummary(
+				productFactory.getProduct()));
+		ProductSummary summary2 = index.addProductSummary(new ProductSummary(
+				productFactory.getOtherProduct()));
+
+		query = new ProductIndexQuery();
+		query.getProductIds().add(summary1.getId());
+		query.getProductIds().add(summary2.getId());
+		query.setLimit(1);
+		Assert.assertEquals(1, index.getUnassociatedProducts(query).size());
+
+		index.removeProductSummaries(Arrays.asList(summary1, summary2));
+		Assert.assertNull(index.getSummary(summary1.getIndexId()).getId());
+		Assert.assertNull(index.getSummary(summary2.getIndexId()).getId());
+		Assert.assertTrue(index.getSummaryProperties(summary2.getIndexId())
+				.isEmpty());
+	}
+
+	/**
+	 * Location queries using the location index match the database, and the
+	 * location index follows transactions and is reloaded on startup.
+	 */
+	@Test
+	public void locationIndexTest() throws Exception {
+		String locationIndexFile = "locationIndex.db";
+		new File(locationIndexFile).delete();
+		Config config = new Config();
+		config.setProperty("indexfile", locationIndexFile);
+		JDBCProductIndex sqlIndex = new JDBCProductIndex();
+		sqlIndex.configure(config);
+		sqlIndex.startup();
+		config.setProperty("locationIndex", "true");
+		JDBCProductIndex locationIndex = new JDBCProductIndex();
+		locationIndex.configure(config);
+		locationIndex.startup();
+
+		try {
+			summary = new ProductSummary(productFactory.getProduct());
+			summary.setEventSource("us");
+			summary.setEventSourceCode("location");
+			summary.setEventTime(new Date());
+			summary.setEventLatitude(new BigDecimal("-17.0"));
+			summary.setEventLongitude(new BigDecimal("179.99"));
+			summary = locationIndex.addProductSummary(summary);
+			event = locationIndex.addEvent(new Event());
+			event = locationIndex.addAssociation(event, summary);
+			locationIndex.eventsUpdated(Arrays.asList(event));
+
+			query = new DefaultAssociator().getLocationQuery(
+					summary.getEventTime(), summary.getEventLatitude(),
+					summary.getEventLongitude());
+			Assert.assertTrue(locationIndex.isLocationQuery(query));
+			Assert.assertEquals(Arrays.asList(event.getIndexId()),
+					locationIndex.getEventIndexIds(query));
+			Assert.assertEquals(sqlIndex.getEventIndexIds(query),
+					locationIndex.getEventIndexIds(query));
+
+			// rolled back removal is still found
+			locationIndex.beginTransaction();
+			locationIndex.removeAssociation(event, summary);
+			Assert.assertEquals(0, locationIndex.getEventIndexIds(query)
+					.size());
+			locationIndex.rollbackTransaction();
+			Assert.assertEquals(Arrays.asList(event.getIndexId()),
+					locationIndex.getEventIndexIds(query));
+
+			// reloaded on startup
+			locationIndex.shutdown();
+			locationIndex.startup();
+			Assert.assertEquals(Arrays.asList(event.getIndexId()),
+					locationIndex.getEventIndexIds(query));
+		} finally {
+			locationIndex.shutdown();
+			sqlIndex.shutdown();
+			new File(locationIndexFile).delete();
+		}
+	}
+
 	/**
 	 * Adds a single, unassociatable product to the index and then checks that
 	 * we can pull it back out.
@@ -0,0 +1,154 @@
+/*
+ * StreamingProductDigestTest
+ */
+package gov.usgs.earthquake.product;
+
+import gov.usgs.earthquake.product.io.BinaryProductHandler;
+import gov.usgs.earthquake.product.io.BinaryProductSource;
+import gov.usgs.earthquake.product.io.FilterProductHandler;
+import gov.usgs.earthquake.product.io.ObjectProductHandler;
+import gov.usgs.earthquake.product.io.ObjectProductSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.security.PublicKey;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingProductDigestTest {
+
+	/**
+	 * Digest computed while streaming matches ProductDigest.
+	 */
+	@Test
+	public void teeDigestTest() throws Exception {
+		Product product = new ProductTest().getProduct();
+		product.sign(ProductTest.SIGNATURE_KEY_PAIR.getPrivate());
+
+		final StreamingProductDigest digest = new StreamingProductDigest();
+		ObjectProductHandler handler = new ObjectProductHandler();
+		new BinaryProductSource(new ByteArrayInputStream(toBinary(product)))
+				.streamTo(new TeeHandler(handler, digest));
+
+		Assert.assertTrue(digest.isValid());
+		Assert.assertTrue(Arrays.equals(
+				ProductDigest.digestProduct(product), digest.getDigest()));
+		Assert.assertEquals(product.getSignature(), digest
+				.getSignedProduct().getSignature());
+		Assert.assertTrue(handler.getProduct().verifySignature(
+				new PublicKey[] { ProductTest.SIGNATURE_KEY_PAIR
+						.getPublic() }));
+	}
+
+	/**
+	 * Out of order calls invalidate the digest.
+	 */
+	@Test
+	public void outOfOrderTest() throws Exception {
+		Product product = new ProductTest().getProduct();
+		ProductId id = product.getId();
+
+		StreamingProductDigest digest = new StreamingProductDigest();
+		digest.onBeginProduct(id, product.getStatus(), product.getTrackerURL());
+		digest.onProperty(id, "b", "b");
+		digest.onProperty(id, "a", "a");
+		digest.onEndProduct(id);
+		Assert.assertFalse(digest.isValid());
+		Assert.assertNull(digest.getDigest());
+
+		digest = new StreamingProductDigest();
+		digest.onBeginProduct(id, product.getStatus(), product.getTrackerURL());
+		digest.onContent(id, "a", new ByteContent("a".getBytes()));
+		digest.onProperty(id, "a", "a");
+		digest.onEndProduct(id);
+		Assert.assertFalse(digest.isValid());
+	}
+
+	/**
+	 * Content that is not read completely invalidates the digest.
+	 */
+	@Test
+	public void partialContentTest() throws Exception {
+		Product product = new ProductTest().getProduct();
+		ProductId id = product.getId();
+
+		StreamingProductDigest digest = new StreamingProductDigest();
+		digest.onBeginProduct(id, product.getStatus(), product.getTrackerURL());
+		InputStreamContent content = new InputStreamContent(
+				new ByteArrayInputStream("content".getBytes()));
+		content.setLength(7L);
+		Content tee = digest.teeContent(id, "path", content);
+		tee.getInputStream().read(new byte[3]);
+		digest.endContent();
+		digest.onEndProduct(id);
+		Assert.assertFalse(digest.isValid());
+	}
+
+	private static byte[] toBinary(final Product product) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ObjectProductSource(product).streamTo(new BinaryProductHandler(out));
+		return out.toByteArray();
+	}
+
+	/**
+	 * Send calls to a handler, teeing content into a digest.
+	 */
+	private static class TeeHandler extends FilterProductHandler {
+		private final StreamingProductDigest digest;
+
+		public TeeHandler(final ObjectProductHandler out,
+				final StreamingProductDigest digest) {
+			super(out);
+			this.digest = digest;
+		}
+
+		@Override
+		public void onBeginProduct(ProductId id, String status,
+				URL trackerURL) throws Exception {
+			super.onBeginProduct(id, status, trackerURL);
+			digest.onBeginProduct(id, status, trackerURL);
+		}
+
+		@Override
+		public void onProperty(ProductId id, String name, String value)
+				throws Exception {
+			super.onProperty(id, name, value);
+			digest.onProperty(id, name, value);
+		}
+
+		@Override
+		public void onLink(ProductId id, String relation, URI href)
+				throws Exception {
+			super.onLink(id, relation, href);
+			digest.onLink(id, relation, href);
+		}
+
+		@Override
+		public void onContent(ProductId id, String path, Content content)
+				throws Exception {
+			// read content once, like storage
+			Content tee = digest.teeContent(id, path, content);
+			ByteContent copy = new ByteContent(tee);
+			digest.endContent();
+			super.onContent(id, path, copy);
+		}
+
+		@Override
+		public void onSignature(ProductId id, String signature)
+				throws Exception {
+			super.onSignature(id, signature);
+			digest.onSignature(id, signature);
+		}
+
+		@Override
+		public void onEndProduct(ProductId id) throws Exception {
+			super.onEndProduct(id);
+			digest.onEndProduct(id);
+		}
+	}
+
+}
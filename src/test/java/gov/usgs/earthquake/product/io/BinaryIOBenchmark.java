@@ -0,0 +1,213 @@
+/*
+ * BinaryIOBenchmark
+ */
+package gov.usgs.earthquake.product.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import gov.usgs.util.BenchmarkUtils;
+import gov.usgs.util.FileUtils;
+
+/**
+ * Compare BinaryIO throughput to the previous implementation, which allocated
+ * buffers for every call and copied streams 1KB at a time.
+ *
+ * Measures encoding and decoding of product fields (strings, dates, longs),
+ * and transfer of file content, reporting MB/s for each.
+ *
+ * Not a unit test, run using:
+ * java gov.usgs.earthquake.product.io.BinaryIOBenchmark [fieldMB [contentMB]]
+ */
+public class BinaryIOBenchmark {
+
+	/** Number of times each measurement is repeated, best is reported. */
+	public static final int ROUNDS = 5;
+
+	/**
+	 * Encode then decode product fields until about megabytes are written.
+	 *
+	 * @return elapsed nanoseconds.
+	 */
+	public static long runFields(final BinaryIO io, final int megabytes)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(
+				megabytes * 1024 * 1024 + 1024);
+		Date date = new Date();
+		long start = System.nanoTime();
+		while (out.size() < megabytes * 1024 * 1024) {
+			io.writeString(BinaryProductHandler.PROPERTY, out);
+			io.writeString("eventsourcecode", out);
+			io.writeString("ci12345678", out);
+			io.writeString(BinaryProductHandler.CONTENT, out);
+			io.writeString("download/cont_mi.json", out);
+			io.writeDate(date, out);
+			io.writeLong(123456L, out);
+		}
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		while (in.available() > 0) {
+			io.readString(in);
+			io.readString(in);
+			io.readString(in);
+			io.readString(in);
+			io.readString(in);
+			io.readDate(in);
+			io.readLong(in);
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Encode then decode a file of content.
+	 *
+	 * @return elapsed nanoseconds.
+	 */
+	public static long runContent(final BinaryIO io, final File source,
+			final File encoded, final File decoded) throws IOException {
+		long start = System.nanoTime();
+		FileInputStream in = new FileInputStream(source);
+		FileOutputStream out = new FileOutputStream(encoded);
+		try {
+			io.writeStream(source.length(), in, out);
+		} finally {
+			in.close();
+			out.close();
+		}
+		in = new FileInputStream(encoded);
+		out = new FileOutputStream(decoded);
+		try {
+			io.readStream(in, out);
+		} finally {
+			in.close();
+			out.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		int fieldMB = (int) BenchmarkUtils.getArg(args, 0, 32);
+		int contentMB = (int) BenchmarkUtils.getArg(args, 1, 256);
+
+		File directory = File.createTempFile("binaryio", "");
+		directory.delete();
+		directory.mkdirs();
+		try {
+			File source = new File(directory, "source");
+			File encoded = new File(directory, "encoded");
+			File decoded = new File(directory, "decoded");
+			byte[] chunk = new byte[1024 * 1024];
+			FileOutputStream out = new FileOutputStream(source);
+			try {
+				for (int i = 0; i < contentMB; i++) {
+					out.write(chunk);
+				}
+			} finally {
+				out.close();
+			}
+
+			BinaryIO[] ios = new BinaryIO[] { new PreviousBinaryIO(),
+					new BinaryIO() };
+			for (BinaryIO io : ios) {
+				String name = (io instanceof PreviousBinaryIO ? "previous"
+						: "current");
+				long fields = BenchmarkUtils.best(ROUNDS,
+						() -> runFields(io, fieldMB));
+				long content = BenchmarkUtils.best(ROUNDS,
+						() -> runContent(io, source, encoded, decoded));
+				BenchmarkUtils.report(name + " fields", fieldMB * 1e9 / fields,
+						"MB/s");
+				BenchmarkUtils.report(name + " content", contentMB * 1e9
+						/ content, "MB/s");
+			}
+		} finally {
+			FileUtils.deleteTree(directory);
+		}
+	}
+
+	/**
+	 * BinaryIO before buffers were reused.
+	 */
+	public static class PreviousBinaryIO extends BinaryIO {
+
+		@Override
+		public void writeInt(final int in, final OutputStream out)
+				throws IOException {
+			out.write(ByteBuffer.allocate(4).putInt(in).array());
+		}
+
+		@Override
+		public void writeLong(final long in, final OutputStream out)
+				throws IOException {
+			out.write(ByteBuffer.allocate(8).putLong(in).array());
+		}
+
+		@Override
+		public void writeString(final String toWrite, final OutputStream out)
+				throws IOException {
+			writeBytes(toWrite.getBytes("UTF8"), out);
+		}
+
+		@Override
+		public void writeStream(final long length, final InputStream in,
+				final OutputStream out) throws IOException {
+			writeLong(length, out);
+			int read = -1;
+			byte[] bytes = new byte[1024];
+			while ((read = in.read(bytes)) != -1) {
+				out.write(bytes, 0, read);
+			}
+		}
+
+		@Override
+		public int readInt(final InputStream in) throws IOException {
+			byte[] buffer = new byte[4];
+			readFully(buffer, in);
+			return ByteBuffer.wrap(buffer).getInt();
+		}
+
+		@Override
+		public long readLong(final InputStream in) throws IOException {
+			byte[] buffer = new byte[8];
+			readFully(buffer, in);
+			return ByteBuffer.wrap(buffer).getLong();
+		}
+
+		@Override
+		public String readString(final InputStream in, final int maxLength)
+				throws IOException {
+			byte[] buffer = new byte[readInt(in)];
+			readFully(buffer, in);
+			return new String(buffer, "UTF8");
+		}
+
+		@Override
+		public void readStream(final long length, final InputStream in,
+				final OutputStream out) throws IOException {
+			long remaining = length;
+			int read = -1;
+			byte[] bytes = new byte[1024];
+			int readSize = bytes.length;
+			while (remaining > 0) {
+				if (remaining < readSize) {
+					readSize = (int) remaining;
+				}
+				read = in.read(bytes, 0, readSize);
+				if (read == -1) {
+					throw new EOFException();
+				}
+				remaining -= read;
+				out.write(bytes, 0, read);
+			}
+		}
+	}
+
+}
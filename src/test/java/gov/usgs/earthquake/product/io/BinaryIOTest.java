@@ -0,0 +1,123 @@
+/*
+ * BinaryIOTest
+ */
+package gov.usgs.earthquake.product.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Date;
+
+import gov.usgs.util.FileUtils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryIOTest {
+
+	/**
+	 * Primitives use the same big endian encoding as ByteBuffer.
+	 */
+	@Test
+	public void primitivesTest() throws Exception {
+		BinaryIO io = new BinaryIO();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		io.writeInt(-123456789, out);
+		io.writeLong(Long.MIN_VALUE + 12345L, out);
+		io.writeString("ascii", out);
+		io.writeString("not \u00e4scii \u2603", out);
+		io.writeDate(new Date(1234567890123L), out);
+
+		byte[] bytes = out.toByteArray();
+		ByteBuffer expected = ByteBuffer.wrap(bytes);
+		Assert.assertEquals(-123456789, expected.getInt());
+		Assert.assertEquals(Long.MIN_VALUE + 12345L, expected.getLong());
+
+		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+		Assert.assertEquals(-123456789, io.readInt(in));
+		Assert.assertEquals(Long.MIN_VALUE + 12345L, io.readLong(in));
+		Assert.assertEquals("ascii", io.readString(in));
+		Assert.assertEquals("not \u00e4scii \u2603", io.readString(in));
+		Assert.assertEquals(new Date(1234567890123L), io.readDate(in));
+		Assert.assertEquals(-1, in.read());
+	}
+
+	/**
+	 * Streams are copied through buffers and file channels.
+	 */
+	@Test
+	public void streamTest() throws Exception {
+		byte[] content = new byte[BinaryIO.TRANSFER_BUFFER_SIZE * 2 + 17];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+
+		BinaryIO io = new BinaryIO();
+		// only length bytes are written
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		io.writeStream(content.length - 7, new ByteArrayInputStream(content),
+				out);
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		io.readStream(new ByteArrayInputStream(out.toByteArray()), read);
+		Assert.assertTrue(Arrays.equals(
+				Arrays.copyOf(content, content.length - 7), read.toByteArray()));
+
+		File directory = new File("data/binaryiotest");
+		try {
+			directory.mkdirs();
+			File source = new File(directory, "source");
+			File encoded = new File(directory, "encoded");
+			File decoded = new File(directory, "decoded");
+			FileUtils.writeFile(source, content);
+
+			FileInputStream sourceIn = new FileInputStream(source);
+			FileOutputStream encodedOut = new FileOutputStream(encoded);
+			try {
+				io.writeString("before", encodedOut);
+				io.writeStream(content.length, sourceIn, encodedOut);
+				io.writeString("after", encodedOut);
+			} finally {
+				close(sourceIn, encodedOut);
+			}
+
+			FileInputStream encodedIn = new FileInputStream(encoded);
+			FileOutputStream decodedOut = new FileOutputStream(decoded);
+			try {
+				Assert.assertEquals("before", io.readString(encodedIn));
+				io.readStream(encodedIn, decodedOut);
+				Assert.assertEquals("after", io.readString(encodedIn));
+			} finally {
+				close(encodedIn, decodedOut);
+			}
+			Assert.assertTrue(Arrays.equals(content,
+					FileUtils.readFile(decoded)));
+		} finally {
+			FileUtils.deleteTree(directory);
+		}
+	}
+
+	/**
+	 * Truncated streams throw an exception.
+	 */
+	@Test(expected = IOException.class)
+	public void truncatedTest() throws Exception {
+		BinaryIO io = new BinaryIO();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		io.writeLong(100L, out);
+		out.write(new byte[10]);
+		io.readStream(new ByteArrayInputStream(out.toByteArray()),
+				new ByteArrayOutputStream());
+	}
+
+	private static void close(final FileInputStream in,
+			final FileOutputStream out) throws IOException {
+		in.close();
+		out.close();
+	}
+
+}
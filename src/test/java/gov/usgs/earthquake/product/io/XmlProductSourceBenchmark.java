@@ -0,0 +1,106 @@
+/*
+ * XmlProductSourceBenchmark
+ */
+package gov.usgs.earthquake.product.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Random;
+
+import gov.usgs.earthquake.product.ByteContent;
+import gov.usgs.earthquake.product.Content;
+import gov.usgs.earthquake.product.Product;
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.util.BenchmarkUtils;
+import gov.usgs.util.FileUtils;
+import gov.usgs.util.StreamUtils;
+
+/**
+ * Compare XmlProductSource throughput using the pull parser, which decodes
+ * content in the calling thread, to the SAX parser, which uses a thread and
+ * piped streams for each content.
+ *
+ * Reads an xml product with several large contents from a file, and copies
+ * each content to a null stream, reporting MB/s of xml read.
+ *
+ * Not a unit test, run using:
+ * java gov.usgs.earthquake.product.io.XmlProductSourceBenchmark
+ * [contents [contentMB]]
+ */
+public class XmlProductSourceBenchmark {
+
+	/** Number of times each measurement is repeated, best is reported. */
+	public static final int ROUNDS = 5;
+
+	/**
+	 * Read an xml product, reading all content.
+	 *
+	 * @return elapsed nanoseconds.
+	 */
+	public static long run(final File xml, final boolean contentThread)
+			throws Exception {
+		long start = System.nanoTime();
+		XmlProductSource source = new XmlProductSource(new FileInputStream(
+				xml));
+		source.setContentThread(contentThread);
+		source.streamTo(new FilterProductHandler(new ObjectProductHandler()) {
+			@Override
+			public void onContent(ProductId id, String path, Content content)
+					throws Exception {
+				InputStream in = content.getInputStream();
+				byte[] buffer = new byte[StreamUtils.DEFAULT_BUFFER_SIZE];
+				while (in.read(buffer) != -1) {
+					// discard
+				}
+				super.onContent(id, path, new ByteContent(new byte[0]));
+			}
+		});
+		return System.nanoTime() - start;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		int contents = (int) BenchmarkUtils.getArg(args, 0, 4);
+		int contentMB = (int) BenchmarkUtils.getArg(args, 1, 32);
+
+		File directory = File.createTempFile("xmlsource", "");
+		directory.delete();
+		directory.mkdirs();
+		try {
+			Product product = new Product(new ProductId("test", "benchmark",
+					"code", new Date()));
+			Random random = new Random(1);
+			for (int i = 0; i < contents; i++) {
+				byte[] bytes = new byte[contentMB * 1024 * 1024];
+				random.nextBytes(bytes);
+				ByteContent content = new ByteContent(bytes);
+				content.setContentType("application/octet-stream");
+				content.setLastModified(new Date());
+				product.getContents().put("content" + i + ".bin", content);
+			}
+			File xml = new File(directory, "product.xml");
+			OutputStream out = new FileOutputStream(xml);
+			try {
+				new ObjectProductSource(product)
+						.streamTo(new XmlProductHandler(out));
+			} finally {
+				StreamUtils.closeStream(out);
+			}
+			product = null;
+
+			double xmlMB = xml.length() / (1024.0 * 1024.0);
+			for (boolean contentThread : new boolean[] { true, false }) {
+				long elapsed = BenchmarkUtils.best(ROUNDS,
+						() -> run(xml, contentThread));
+				BenchmarkUtils.report((contentThread ? "sax, content threads"
+						: "pull parser"), xmlMB * 1e9 / elapsed, "MB/s");
+			}
+		} finally {
+			FileUtils.deleteTree(directory);
+		}
+	}
+
+}
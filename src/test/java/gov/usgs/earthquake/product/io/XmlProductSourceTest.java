@@ -0,0 +1,94 @@
+/*
+ * XmlProductSourceTest
+ */
+package gov.usgs.earthquake.product.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import gov.usgs.earthquake.product.ByteContent;
+import gov.usgs.earthquake.product.Content;
+import gov.usgs.earthquake.product.Product;
+import gov.usgs.earthquake.product.ProductId;
+import gov.usgs.earthquake.product.ProductTest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XmlProductSourceTest {
+
+	private ProductTest productTest = new ProductTest();
+
+	/**
+	 * Content is delivered in the thread calling streamTo.
+	 */
+	@Test
+	public void inlineContentTest() throws Exception {
+		Product product = productTest.getProduct();
+		final Thread thread = Thread.currentThread();
+		final int[] contents = new int[] { 0 };
+
+		ObjectProductHandler handler = new ObjectProductHandler();
+		new XmlProductSource(toXml(product))
+				.streamTo(new FilterProductHandler(handler) {
+					@Override
+					public void onContent(ProductId id, String path,
+							Content content) throws Exception {
+						Assert.assertSame(thread, Thread.currentThread());
+						contents[0]++;
+						super.onContent(id, path, content);
+					}
+				});
+
+		Assert.assertEquals(product.getContents().size(), contents[0]);
+		productTest.compareProducts(product, handler.getProduct());
+	}
+
+	/**
+	 * Content the handler does not read is skipped.
+	 */
+	@Test
+	public void unreadContentTest() throws Exception {
+		Product product = productTest.getProduct();
+
+		ObjectProductHandler handler = new ObjectProductHandler();
+		new XmlProductSource(toXml(product))
+				.streamTo(new FilterProductHandler(handler) {
+					@Override
+					public void onContent(ProductId id, String path,
+							Content content) throws Exception {
+						// read one byte, and replace content
+						content.getInputStream().read();
+						super.onContent(id, path, new ByteContent(
+								new byte[0]));
+					}
+				});
+
+		Product loaded = handler.getProduct();
+		Assert.assertEquals(product.getProperties(), loaded.getProperties());
+		Assert.assertEquals(product.getSignature(), loaded.getSignature());
+		Assert.assertEquals(product.getContents().keySet(), loaded
+				.getContents().keySet());
+	}
+
+	/**
+	 * Content thread mode still delivers content.
+	 */
+	@Test
+	public void contentThreadTest() throws Exception {
+		Product product = productTest.getProduct();
+
+		XmlProductSource source = new XmlProductSource(toXml(product));
+		source.setContentThread(true);
+		productTest.compareProducts(product,
+				ObjectProductHandler.getProduct(source));
+	}
+
+	private static ByteArrayInputStream toXml(final Product product)
+			throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ObjectProductSource(product).streamTo(new XmlProductHandler(out));
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * RegionsBenchmark
+ */
+package gov.usgs.earthquake.qdm;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import gov.usgs.earthquake.geoserve.RegionsJSON;
+import gov.usgs.util.BenchmarkUtils;
+import gov.usgs.util.StreamUtils;
+
+/**
+ * Measure Regions.isAuthor lookups using the spatial index, compared to the
+ * linear scan over every region.
+ *
+ * Each lookup checks a random point for every network, and the default
+ * network, like DefaultIndexerModule does for each product.
+ *
+ * Not a unit test, run using:
+ * java gov.usgs.earthquake.qdm.RegionsBenchmark [regions.json [seconds]]
+ */
+public class RegionsBenchmark {
+
+    /** Number of random points, reused between runs. */
+    public static final int POINTS = 100000;
+
+    /**
+     * Run lookups for some time.
+     *
+     * @return points checked per second.
+     */
+    public static double run(final Regions regions, final List<Point> points,
+            final long millis) throws Exception {
+        List<String> netids = new ArrayList<String>(regions.netids);
+        netids.add(regions.defaultNetid);
+
+        return BenchmarkUtils.runThreads(1, millis, (thread) -> () -> {
+            long authoritative = 0;
+            for (Point p : points) {
+                for (String netid : netids) {
+                    if (regions.isAuthor(netid, p)) {
+                        authoritative++;
+                    }
+                }
+            }
+            if (authoritative == 0) {
+                throw new Exception("no points were authoritative");
+            }
+            return points.size();
+        });
+    }
+
+    public static void main(final String[] args) throws Exception {
+        File file = new File(args.length > 0 ? args[0]
+                : "etc/config/example_regions.json");
+        long millis = BenchmarkUtils.getArg(args, 1, 5) * 1000L;
+
+        Regions indexed;
+        try (InputStream in = StreamUtils.getInputStream(file)) {
+            JsonObject json = Json.createReader(in).readObject();
+            indexed = new RegionsJSON().parseRegions(json);
+        }
+        indexed.buildIndex();
+        Regions linear = new Regions();
+        linear.defaultNetid = indexed.defaultNetid;
+        linear.netids = indexed.netids;
+        linear.regions = indexed.regions;
+
+        // points in and around the united states
+        Random random = new Random(1);
+        List<Point> points = new ArrayList<Point>();
+        for (int i = 0; i < POINTS; i++) {
+            points.add(new Point(-200 + 160 * random.nextDouble(),
+                    -20 + 100 * random.nextDouble()));
+        }
+
+        // warm up
+        run(linear, points, millis / 5);
+        run(indexed, points, millis / 5);
+
+        System.out.printf("%d regions%n", indexed.regions.size());
+        BenchmarkUtils.report("linear", run(linear, points, millis),
+                "points/s");
+        BenchmarkUtils.report("indexed", run(indexed, points, millis),
+                "points/s");
+    }
+
+}
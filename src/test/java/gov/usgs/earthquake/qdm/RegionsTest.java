@@ -0,0 +1,108 @@
+package gov.usgs.earthquake.qdm;
+
+import java.io.File;
+import java.io.InputStream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import gov.usgs.earthquake.geoserve.RegionsJSON;
+import gov.usgs.util.StreamUtils;
+
+public class RegionsTest {
+
+    private Regions indexed;
+    private Regions linear;
+
+    @Before
+    public void before() throws Exception {
+        try (InputStream in = StreamUtils.getInputStream(
+                new File("etc/config/example_regions.json"))) {
+            JsonObject json = Json.createReader(in).readObject();
+            indexed = new RegionsJSON().parseRegions(json);
+        }
+        indexed.buildIndex();
+
+        // same regions, without index
+        linear = new Regions();
+        linear.defaultNetid = indexed.defaultNetid;
+        linear.netids = indexed.netids;
+        linear.regions = indexed.regions;
+    }
+
+    /**
+     * Indexed lookups match the linear scan for points across all regions.
+     */
+    @Test
+    public void testIndexMatchesLinearScan() {
+        Assert.assertNotNull("index built", indexed.getIndex());
+        Assert.assertNull("no index", linear.getIndex());
+
+        int authoritative = 0;
+        for (double y = -20; y <= 80; y += 0.37) {
+            for (double x = -200; x <= -40; x += 0.41) {
+                authoritative += compare(new Point(x, y));
+            }
+        }
+        Assert.assertTrue("some points are authoritative", authoritative > 0);
+    }
+
+    /**
+     * Region vertices are on the boundary, and inside the region.
+     */
+    @Test
+    public void testIndexMatchesLinearScanOnVertices() {
+        for (Region region : indexed.regions) {
+            for (Point p : region.points) {
+                compare(p);
+                Assert.assertTrue("vertex is authoritative for its region",
+                        indexed.isAuthor(region.netid, p));
+            }
+        }
+    }
+
+    /**
+     * Regions without points contain every point.
+     */
+    @Test
+    public void testUnboundedRegion() {
+        Regions regions = new Regions();
+        regions.defaultNetid = "us";
+        regions.regions.add(new Region("xx", "world"));
+        regions.buildIndex();
+
+        Point p = new Point(10, 10);
+        Assert.assertTrue("unbounded region is authoritative",
+                regions.isAuthor("xx", p));
+        Assert.assertFalse("default not authoritative in unbounded region",
+                regions.isAuthor("us", p));
+        Assert.assertFalse("other network not authoritative",
+                regions.isAuthor("yy", p));
+    }
+
+    /**
+     * Compare indexed and linear results for each network.
+     *
+     * @return number of networks authoritative for the point.
+     */
+    private int compare(final Point p) {
+        int authoritative = 0;
+        for (String netid : indexed.netids) {
+            boolean expected = linear.isAuthor(netid, p);
+            Assert.assertEquals("isAuthor " + netid + " at " + p.x + "," + p.y,
+                    expected, indexed.isAuthor(netid, p));
+            if (expected) {
+                authoritative++;
+            }
+        }
+        Assert.assertEquals("isAuthor default at " + p.x + "," + p.y,
+                linear.isAuthor(indexed.defaultNetid, p),
+                indexed.isAuthor(indexed.defaultNetid, p));
+        return authoritative;
+    }
+
+}
@@ -0,0 +1,45 @@
+package gov.usgs.earthquake.util;
+
+import gov.usgs.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BoundedInputStreamTest {
+
+	private static byte[] TEST_BYTES = ("abcdefghijklmnopqrstuvwxyz"
+			+ "ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "0123456789").getBytes();
+
+	@Test
+	public void testReadToLimit() throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(TEST_BYTES);
+		BoundedInputStream bounded = new BoundedInputStream(in, 26);
+		Assert.assertEquals("abcdefghijklmnopqrstuvwxyz", new String(
+				StreamUtils.readStream(bounded)));
+		// closing view leaves underlying stream open
+		bounded.close();
+		Assert.assertEquals('A', in.read());
+	}
+
+	@Test
+	public void testSkipRemaining() throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(TEST_BYTES);
+		BoundedInputStream bounded = new BoundedInputStream(in, 26);
+		Assert.assertEquals('a', bounded.read());
+		bounded.skipRemaining();
+		Assert.assertEquals(0, bounded.getRemaining());
+		Assert.assertEquals(-1, bounded.read());
+		Assert.assertEquals('A', in.read());
+	}
+
+	@Test(expected = EOFException.class)
+	public void testTruncated() throws IOException {
+		BoundedInputStream bounded = new BoundedInputStream(
+				new ByteArrayInputStream(TEST_BYTES), TEST_BYTES.length + 1);
+		StreamUtils.readStream(bounded);
+	}
+}
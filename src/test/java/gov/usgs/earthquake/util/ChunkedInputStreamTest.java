@@ -0,0 +1,125 @@
+package gov.usgs.earthquake.util;
+
+import gov.usgs.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkedInputStreamTest {
+
+	private static byte[] TEST_BYTES = ("abcdefghijklmnopqrstuvwxyz"
+			+ "ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "0123456789").getBytes();
+
+	/**
+	 * Content written across several chunks is read back, for chunk sizes on
+	 * and around the content length.
+	 */
+	@Test
+	public void testReadChunks() throws IOException {
+		int[] chunkSizes = { 1, 7, TEST_BYTES.length - 1, TEST_BYTES.length,
+				TEST_BYTES.length + 1 };
+		for (int chunkSize : chunkSizes) {
+			byte[] chunked = chunk(TEST_BYTES, chunkSize);
+			Assert.assertArrayEquals("chunk size " + chunkSize, TEST_BYTES,
+					StreamUtils.readStream(new ChunkedInputStream(
+							new ByteArrayInputStream(chunked))));
+		}
+	}
+
+	/**
+	 * The end marker is end of stream, and the underlying stream is left
+	 * after the marker, so more content can follow.
+	 */
+	@Test
+	public void testEndMarker() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(chunk(TEST_BYTES, 10));
+		// empty content is only the end marker
+		out.write(chunk(new byte[0], 10));
+		out.write('x');
+		InputStream in = new ByteArrayInputStream(out.toByteArray());
+
+		ChunkedInputStream first = new ChunkedInputStream(in);
+		Assert.assertArrayEquals(TEST_BYTES, StreamUtils.readStream(first));
+		Assert.assertEquals(-1, first.read());
+		Assert.assertEquals(-1, first.read(new byte[1], 0, 1));
+
+		ChunkedInputStream empty = new ChunkedInputStream(in);
+		Assert.assertEquals(-1, empty.read());
+		Assert.assertEquals('x', in.read());
+	}
+
+	/**
+	 * Close skips unread content up to the end marker.
+	 */
+	@Test
+	public void testCloseSkipsContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(chunk(TEST_BYTES, 10));
+		out.write('x');
+		InputStream in = new ByteArrayInputStream(out.toByteArray());
+
+		ChunkedInputStream chunked = new ChunkedInputStream(in);
+		Assert.assertEquals(TEST_BYTES[0], chunked.read());
+		chunked.close();
+		Assert.assertEquals('x', in.read());
+	}
+
+	/**
+	 * A stream that ends inside a chunk is an error, not end of content.
+	 */
+	@Test(expected = EOFException.class)
+	public void testTruncatedChunk() throws IOException {
+		byte[] chunked = chunk(TEST_BYTES, 10);
+		// end in the middle of the second chunk
+		byte[] truncated = new byte[4 + 10 + 4 + 5];
+		System.arraycopy(chunked, 0, truncated, 0, truncated.length);
+		StreamUtils.readStream(new ChunkedInputStream(new ByteArrayInputStream(
+				truncated)));
+	}
+
+	/**
+	 * A stream that ends before the end marker is an error.
+	 */
+	@Test(expected = EOFException.class)
+	public void testMissingEndMarker() throws IOException {
+		byte[] chunked = chunk(TEST_BYTES, 10);
+		// end in the middle of the end marker
+		byte[] truncated = new byte[chunked.length - 2];
+		System.arraycopy(chunked, 0, truncated, 0, truncated.length);
+		StreamUtils.readStream(new ChunkedInputStream(new ByteArrayInputStream(
+				truncated)));
+	}
+
+	/**
+	 * Negative or very large chunk lengths are rejected.
+	 */
+	@Test
+	public void testInvalidLength() throws IOException {
+		byte[] invalid = { (byte) 0xFF, 0, 0, 1, 'a' };
+		try {
+			new ChunkedInputStream(new ByteArrayInputStream(invalid)).read();
+			Assert.fail("expected exception");
+		} catch (IOException ioe) {
+			if (!ioe.getMessage().contains("invalid chunk length")) {
+				throw ioe;
+			}
+		}
+	}
+
+	private static byte[] chunk(final byte[] content, final int chunkSize)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChunkedOutputStream chunked = new ChunkedOutputStream(out, chunkSize);
+		chunked.write(content);
+		chunked.finish();
+		return out.toByteArray();
+	}
+
+}
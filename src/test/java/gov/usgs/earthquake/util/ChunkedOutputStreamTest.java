@@ -0,0 +1,81 @@
+package gov.usgs.earthquake.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkedOutputStreamTest {
+
+	private static byte[] TEST_BYTES = ("abcdefghijklmnopqrstuvwxyz"
+			+ "ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "0123456789").getBytes();
+
+	/**
+	 * Content is split into chunks of at most chunkSize bytes, followed by a
+	 * zero length end marker.
+	 */
+	@Test
+	public void testChunkBoundaries() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChunkedOutputStream chunked = new ChunkedOutputStream(out, 10);
+		// exactly one chunk, then one byte more
+		chunked.write(TEST_BYTES, 0, 10);
+		chunked.write(TEST_BYTES[10]);
+		chunked.finish();
+
+		byte[] written = out.toByteArray();
+		Assert.assertEquals(4 + 10 + 4 + 1 + 4, written.length);
+		Assert.assertArrayEquals(new byte[] { 0, 0, 0, 10 }, slice(written, 0, 4));
+		Assert.assertArrayEquals(slice(TEST_BYTES, 0, 10), slice(written, 4, 10));
+		Assert.assertArrayEquals(new byte[] { 0, 0, 0, 1 }, slice(written, 14, 4));
+		Assert.assertEquals(TEST_BYTES[10], written[18]);
+		Assert.assertArrayEquals(new byte[] { 0, 0, 0, 0 }, slice(written, 19, 4));
+	}
+
+	/**
+	 * Flush writes a partial chunk, and empty content is only the end marker.
+	 */
+	@Test
+	public void testFlushAndEmpty() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChunkedOutputStream chunked = new ChunkedOutputStream(out, 10);
+		chunked.write(TEST_BYTES, 0, 3);
+		chunked.flush();
+		Assert.assertEquals(4 + 3, out.size());
+		// flush without content does not write an empty chunk
+		chunked.flush();
+		Assert.assertEquals(4 + 3, out.size());
+
+		out.reset();
+		chunked = new ChunkedOutputStream(out, 10);
+		chunked.close();
+		Assert.assertArrayEquals(new byte[] { 0, 0, 0, 0 }, out.toByteArray());
+	}
+
+	/**
+	 * Writes after finish fail, and finish is only written once.
+	 */
+	@Test
+	public void testWriteAfterFinish() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChunkedOutputStream chunked = new ChunkedOutputStream(out, 10);
+		chunked.finish();
+		chunked.close();
+		Assert.assertEquals(4, out.size());
+		try {
+			chunked.write(1);
+			Assert.fail("expected exception");
+		} catch (IOException ioe) {
+			// expected
+		}
+	}
+
+	private static byte[] slice(final byte[] bytes, final int offset,
+			final int length) {
+		byte[] slice = new byte[length];
+		System.arraycopy(bytes, offset, slice, 0, length);
+		return slice;
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+ * BenchmarkUtils
+ */
+package gov.usgs.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared timing and reporting for the main() based benchmarks in the test
+ * tree.
+ *
+ * JMH is not part of this build, so benchmarks are classes with a main method
+ * that measure the current implementation against a copy of the previous one,
+ * and print one line per measurement.
+ */
+public class BenchmarkUtils {
+
+	/**
+	 * Work repeated by a benchmark thread.
+	 */
+	public static interface Operation {
+		/**
+		 * Do some work.
+		 *
+		 * @return number of operations done.
+		 * @throws Exception
+		 */
+		public long run() throws Exception;
+	}
+
+	/**
+	 * Creates the operation for each benchmark thread, so threads can keep
+	 * their own state.
+	 */
+	public static interface OperationFactory {
+		/**
+		 * @param thread
+		 *            thread number, from 0.
+		 * @return operation for the thread.
+		 * @throws Exception
+		 */
+		public Operation create(int thread) throws Exception;
+	}
+
+	/**
+	 * Run threads that repeat an operation for some time.
+	 *
+	 * All threads start together, and stop at the first operation that ends
+	 * after millis.
+	 *
+	 * @param threads
+	 *            number of threads.
+	 * @param millis
+	 *            how long to run.
+	 * @param factory
+	 *            creates the operation for each thread.
+	 * @return operations per second.
+	 * @throws Exception
+	 *             the first exception thrown by an operation.
+	 */
+	public static double runThreads(final int threads, final long millis,
+			final OperationFactory factory) throws Exception {
+		final AtomicLong operations = new AtomicLong();
+		final AtomicReference<Exception> error = new AtomicReference<Exception>();
+		final CountDownLatch start = new CountDownLatch(1);
+		final long[] end = new long[1];
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final Operation operation = factory.create(t);
+			workers[t] = new Thread(() -> {
+				long count = 0;
+				try {
+					start.await();
+					while (System.currentTimeMillis() < end[0]) {
+						count += operation.run();
+					}
+				} catch (Exception e) {
+					error.compareAndSet(null, e);
+				}
+				operations.addAndGet(count);
+			});
+			workers[t].start();
+		}
+
+		long startTime = System.nanoTime();
+		end[0] = System.currentTimeMillis() + millis;
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - startTime;
+		if (error.get() != null) {
+			throw error.get();
+		}
+		return operations.get() * 1e9 / elapsed;
+	}
+
+	/**
+	 * Repeat a measurement and keep the fastest.
+	 *
+	 * @param rounds
+	 *            number of times to run.
+	 * @param measurement
+	 *            returns elapsed nanoseconds.
+	 * @return fewest elapsed nanoseconds.
+	 * @throws Exception
+	 */
+	public static long best(final int rounds, final Callable<Long> measurement)
+			throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < rounds; i++) {
+			best = Math.min(best, measurement.call());
+		}
+		return best;
+	}
+
+	/**
+	 * Print one measurement.
+	 *
+	 * @param name
+	 *            what was measured.
+	 * @param value
+	 *            measured rate.
+	 * @param unit
+	 *            unit of value.
+	 */
+	public static void report(final String name, final double value,
+			final String unit) {
+		System.out.printf("%s: %.1f %s%n", name, value, unit);
+	}
+
+	/**
+	 * Parse a numeric command line argument.
+	 *
+	 * @param args
+	 *            command line arguments.
+	 * @param index
+	 *            argument position.
+	 * @param defaultValue
+	 *            value when the argument is missing.
+	 * @return argument value.
+	 */
+	public static long getArg(final String[] args, final int index,
+			final long defaultValue) {
+		return args.length > index ? Long.parseLong(args[index])
+				: defaultValue;
+	}
+
+}
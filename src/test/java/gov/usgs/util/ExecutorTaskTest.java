@@ -0,0 +1,145 @@
+/*
+ * ExecutorTaskTest
+ */
+package gov.usgs.util;
+
+import java.util.Timer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutorTaskTest {
+
+	private ExecutorService service;
+
+	@Before
+	public void setup() {
+		service = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void teardown() {
+		service.shutdownNow();
+	}
+
+	/**
+	 * Tasks that take longer than timeout are interrupted, and retried after
+	 * retryDelay.
+	 */
+	@Test
+	public void timeoutAndRetryTest() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		long timeouts = ExecutorTask.getTimeouts();
+		ExecutorTask<String> task = new ExecutorTask<String>(service, 2, 100L,
+				() -> {
+					if (calls.incrementAndGet() == 1) {
+						// first call times out
+						Thread.sleep(10000L);
+					}
+					return "done";
+				}, 100L);
+
+		long start = System.currentTimeMillis();
+		service.submit(task);
+		Assert.assertEquals("done", task.get());
+		long elapsed = System.currentTimeMillis() - start;
+
+		Assert.assertEquals(2, task.getNumTries());
+		Assert.assertEquals(1, task.getExceptions().size());
+		Assert.assertTrue(task.getExceptions().get(0) instanceof InterruptedException);
+		Assert.assertTrue("elapsed " + elapsed, elapsed >= 200L && elapsed < 5000L);
+		Assert.assertTrue(ExecutorTask.getTimeouts() > timeouts);
+	}
+
+	/**
+	 * Completed tasks are not interrupted later, and are no longer
+	 * outstanding.
+	 */
+	@Test
+	public void noInterruptAfterCompleteTest() throws Exception {
+		ExecutorTask<Void> task = new ExecutorTask<Void>(service, 1, 50L,
+				() -> null, 0L);
+		service.submit(task);
+		task.get();
+		Assert.assertTrue(task.isDone());
+
+		// a later task should not be interrupted by the earlier timeout
+		ExecutorTask<Boolean> later = new ExecutorTask<Boolean>(service, 1,
+				0L, () -> {
+					Thread.sleep(200L);
+					return true;
+				}, 0L);
+		service.submit(later);
+		Assert.assertTrue(later.get());
+		Assert.assertEquals(1, later.getNumTries());
+	}
+
+	/**
+	 * Tasks that fail every try throw the last exception.
+	 */
+	@Test(expected = ExecutionException.class)
+	public void outOfTriesTest() throws Exception {
+		ExecutorTask<Void> task = new ExecutorTask<Void>(service, 2, 0L,
+				() -> {
+					throw new Exception("fail");
+				}, 10L);
+		service.submit(task);
+		task.get();
+	}
+
+	/**
+	 * Tasks that are cancelled before they are submitted are no longer
+	 * outstanding.
+	 */
+	@Test
+	public void cancelledNotOutstandingTest() throws Exception {
+		int outstanding = ExecutorTask.getOutstandingTasks();
+		ExecutorTask<Void> task = new ExecutorTask<Void>(service, 1, 0L,
+				() -> null, 0L);
+		Assert.assertEquals(outstanding + 1, ExecutorTask.getOutstandingTasks());
+		task.cancel(false);
+		Assert.assertEquals(outstanding, ExecutorTask.getOutstandingTasks());
+		// running after cancel does not change count
+		task.run();
+		Assert.assertEquals(outstanding, ExecutorTask.getOutstandingTasks());
+	}
+
+	/**
+	 * Tasks whose retry cannot be scheduled, or whose callable throws an
+	 * Error, are done and no longer outstanding.
+	 */
+	@Test
+	public void unscheduledRetryNotOutstandingTest() throws Exception {
+		int outstanding = ExecutorTask.getOutstandingTasks();
+		Timer timer = new Timer();
+		timer.cancel();
+		ExecutorTask<Void> task = new ExecutorTask<Void>(service, 2, 0L,
+				() -> {
+					throw new Exception("fail");
+				}, timer, 10L);
+		task.run();
+		Assert.assertTrue(task.isDone());
+		Assert.assertEquals(1, task.getNumTries());
+		Assert.assertEquals(outstanding, ExecutorTask.getOutstandingTasks());
+
+		ExecutorTask<Void> error = new ExecutorTask<Void>(service, 1, 0L,
+				() -> {
+					throw new AssertionError("error");
+				}, 0L);
+		try {
+			error.run();
+			Assert.fail("expected error");
+		} catch (AssertionError e) {
+			// expected
+		}
+		Assert.assertTrue(error.isDone());
+		Assert.assertEquals(outstanding, ExecutorTask.getOutstandingTasks());
+	}
+
+}
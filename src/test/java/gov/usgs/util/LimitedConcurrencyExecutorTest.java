@@ -0,0 +1,121 @@
+/*
+ * LimitedConcurrencyExecutorTest
+ */
+package gov.usgs.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LimitedConcurrencyExecutorTest {
+
+	private ExecutorService pool;
+
+	@Before
+	public void setup() {
+		pool = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void teardown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * With maxConcurrent 1, tasks run one at a time in submitted order, even
+	 * though the pool has more threads.
+	 */
+	@Test
+	public void fifoTest() throws Exception {
+		final List<Integer> order = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		LimitedConcurrencyExecutor executor = new LimitedConcurrencyExecutor(
+				pool, 1);
+		for (int i = 0; i < 100; i++) {
+			final int index = i;
+			executor.execute(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				order.add(index);
+				running.decrementAndGet();
+			});
+		}
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, maxRunning.get());
+		for (int i = 0; i < 100; i++) {
+			Assert.assertEquals(Integer.valueOf(i), order.get(i));
+		}
+	}
+
+	/**
+	 * No more than maxConcurrent tasks run at once.
+	 */
+	@Test
+	public void maxConcurrentTest() throws Exception {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		LimitedConcurrencyExecutor executor = new LimitedConcurrencyExecutor(
+				pool, 2);
+		for (int i = 0; i < 20; i++) {
+			executor.execute(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(10L);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				running.decrementAndGet();
+			});
+		}
+		executor.shutdown();
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertTrue("max running " + maxRunning.get(),
+				maxRunning.get() <= 2);
+	}
+
+	/**
+	 * Queued tasks run after shutdown, but new tasks are rejected. Interrupts
+	 * do not leak into the next task.
+	 */
+	@Test
+	public void shutdownTest() throws Exception {
+		final AtomicInteger calls = new AtomicInteger();
+		final AtomicInteger interrupted = new AtomicInteger();
+		LimitedConcurrencyExecutor executor = new LimitedConcurrencyExecutor(
+				pool, 1);
+		executor.execute(() -> {
+			calls.incrementAndGet();
+			Thread.currentThread().interrupt();
+		});
+		executor.execute(() -> {
+			calls.incrementAndGet();
+			if (Thread.currentThread().isInterrupted()) {
+				interrupted.incrementAndGet();
+			}
+		});
+		executor.shutdown();
+		try {
+			executor.execute(() -> calls.incrementAndGet());
+			Assert.fail("expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertEquals(2, calls.get());
+		Assert.assertEquals(0, interrupted.get());
+		Assert.assertEquals(0, executor.getQueueSize());
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * ObjectLockBenchmark
+ */
+package gov.usgs.util;
+
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Measure acquire/release throughput of ObjectLock with many threads, compared
+ * to the previous implementation that synchronized on one monitor.
+ *
+ * Each thread locks objects from a shared pool of keys, so some keys are
+ * contended and most are not, like product ids during distribution.
+ *
+ * Not a unit test, run using:
+ * java gov.usgs.util.ObjectLockBenchmark [threads [keys [seconds]]]
+ */
+public class ObjectLockBenchmark {
+
+	/**
+	 * Common interface for the implementations being compared.
+	 */
+	public static interface Lock {
+		public void acquire(Integer key, boolean write)
+				throws InterruptedException;
+
+		public void release(Integer key, boolean write);
+	}
+
+	/**
+	 * Run threads that acquire and release locks for some time.
+	 *
+	 * @return operations per second.
+	 */
+	public static double run(final Lock lock, final int threads,
+			final int keys, final long millis) throws Exception {
+		return BenchmarkUtils.runThreads(threads, millis, (thread) -> {
+			final int[] i = new int[] { thread * 7919 };
+			return () -> {
+				Integer key = Integer.valueOf(i[0]++ % keys);
+				// one write for every 4 reads
+				boolean write = (i[0] % 5 == 0);
+				lock.acquire(key, write);
+				lock.release(key, write);
+				return 1;
+			};
+		});
+	}
+
+	public static void main(final String[] args) throws Exception {
+		int threads = (int) BenchmarkUtils.getArg(args, 0, 16);
+		int keys = (int) BenchmarkUtils.getArg(args, 1, 1000);
+		long millis = BenchmarkUtils.getArg(args, 2, 5) * 1000L;
+
+		final ObjectLock<Integer> current = new ObjectLock<Integer>();
+		final PreviousObjectLock<Integer> previous = new PreviousObjectLock<Integer>();
+		Lock currentLock = new Lock() {
+			public void acquire(Integer key, boolean write)
+					throws InterruptedException {
+				if (write) {
+					current.acquireWriteLock(key);
+				} else {
+					current.acquireReadLock(key);
+				}
+			}
+
+			public void release(Integer key, boolean write) {
+				if (write) {
+					current.releaseWriteLock(key);
+				} else {
+					current.releaseReadLock(key);
+				}
+			}
+		};
+		Lock previousLock = new Lock() {
+			public void acquire(Integer key, boolean write)
+					throws InterruptedException {
+				previous.acquire(key, write);
+			}
+
+			public void release(Integer key, boolean write) {
+				previous.release(key, write);
+			}
+		};
+
+		// warm up
+		run(previousLock, threads, keys, 1000L);
+		run(currentLock, threads, keys, 1000L);
+
+		BenchmarkUtils.report("previous",
+				run(previousLock, threads, keys, millis), "ops/s");
+		BenchmarkUtils.report("current",
+				run(currentLock, threads, keys, millis), "ops/s");
+	}
+
+	/**
+	 * ObjectLock before it used a ConcurrentHashMap.
+	 */
+	public static class PreviousObjectLock<T> {
+		private HashMap<T, ReentrantReadWriteLock> locks = new HashMap<T, ReentrantReadWriteLock>();
+		private HashMap<T, Integer> lockThreadCounts = new HashMap<T, Integer>();
+		private final Object syncObject = new Object();
+
+		private ReentrantReadWriteLock getLock(final T object) {
+			ReentrantReadWriteLock lock = locks.get(object);
+			if (lock == null) {
+				lock = new ReentrantReadWriteLock(true);
+				locks.put(object, lock);
+			}
+			return lock;
+		}
+
+		public void acquire(final T object, final boolean write)
+				throws InterruptedException {
+			ReentrantReadWriteLock lock = null;
+			synchronized (syncObject) {
+				lock = getLock(object);
+				Integer threadCount = lockThreadCounts.get(object);
+				lockThreadCounts.put(object, threadCount == null ? 1
+						: threadCount + 1);
+			}
+			if (write) {
+				lock.writeLock().lockInterruptibly();
+			} else {
+				lock.readLock().lockInterruptibly();
+			}
+		}
+
+		public void release(final T object, final boolean write) {
+			synchronized (syncObject) {
+				ReentrantReadWriteLock lock = getLock(object);
+				Integer threadCount = lockThreadCounts.get(object) - 1;
+				lockThreadCounts.put(object, threadCount);
+				if (threadCount == 0) {
+					locks.remove(object);
+					lockThreadCounts.remove(object);
+				}
+				if (write) {
+					lock.writeLock().unlock();
+				} else {
+					lock.readLock().unlock();
+				}
+			}
+		}
+	}
+
+}
@@ -63,6 +63,40 @@ public class ObjectLockTest {
 		writer2.join();
 	}
 
+	/**
+	 * Locks are removed once no threads are using them, including threads
+	 * interrupted while waiting.
+	 */
+	@Test
+	public void locksRemovedAfterRelease() throws Exception {
+		final ObjectLock<Integer> lock = new ObjectLock<Integer>();
+		lock.acquireWriteLock(testObject1);
+		lock.acquireReadLock(2);
+		Assert.assertTrue(lock.haveWriteLock(testObject2));
+		Assert.assertEquals(2, lock.getLockCount());
+
+		Thread waiting = new Thread() {
+			public void run() {
+				try {
+					lock.acquireReadLock(testObject3);
+					Assert.fail("expected interrupt");
+				} catch (InterruptedException e) {
+					// expected
+				}
+			}
+		};
+		waiting.start();
+		// give thread time to wait for lock
+		Thread.sleep(50L);
+		waiting.interrupt();
+		waiting.join();
+
+		lock.releaseReadLock(2);
+		lock.releaseWriteLock(testObject4);
+		Assert.assertFalse(lock.haveWriteLock(testObject1));
+		Assert.assertEquals(0, lock.getLockCount());
+	}
+
 	public static class WriterThread<T> extends Thread {
 		private T object;
 		private ObjectLock<T> lock;
@@ -0,0 +1,144 @@
+/*
+ * ProcessWorkerPoolTest
+ */
+package gov.usgs.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProcessWorkerPoolTest {
+
+	/**
+	 * Worker that replies with the number of arguments as status, and the
+	 * process id as message. Exits when the first argument is "exit", does
+	 * not reply when the first argument is "hang", and sends a reply with a
+	 * non-numeric id first when the first argument is "bad".
+	 */
+	public static final String[] WORKER = new String[] {
+			"sh",
+			"-c",
+			"while read line; do "
+					+ "id=$(echo \"$line\" | sed 's/.*\"id\":\\([0-9]*\\).*/\\1/'); "
+					+ "case \"$line\" in "
+					+ "*'[\"exit\"'*) exit 1;; "
+					+ "*'[\"hang\"'*) continue;; "
+					+ "*'[\"bad\"'*) echo \"{\\\"id\\\":\\\"$id\\\"}\";; "
+					+ "esac; "
+					+ "count=$(echo \"$line\" | sed 's/.*\"arguments\":\\[\\([^]]*\\)\\].*/\\1/' | tr ',' '\\n' | grep -c .); "
+					+ "echo \"not a reply\"; "
+					+ "echo \"{\\\"id\\\":$id,\\\"status\\\":$count,\\\"message\\\":\\\"$$\\\"}\"; "
+					+ "done" };
+
+	/**
+	 * Workers stay running between requests, and requests are spread across
+	 * workers.
+	 */
+	@Test
+	public void reuseTest() throws Exception {
+		final ProcessWorkerPool pool = new ProcessWorkerPool("test", WORKER,
+				2, 2);
+		try {
+			ProcessWorkerPool.Response first = pool.process(
+					Arrays.asList("--a=1", "--b=2"), null, 5000L);
+			Assert.assertEquals(2, first.status);
+			ProcessWorkerPool.Response second = pool.process(
+					Arrays.asList("--a=1"), "content".getBytes(), 5000L);
+			Assert.assertEquals(1, second.status);
+			// least busy worker is reused
+			Assert.assertEquals(first.message, second.message);
+
+			final List<String> pids = new ArrayList<String>();
+			final AtomicInteger errors = new AtomicInteger();
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < 8; i++) {
+				Thread thread = new Thread(() -> {
+					try {
+						for (int j = 0; j < 4; j++) {
+							ProcessWorkerPool.Response response = pool.process(
+									Arrays.asList("--a=1", "--b=2", "--c=3"),
+									null, 5000L);
+							if (response.status != 3) {
+								errors.incrementAndGet();
+							}
+							synchronized (pids) {
+								if (!pids.contains(response.message)) {
+									pids.add(response.message);
+								}
+							}
+						}
+					} catch (Exception e) {
+						errors.incrementAndGet();
+					}
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			Assert.assertEquals(0, errors.get());
+			Assert.assertEquals(2, pids.size());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Workers that exit or time out fail their request, and are started again.
+	 */
+	@Test
+	public void restartTest() throws Exception {
+		ProcessWorkerPool pool = new ProcessWorkerPool("test", WORKER, 1, 1);
+		try {
+			String pid = pool.process(Arrays.asList("--a=1"), null, 5000L).message;
+			try {
+				pool.process(Arrays.asList("exit"), null, 5000L);
+				Assert.fail("expected IOException");
+			} catch (IOException e) {
+				// expected
+			}
+			String restarted = pool.process(Arrays.asList("--a=1"), null,
+					5000L).message;
+			Assert.assertNotEquals(pid, restarted);
+
+			try {
+				pool.process(Arrays.asList("hang"), null, 200L);
+				Assert.fail("expected TimeoutException");
+			} catch (TimeoutException e) {
+				// expected
+			}
+			Assert.assertNotEquals(restarted,
+					pool.process(Arrays.asList("--a=1"), null, 5000L).message);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Replies with unexpected values are ignored, and do not stop reading
+	 * later replies from the worker.
+	 */
+	@Test
+	public void invalidReplyTest() throws Exception {
+		ProcessWorkerPool pool = new ProcessWorkerPool("test", WORKER, 1, 1);
+		try {
+			String pid = pool.process(Arrays.asList("--a=1"), null, 5000L).message;
+			ProcessWorkerPool.Response response = pool.process(
+					Arrays.asList("bad"), null, 5000L);
+			Assert.assertEquals(1, response.status);
+			Assert.assertEquals("same worker", pid, response.message);
+			Assert.assertEquals(pid,
+					pool.process(Arrays.asList("--a=1"), null, 5000L).message);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}